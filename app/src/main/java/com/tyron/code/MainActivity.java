@@ -28,6 +28,7 @@ import com.tyron.code.ui.settings.ApplicationSettingsFragment;
 import com.tyron.common.ApplicationProvider;
 import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndexProvider;
 import com.tyron.completion.java.CompletionModule;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.JavaCompletionProvider;
@@ -63,6 +64,7 @@ public class MainActivity extends AppCompatActivity {
             CompilerService index = CompilerService.getInstance();
             if (index.isEmpty()) {
                 index.registerIndexProvider(JavaCompilerProvider.KEY, new JavaCompilerProvider());
+                index.registerIndexProvider(SymbolIndexProvider.KEY, new SymbolIndexProvider());
                 index.registerIndexProvider(XmlIndexProvider.KEY, new XmlIndexProvider());
                 engine.registerCompletionProvider(new JavaCompletionProvider());
                 engine.registerCompletionProvider(new LayoutXmlCompletionProvider());
@@ -29,6 +29,7 @@ import com.tyron.builder.project.api.Module;
 import com.tyron.code.BuildConfig;
 import com.tyron.code.R;
 import com.tyron.code.util.ApkInstaller;
+import com.tyron.completion.index.SymbolIndexProvider;
 import com.tyron.completion.progress.ProgressIndicator;
 import com.tyron.completion.progress.ProgressManager;
 
@@ -182,6 +183,12 @@ public class CompilerService extends Service {
                 }
             } finally {
                 project.setCompiling(false);
+                // the build may have generated source files and changed the libraries
+                SymbolIndexProvider symbolIndex = com.tyron.completion.index.CompilerService
+                        .getInstance().getIndex(SymbolIndexProvider.KEY);
+                if (symbolIndex != null) {
+                    symbolIndex.invalidate();
+                }
             }
         }, i -> {
 
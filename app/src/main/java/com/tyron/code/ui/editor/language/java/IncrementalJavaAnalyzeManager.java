@@ -5,53 +5,509 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.jetbrains.kotlin.com.intellij.lang.java.lexer.JavaLexer;
-import org.jetbrains.kotlin.com.intellij.lexer.Lexer;
-import org.jetbrains.kotlin.com.intellij.lexer.LexerPosition;
-import org.jetbrains.kotlin.com.intellij.pom.java.LanguageLevel;
-
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Stack;
+import java.util.function.BooleanSupplier;
 
+import io.github.rosemoe.editor.langs.java.JavaTextTokenizer;
+import io.github.rosemoe.editor.langs.java.Tokens;
 import io.github.rosemoe.sora.lang.analysis.IncrementalAnalyzeManager;
 import io.github.rosemoe.sora.lang.analysis.StyleReceiver;
+import io.github.rosemoe.sora.lang.styling.CodeBlock;
+import io.github.rosemoe.sora.lang.styling.MappedSpans;
 import io.github.rosemoe.sora.lang.styling.Span;
+import io.github.rosemoe.sora.lang.styling.Styles;
 import io.github.rosemoe.sora.text.CharPosition;
 import io.github.rosemoe.sora.text.ContentReference;
+import io.github.rosemoe.sora.widget.schemes.EditorColorScheme;
+
+/**
+ * Highlights java source code line by line, the lexer state at the start and the end of each
+ * line is stored. The insert and delete callbacks keep a copy of the lines up to date and mark
+ * the lines they change, only those lines are tokenized again along with the lines after them
+ * until the state at the start of a line is the same as before the change. The rest of the
+ * lines are reused.
+ *
+ * <p>The state of a line consists of whether it ends inside a block comment and the last
+ * token that is not a whitespace, which is needed to highlight function names.
+ *
+ * <p>The analysis is driven by {@link JavaAnalyzer} through
+ * {@link #analyze(CharSequence, BooleanSupplier)}, the {@link StyleReceiver} of the editor is
+ * not used.
+ */
+public class IncrementalJavaAnalyzeManager implements
+        IncrementalAnalyzeManager<IncrementalJavaAnalyzeManager.LineState,
+                IncrementalJavaAnalyzeManager.HighlightToken> {
+
+    /**
+     * These are tokens that cannot exist before a valid function identifier
+     */
+    private static final Tokens[] sKeywordsBeforeFunctionName = new Tokens[]{Tokens.RETURN,
+            Tokens.BREAK, Tokens.IF, Tokens.AND, Tokens.OR, Tokens.OREQ, Tokens.OROR,
+            Tokens.ANDAND, Tokens.ANDEQ, Tokens.RPAREN, Tokens.LPAREN, Tokens.LBRACE, Tokens.NEW,
+            Tokens.DOT, Tokens.SEMICOLON, Tokens.EQ, Tokens.NOTEQ, Tokens.NOT, Tokens.RBRACE,
+            Tokens.COMMA, Tokens.PLUS, Tokens.PLUSEQ, Tokens.MINUS, Tokens.MINUSEQ, Tokens.MULT,
+            Tokens.MULTEQ, Tokens.DIV, Tokens.DIVEQ};
+
+    public static final class LineState {
+
+        static final LineState INITIAL = new LineState(false, Tokens.UNKNOWN);
+
+        private final boolean mInBlockComment;
+        private final Tokens mPrevious;
+
+        LineState(boolean inBlockComment, Tokens previous) {
+            mInBlockComment = inBlockComment;
+            mPrevious = previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LineState that = (LineState) o;
+            return mInBlockComment == that.mInBlockComment && mPrevious == that.mPrevious;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mInBlockComment, mPrevious);
+        }
+    }
+
+    /**
+     * A token of a line that changes the color of the text
+     */
+    public static final class HighlightToken {
 
-public class IncrementalJavaAnalyzeManager
-        implements IncrementalAnalyzeManager<LexerPosition, Object> {
+        final Tokens type;
+        final int column;
+        final int color;
 
-    private final Lexer mLexer;
+        HighlightToken(Tokens type, int column, int color) {
+            this.type = type;
+            this.column = column;
+            this.color = color;
+        }
+    }
+
+    /**
+     * The lines changed by an edit, in the coordinates of the text after the previous edits
+     */
+    private static final class LineChange {
+
+        final int mStartLine;
+        final int mEndLine;
+        final boolean mInsertion;
 
-    public IncrementalJavaAnalyzeManager() {
-        mLexer = new JavaLexer(LanguageLevel.HIGHEST);
+        LineChange(int startLine, int endLine, boolean insertion) {
+            mStartLine = startLine;
+            mEndLine = endLine;
+            mInsertion = insertion;
+        }
     }
 
+    /**
+     * Guards the lines and the changes, which are updated together by the edits so that the
+     * analysis never sees a line that has changed without its change.
+     */
+    private final Object mEditLock = new Object();
+    /**
+     * The text of each line, null until the text is known
+     */
+    @Nullable
+    private List<String> mLines;
+    private final List<LineChange> mPendingChanges = new ArrayList<>();
+
+    /**
+     * The result and the starting state of each line, null if the line has to be tokenized
+     */
+    private final List<LineTokenizeResult<LineState, HighlightToken>> mLineResults =
+            new ArrayList<>();
+    private final List<LineState> mLineStartStates = new ArrayList<>();
+    private int mLastTokenizedLineCount;
+
     @Override
-    public LexerPosition getInitialState() {
-        return mLexer.getCurrentPosition();
+    public LineState getInitialState() {
+        return LineState.INITIAL;
     }
 
     @Override
-    public LineTokenizeResult<LexerPosition, Object> getState(int line) {
-        return null;
+    public synchronized LineTokenizeResult<LineState, HighlightToken> getState(int line) {
+        if (line < 0 || line >= mLineResults.size()) {
+            return null;
+        }
+        return mLineResults.get(line);
     }
 
     @Override
-    public boolean stateEquals(LexerPosition state, LexerPosition another) {
-        return state.equals(another);
+    public boolean stateEquals(LineState state, LineState another) {
+        return Objects.equals(state, another);
     }
 
     @Override
-    public LineTokenizeResult<LexerPosition, Object> tokenizeLine(CharSequence line, LexerPosition state) {
-        return null;
+    public LineTokenizeResult<LineState, HighlightToken> tokenizeLine(CharSequence line,
+                                                                     LineState state) {
+        List<HighlightToken> tokens = new ArrayList<>();
+        int offset = 0;
+        Tokens previous = state.mPrevious;
+        if (state.mInBlockComment) {
+            int end = indexOf(line, "*/");
+            if (end == -1) {
+                // the whole line is inside the comment
+                return new LineTokenizeResult<>(state, tokens);
+            }
+            offset = end + 2;
+            previous = Tokens.LONG_COMMENT;
+        }
+
+        JavaTextTokenizer tokenizer = new JavaTextTokenizer(line.subSequence(offset,
+                line.length()));
+        tokenizer.setCalculateLineColumn(false);
+        boolean inBlockComment = false;
+        int column = offset;
+        while (true) {
+            Tokens token;
+            try {
+                // directNextToken() does not skip any token
+                token = tokenizer.directNextToken();
+            } catch (RuntimeException e) {
+                //When a spelling input is in process, this will happen because of format mismatch
+                token = Tokens.CHARACTER_LITERAL;
+            }
+            if (token == Tokens.EOF) {
+                break;
+            }
+            // Backup values because looking ahead in function name match will change them
+            int thisLength = tokenizer.getTokenLength();
+
+            int color = getColor(token, previous, tokenizer);
+            if (color != -1) {
+                tokens.add(new HighlightToken(token, column, color));
+            }
+            if (token == Tokens.LONG_COMMENT) {
+                inBlockComment = !isTerminatedComment(line, column, thisLength);
+            }
+
+            column += thisLength;
+            if (token != Tokens.WHITESPACE && token != Tokens.NEWLINE) {
+                previous = token;
+            }
+        }
+        return new LineTokenizeResult<>(new LineState(inBlockComment, previous), tokens);
+    }
+
+    /**
+     * @return the color of the token, or -1 if the token does not change the color
+     */
+    private static int getColor(Tokens token, Tokens previous, JavaTextTokenizer tokenizer) {
+        switch (token) {
+            case WHITESPACE:
+            case NEWLINE:
+                return -1;
+            case IDENTIFIER:
+                //The previous so this will be the annotation's type name
+                if (previous == Tokens.AT) {
+                    return EditorColorScheme.ANNOTATION;
+                }
+                //Here we have to get next token to see if it is function
+                //We can only get the next token in stream.
+                Tokens next;
+                try {
+                    next = tokenizer.directNextToken();
+                } catch (RuntimeException e) {
+                    next = Tokens.CHARACTER_LITERAL;
+                }
+                //Push back the next token
+                tokenizer.pushBack(tokenizer.getTokenLength());
+                //The next is LPAREN,so this is function name or type name
+                if (next == Tokens.LPAREN) {
+                    boolean found = false;
+                    for (Tokens before : sKeywordsBeforeFunctionName) {
+                        if (before == previous) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found) {
+                        return EditorColorScheme.FUNCTION_NAME;
+                    }
+                }
+                return EditorColorScheme.TEXT_NORMAL;
+            case CHARACTER_LITERAL:
+            case STRING:
+            case FLOATING_POINT_LITERAL:
+            case INTEGER_LITERAL:
+                return EditorColorScheme.LITERAL;
+            case INT:
+            case LONG:
+            case BOOLEAN:
+            case BYTE:
+            case CHAR:
+            case FLOAT:
+            case DOUBLE:
+            case SHORT:
+            case VOID:
+            case ABSTRACT:
+            case ASSERT:
+            case CLASS:
+            case DO:
+            case FINAL:
+            case FOR:
+            case IF:
+            case NEW:
+            case PUBLIC:
+            case PRIVATE:
+            case PROTECTED:
+            case PACKAGE:
+            case RETURN:
+            case STATIC:
+            case SUPER:
+            case SWITCH:
+            case ELSE:
+            case VOLATILE:
+            case SYNCHRONIZED:
+            case STRICTFP:
+            case GOTO:
+            case CONTINUE:
+            case BREAK:
+            case TRANSIENT:
+            case TRY:
+            case CATCH:
+            case FINALLY:
+            case WHILE:
+            case CASE:
+            case DEFAULT:
+            case CONST:
+            case ENUM:
+            case EXTENDS:
+            case IMPLEMENTS:
+            case IMPORT:
+            case INSTANCEOF:
+            case INTERFACE:
+            case NATIVE:
+            case THIS:
+            case THROW:
+            case THROWS:
+            case TRUE:
+            case FALSE:
+            case NULL:
+            case SEMICOLON:
+                return EditorColorScheme.KEYWORD;
+            case LINE_COMMENT:
+            case LONG_COMMENT:
+                return EditorColorScheme.COMMENT;
+            default:
+                return EditorColorScheme.OPERATOR;
+        }
+    }
+
+    private static boolean isTerminatedComment(CharSequence line, int start, int length) {
+        int end = start + length;
+        return length >= 4 && line.charAt(end - 2) == '*' && line.charAt(end - 1) == '/';
+    }
+
+    private static int indexOf(CharSequence text, String string) {
+        for (int i = 0; i + string.length() <= text.length(); i++) {
+            boolean matches = true;
+            for (int j = 0; j < string.length(); j++) {
+                if (text.charAt(i + j) != string.charAt(j)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
-    public List<Span> generateSpansForLine(LineTokenizeResult<LexerPosition, Object> tokens) {
-        return null;
+    public List<Span> generateSpansForLine(LineTokenizeResult<LineState, HighlightToken> tokens) {
+        List<Span> spans = new ArrayList<>();
+        if (tokens.tokens != null) {
+            for (HighlightToken token : tokens.tokens) {
+                spans.add(Span.obtain(token.column, token.color));
+            }
+        }
+        return spans;
     }
 
+    /**
+     * Highlights the text, only the lines changed by the edits reported through
+     * {@link #insert(CharPosition, CharPosition, CharSequence)} and
+     * {@link #delete(CharPosition, CharPosition, CharSequence)} and the lines after them whose
+     * starting state has changed are tokenized again. The lines are taken from the copy kept
+     * up to date by the edits, which may be newer than the given text.
+     *
+     * @param text the whole text of the editor, only used if the text has not been given
+     *             through {@link #reset(ContentReference, Bundle)}
+     * @param cancelled checked between lines, the lines tokenized so far are kept if it returns
+     *                  true and the rest are tokenized during the next analysis
+     * @return the styles of the text, or null if it has been cancelled
+     */
+    @Nullable
+    public synchronized Styles analyze(CharSequence text, BooleanSupplier cancelled) {
+        List<String> lines;
+        List<LineChange> changes;
+        synchronized (mEditLock) {
+            if (mLines == null) {
+                mLines = splitLines(text);
+                mPendingChanges.clear();
+                mLineResults.clear();
+                mLineStartStates.clear();
+            }
+            lines = new ArrayList<>(mLines);
+            changes = new ArrayList<>(mPendingChanges);
+            mPendingChanges.clear();
+        }
+
+        int lineCount = lines.size();
+        if (!applyChanges(changes) || mLineResults.size() != lineCount) {
+            // every line is tokenized again
+            mLineResults.clear();
+            mLineStartStates.clear();
+            mLineResults.addAll(Collections.nCopies(lineCount, null));
+            mLineStartStates.addAll(Collections.nCopies(lineCount, null));
+        }
+
+        LineState state = getInitialState();
+        int tokenized = 0;
+        for (int line = 0; line < lineCount; line++) {
+            LineTokenizeResult<LineState, HighlightToken> result = mLineResults.get(line);
+            if (result == null || !stateEquals(state, mLineStartStates.get(line))) {
+                if (cancelled.getAsBoolean()) {
+                    mLastTokenizedLineCount = tokenized;
+                    return null;
+                }
+                result = tokenizeLine(lines.get(line), state);
+                mLineResults.set(line, result);
+                mLineStartStates.set(line, state);
+                tokenized++;
+            }
+            state = result.state;
+        }
+
+        mLastTokenizedLineCount = tokenized;
+        return buildStyles(lines, mLineResults);
+    }
+
+    /**
+     * @return the number of lines that were tokenized during the last analysis
+     */
+    public synchronized int getLastTokenizedLineCount() {
+        return mLastTokenizedLineCount;
+    }
+
+    private static List<String> splitLines(CharSequence text) {
+        List<String> lines = new ArrayList<>();
+        String string = text.toString();
+        int start = 0;
+        int end;
+        while ((end = string.indexOf('\n', start)) != -1) {
+            lines.add(string.substring(start, end));
+            start = end + 1;
+        }
+        lines.add(string.substring(start));
+        return lines;
+    }
+
+    /**
+     * Moves the cached results according to the changes, the changed lines are set to null
+     *
+     * @return false if the changes do not fit the cached results
+     */
+    private boolean applyChanges(List<LineChange> changes) {
+        if (mLineResults.isEmpty()) {
+            return false;
+        }
+        for (LineChange change : changes) {
+            int startLine = change.mStartLine;
+            int endLine = change.mEndLine;
+            if (startLine < 0 || startLine > endLine || startLine >= mLineResults.size()) {
+                return false;
+            }
+            if (change.mInsertion) {
+                mLineResults.addAll(startLine + 1, Collections.nCopies(endLine - startLine, null));
+                mLineStartStates.addAll(startLine + 1,
+                        Collections.nCopies(endLine - startLine, null));
+            } else {
+                if (endLine >= mLineResults.size()) {
+                    return false;
+                }
+                mLineResults.subList(startLine + 1, endLine + 1).clear();
+                mLineStartStates.subList(startLine + 1, endLine + 1).clear();
+            }
+            mLineResults.set(startLine, null);
+            mLineStartStates.set(startLine, null);
+        }
+        return true;
+    }
+
+    private Styles buildStyles(List<String> lines,
+                               List<LineTokenizeResult<LineState, HighlightToken>> results) {
+        Styles styles = new Styles();
+        MappedSpans.Builder colors = new MappedSpans.Builder();
+
+        String firstLine = lines.get(0);
+        if (firstLine.isEmpty()
+                ? lines.size() > 1
+                : Character.isWhitespace(firstLine.charAt(0))) {
+            colors.addNormalIfNull();
+        }
+
+        Stack<CodeBlock> stack = new Stack<>();
+        int maxSwitch = 1, currSwitch = 0;
+        for (int line = 0; line < results.size(); line++) {
+            List<HighlightToken> tokens = results.get(line).tokens;
+            if (tokens == null) {
+                continue;
+            }
+            for (HighlightToken token : tokens) {
+                int column = token.column;
+                colors.addIfNeeded(line, column, token.color);
+                if (token.type == Tokens.LBRACE) {
+                    if (stack.isEmpty()) {
+                        if (currSwitch > maxSwitch) {
+                            maxSwitch = currSwitch;
+                        }
+                        currSwitch = 0;
+                    }
+                    currSwitch++;
+                    CodeBlock block = styles.obtainNewBlock();
+                    block.startLine = line;
+                    block.startColumn = column;
+                    stack.push(block);
+                } else if (token.type == Tokens.RBRACE) {
+                    if (!stack.isEmpty()) {
+                        CodeBlock block = stack.pop();
+                        block.endLine = line;
+                        block.endColumn = column;
+                        if (block.startLine != block.endLine) {
+                            styles.addCodeBlock(block);
+                        }
+                    }
+                }
+            }
+        }
+        if (stack.isEmpty()) {
+            if (currSwitch > maxSwitch) {
+                maxSwitch = currSwitch;
+            }
+        }
+        colors.determine(results.size() - 1);
+        styles.setSuppressSwitch(maxSwitch + 10);
+        styles.spans = colors.build();
+        return styles;
+    }
+
+    /**
+     * The styles are returned by {@link #analyze(CharSequence, BooleanSupplier)} instead
+     */
     @Override
     public void setReceiver(@Nullable StyleReceiver receiver) {
 
@@ -59,19 +515,71 @@ public class IncrementalJavaAnalyzeManager
 
     @Override
     public void reset(@NonNull ContentReference content, @NonNull Bundle extraArguments) {
-        mLexer.start(content.getReference().toString());
+        clear(splitLines(content.getReference()));
     }
 
+    /**
+     * Applies the insertion to the copy of the lines and marks the lines of the inserted text
+     * to be tokenized during the next analysis
+     */
     @Override
     public void insert(CharPosition start, CharPosition end, CharSequence insertedContent) {
-
+        synchronized (mEditLock) {
+            List<String> lines = mLines;
+            if (lines != null) {
+                if (isInBounds(lines, start)) {
+                    String line = lines.get(start.getLine());
+                    List<String> inserted = splitLines(line.substring(0, start.getColumn())
+                            + insertedContent + line.substring(start.getColumn()));
+                    lines.set(start.getLine(), inserted.get(0));
+                    lines.addAll(start.getLine() + 1, inserted.subList(1, inserted.size()));
+                    mPendingChanges.add(new LineChange(start.getLine(),
+                            start.getLine() + inserted.size() - 1, true));
+                } else {
+                    // the copy is out of date, it is taken from the text of the next analysis
+                    mLines = null;
+                }
+            }
+        }
     }
 
+    /**
+     * Applies the deletion to the copy of the lines and marks the line where the text has been
+     * deleted to be tokenized during the next analysis
+     */
     @Override
     public void delete(CharPosition start, CharPosition end, CharSequence deletedContent) {
+        synchronized (mEditLock) {
+            List<String> lines = mLines;
+            if (lines != null) {
+                if (isInBounds(lines, start) && isInBounds(lines, end)
+                        && (start.getLine() < end.getLine() || (start.getLine() == end.getLine()
+                        && start.getColumn() <= end.getColumn()))) {
+                    lines.set(start.getLine(),
+                            lines.get(start.getLine()).substring(0, start.getColumn())
+                                    + lines.get(end.getLine()).substring(end.getColumn()));
+                    lines.subList(start.getLine() + 1, end.getLine() + 1).clear();
+                    mPendingChanges.add(new LineChange(start.getLine(), end.getLine(), false));
+                } else {
+                    mLines = null;
+                }
+            }
+        }
+    }
 
+    /**
+     * @return whether the position is within the copy of the lines, it is not if the copy
+     * has missed an edit
+     */
+    private static boolean isInBounds(List<String> lines, CharPosition position) {
+        int line = position.getLine();
+        return line >= 0 && line < lines.size() && position.getColumn() >= 0
+                && position.getColumn() <= lines.get(line).length();
     }
 
+    /**
+     * Does nothing, {@link JavaAnalyzer} schedules the analysis after each edit
+     */
     @Override
     public void rerun() {
 
@@ -79,6 +587,17 @@ public class IncrementalJavaAnalyzeManager
 
     @Override
     public void destroy() {
+        clear(null);
+    }
 
+    private void clear(@Nullable List<String> lines) {
+        synchronized (mEditLock) {
+            mLines = lines;
+            mPendingChanges.clear();
+        }
+        synchronized (this) {
+            mLineResults.clear();
+            mLineStartStates.clear();
+        }
     }
 }
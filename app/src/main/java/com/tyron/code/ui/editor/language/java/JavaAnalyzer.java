@@ -1,8 +1,11 @@
 package com.tyron.code.ui.editor.language.java;
 
 import android.content.SharedPreferences;
+import android.os.Bundle;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
@@ -20,7 +23,6 @@ import com.tyron.common.util.Debouncer;
 import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.compiler.CompileTask;
-import com.tyron.completion.java.compiler.CompilerContainer;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.provider.CompletionEngine;
 import com.tyron.completion.java.util.ErrorCodes;
@@ -50,16 +52,11 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
-import io.github.rosemoe.editor.langs.java.JavaTextTokenizer;
-import io.github.rosemoe.editor.langs.java.Tokens;
-import io.github.rosemoe.sora.lang.styling.CodeBlock;
-import io.github.rosemoe.sora.lang.styling.MappedSpans;
 import io.github.rosemoe.sora.lang.styling.Styles;
-import io.github.rosemoe.sora.text.LineNumberCalculator;
-import io.github.rosemoe.sora.widget.schemes.EditorColorScheme;
+import io.github.rosemoe.sora.text.CharPosition;
+import io.github.rosemoe.sora.text.ContentReference;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
 
@@ -67,20 +64,11 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
 
     private static final Debouncer sDebouncer = new Debouncer(Duration.ofMillis(700));
     private static final String TAG = JavaAnalyzer.class.getSimpleName();
-    /**
-     * These are tokens that cannot exist before a valid function identifier
-     */
-    private static final Tokens[] sKeywordsBeforeFunctionName = new Tokens[]{Tokens.RETURN,
-            Tokens.BREAK, Tokens.IF, Tokens.AND, Tokens.OR, Tokens.OREQ, Tokens.OROR,
-            Tokens.ANDAND, Tokens.ANDEQ, Tokens.RPAREN, Tokens.LPAREN, Tokens.LBRACE, Tokens.NEW,
-            Tokens.DOT, Tokens.SEMICOLON, Tokens.EQ, Tokens.NOTEQ, Tokens.NOT, Tokens.RBRACE,
-            Tokens.COMMA, Tokens.PLUS, Tokens.PLUSEQ, Tokens.MINUS, Tokens.MINUSEQ, Tokens.MULT,
-            Tokens.MULTEQ, Tokens.DIV, Tokens.DIVEQ};
-
     private final WeakReference<Editor> mEditorReference;
     private List<DiagnosticWrapper> mDiagnostics;
     private final List<DiagnosticWrapper> mPreviousDiagnostics = new ArrayList<>();
     private final SharedPreferences mPreferences;
+    private final IncrementalJavaAnalyzeManager mHighlighter = new IncrementalJavaAnalyzeManager();
 
     public JavaAnalyzer(Editor editor) {
         mEditorReference = new WeakReference<>(editor);
@@ -145,9 +133,9 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
                     SourceFileObject sourceFileObject =
                             new SourceFileObject(editor.getCurrentFile().toPath(),
                                     contents.toString(), Instant.now());
-                    CompilerContainer container =
-                                 service.compile(Collections.singletonList(sourceFileObject));
-                    container.run(task -> {
+                    // compiled separately from the cached compilation so completions
+                    // are not blocked while the file is being analyzed
+                    service.analyze(Collections.singletonList(sourceFileObject), task -> {
                         if (!cancel.invoke()) {
                             List<DiagnosticWrapper> collect =
                                     task.diagnostics.stream()
@@ -157,12 +145,12 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
 
                             ProgressManager.getInstance().runLater(() -> editor.setAnalyzing(false), 300);
                         }
+                        return null;
                     });
                 } catch (Throwable e) {
                     if (BuildConfig.DEBUG) {
                         Log.e(TAG, "Unable to get diagnostics", e);
                     }
-                    service.close();
                     ProgressManager.getInstance().runLater(() -> editor.setAnalyzing(false));
                 }
             }
@@ -216,198 +204,36 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
     }
 
     @Override
-    protected Styles analyze(StringBuilder text, Delegate<Object> delegate) {
-        Styles styles = new Styles();
-        MappedSpans.Builder colors = new MappedSpans.Builder();
-
-        Editor editor = mEditorReference.get();
-        if (editor == null) {
-            return styles;
-        }
-        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
-        tokenizer.setCalculateLineColumn(false);
-        Tokens token, previous = Tokens.UNKNOWN;
-        int line = 0, column = 0;
-        LineNumberCalculator helper = new LineNumberCalculator(text);
-
-        Stack<CodeBlock> stack = new Stack<>();
-        int maxSwitch = 1, currSwitch = 0;
-
-        boolean first = true;
-
-        while (!delegate.isCancelled()) {
-            try {
-                // directNextToken() does not skip any token
-                token = tokenizer.directNextToken();
-            } catch (RuntimeException e) {
-                //When a spelling input is in process, this will happen because of format mismatch
-                token = Tokens.CHARACTER_LITERAL;
-            }
-            if (token == Tokens.EOF) {
-                break;
-            }
-            // Backup values because looking ahead in function name match will change them
-            int thisIndex = tokenizer.getIndex();
-            int thisLength = tokenizer.getTokenLength();
-
-            switch (token) {
-                case WHITESPACE:
-                case NEWLINE:
-                    if (first) {
-                        colors.addNormalIfNull();
-                    }
-                    break;
-                case IDENTIFIER:
-                    //Add a identifier to auto complete
-
-                    //The previous so this will be the annotation's type name
-                    if (previous == Tokens.AT) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
-                        break;
-                    }
-                    //Here we have to get next token to see if it is function
-                    //We can only get the next token in stream.
-                    //If more tokens required, we have to use a stack in tokenizer
-                    Tokens next = tokenizer.directNextToken();
-                    //The next is LPAREN,so this is function name or type name
-                    if (next == Tokens.LPAREN) {
-                        boolean found = false;
-                        for (Tokens before : sKeywordsBeforeFunctionName) {
-                            if (before == previous) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
-                            tokenizer.pushBack(tokenizer.getTokenLength());
-                            break;
-                        }
-                    }
-                    //Push back the next token
-                    tokenizer.pushBack(tokenizer.getTokenLength());
-                    //This is a class definition
+    public void insert(CharPosition start, CharPosition end, CharSequence insertedContent) {
+        // the highlighter updates its copy of the lines before the analysis is scheduled
+        mHighlighter.insert(start, end, insertedContent);
+        super.insert(start, end, insertedContent);
+    }
 
-                    colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
-                    break;
-                case CHARACTER_LITERAL:
-                case STRING:
-                case FLOATING_POINT_LITERAL:
-                case INTEGER_LITERAL:
-                    colors.addIfNeeded(line, column, EditorColorScheme.LITERAL);
-                    break;
-                case INT:
-                case LONG:
-                case BOOLEAN:
-                case BYTE:
-                case CHAR:
-                case FLOAT:
-                case DOUBLE:
-                case SHORT:
-                case VOID:
-                case ABSTRACT:
-                case ASSERT:
-                case CLASS:
-                case DO:
-                case FINAL:
-                case FOR:
-                case IF:
-                case NEW:
-                case PUBLIC:
-                case PRIVATE:
-                case PROTECTED:
-                case PACKAGE:
-                case RETURN:
-                case STATIC:
-                case SUPER:
-                case SWITCH:
-                case ELSE:
-                case VOLATILE:
-                case SYNCHRONIZED:
-                case STRICTFP:
-                case GOTO:
-                case CONTINUE:
-                case BREAK:
-                case TRANSIENT:
-                case TRY:
-                case CATCH:
-                case FINALLY:
-                case WHILE:
-                case CASE:
-                case DEFAULT:
-                case CONST:
-                case ENUM:
-                case EXTENDS:
-                case IMPLEMENTS:
-                case IMPORT:
-                case INSTANCEOF:
-                case INTERFACE:
-                case NATIVE:
-                case THIS:
-                case THROW:
-                case THROWS:
-                case TRUE:
-                case FALSE:
-                case NULL:
-                case SEMICOLON:
-                    colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
-                    break;
-                case LBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (stack.isEmpty()) {
-                        if (currSwitch > maxSwitch) {
-                            maxSwitch = currSwitch;
-                        }
-                        currSwitch = 0;
-                    }
-                    currSwitch++;
-                    CodeBlock block = styles.obtainNewBlock();
-                    block.startLine = line;
-                    block.startColumn = column;
-                    stack.push(block);
-                    break;
-                }
-                case RBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (!stack.isEmpty()) {
-                        CodeBlock block = stack.pop();
-                        block.endLine = line;
-                        block.endColumn = column;
-                        if (block.startLine != block.endLine) {
-                            styles.addCodeBlock(block);
-                        }
-                    }
-                    break;
-                }
-                case LINE_COMMENT:
-                case LONG_COMMENT:
-                    colors.addIfNeeded(line, column, EditorColorScheme.COMMENT);
-                    break;
-                default:
-                    if (token == Tokens.LBRACK || (token == Tokens.RBRACK && previous == Tokens.LBRACK)) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                        break;
-                    }
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-            }
+    @Override
+    public void delete(CharPosition start, CharPosition end, CharSequence deletedContent) {
+        mHighlighter.delete(start, end, deletedContent);
+        super.delete(start, end, deletedContent);
+    }
 
+    @Override
+    public void reset(@NonNull ContentReference content, @NonNull Bundle extraArguments) {
+        mHighlighter.reset(content, extraArguments);
+        super.reset(content, extraArguments);
+    }
 
-            first = false;
-            helper.update(thisLength);
-            line = helper.getLine();
-            column = helper.getColumn();
-            if (token != Tokens.WHITESPACE && token != Tokens.NEWLINE) {
-                previous = token;
-            }
+    @Override
+    protected Styles analyze(StringBuilder text, Delegate<Object> delegate) {
+        Editor editor = mEditorReference.get();
+        if (editor == null) {
+            return new Styles();
         }
-        if (stack.isEmpty()) {
-            if (currSwitch > maxSwitch) {
-                maxSwitch = currSwitch;
-            }
+        // only the lines changed by the edits since the last analysis are tokenized
+        Styles styles = mHighlighter.analyze(text, delegate::isCancelled);
+        if (styles == null) {
+            // cancelled, the result is discarded
+            return new Styles();
         }
-        colors.determine(line);
-        styles.setSuppressSwitch(maxSwitch + 10);
-        styles.spans = colors.build();
 
         if (mShouldAnalyzeInBg) {
             analyzeInBackground(text);
@@ -415,4 +241,4 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
         HighlightUtil.markDiagnostics(editor, mDiagnostics, styles);
         return styles;
     }
-}
\ No newline at end of file
+}
@@ -20,6 +20,8 @@ import com.tyron.code.ui.file.tree.TreeFileManagerFragment;
 import com.tyron.code.ui.file.tree.TreeUtil;
 import com.tyron.code.ui.file.tree.model.TreeFile;
 import com.tyron.code.ui.project.ProjectManager;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndexProvider;
 
 import java.io.File;
 import java.io.IOException;
@@ -63,6 +65,11 @@ public class CreateAndroidClassAction extends CreateClassAction {
                 if (currentModule instanceof AndroidModule) {
                     ((AndroidModule) currentModule).addJavaFile(createdFile);
                 }
+                SymbolIndexProvider symbolIndex = CompilerService.getInstance()
+                        .getIndex(SymbolIndexProvider.KEY);
+                if (symbolIndex != null) {
+                    symbolIndex.invalidate();
+                }
             } catch (IOException exception) {
                 new MaterialAlertDialogBuilder(treeFragment.requireContext())
                         .setMessage(exception.getMessage())
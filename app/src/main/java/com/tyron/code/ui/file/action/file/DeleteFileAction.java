@@ -8,6 +8,8 @@ import androidx.appcompat.app.AlertDialog;
 import com.tyron.actions.AnActionEvent;
 import com.tyron.actions.CommonDataKeys;
 import com.tyron.code.ui.file.tree.TreeUtil;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndexProvider;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.ui.treeview.TreeNode;
 import com.tyron.ui.treeview.TreeView;
@@ -103,6 +105,11 @@ public class DeleteFileAction extends FileAction {
                 }
             }
         });
+        SymbolIndexProvider symbolIndex = CompilerService.getInstance()
+                .getIndex(SymbolIndexProvider.KEY);
+        if (symbolIndex != null) {
+            symbolIndex.invalidate();
+        }
         try {
             FileUtils.forceDelete(currentFile);
         } catch (IOException e) {
@@ -24,6 +24,8 @@ import com.tyron.code.ui.file.tree.TreeFileManagerFragment;
 import com.tyron.code.ui.file.tree.model.TreeFile;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.code.util.ProjectUtils;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndexProvider;
 
 import java.io.File;
 import java.io.IOException;
@@ -91,6 +93,11 @@ public class CreateClassAction extends FileAction {
                 if (currentModule instanceof JavaModule) {
                     ((JavaModule) currentModule).addJavaFile(createdFile);
                 }
+                SymbolIndexProvider symbolIndex = CompilerService.getInstance()
+                        .getIndex(SymbolIndexProvider.KEY);
+                if (symbolIndex != null) {
+                    symbolIndex.invalidate();
+                }
             } catch (IOException exception) {
                 new MaterialAlertDialogBuilder(fragment.requireContext())
                         .setMessage(exception.getMessage())
@@ -18,9 +18,11 @@ import com.tyron.code.ApplicationLoader;
 import com.tyron.code.template.CodeTemplate;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndexProvider;
 import com.tyron.completion.java.compiler.CompilerContainer;
 import com.tyron.completion.java.JavaCompilerProvider;
 import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.java.compiler.Parser;
 import com.tyron.completion.java.provider.CompletionEngine;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.completion.xml.XmlIndexProvider;
@@ -131,6 +133,10 @@ public class ProjectManager {
         if (module instanceof JavaModule) {
             mListener.onTaskStarted("Indexing");
             try {
+                SymbolIndexProvider symbolIndex = CompilerService.getInstance()
+                        .getIndex(SymbolIndexProvider.KEY);
+                symbolIndex.index(project, module);
+
                 JavaCompilerProvider provider = CompilerService.getInstance()
                         .getIndex(JavaCompilerProvider.KEY);
                 provider.get(project, module);
@@ -163,6 +169,8 @@ public class ProjectManager {
     public void closeProject(@NonNull Project project) {
         if (project.equals(mCurrentProject)) {
             mCurrentProject = null;
+            // the cached parse trees hold the file manager of the closed project
+            Parser.clearCache();
         }
     }
 
@@ -0,0 +1,129 @@
+package com.tyron.code.ui.editor.language.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import io.github.rosemoe.sora.lang.analysis.IncrementalAnalyzeManager.LineTokenizeResult;
+import io.github.rosemoe.sora.text.CharPosition;
+
+public class IncrementalJavaAnalyzeManagerTest {
+
+    private static final String TEXT = "int a;\n" +
+            "int b;\n" +
+            "int c; */\n" +
+            "int d;\n" +
+            "int e;";
+
+    @Test
+    public void testBlockCommentAcrossLines() {
+        IncrementalJavaAnalyzeManager manager = new IncrementalJavaAnalyzeManager();
+        manager.analyze(TEXT, () -> false);
+        assertSameAsFullAnalysis(manager, TEXT);
+
+        // opens a comment closed two lines below, the lines after it are not affected
+        String opened = insert(manager, TEXT, 7, "/*");
+        assertNotNull(manager.analyze(opened, () -> false));
+        assertSameAsFullAnalysis(manager, opened);
+        assertEquals(3, manager.getLastTokenizedLineCount());
+
+        String closed = delete(manager, opened, 7, 9);
+        assertNotNull(manager.analyze(closed, () -> false));
+        assertSameAsFullAnalysis(manager, closed);
+        assertEquals(3, manager.getLastTokenizedLineCount());
+    }
+
+    @Test
+    public void testUnterminatedComment() {
+        IncrementalJavaAnalyzeManager manager = new IncrementalJavaAnalyzeManager();
+        manager.analyze(TEXT, () -> false);
+
+        // every line after the comment is inside it
+        String opened = insert(manager, TEXT, 0, "/*\n");
+        manager.analyze(opened, () -> false);
+        assertSameAsFullAnalysis(manager, opened);
+
+        String closed = insert(manager, opened, opened.indexOf("int d;"), "*/ /*\n");
+        manager.analyze(closed, () -> false);
+        assertSameAsFullAnalysis(manager, closed);
+
+        String removed = delete(manager, closed, 0, 3);
+        manager.analyze(removed, () -> false);
+        assertSameAsFullAnalysis(manager, removed);
+    }
+
+    @Test
+    public void testEditOutsideOfLines() {
+        IncrementalJavaAnalyzeManager manager = new IncrementalJavaAnalyzeManager();
+        manager.analyze(TEXT, () -> false);
+
+        // positions that do not match the copy of the lines fall back to a full analysis
+        CharPosition position = position(TEXT, 0);
+        position.column = 100;
+        manager.insert(position, position, "/*");
+        String text = "/*" + TEXT;
+        manager.analyze(text, () -> false);
+        assertSameAsFullAnalysis(manager, text);
+        assertEquals(5, manager.getLastTokenizedLineCount());
+    }
+
+    private static String insert(IncrementalJavaAnalyzeManager manager, String text, int index,
+                                 String inserted) {
+        String newText = text.substring(0, index) + inserted + text.substring(index);
+        manager.insert(position(newText, index), position(newText, index + inserted.length()),
+                inserted);
+        return newText;
+    }
+
+    private static String delete(IncrementalJavaAnalyzeManager manager, String text, int start,
+                                 int end) {
+        manager.delete(position(text, start), position(text, end), text.substring(start, end));
+        return text.substring(0, start) + text.substring(end);
+    }
+
+    private static CharPosition position(String text, int index) {
+        CharPosition position = new CharPosition();
+        position.index = index;
+        for (int i = 0; i < index; i++) {
+            if (text.charAt(i) == '\n') {
+                position.line++;
+                position.column = 0;
+            } else {
+                position.column++;
+            }
+        }
+        return position;
+    }
+
+    private static void assertSameAsFullAnalysis(IncrementalJavaAnalyzeManager manager,
+                                                 String text) {
+        IncrementalJavaAnalyzeManager expected = new IncrementalJavaAnalyzeManager();
+        expected.analyze(text, () -> false);
+
+        int lineCount = text.split("\n", -1).length;
+        for (int line = 0; line < lineCount; line++) {
+            LineTokenizeResult<IncrementalJavaAnalyzeManager.LineState,
+                    IncrementalJavaAnalyzeManager.HighlightToken> result = manager.getState(line);
+            LineTokenizeResult<IncrementalJavaAnalyzeManager.LineState,
+                    IncrementalJavaAnalyzeManager.HighlightToken> expectedResult =
+                    expected.getState(line);
+            assertNotNull(result);
+            assertEquals("State of line " + line, expectedResult.state, result.state);
+            assertEquals("Tokens of line " + line, describe(expectedResult.tokens),
+                    describe(result.tokens));
+        }
+        assertEquals(null, manager.getState(lineCount));
+    }
+
+    private static String describe(List<IncrementalJavaAnalyzeManager.HighlightToken> tokens) {
+        StringBuilder builder = new StringBuilder();
+        for (IncrementalJavaAnalyzeManager.HighlightToken token : tokens) {
+            builder.append(token.type).append('@').append(token.column).append(':')
+                    .append(token.color).append(' ');
+        }
+        return builder.toString();
+    }
+}
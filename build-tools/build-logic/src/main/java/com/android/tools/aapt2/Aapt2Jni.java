@@ -10,6 +10,7 @@ import org.openjdk.javax.tools.Diagnostic;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -124,6 +125,32 @@ public class Aapt2Jni {
         return executeBinary(args, instance);
     }
 
+    /**
+     * Compile resources with Aapt2, the diagnostics are added to the given list instead of
+     * the shared logs so resources can be compiled from multiple threads at once
+     *
+     * @param args the arguments to pass to aapt2
+     * @param logs the list the diagnostics are added to
+     * @return exit code, non zero if theres an error
+     */
+    public static int compile(List<String> args, List<DiagnosticWrapper> logs) {
+        Aapt2Jni instance = new Aapt2Jni();
+
+        // aapt2 has failed to load, fail early
+        String failureString = getInstance().mFailureString;
+        if (failureString != null) {
+            instance.log(LOG_LEVEL_ERROR, null, -1, failureString);
+            logs.addAll(instance.mDiagnostics);
+            return -1;
+        }
+
+        args.add(0, "compile");
+        args.add(0, getBinary());
+        int result = executeBinary(args, instance);
+        logs.addAll(instance.mDiagnostics);
+        return result;
+    }
+
     public static int link(List<String> args) {
         Aapt2Jni instance = Aapt2Jni.getInstance();
         instance.clearLogs();
@@ -140,6 +167,27 @@ public class Aapt2Jni {
         return executeBinary(args, instance);
     }
 
+    private static String sVersion;
+
+    /**
+     * @return the version printed by aapt2, outputs that are cached across builds must not
+     * be reused once it changes. If it cannot be determined, the size and modification time
+     * of the binary are used instead.
+     */
+    public static synchronized String getVersion() {
+        if (sVersion == null) {
+            BinaryExecutor binaryExecutor = new BinaryExecutor();
+            binaryExecutor.setCommands(Arrays.asList(getBinary(), "version"));
+            String version = binaryExecutor.execute().trim();
+            if (!version.startsWith("Android Asset Packaging Tool")) {
+                File binary = new File(getBinary());
+                version = binary.length() + ":" + binary.lastModified();
+            }
+            sVersion = version;
+        }
+        return sVersion;
+    }
+
     private static String getBinary() {
         return BuildModule.getContext().getApplicationInfo().nativeLibraryDir + "/libaapt2.so";
     }
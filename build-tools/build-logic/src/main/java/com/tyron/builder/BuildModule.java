@@ -2,6 +2,9 @@ package com.tyron.builder;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.api.internal.cache.LocalBuildCache;
 import com.tyron.common.util.Decompress;
 
 import java.io.File;
@@ -11,6 +14,7 @@ public class BuildModule {
     private static Context sApplicationContext;
     private static File sAndroidJar;
     private static File sLambdaStubs;
+    private static LocalBuildCache sBuildCache;
 
     public static void initialize(Context applicationContext) {
             sApplicationContext = applicationContext.getApplicationContext();
@@ -49,4 +53,20 @@ public class BuildModule {
         }
         return sLambdaStubs;
     }
+
+    /**
+     * @return the build cache shared by all projects, or null if the application context
+     * is not available
+     */
+    @Nullable
+    public static synchronized LocalBuildCache getBuildCache() {
+        if (sBuildCache == null) {
+            Context context = BuildModule.getContext();
+            if (context == null) {
+                return null;
+            }
+            sBuildCache = new LocalBuildCache(new File(context.getCacheDir(), "build-cache"));
+        }
+        return sBuildCache;
+    }
 }
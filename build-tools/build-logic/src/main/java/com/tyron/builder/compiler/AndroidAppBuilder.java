@@ -3,6 +3,7 @@ package com.tyron.builder.compiler;
 import com.tyron.builder.compiler.apk.PackageTask;
 import com.tyron.builder.compiler.apk.SignTask;
 import com.tyron.builder.compiler.apk.ZipAlignTask;
+import com.tyron.builder.compiler.dex.DexLibrariesTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
@@ -17,7 +18,6 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
@@ -28,33 +28,55 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
 
     @Override
     public List<Task<? super AndroidModule>> getTasks(BuildType type) {
+        return getTaskGraph(type).getTasks();
+    }
+
+    @Override
+    protected TaskGraph<AndroidModule> getTaskGraph(BuildType type) {
 
         AndroidModule module = getModule();
         ILogger logger = getLogger();
 
-        List<Task<? super AndroidModule>> tasks = new ArrayList<>();
-        tasks.add(new CleanTask(module, logger));
-        tasks.add(new CheckLibrariesTask(module, logger));
-        tasks.add(new ManifestMergeTask(module, logger));
-        tasks.add(new GenerateFirebaseConfigTask(module, logger));
+        TaskGraph<AndroidModule> graph = new TaskGraph<>();
+        Task<? super AndroidModule> clean = graph.add(new CleanTask(module, logger));
+        Task<? super AndroidModule> checkLibraries =
+                graph.add(new CheckLibrariesTask(module, logger), clean);
+        Task<? super AndroidModule> manifestMerge =
+                graph.add(new ManifestMergeTask(module, logger), checkLibraries);
+        Task<? super AndroidModule> firebaseConfig =
+                graph.add(new GenerateFirebaseConfigTask(module, logger), clean);
+        Task<? super AndroidModule> injectLogger = null;
         if (type == BuildType.DEBUG) {
-            tasks.add(new InjectLoggerTask(module, logger));
+            injectLogger = graph.add(new InjectLoggerTask(module, logger), manifestMerge);
         }
-        tasks.add(new IncrementalAapt2Task(module, logger, false));
-        tasks.add(new MergeSymbolsTask(module, logger));
-        tasks.add(new IncrementalKotlinCompiler(module, logger));
-        tasks.add(new IncrementalJavaTask(module, logger));
+        // the logger injection may rewrite the merged manifest which is linked by aapt2
+        Task<? super AndroidModule> aapt2 = graph.add(new IncrementalAapt2Task(module, logger,
+                false), manifestMerge, firebaseConfig, injectLogger);
+        Task<? super AndroidModule> mergeSymbols =
+                graph.add(new MergeSymbolsTask(module, logger), aapt2);
+        Task<? super AndroidModule> kotlin = graph.add(new IncrementalKotlinCompiler(module,
+                logger), mergeSymbols, injectLogger);
+        Task<? super AndroidModule> java = graph.add(new IncrementalJavaTask(module, logger),
+                kotlin);
+        Task<? super AndroidModule> dex;
         if (module.getSettings().getBoolean(ModuleSettings.USE_R8, false) &&
                 type == BuildType.RELEASE) {
-            tasks.add(new R8Task(module, logger));
+            dex = graph.add(new R8Task(module, logger), java);
         } else {
-            tasks.add(new IncrementalD8Task(module, logger));
+            // libraries do not depend on the sources, they are dexed while those compile
+            Task<? super AndroidModule> dexLibraries =
+                    graph.add(new DexLibrariesTask(module, logger), checkLibraries);
+            dex = graph.add(new IncrementalD8Task(module, logger), java, dexLibraries);
+        }
+        Task<? super AndroidModule> apk = graph.add(new PackageTask(module, logger), dex);
+        if (PackageTask.isIncremental(module)) {
+            // the signed and aligned apk is written by the package task
+            return graph;
         }
-        tasks.add(new PackageTask(module, logger));
         if (module.getSettings().getBoolean(ModuleSettings.ZIP_ALIGN_ENABLED, false)) {
-            tasks.add(new ZipAlignTask(module, logger));
+            apk = graph.add(new ZipAlignTask(module, logger), apk);
         }
-        tasks.add(new SignTask(module, logger));
-        return tasks;
+        graph.add(new SignTask(module, logger), apk);
+        return graph;
     }
 }
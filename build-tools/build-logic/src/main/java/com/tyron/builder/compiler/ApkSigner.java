@@ -1,12 +1,25 @@
 package com.tyron.builder.compiler;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.apksig.DefaultApkSignerEngine;
 import com.tyron.builder.BuildModule;
 import com.tyron.common.util.Decompress;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Collections;
 
 
 public class ApkSigner {
@@ -46,7 +59,27 @@ public class ApkSigner {
     }
 
 
-    private String getTestKeyFilePath() {
+    /**
+     * @return the configuration of the test key, used to sign APKs with an
+     * {@link com.android.apksig.ApkSignerEngine} while they are being written
+     */
+    @NonNull
+    public static DefaultApkSignerEngine.SignerConfig getTestSignerConfig()
+            throws IOException, GeneralSecurityException {
+        byte[] encodedKey = Files.readAllBytes(new File(getTestKeyFilePath()).toPath());
+        X509Certificate certificate;
+        try (InputStream in = new FileInputStream(getTestCertFilePath())) {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(in);
+        }
+        // the algorithm of the key is the one of the public key of its certificate
+        PrivateKey key = KeyFactory.getInstance(certificate.getPublicKey().getAlgorithm())
+                .generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+        return new DefaultApkSignerEngine.SignerConfig.Builder("CERT", key,
+                Collections.singletonList(certificate)).build();
+    }
+
+    private static String getTestKeyFilePath() {
         if (sTestKeyFile != null) {
             return sTestKeyFile.getAbsolutePath();
         }
@@ -63,7 +96,7 @@ public class ApkSigner {
         return check.getAbsolutePath();
     }
 
-    private String getTestCertFilePath() {
+    private static String getTestCertFilePath() {
         if (sTestCertFile != null) {
             return sTestCertFile.getAbsolutePath();
         }
@@ -5,13 +5,21 @@ import android.os.Looper;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.tyron.builder.api.internal.tasks.TaskExecutionException;
+import com.tyron.builder.api.internal.tasks.TaskExecutor;
+import com.tyron.builder.api.tasks.TaskInputs;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.Module;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
@@ -44,32 +52,152 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         }
     }
 
+    /**
+     * Runs the tasks of the build with the builder-api {@link TaskExecutor}, a task starts as
+     * soon as all the tasks it depends on have finished so independent tasks run in parallel.
+     * If a task fails, no other tasks are started and the build fails after the running tasks
+     * have finished.
+     */
     @Override
     public final void build(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
-        List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
-            getLogger().info("Running " + task.getName());
-            try {
+        TaskGraph<T> graph = getTaskGraph(type);
+        List<TaskNode<T>> nodes = graph.getNodes();
+        ExecutionHistory history = ExecutionHistory.load(
+                new File(mProject.getBuildDirectory(), "intermediate/task_history.bin"));
+
+        AtomicInteger started = new AtomicInteger();
+        for (TaskNode<T> node : nodes) {
+            node.doLast(apiTask -> {
+                Task<? super T> task = node.getTask();
+                float current = started.getAndIncrement();
+                getLogger().info("Running " + task.getName());
                 mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+                        (int) ((current / (float) nodes.size()) * 100f)));
+                try {
+                    task.prepare(type);
+                    runIfOutOfDate(history, node);
+                } catch (IOException | CompilationFailedException e) {
+                    throw new TaskFailure(e);
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(getWorkerCount(nodes.size()));
+        try {
+            addTasksRan(new TaskExecutor().execute(nodes, executor));
+        } catch (TaskExecutionException e) {
+            addTasksRan(e.getExecutedTasks());
+            Throwable failure = e.getCause() instanceof TaskFailure
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (failure instanceof OutOfMemoryError) {
+                mTasksRan.clear();
+                throw new CompilationFailedException("Builder ran out of memory", failure);
             }
-            mTasksRan.add(task);
+            ((TaskNode<?>) e.getTask()).getTask().clean();
+            mTasksRan.forEach(Task::clean);
+            // tasks that succeeded may have updated their caches
+            mProject.saveCaches();
+            saveHistory(history);
+            rethrow(failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new CompilationFailedException("Build was interrupted", e);
+        } finally {
+            executor.shutdown();
         }
         mTasksRan.forEach(Task::clean);
+        mProject.saveCaches();
+        saveHistory(history);
+    }
+
+    private void addTasksRan(List<com.tyron.builder.api.Task> executed) {
+        for (com.tyron.builder.api.Task task : executed) {
+            //noinspection unchecked
+            mTasksRan.add(((TaskNode<T>) task).getTask());
+        }
+    }
+
+    /**
+     * Wraps the checked exceptions of a task, the actions of builder-api tasks cannot throw
+     * them
+     */
+    private static class TaskFailure extends RuntimeException {
+
+        TaskFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Runs the task unless it has declared outputs, neither its inputs nor its outputs have
+     * changed since it last ran successfully and its up to date predicates are satisfied
+     */
+    private void runIfOutOfDate(ExecutionHistory history, TaskNode<T> node)
+            throws IOException, CompilationFailedException {
+        Task<? super T> task = node.getTask();
+        TaskInputs inputs = new DefaultTaskInputs();
+        DefaultTaskOutputs outputs = new DefaultTaskOutputs();
+        task.declareInputsAndOutputs(inputs, outputs);
+        task.setCachingEnabled(outputs.isCachingEnabled(node));
+        if (!outputs.getHasOutput()) {
+            task.run();
+            return;
+        }
+
+        String name = task.getName();
+        String inputHash = FileFingerprinter.fingerprint(inputs.getFiles(),
+                inputs.getProperties());
+        String outputHash = FileFingerprinter.fingerprint(outputs.getFiles(),
+                Collections.emptyMap());
+        if (history.isUpToDate(name, inputHash, outputHash) && outputs.isUpToDate(node)) {
+            getLogger().info(name + " is up to date");
+            return;
+        }
+
+        history.remove(name);
+        task.run();
+        history.record(name, inputHash, FileFingerprinter.fingerprint(outputs.getFiles(),
+                Collections.emptyMap()));
+    }
+
+    private void saveHistory(ExecutionHistory history) {
+        try {
+            history.save();
+        } catch (IOException e) {
+            getLogger().warning("Unable to save the task history: " + e.getMessage());
+        }
+    }
+
+    private static int getWorkerCount(int tasks) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(processors, tasks));
+    }
+
+    private static void rethrow(Throwable e) throws CompilationFailedException, IOException {
+        if (e instanceof CompilationFailedException) {
+            throw (CompilationFailedException) e;
+        }
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new CompilationFailedException(e.getMessage(), e);
+    }
+
+    /**
+     * @return the tasks of the build and their dependencies, by default every task depends
+     * on the task before it so they run sequentially
+     */
+    protected TaskGraph<T> getTaskGraph(BuildType type) {
+        return TaskGraph.sequential(getTasks(type));
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -1,8 +1,6 @@
 package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
-import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
-import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.parser.FileManager;
@@ -63,12 +61,8 @@ public class CleanTask extends Task<AndroidModule> {
             FileUtils.deleteDirectory(intermediateDirectory);
         }
 
-        getModule().getCache(IncrementalJavaTask.CACHE_KEY, new Cache<>())
-                .clear();
         getModule().getCache(IncrementalD8Task.CACHE_KEY, new Cache<>())
                 .clear();
-        getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
-                .clear();
     }
     private void cleanClasses() {
 
@@ -0,0 +1,74 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.api.tasks.TaskInputs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The files and values that a {@link Task} reads, declared in
+ * {@link Task#declareInputsAndOutputs(TaskInputs, com.tyron.builder.api.tasks.TaskOutputs)}
+ */
+class DefaultTaskInputs implements TaskInputs {
+
+    private final List<File> mFiles = new ArrayList<>();
+    private final Map<String, String> mProperties = new TreeMap<>();
+
+    @Override
+    public boolean getHasInputs() {
+        return !mFiles.isEmpty() || !mProperties.isEmpty();
+    }
+
+    /**
+     * @return false, the inputs of the tasks are not separated into sources and other files
+     */
+    @Override
+    public boolean getHasSourceFiles() {
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public TaskInputs file(@Nullable File file) {
+        if (file != null) {
+            mFiles.add(file);
+        }
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public TaskInputs files(@NonNull Collection<File> files) {
+        for (File file : files) {
+            file(file);
+        }
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public TaskInputs property(@NonNull String name, @Nullable Object value) {
+        mProperties.put(name, String.valueOf(value));
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(mFiles);
+    }
+
+    @NonNull
+    @Override
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(mProperties);
+    }
+}
@@ -0,0 +1,106 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.api.tasks.TaskOutputs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The files that a {@link Task} writes, declared in
+ * {@link Task#declareInputsAndOutputs(com.tyron.builder.api.tasks.TaskInputs, TaskOutputs)}
+ *
+ * <p>A task is up to date if its declared files and properties have not changed and every
+ * predicate given to {@link #upToDateWhen(Predicate)} is satisfied. The outputs of a task are
+ * loaded from and stored in the {@link com.tyron.builder.api.internal.cache.LocalBuildCache}
+ * unless a predicate given to {@link #cacheIf(Predicate)} is not satisfied. The predicates are
+ * given the builder-api task that runs the task.
+ */
+class DefaultTaskOutputs implements TaskOutputs {
+
+    private final List<File> mFiles = new ArrayList<>();
+    private final List<Predicate<? super com.tyron.builder.api.Task>> mUpToDateSpecs =
+            new ArrayList<>();
+    private final List<Predicate<? super com.tyron.builder.api.Task>> mCacheSpecs =
+            new ArrayList<>();
+
+    @Override
+    public void upToDateWhen(Predicate<? super com.tyron.builder.api.Task> upToDateSpec) {
+        mUpToDateSpecs.add(upToDateSpec);
+    }
+
+    @Override
+    public void cacheIf(Predicate<? super com.tyron.builder.api.Task> spec) {
+        mCacheSpecs.add(spec);
+    }
+
+    @Override
+    public void cacheIf(String cachingEnabledReason,
+                        Predicate<? super com.tyron.builder.api.Task> spec) {
+        cacheIf(spec);
+    }
+
+    /**
+     * @return false if any of the predicates given to {@link #upToDateWhen(Predicate)} is not
+     * satisfied
+     */
+    boolean isUpToDate(@NonNull com.tyron.builder.api.Task task) {
+        return allMatch(mUpToDateSpecs, task);
+    }
+
+    /**
+     * @return false if any of the predicates given to {@link #cacheIf(Predicate)} is not
+     * satisfied
+     */
+    boolean isCachingEnabled(@NonNull com.tyron.builder.api.Task task) {
+        return allMatch(mCacheSpecs, task);
+    }
+
+    private static boolean allMatch(List<Predicate<? super com.tyron.builder.api.Task>> specs,
+                                    com.tyron.builder.api.Task task) {
+        for (Predicate<? super com.tyron.builder.api.Task> spec : specs) {
+            if (!spec.test(task)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the task has declared any outputs, tasks without outputs always run
+     */
+    @Override
+    public boolean getHasOutput() {
+        return !mFiles.isEmpty();
+    }
+
+    @NonNull
+    @Override
+    public TaskOutputs file(@Nullable File file) {
+        if (file != null) {
+            mFiles.add(file);
+        }
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public TaskOutputs files(@NonNull Collection<File> files) {
+        for (File file : files) {
+            file(file);
+        }
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(mFiles);
+    }
+}
@@ -0,0 +1,119 @@
+package com.tyron.builder.compiler;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fingerprints of the inputs and outputs of every task when it last ran successfully,
+ * saved in the build directory so tasks can be skipped across restarts of the application.
+ */
+class ExecutionHistory {
+
+    private static final String TAG = ExecutionHistory.class.getSimpleName();
+
+    private static final int MAGIC = 0x54484953;
+    private static final int VERSION = 1;
+
+    private static class Execution {
+
+        private final String mInputs;
+        private final String mOutputs;
+
+        private Execution(String inputs, String outputs) {
+            mInputs = inputs;
+            mOutputs = outputs;
+        }
+    }
+
+    private final File mFile;
+    private final Map<String, Execution> mExecutions = new HashMap<>();
+
+    private ExecutionHistory(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Loads the history from the given file, an empty history is returned if the file
+     * does not exist or cannot be read, in which case every task will run.
+     */
+    @NonNull
+    static ExecutionHistory load(@NonNull File file) {
+        ExecutionHistory history = new ExecutionHistory(file);
+        if (!file.exists()) {
+            return history;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return history;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String task = in.readUTF();
+                history.mExecutions.put(task, new Execution(in.readUTF(), in.readUTF()));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read the task history, running all tasks", e);
+            return new ExecutionHistory(file);
+        }
+        return history;
+    }
+
+    /**
+     * @return whether the task has run successfully with the same inputs and produced
+     * the same outputs
+     */
+    synchronized boolean isUpToDate(@NonNull String task, @NonNull String inputs,
+                                    @NonNull String outputs) {
+        Execution execution = mExecutions.get(task);
+        return execution != null
+                && execution.mInputs.equals(inputs)
+                && execution.mOutputs.equals(outputs);
+    }
+
+    synchronized void record(@NonNull String task, @NonNull String inputs,
+                             @NonNull String outputs) {
+        mExecutions.put(task, new Execution(inputs, outputs));
+    }
+
+    synchronized void remove(@NonNull String task) {
+        mExecutions.remove(task);
+    }
+
+    synchronized void save() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mExecutions.size());
+            for (Map.Entry<String, Execution> entry : mExecutions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().mInputs);
+                out.writeUTF(entry.getValue().mOutputs);
+            }
+        }
+        if (mFile.exists() && !mFile.delete()) {
+            throw new IOException("Unable to delete " + mFile);
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to save " + mFile);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes a fingerprint of a collection of files from their paths, sizes and contents.
+ *
+ * <p>The hash of the contents of a file is kept in memory along with its size and last
+ * modified time, so a file is only read again after it has been modified.
+ */
+@SuppressWarnings("UnstableApiUsage")
+class FileFingerprinter {
+
+    private static class ContentHash {
+
+        private final long mLength;
+        private final long mLastModified;
+        private final String mHash;
+
+        private ContentHash(long length, long lastModified, String hash) {
+            mLength = length;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+    }
+
+    private static final Map<String, ContentHash> sContentHashes = new ConcurrentHashMap<>();
+
+    private FileFingerprinter() {
+
+    }
+
+    @NonNull
+    static String fingerprint(@NonNull Collection<File> files,
+                              @NonNull Map<String, String> properties) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            hasher.putString(entry.getKey(), StandardCharsets.UTF_8);
+            hasher.putString(entry.getValue(), StandardCharsets.UTF_8);
+        }
+        for (File file : files) {
+            putFile(hasher, file);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putFile(Hasher hasher, File file) throws IOException {
+        hasher.putString(file.getAbsolutePath(), StandardCharsets.UTF_8);
+        if (!file.exists()) {
+            hasher.putByte((byte) 0);
+            return;
+        }
+        if (file.isDirectory()) {
+            hasher.putByte((byte) 1);
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    putFile(hasher, child);
+                }
+            }
+            return;
+        }
+        hasher.putByte((byte) 2);
+        hasher.putLong(file.length());
+        hasher.putString(getContentHash(file), StandardCharsets.UTF_8);
+    }
+
+    private static String getContentHash(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        ContentHash cached = sContentHashes.get(path);
+        if (cached != null && cached.mLength == length && cached.mLastModified == lastModified) {
+            return cached.mHash;
+        }
+        String hash = Files.asByteSource(file).hash(Hashing.murmur3_128()).toString();
+        sContentHashes.put(path, new ContentHash(length, lastModified, hash));
+        return hash;
+    }
+}
@@ -1,5 +1,11 @@
 package com.tyron.builder.compiler;
 
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.api.internal.cache.LocalBuildCache;
+import com.tyron.builder.api.tasks.TaskInputs;
+import com.tyron.builder.api.tasks.TaskOutputs;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.api.Module;
@@ -13,6 +19,7 @@ public abstract class Task<T extends Module> {
 
     private final T mProject;
     private final ILogger mLogger;
+    private volatile boolean mCachingEnabled = true;
 
     public Task(T project, ILogger logger) {
         mProject = project;
@@ -26,6 +33,23 @@ public abstract class Task<T extends Module> {
         return mLogger;
     }
 
+    /**
+     * @return the build cache that the outputs of this task are loaded from and stored in, or
+     * null if it is not available or a predicate given to
+     * {@link TaskOutputs#cacheIf(java.util.function.Predicate)} is not satisfied
+     */
+    @Nullable
+    protected LocalBuildCache getBuildCache() {
+        if (!mCachingEnabled) {
+            return null;
+        }
+        return BuildModule.getBuildCache();
+    }
+
+    void setCachingEnabled(boolean cachingEnabled) {
+        mCachingEnabled = cachingEnabled;
+    }
+
     /**
      * @return the Project that this task belongs to
      */
@@ -51,6 +75,18 @@ public abstract class Task<T extends Module> {
      */
     public abstract void run() throws IOException, CompilationFailedException;
 
+    /**
+     * Called after prepare() to declare the files read and written by this task. If any
+     * outputs are declared and neither the inputs nor the outputs have changed since this
+     * task last ran successfully, run() is skipped.
+     *
+     * @param inputs the files and values this task reads
+     * @param outputs the files this task writes
+     */
+    protected void declareInputsAndOutputs(TaskInputs inputs, TaskOutputs outputs) {
+
+    }
+
     /**
      * Called after the compilation has finished successfully on every tasks
      */
@@ -0,0 +1,121 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.project.api.Module;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tasks of a build and the tasks each of them depends on. Each task is wrapped in a
+ * builder-api task and the dependencies are declared on those, so that the build is run by
+ * the {@link com.tyron.builder.api.internal.tasks.TaskExecutor}.
+ *
+ * <p>A task can only depend on tasks that have been added before it, so the graph has no
+ * cycles and the order of insertion is always a valid order to run the tasks sequentially.
+ * Tasks that do not depend on each other, directly or indirectly, may run in parallel.
+ */
+public class TaskGraph<T extends Module> {
+
+    private final Map<Task<? super T>, TaskNode<T>> mNodes = new LinkedHashMap<>();
+
+    /**
+     * Creates a graph where every task depends on the one before it
+     */
+    @NonNull
+    public static <T extends Module> TaskGraph<T> sequential(
+            @NonNull List<Task<? super T>> tasks) {
+        TaskGraph<T> graph = new TaskGraph<>();
+        Task<? super T> previous = null;
+        for (Task<? super T> task : tasks) {
+            if (previous == null) {
+                graph.add(task);
+            } else {
+                graph.add(task, previous);
+            }
+            previous = task;
+        }
+        return graph;
+    }
+
+    /**
+     * Adds a task to the graph
+     *
+     * @param task the task to add
+     * @param dependencies the tasks that must finish before this task can start
+     * @return the task that was added
+     * @throws IllegalArgumentException if a dependency has not been added to the graph
+     */
+    @SafeVarargs
+    @NonNull
+    public final <R extends Task<? super T>> R add(@NonNull R task,
+                                                   @NonNull Task<? super T>... dependencies) {
+        return add(task, Arrays.asList(dependencies));
+    }
+
+    @NonNull
+    public <R extends Task<? super T>> R add(@NonNull R task,
+                                             @NonNull List<? extends Task<? super T>> dependencies) {
+        if (mNodes.containsKey(task)) {
+            throw new IllegalArgumentException(task.getName() + " has already been added");
+        }
+        TaskNode<T> node = new TaskNode<>(task);
+        for (Task<? super T> dependency : dependencies) {
+            if (dependency == null) {
+                continue;
+            }
+            TaskNode<T> dependencyNode = mNodes.get(dependency);
+            if (dependencyNode == null) {
+                throw new IllegalArgumentException(task.getName() + " depends on " +
+                        dependency.getName() + " which has not been added");
+            }
+            node.dependsOn(dependencyNode);
+        }
+        mNodes.put(task, node);
+        return task;
+    }
+
+    /**
+     * @return all the tasks, in the order they have been added
+     */
+    @NonNull
+    public List<Task<? super T>> getTasks() {
+        return new ArrayList<>(mNodes.keySet());
+    }
+
+    /**
+     * @return the tasks that the given task directly depends on
+     */
+    @NonNull
+    public Set<Task<? super T>> getDependencies(@NonNull Task<? super T> task) {
+        TaskNode<T> node = mNodes.get(task);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        Set<Task<? super T>> dependencies = new LinkedHashSet<>();
+        for (Object dependency : node.getDependsOn()) {
+            //noinspection unchecked
+            dependencies.add(((TaskNode<T>) dependency).getTask());
+        }
+        return dependencies;
+    }
+
+    /**
+     * @return the builder-api tasks, in the order they have been added
+     */
+    @NonNull
+    List<TaskNode<T>> getNodes() {
+        return new ArrayList<>(mNodes.values());
+    }
+
+    public int size() {
+        return mNodes.size();
+    }
+}
@@ -0,0 +1,47 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.api.DefaultTask;
+import com.tyron.builder.project.api.Module;
+
+/**
+ * A {@link Task} of a module as a builder-api task, so the build can be run by the
+ * {@link com.tyron.builder.api.internal.tasks.TaskExecutor}. The dependencies between the
+ * tasks are declared with {@link #dependsOn(Object...)} on the nodes.
+ */
+class TaskNode<T extends Module> extends DefaultTask {
+
+    private final Task<? super T> mTask;
+
+    TaskNode(@NonNull Task<? super T> task) {
+        mTask = task;
+        setDescription(task.getName());
+    }
+
+    @NonNull
+    Task<? super T> getTask() {
+        return mTask;
+    }
+
+    @Override
+    public String getName() {
+        return mTask.getName();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mTask.getName();
+    }
+}
@@ -0,0 +1,138 @@
+package com.tyron.builder.compiler.apk;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The files packaged by the previous run of {@link PackageTask} in incremental mode, saved in
+ * the build directory. An entry of the previous APK whose file has not been modified since is
+ * copied as it is instead of being compressed again.
+ */
+class PackageState {
+
+    private static final String TAG = PackageState.class.getSimpleName();
+
+    private static final int MAGIC = 0x504B4753;
+    private static final int VERSION = 1;
+
+    static class Source {
+
+        String mPath;
+        long mLastModified;
+        long mLength;
+    }
+
+    /**
+     * The size and modification time of the APK written with this state, the entries are only
+     * reused if the APK has not been replaced since
+     */
+    private long mApkLength = -1;
+    private long mApkLastModified = -1;
+    private final Map<String, Source> mEntries = new HashMap<>();
+
+    /**
+     * Loads the state from the given file, an empty state is returned if the file does not
+     * exist or cannot be read, in which case every file will be compressed.
+     */
+    @NonNull
+    static PackageState load(@NonNull File file) {
+        PackageState state = new PackageState();
+        if (!file.exists()) {
+            return state;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return state;
+            }
+            state.mApkLength = in.readLong();
+            state.mApkLastModified = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Source source = new Source();
+                source.mPath = in.readUTF();
+                source.mLastModified = in.readLong();
+                source.mLength = in.readLong();
+                state.mEntries.put(name, source);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read the package state, compressing all files", e);
+            return new PackageState();
+        }
+        return state;
+    }
+
+    void save(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mApkLength);
+            out.writeLong(mApkLastModified);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Source> entry : mEntries.entrySet()) {
+                Source source = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(source.mPath);
+                out.writeLong(source.mLastModified);
+                out.writeLong(source.mLength);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save " + file);
+        }
+    }
+
+    /**
+     * @return whether the APK is the one written with this state
+     */
+    boolean isWrittenApk(@NonNull File apk) {
+        return apk.isFile() && apk.length() == mApkLength
+                && apk.lastModified() == mApkLastModified;
+    }
+
+    void setWrittenApk(@NonNull File apk) {
+        mApkLength = apk.length();
+        mApkLastModified = apk.lastModified();
+    }
+
+    /**
+     * @return whether the entry was written from the same file and the file has not been
+     * modified since
+     */
+    boolean isUnchanged(@NonNull String name, @NonNull File file) {
+        Source source = mEntries.get(name);
+        return source != null && source.mPath.equals(file.getAbsolutePath())
+                && source.mLastModified == file.lastModified()
+                && source.mLength == file.length();
+    }
+
+    void put(@NonNull String name, @NonNull File file) {
+        Source source = new Source();
+        source.mPath = file.getAbsolutePath();
+        source.mLastModified = file.lastModified();
+        source.mLength = file.length();
+        mEntries.put(name, source);
+    }
+}
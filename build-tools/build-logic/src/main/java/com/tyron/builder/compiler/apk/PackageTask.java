@@ -1,24 +1,47 @@
 package com.tyron.builder.compiler.apk;
 
 import android.net.Uri;
+import android.util.Log;
 
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.DefaultApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
 import com.android.sdklib.build.ApkBuilder;
 import com.android.sdklib.build.ApkCreationException;
 import com.android.sdklib.build.DuplicateFileException;
 import com.android.sdklib.build.SealedApkException;
+import com.tyron.builder.api.tasks.TaskInputs;
+import com.tyron.builder.api.tasks.TaskOutputs;
+import com.tyron.builder.compiler.ApkSigner;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Packages the resources, dex files, java resources and native libraries of the module.
+ *
+ * <p>In incremental mode the signed APK is written directly, entries of the resource APK and
+ * of the libraries are copied without being compressed again, as are the entries of the
+ * previous APK whose files have not been modified. The APK is signed in the same pass so
+ * {@link ZipAlignTask} and {@link SignTask} are not needed.
+ */
 public class PackageTask extends Task<AndroidModule> {
 
+    private static final String TAG = PackageTask.class.getSimpleName();
+
     /**
      * List of extra dex files not including the main dex file
      */
@@ -40,6 +63,11 @@ public class PackageTask extends Task<AndroidModule> {
      */
     private File mApk;
     private BuildType mBuildType;
+    private boolean mIncremental;
+    /**
+     * The files packaged in incremental mode
+     */
+    private File mStateFile;
 
     public PackageTask(AndroidModule project, ILogger logger) {
         super(project, logger);
@@ -50,13 +78,24 @@ public class PackageTask extends Task<AndroidModule> {
         return "Package";
     }
 
+    /**
+     * @return whether the module is packaged incrementally, in which case the signed APK is
+     * written by this task
+     */
+    public static boolean isIncremental(AndroidModule module) {
+        return module.getSettings().getBoolean(ModuleSettings.INCREMENTAL_PACKAGING, true);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
+        mIncremental = isIncremental(getModule());
 
         File mBinDir = new File(getModule().getBuildDirectory(), "bin");
 
-        mApk = new File(mBinDir, "generated.apk");
+        mApk = new File(mBinDir, mIncremental ? "signed.apk" : "generated.apk");
+        mStateFile = new File(getModule().getBuildDirectory(),
+                "intermediate/apk/package_state.bin");
         mDexFile = new File(mBinDir, "classes.dex");
         mGeneratedRes = new File(mBinDir, "generated.apk.res");
         File[] binFiles = mBinDir.listFiles();
@@ -76,9 +115,43 @@ public class PackageTask extends Task<AndroidModule> {
         getLogger().debug("Packaging APK.");
     }
 
+    @Override
+    protected void declareInputsAndOutputs(TaskInputs inputs, TaskOutputs outputs) {
+        inputs.property("buildType", mBuildType);
+        inputs.property("incremental", mIncremental);
+        inputs.file(mGeneratedRes);
+        inputs.file(mDexFile);
+        inputs.files(mDexFiles);
+        for (File library : mLibraries) {
+            inputs.file(library);
+
+            File parent = library.getParentFile();
+            if (parent != null) {
+                inputs.file(new File(parent, "jni"));
+                if (mBuildType == BuildType.DEBUG) {
+                    File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
+                    if (dexFiles != null) {
+                        inputs.files(Arrays.asList(dexFiles));
+                    }
+                }
+            }
+        }
+        inputs.file(getModule().getNativeLibrariesDirectory());
+        inputs.file(getModule().getResourcesDir());
+
+        outputs.file(mApk);
+    }
+
     @Override
     public void run() throws IOException, CompilationFailedException {
+        if (mIncremental) {
+            packageIncrementally();
+        } else {
+            packageWithApkBuilder();
+        }
+    }
 
+    private void packageWithApkBuilder() throws CompilationFailedException {
         int dexCount = 1;
         try {
             ApkBuilder builder = new ApkBuilder(
@@ -142,4 +215,239 @@ public class PackageTask extends Task<AndroidModule> {
             throw new CompilationFailedException(message);
         }
     }
+
+    private void packageIncrementally() throws IOException, CompilationFailedException {
+        PackageState previousState = PackageState.load(mStateFile);
+        PackageState state = new PackageState();
+        File temp = new File(mApk.getPath() + ".tmp");
+        List<RawZipFile> archives = new ArrayList<>();
+        boolean success = false;
+        try {
+            RawZipFile previousApk = null;
+            if (previousState.isWrittenApk(mApk)) {
+                try {
+                    previousApk = new RawZipFile(mApk);
+                    archives.add(previousApk);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to read the previous APK, compressing all files", e);
+                }
+            }
+
+            try (ApkSignerEngine engine = createSignerEngine();
+                 SigningApkWriter writer = new SigningApkWriter(temp, engine)) {
+                IncrementalPackager packager = new IncrementalPackager(writer, archives,
+                        previousApk, previousState, state);
+
+                int dexCount = 1;
+                packager.addZip(mGeneratedRes, false);
+                packager.addFile(mDexFile, "classes.dex");
+                for (File extraDex : mDexFiles) {
+                    dexCount++;
+                    packager.addFile(extraDex, extraDex.getName());
+                }
+
+                for (File library : mLibraries) {
+                    packager.addZip(library, true);
+
+                    File parent = library.getParentFile();
+                    if (parent != null) {
+                        File jniFolder = new File(parent, "jni");
+                        if (jniFolder.exists() && jniFolder.isDirectory()) {
+                            packager.addNativeLibraries(jniFolder);
+                        }
+                    }
+                }
+
+                if (getModule().getNativeLibrariesDirectory().exists()) {
+                    packager.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+                }
+
+                if (mBuildType == BuildType.DEBUG) {
+                    // For debug mode, dex files are not merged to save up compile time
+                    for (File it : getModule().getLibraries()) {
+                        File parent = it.getParentFile();
+                        if (parent != null) {
+                            File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
+                            if (dexFiles != null) {
+                                for (File dexFile : dexFiles) {
+                                    dexCount++;
+                                    packager.addFile(dexFile, "classes" + dexCount + ".dex");
+                                }
+                            }
+                        }
+                    }
+                }
+
+                File resourcesDir = getModule().getResourcesDir();
+                if (resourcesDir.exists()) {
+                    packager.addSourceFolder(resourcesDir, "");
+                }
+
+                writer.finish();
+                getLogger().debug("Packaged " + packager.getCopiedCount() + " entries without "
+                        + "compressing them, compressed " + packager.getCompressedCount());
+            }
+            success = true;
+        } catch (ApkFormatException | GeneralSecurityException e) {
+            throw new CompilationFailedException(e);
+        } finally {
+            for (RawZipFile archive : archives) {
+                archive.close();
+            }
+            if (!success && temp.exists() && !temp.delete()) {
+                Log.w(TAG, "Unable to delete " + temp);
+            }
+        }
+
+        if (mApk.exists() && !mApk.delete()) {
+            throw new IOException("Unable to delete " + mApk);
+        }
+        if (!temp.renameTo(mApk)) {
+            throw new IOException("Unable to move " + temp + " to " + mApk);
+        }
+        state.setWrittenApk(mApk);
+        try {
+            state.save(mStateFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save the package state", e);
+        }
+    }
+
+    private ApkSignerEngine createSignerEngine() throws IOException, GeneralSecurityException {
+        int minSdk = getModule().getMinSdk();
+        return new DefaultApkSignerEngine.Builder(
+                Collections.singletonList(ApkSigner.getTestSignerConfig()), minSdk)
+                // APK Signature Scheme v2 is verified since Android 7.0, the JAR signature
+                // which needs the uncompressed data of every entry is only needed before that
+                .setV1SigningEnabled(minSdk < 24)
+                .setV2SigningEnabled(true)
+                .setV3SigningEnabled(true)
+                .build();
+    }
+
+    /**
+     * Adds the entries to the APK, keeping track of the archive paths to detect duplicate
+     * files the same way {@link ApkBuilder} does
+     */
+    private class IncrementalPackager {
+
+        private final SigningApkWriter mWriter;
+        private final List<RawZipFile> mArchives;
+        private final RawZipFile mPreviousApk;
+        private final PackageState mPreviousState;
+        private final PackageState mState;
+        private final Map<String, File> mAddedFiles = new HashMap<>();
+        private int mCopiedCount;
+        private int mCompressedCount;
+
+        IncrementalPackager(SigningApkWriter writer, List<RawZipFile> archives,
+                            RawZipFile previousApk, PackageState previousState,
+                            PackageState state) {
+            mWriter = writer;
+            mArchives = archives;
+            mPreviousApk = previousApk;
+            mPreviousState = previousState;
+            mState = state;
+        }
+
+        int getCopiedCount() {
+            return mCopiedCount;
+        }
+
+        int getCompressedCount() {
+            return mCompressedCount;
+        }
+
+        /**
+         * Copies the entries of the zip file as they are stored
+         *
+         * @param javaResourcesOnly whether only the java resources of a library should be
+         *                          added, excluding its classes and the META-INF folder
+         */
+        void addZip(File file, boolean javaResourcesOnly)
+                throws IOException, CompilationFailedException {
+            RawZipFile zip = new RawZipFile(file);
+            mArchives.add(zip);
+            for (RawZipFile.Entry entry : zip.getEntries()) {
+                String name = entry.getName();
+                if (entry.isDirectory() || (javaResourcesOnly && !isJavaResource(name))) {
+                    continue;
+                }
+                checkDuplicate(name, file);
+                mWriter.copyEntry(name, zip, entry);
+                mCopiedCount++;
+            }
+        }
+
+        /**
+         * Adds the file, reusing the compressed entry of the previous APK if the file has not
+         * been modified since it was written
+         */
+        void addFile(File file, String name) throws IOException, CompilationFailedException {
+            checkDuplicate(name, file);
+            RawZipFile.Entry previous = null;
+            if (mPreviousApk != null && mPreviousState.isUnchanged(name, file)) {
+                previous = mPreviousApk.getEntry(name);
+            }
+            if (previous != null) {
+                mWriter.copyEntry(name, mPreviousApk, previous);
+                mCopiedCount++;
+            } else {
+                mWriter.writeEntry(name, file, true);
+                mCompressedCount++;
+            }
+            mState.put(name, file);
+        }
+
+        void addNativeLibraries(File folder) throws IOException, CompilationFailedException {
+            List<ApkBuilder.FileEntry> nativeFiles;
+            try {
+                nativeFiles = ApkBuilder.getNativeFiles(folder, false);
+            } catch (ApkCreationException e) {
+                throw new CompilationFailedException(e);
+            }
+            for (ApkBuilder.FileEntry entry : nativeFiles) {
+                addFile(entry.mFile, entry.mPath);
+            }
+        }
+
+        void addSourceFolder(File folder, String path)
+                throws IOException, CompilationFailedException {
+            File[] children = folder.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String name = child.getName();
+                if (child.isDirectory()) {
+                    if (ApkBuilder.checkFolderForPackaging(name)) {
+                        addSourceFolder(child, path + name + "/");
+                    }
+                } else if (ApkBuilder.checkFileForPackaging(name)) {
+                    addFile(child, path + name);
+                }
+            }
+        }
+
+        private void checkDuplicate(String name, File file) throws CompilationFailedException {
+            File existing = mAddedFiles.put(name, file);
+            if (existing != null) {
+                String message = "Duplicate files from two libraries detected. \n";
+                message += "File1: " + existing + " \n";
+                message += "File2: " + file + " \n";
+                message += "Archive path: " + name;
+                throw new CompilationFailedException(message);
+            }
+        }
+
+        private boolean isJavaResource(String name) {
+            String[] segments = name.split("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                if (!ApkBuilder.checkFolderForPackaging(segments[i])) {
+                    return false;
+                }
+            }
+            return ApkBuilder.checkFileForPackaging(segments[segments.length - 1]);
+        }
+    }
 }
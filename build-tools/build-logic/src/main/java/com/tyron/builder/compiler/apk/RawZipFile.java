@@ -0,0 +1,245 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A zip file whose entries can be read as they are stored in the archive, so they can be
+ * copied to another archive without being decompressed and compressed again.
+ *
+ * <p>Only the central directory is read when the file is opened. ZIP64 and encrypted archives
+ * are not supported.
+ */
+class RawZipFile implements Closeable {
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int FLAG_ENCRYPTED = 1;
+
+    static class Entry {
+
+        String mName;
+        int mFlags;
+        int mMethod;
+        /**
+         * The modification time and date in MS-DOS format
+         */
+        int mTime;
+        int mDate;
+        long mCrc;
+        long mCompressedSize;
+        long mSize;
+        long mLocalHeaderOffset;
+
+        @NonNull
+        String getName() {
+            return mName;
+        }
+
+        boolean isDirectory() {
+            return mName.endsWith("/");
+        }
+    }
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final List<Entry> mEntries;
+    private final Map<String, Entry> mEntriesByName;
+
+    RawZipFile(@NonNull File file) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "r");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            mEntries = readCentralDirectory();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        mEntriesByName = new HashMap<>(mEntries.size() * 2);
+        for (Entry entry : mEntries) {
+            mEntriesByName.put(entry.mName, entry);
+        }
+    }
+
+    @NonNull
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the entries in the order of the central directory
+     */
+    @NonNull
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    @Nullable
+    Entry getEntry(@NonNull String name) {
+        return mEntriesByName.get(name);
+    }
+
+    /**
+     * @return the data of the entry as it is stored in the archive
+     */
+    @NonNull
+    InputStream openRaw(@NonNull Entry entry) throws IOException {
+        ByteBuffer header = read(entry.mLocalHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header of " + entry.mName + " in " + mFile);
+        }
+        long dataOffset = entry.mLocalHeaderOffset + LOCAL_HEADER_SIZE
+                + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        return new RawInputStream(dataOffset, entry.mCompressedSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long length = mChannel.size();
+        if (length < EOCD_SIZE) {
+            throw new IOException(mFile + " is not a zip file");
+        }
+        // the end of central directory record is followed by a comment of at most 65535 bytes
+        int tailSize = (int) Math.min(length, EOCD_SIZE + 0xFFFF);
+        ByteBuffer tail = read(length - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new IOException(mFile + " is not a zip file");
+        }
+
+        int count = tail.getShort(eocd + 10) & 0xFFFF;
+        long size = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long offset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 archives are not supported: " + mFile);
+        }
+        if (offset + size > length) {
+            throw new IOException("Invalid central directory in " + mFile);
+        }
+
+        ByteBuffer directory = read(offset, (int) size);
+        List<Entry> entries = new ArrayList<>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > size
+                    || directory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("Invalid central directory in " + mFile);
+            }
+            Entry entry = new Entry();
+            entry.mFlags = directory.getShort(position + 8) & 0xFFFF;
+            entry.mMethod = directory.getShort(position + 10) & 0xFFFF;
+            entry.mTime = directory.getShort(position + 12) & 0xFFFF;
+            entry.mDate = directory.getShort(position + 14) & 0xFFFF;
+            entry.mCrc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            entry.mCompressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            entry.mSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            entry.mLocalHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+            directory.get(name);
+            entry.mName = new String(name, StandardCharsets.UTF_8);
+
+            if ((entry.mFlags & FLAG_ENCRYPTED) != 0) {
+                throw new IOException("Encrypted entries are not supported: " + entry.mName);
+            }
+            if (entry.mMethod != METHOD_STORED && entry.mMethod != METHOD_DEFLATED) {
+                throw new IOException("Unsupported compression method of " + entry.mName
+                        + " in " + mFile);
+            }
+            entries.add(entry);
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private ByteBuffer read(long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, offset + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of " + mFile);
+            }
+        }
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Reads a range of the file without changing the position of the channel
+     */
+    private class RawInputStream extends InputStream {
+
+        private long mPosition;
+        private long mRemaining;
+
+        RawInputStream(long position, long length) {
+            mPosition = position;
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = mChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, mRemaining)),
+                    mPosition);
+            if (count == -1) {
+                throw new IOException("Unexpected end of " + mFile);
+            }
+            mPosition += count;
+            mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(mRemaining, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -1,14 +1,15 @@
 package com.tyron.builder.compiler.apk;
 
+import com.tyron.builder.api.tasks.TaskInputs;
+import com.tyron.builder.api.tasks.TaskOutputs;
 import com.tyron.builder.compiler.ApkSigner;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 
-import org.apache.commons.io.FileUtils;
-
 import java.io.File;
 import java.io.IOException;
 
@@ -31,7 +32,10 @@ public class SignTask extends Task<AndroidModule> {
         mInputApk = new File(getModule().getBuildDirectory(), "bin/aligned.apk");
         mOutputApk = new File(getModule().getBuildDirectory(), "bin/signed.apk");
 
-        if (!mInputApk.exists()) {
+        // the aligned apk is kept between builds, it is only used if zip align is enabled
+        boolean zipAlign = getModule().getSettings()
+                .getBoolean(ModuleSettings.ZIP_ALIGN_ENABLED, false);
+        if (!zipAlign || !mInputApk.exists()) {
             mInputApk = new File(getModule().getBuildDirectory(), "bin/generated.apk");
         }
 
@@ -42,6 +46,13 @@ public class SignTask extends Task<AndroidModule> {
         getLogger().debug("Signing APK.");
     }
 
+    @Override
+    protected void declareInputsAndOutputs(TaskInputs inputs, TaskOutputs outputs) {
+        inputs.property("mode", ApkSigner.Mode.TEST);
+        inputs.file(mInputApk);
+        outputs.file(mOutputApk);
+    }
+
     @Override
     public void run() throws IOException, CompilationFailedException {
         ApkSigner signer = new ApkSigner(mInputApk.getAbsolutePath(),
@@ -52,7 +63,5 @@ public class SignTask extends Task<AndroidModule> {
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
-
-        FileUtils.forceDelete(mInputApk);
     }
 }
@@ -0,0 +1,336 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSink;
+import com.android.apksig.util.DataSources;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes an APK and signs it in the same pass with an {@link ApkSignerEngine}.
+ *
+ * <p>Entries of other archives are copied as they are stored, a compressed entry is only
+ * decompressed when the engine needs its data for the JAR signature. Entries that are not
+ * compressed are aligned to 4 bytes, and native libraries to the page size so they can be
+ * loaded directly from the APK, so the APK does not have to be zip aligned afterwards.
+ */
+class SigningApkWriter implements Closeable {
+
+    private static final int ALIGNMENT = 4;
+    private static final int PAGE_ALIGNMENT = 4096;
+    /**
+     * The extra field used by apksigner and zipalign to pad the local header of an entry
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+    private static final int ALIGNMENT_EXTRA_SIZE = 6;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    /**
+     * 1980-01-01 00:00 in MS-DOS format, used for new entries so that the output only depends
+     * on the contents of the inputs
+     */
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final ApkSignerEngine mEngine;
+    private final FileOutputStream mFileOutputStream;
+    private final FileChannel mChannel;
+    private final OutputStream mOut;
+    private final ByteArrayOutputStream mCentralDirectory = new ByteArrayOutputStream();
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final byte[] mDataBuffer = new byte[BUFFER_SIZE];
+    private long mPosition;
+    private int mEntryCount;
+
+    SigningApkWriter(@NonNull File file, @NonNull ApkSignerEngine engine) throws IOException {
+        mFile = file;
+        mEngine = engine;
+        mFileOutputStream = new FileOutputStream(file);
+        mChannel = mFileOutputStream.getChannel();
+        mOut = new BufferedOutputStream(mFileOutputStream, BUFFER_SIZE);
+    }
+
+    /**
+     * Copies an entry of another archive without compressing it again
+     */
+    void copyEntry(@NonNull String name, @NonNull RawZipFile source,
+                   @NonNull RawZipFile.Entry entry) throws IOException {
+        boolean compressed = entry.mMethod == RawZipFile.METHOD_DEFLATED;
+        int flags = entry.mFlags & ~FLAG_DATA_DESCRIPTOR;
+        long offset = writeLocalHeader(name, flags, entry.mMethod, entry.mTime, entry.mDate,
+                entry.mCrc, entry.mCompressedSize, entry.mSize);
+
+        ApkSignerEngine.InspectJarEntryRequest request = mEngine.outputJarEntry(name);
+        DataSink sink = request == null ? null : request.getDataSink();
+        Inflater inflater = compressed && sink != null ? new Inflater(true) : null;
+        try (InputStream in = source.openRaw(entry)) {
+            int count;
+            while ((count = in.read(mBuffer)) != -1) {
+                write(mBuffer, 0, count);
+                if (sink == null) {
+                    continue;
+                }
+                if (inflater == null) {
+                    sink.consume(mBuffer, 0, count);
+                    continue;
+                }
+                inflater.setInput(mBuffer, 0, count);
+                int inflated;
+                while ((inflated = inflater.inflate(mDataBuffer)) > 0) {
+                    sink.consume(mDataBuffer, 0, inflated);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Unable to decompress " + entry.mName + " of "
+                    + source.getFile(), e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        if (request != null) {
+            request.done();
+        }
+        addCentralDirectoryRecord(name, flags, entry.mMethod, entry.mTime, entry.mDate,
+                entry.mCrc, entry.mCompressedSize, entry.mSize, offset);
+    }
+
+    /**
+     * Writes the contents of the file as a new entry
+     */
+    void writeEntry(@NonNull String name, @NonNull File file, boolean compress)
+            throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            writeEntry(name, in, compress);
+        }
+    }
+
+    private void writeEntry(String name, InputStream in, boolean compress) throws IOException {
+        int method = compress ? RawZipFile.METHOD_DEFLATED : RawZipFile.METHOD_STORED;
+        // the sizes and checksum are only known once the data is written, they are then
+        // updated in the local header
+        long offset = writeLocalHeader(name, FLAG_UTF8, method, DOS_TIME, DOS_DATE, 0, 0, 0);
+        long dataOffset = mPosition;
+
+        ApkSignerEngine.InspectJarEntryRequest request = mEngine.outputJarEntry(name);
+        DataSink sink = request == null ? null : request.getDataSink();
+        CRC32 crc = new CRC32();
+        Deflater deflater = compress ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        long size = 0;
+        try {
+            int count;
+            while ((count = in.read(mDataBuffer)) != -1) {
+                size += count;
+                crc.update(mDataBuffer, 0, count);
+                if (sink != null) {
+                    sink.consume(mDataBuffer, 0, count);
+                }
+                if (deflater == null) {
+                    write(mDataBuffer, 0, count);
+                    continue;
+                }
+                deflater.setInput(mDataBuffer, 0, count);
+                while (!deflater.needsInput()) {
+                    write(mBuffer, 0, deflater.deflate(mBuffer));
+                }
+            }
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    write(mBuffer, 0, deflater.deflate(mBuffer));
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        if (request != null) {
+            request.done();
+        }
+
+        long compressedSize = mPosition - dataOffset;
+        mOut.flush();
+        ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        sizes.putInt((int) crc.getValue());
+        sizes.putInt((int) compressedSize);
+        sizes.putInt((int) size);
+        sizes.flip();
+        while (sizes.hasRemaining()) {
+            mChannel.write(sizes, offset + 14 + sizes.position());
+        }
+        addCentralDirectoryRecord(name, FLAG_UTF8, method, DOS_TIME, DOS_DATE, crc.getValue(),
+                compressedSize, size, offset);
+    }
+
+    /**
+     * Writes the JAR signature, the central directory and the APK signing block
+     */
+    void finish() throws IOException, ApkFormatException, GeneralSecurityException {
+        ApkSignerEngine.OutputJarSignatureRequest jarSignature = mEngine.outputJarEntries();
+        if (jarSignature != null) {
+            for (ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry :
+                    jarSignature.getAdditionalJarEntries()) {
+                writeEntry(entry.getName(), new ByteArrayInputStream(entry.getData()), true);
+            }
+            jarSignature.done();
+        }
+        mOut.flush();
+
+        long centralDirectoryOffset = mPosition;
+        byte[] centralDirectory = mCentralDirectory.toByteArray();
+        ByteBuffer eocd = ByteBuffer.allocate(EOCD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        eocd.putInt(EOCD_SIGNATURE);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) mEntryCount);
+        eocd.putShort((short) mEntryCount);
+        eocd.putInt(centralDirectory.length);
+        eocd.putInt((int) centralDirectoryOffset);
+        eocd.putShort((short) 0);
+        eocd.flip();
+
+        // the signing block is computed from the entries already written to the file
+        try (RandomAccessFile entries = new RandomAccessFile(mFile, "r")) {
+            ApkSignerEngine.OutputApkSigningBlockRequest2 signingBlock =
+                    mEngine.outputZipSections2(
+                            DataSources.asDataSource(entries, 0, centralDirectoryOffset),
+                            DataSources.asDataSource(ByteBuffer.wrap(centralDirectory)),
+                            DataSources.asDataSource(eocd.duplicate()));
+            if (signingBlock != null) {
+                write(new byte[signingBlock.getPaddingSizeBeforeApkSigningBlock()]);
+                write(signingBlock.getApkSigningBlock());
+                eocd.putInt(16, (int) mPosition);
+                signingBlock.done();
+            }
+        }
+        write(centralDirectory);
+        write(eocd.array());
+        mOut.flush();
+        mEngine.outputDone();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+    }
+
+    private long writeLocalHeader(String name, int flags, int method, int time, int date,
+                                  long crc, long compressedSize, long size) throws IOException {
+        long offset = mPosition;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int extraLength = 0;
+        int alignment = getAlignment(name);
+        if (method == RawZipFile.METHOD_STORED) {
+            long dataOffset = offset + LOCAL_HEADER_SIZE + nameBytes.length
+                    + ALIGNMENT_EXTRA_SIZE;
+            extraLength = ALIGNMENT_EXTRA_SIZE
+                    + (int) ((alignment - dataOffset % alignment) % alignment);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length + extraLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) getVersionNeeded(method));
+        header.putShort((short) flags);
+        header.putShort((short) method);
+        header.putShort((short) time);
+        header.putShort((short) date);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) extraLength);
+        header.put(nameBytes);
+        if (extraLength > 0) {
+            header.putShort((short) ALIGNMENT_EXTRA_ID);
+            header.putShort((short) (extraLength - 4));
+            header.putShort((short) alignment);
+        }
+        write(header.array());
+        return offset;
+    }
+
+    private void addCentralDirectoryRecord(String name, int flags, int method, int time,
+                                           int date, long crc, long compressedSize, long size,
+                                           long offset) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(CENTRAL_DIRECTORY_HEADER_SIZE + nameBytes.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(CENTRAL_DIRECTORY_SIGNATURE);
+        record.putShort((short) 20);
+        record.putShort((short) getVersionNeeded(method));
+        record.putShort((short) flags);
+        record.putShort((short) method);
+        record.putShort((short) time);
+        record.putShort((short) date);
+        record.putInt((int) crc);
+        record.putInt((int) compressedSize);
+        record.putInt((int) size);
+        record.putShort((short) nameBytes.length);
+        // extra field length, comment length, disk number, internal and external attributes
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putInt(0);
+        record.putInt((int) offset);
+        record.put(nameBytes);
+        mCentralDirectory.write(record.array(), 0, record.capacity());
+        mEntryCount++;
+    }
+
+    /**
+     * @return the alignment of the data of an entry that is not compressed
+     */
+    static int getAlignment(@NonNull String name) {
+        return name.endsWith(".so") ? PAGE_ALIGNMENT : ALIGNMENT;
+    }
+
+    private static int getVersionNeeded(int method) {
+        return method == RawZipFile.METHOD_DEFLATED ? 20 : 10;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        mOut.write(bytes, offset, length);
+        mPosition += length;
+    }
+}
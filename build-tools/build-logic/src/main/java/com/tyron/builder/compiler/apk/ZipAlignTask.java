@@ -3,6 +3,8 @@ package com.tyron.builder.compiler.apk;
 import android.content.Context;
 
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.api.tasks.TaskInputs;
+import com.tyron.builder.api.tasks.TaskOutputs;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -43,6 +45,12 @@ public class ZipAlignTask extends Task<AndroidModule> {
         }
     }
 
+    @Override
+    protected void declareInputsAndOutputs(TaskInputs inputs, TaskOutputs outputs) {
+        inputs.file(mApkFile);
+        outputs.file(new File(mApkFile.getParent(), "aligned.apk"));
+    }
+
     @Override
     public void run() throws IOException, CompilationFailedException {
         File binary = getZipAlignBinary();
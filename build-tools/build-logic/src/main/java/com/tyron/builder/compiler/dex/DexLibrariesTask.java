@@ -0,0 +1,54 @@
+package com.tyron.builder.compiler.dex;
+
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.compiler.Task;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.AndroidModule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dexes the libraries of the module, it only depends on the libraries so it can run
+ * while the sources and resources of the module are being compiled.
+ */
+public class DexLibrariesTask extends Task<AndroidModule> {
+
+    private static final String TAG = DexLibrariesTask.class.getSimpleName();
+
+    private LibraryDexer mDexer;
+
+    public DexLibrariesTask(AndroidModule project, ILogger logger) {
+        super(project, logger);
+    }
+
+    @Override
+    public String getName() {
+        return TAG;
+    }
+
+    @Override
+    public void prepare(BuildType type) throws IOException {
+        List<Path> libraryFiles = new ArrayList<>();
+        libraryFiles.add(getModule().getLambdaStubsJarFile().toPath());
+        libraryFiles.add(getModule().getBootstrapJarFile().toPath());
+
+        mDexer = new LibraryDexer(getLogger(),
+                new DexDiagnosticHandler(getLogger(), getModule()),
+                LibraryDexer.getSharedCacheDirectory(getModule()),
+                libraryFiles,
+                getModule().getMinSdk());
+    }
+
+    @Override
+    public void run() throws IOException, CompilationFailedException {
+        try {
+            mDexer.dexLibraries(getModule().getLibraries());
+        } catch (com.android.tools.r8.CompilationFailedException e) {
+            throw new CompilationFailedException(e);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.tyron.builder.compiler.dex;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.OutputMode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.Module;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Converts the library jars of a project to dex files in parallel.
+ *
+ * <p>The dex files of a library are stored in a cache directory shared by every project,
+ * keyed by the hash of the contents of the jar, the min sdk and the contents of the boot
+ * class path, so adding a library that has already been dexed by any project only copies
+ * its dex files and updating one library does not dex the others again.
+ * The dex files are copied next to the jar where the other tasks expect them, along with a
+ * stamp file so the jar is only hashed again when it or the boot class path is modified.
+ *
+ * <p>The other libraries are still given to D8 as the class path, it only reads them to
+ * desugar the default and static interface methods the jar inherits from them, which is
+ * only done below api 24. They are not part of the key so that changing one library does
+ * not invalidate every other one. Below api 24 the forwarding methods of a cached library
+ * therefore reflect the interfaces of the dependency versions it was first dexed with,
+ * which are the versions it was compiled against unless a project overrides them.
+ *
+ * <p>Entries of the cache directory that have not been used for {@link #MAX_CACHE_AGE_DAYS}
+ * days are deleted, as are the least recently used entries once the directory is larger than
+ * {@link #MAX_CACHE_SIZE}.
+ */
+public class LibraryDexer {
+
+    private static final String STAMP_FILE = ".dex_stamp";
+
+    private static final long MAX_CACHE_AGE_DAYS = 30;
+    private static final long MAX_CACHE_SIZE = 512L * 1024 * 1024;
+
+    private static class ContentHash {
+
+        private final long mLength;
+        private final long mLastModified;
+        private final String mHash;
+
+        private ContentHash(long length, long lastModified, String hash) {
+            mLength = length;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+    }
+
+    /**
+     * The hashes of the jars by their path, a jar is only hashed again when it is modified
+     */
+    private static final Map<String, ContentHash> sContentHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Rough estimate of the memory used by D8 to dex a large library
+     */
+    private static final long MEMORY_PER_WORKER = 256L * 1024 * 1024;
+
+    private final ILogger mLogger;
+    private final DiagnosticsHandler mDiagnosticsHandler;
+    private final File mCacheDirectory;
+    private final List<Path> mLibraryFiles;
+    private final int mMinSdk;
+
+    public LibraryDexer(@NonNull ILogger logger,
+                        @NonNull DiagnosticsHandler diagnosticsHandler,
+                        @NonNull File cacheDirectory,
+                        @NonNull List<Path> libraryFiles,
+                        int minSdk) {
+        mLogger = logger;
+        mDiagnosticsHandler = diagnosticsHandler;
+        mCacheDirectory = cacheDirectory;
+        mLibraryFiles = libraryFiles;
+        mMinSdk = minSdk;
+    }
+
+    /**
+     * @return the directory where dexed libraries are shared across projects, falls back
+     * to the build directory of the module if the application context is not available
+     */
+    @NonNull
+    public static File getSharedCacheDirectory(@NonNull Module module) {
+        Context context = BuildModule.getContext();
+        if (context == null) {
+            return new File(module.getBuildDirectory(), "intermediate/dex-libraries");
+        }
+        return new File(context.getCacheDir(), "dex-libraries");
+    }
+
+    /**
+     * Dexes the libraries that have not been dexed yet or have been modified
+     *
+     * @param libraries the library jars, the dex files are written in their parent directory
+     */
+    public void dexLibraries(@NonNull List<File> libraries)
+            throws CompilationFailedException, IOException {
+        List<Path> classpath = libraries.stream()
+                .map(File::toPath)
+                .collect(Collectors.toList());
+        String stamp = getBootClasspathStamp();
+        List<File> pending = new ArrayList<>();
+        for (File library : libraries) {
+            if (library.exists() && library.getParentFile() != null
+                    && !isUpToDate(library, stamp)) {
+                pending.add(library);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        String bootClasspathHash = getBootClasspathHash();
+
+        int workers = getWorkerCount(pending.size());
+        mLogger.debug("Dexing " + pending.size() + " libraries using " + workers + " threads");
+
+        ExecutorService service = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (File library : pending) {
+                futures.add(service.submit(() -> {
+                    dexLibrary(library, classpath, bootClasspathHash, stamp);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            service.shutdownNow();
+        }
+        trimCache();
+    }
+
+    private void dexLibrary(File library, List<Path> classpath, String bootClasspathHash,
+                            String stamp) throws CompilationFailedException, IOException {
+        File directory = library.getParentFile();
+        String key = hash(library) + "-" + mMinSdk + "-" + bootClasspathHash;
+
+        File cached = new File(mCacheDirectory, key);
+        if (cached.exists()) {
+            // marks the entry as recently used
+            //noinspection ResultOfMethodCallIgnored
+            cached.setLastModified(System.currentTimeMillis());
+        } else {
+            mLogger.debug("Dexing jar " + directory.getName());
+
+            File temp = new File(mCacheDirectory, key + ".tmp-" + UUID.randomUUID());
+            if (!temp.mkdirs()) {
+                throw new IOException("Unable to create directory " + temp);
+            }
+            try {
+                D8Command command = D8Command.builder(mDiagnosticsHandler)
+                        .addLibraryFiles(mLibraryFiles)
+                        .addClasspathFiles(classpath)
+                        .setMinApiLevel(mMinSdk)
+                        .addProgramFiles(library.toPath())
+                        .setMode(CompilationMode.RELEASE)
+                        .setOutput(temp.toPath(), OutputMode.DexIndexed)
+                        .build();
+                D8.run(command);
+
+                // another project may have dexed the same library in the meantime
+                if (!temp.renameTo(cached) && !cached.exists()) {
+                    throw new IOException("Unable to save dexed library " + cached);
+                }
+            } finally {
+                if (temp.exists()) {
+                    FileUtils.deleteDirectory(temp);
+                }
+            }
+        }
+
+        File[] oldDexFiles = directory.listFiles(c -> c.getName().endsWith(".dex"));
+        if (oldDexFiles != null) {
+            for (File oldDexFile : oldDexFiles) {
+                FileUtils.delete(oldDexFile);
+            }
+        }
+        File[] dexFiles = cached.listFiles(c -> c.getName().endsWith(".dex"));
+        if (dexFiles != null) {
+            for (File dexFile : dexFiles) {
+                FileUtils.copyFile(dexFile, new File(directory, dexFile.getName()));
+            }
+        }
+        FileUtils.writeStringToFile(new File(directory, STAMP_FILE),
+                getStamp(library, stamp), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return whether the library has been dexed and neither it nor the boot class path have
+     * been modified since then
+     */
+    private boolean isUpToDate(File library, String bootClasspathStamp) throws IOException {
+        File directory = library.getParentFile();
+        File stamp = new File(directory, STAMP_FILE);
+        if (!stamp.exists() || !new File(directory, "classes.dex").exists()) {
+            return false;
+        }
+        String contents = FileUtils.readFileToString(stamp, StandardCharsets.UTF_8);
+        return getStamp(library, bootClasspathStamp).equals(contents);
+    }
+
+    private String getStamp(File library, String bootClasspathStamp) {
+        return library.length() + ":" + library.lastModified() + ":" + mMinSdk + ":"
+                + bootClasspathStamp;
+    }
+
+    /**
+     * @return a hash of the paths, sizes and modification times of the boot class path,
+     * cheap to compute so it is used to check the dexed libraries
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    private String getBootClasspathStamp() {
+        StringBuilder builder = new StringBuilder();
+        for (Path path : mLibraryFiles) {
+            appendStamp(builder, path.toFile());
+        }
+        return Hashing.sha256().hashString(builder, StandardCharsets.UTF_8)
+                .toString().substring(0, 16);
+    }
+
+    private static void appendStamp(StringBuilder builder, File file) {
+        builder.append(file.getAbsolutePath()).append(':')
+                .append(file.length()).append(':')
+                .append(file.lastModified()).append('\n');
+    }
+
+    /**
+     * @return a hash of the contents of the boot class path, the dexed classes of a library
+     * are compiled against it
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    private String getBootClasspathHash() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (Path path : mLibraryFiles) {
+            builder.append(hash(path.toFile())).append('\n');
+        }
+        return Hashing.sha256().hashString(builder, StandardCharsets.UTF_8)
+                .toString().substring(0, 16);
+    }
+
+    /**
+     * @return the sha256 of the contents of the file, cached by its path until its size or
+     * modification time changes
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    @NonNull
+    public static String hash(@NonNull File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        ContentHash cached = sContentHashes.get(path);
+        if (cached != null && cached.mLength == length && cached.mLastModified == lastModified) {
+            return cached.mHash;
+        }
+        String hash = Files.asByteSource(file).hash(Hashing.sha256()).toString();
+        sContentHashes.put(path, new ContentHash(length, lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * Deletes the entries of the cache directory that have not been used recently, then the
+     * least recently used entries until the directory is small enough
+     */
+    private void trimCache() {
+        File[] entries = mCacheDirectory.listFiles(File::isDirectory);
+        if (entries == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long maxAge = TimeUnit.DAYS.toMillis(MAX_CACHE_AGE_DAYS);
+        List<File> remaining = new ArrayList<>();
+        long size = 0;
+        for (File entry : entries) {
+            // temporary directories of libraries that are being dexed are left alone
+            if (entry.getName().contains(".tmp-")) {
+                continue;
+            }
+            if (now - entry.lastModified() > maxAge) {
+                deleteEntry(entry);
+                continue;
+            }
+            remaining.add(entry);
+            size += FileUtils.sizeOfDirectory(entry);
+        }
+        if (size <= MAX_CACHE_SIZE) {
+            return;
+        }
+        remaining.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : remaining) {
+            if (size <= MAX_CACHE_SIZE) {
+                break;
+            }
+            size -= FileUtils.sizeOfDirectory(entry);
+            deleteEntry(entry);
+        }
+    }
+
+    private void deleteEntry(File entry) {
+        try {
+            FileUtils.deleteDirectory(entry);
+        } catch (IOException e) {
+            mLogger.warning("Unable to delete dexed library " + entry.getName());
+        }
+    }
+
+    private static int getWorkerCount(int tasks) {
+        Runtime runtime = Runtime.getRuntime();
+        int byMemory = (int) (runtime.maxMemory() / MEMORY_PER_WORKER);
+        int workers = Math.min(runtime.availableProcessors(), byMemory);
+        return Math.max(1, Math.min(workers, tasks));
+    }
+
+    private static void getResult(Future<Void> future)
+            throws CompilationFailedException, IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dexing libraries", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompilationFailedException) {
+                throw (CompilationFailedException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -5,14 +5,18 @@ import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.tyron.builder.api.internal.cache.BuildCacheKey;
+import com.tyron.builder.api.internal.cache.LocalBuildCache;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.dex.LibraryDexer;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.CacheSerializer;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
@@ -23,8 +27,12 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -34,11 +42,18 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.CacheKey<>("dexCache", CacheSerializer.STRING,
+                    CacheSerializer.FILE_LIST);
+
+    /**
+     * The name of the dex file of a class file in the build cache
+     */
+    private static final String BUILD_CACHE_ENTRY = "class.dex";
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
     private List<Path> mFilesToCompile;
+    private final Map<Path, BuildCacheKey> mBuildCacheKeys = new HashMap<>();
 
     private Cache<String, List<File>> mDexCache;
     private Path mOutputPath;
@@ -68,10 +83,14 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mOutputPath = output.toPath();
 
         mFilesToCompile = new ArrayList<>();
-        mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
-        mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        mClassFiles = new ArrayList<>();
+        for (File directory : getClassesDirectories()) {
+            mClassFiles.addAll(D8Task.getClassFiles(directory));
+        }
+        Set<Path> classFiles = new HashSet<>(mClassFiles);
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            // the class file has been deleted
+            if (!classFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
                 deleteAllFiles(file, ".dex");
                 mDexCache.remove(key.file, "dex");
@@ -83,6 +102,98 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 mFilesToCompile.add(file);
             }
         }
+
+        loadFromBuildCache();
+    }
+
+    /**
+     * Restores the dex files of the class files to compile from the build cache, the class
+     * files that are not in the cache are compiled and stored after compilation
+     */
+    private void loadFromBuildCache() {
+        mBuildCacheKeys.clear();
+        LocalBuildCache buildCache = getBuildCache();
+        if (buildCache == null) {
+            return;
+        }
+        String classpath;
+        try {
+            classpath = getClasspathFingerprint();
+        } catch (IOException e) {
+            getLogger().debug("Unable to hash the class path, the build cache is not used: " +
+                    e.getMessage());
+            return;
+        }
+        Iterator<Path> iterator = mFilesToCompile.iterator();
+        while (iterator.hasNext()) {
+            Path file = iterator.next();
+            File dexFile = getDexFile(file.toFile());
+            try {
+                BuildCacheKey key = BuildCacheKey.builder(TAG)
+                        .putFileContents(file.toFile())
+                        .putInt(getModule().getMinSdk())
+                        .putString(getCompilationMode().name())
+                        .putString(classpath)
+                        .build();
+                if (buildCache.load(key, Collections.singletonMap(BUILD_CACHE_ENTRY, dexFile))) {
+                    mDexCache.load(file, "dex", Collections.singletonList(dexFile));
+                    iterator.remove();
+                } else {
+                    mBuildCacheKeys.put(file, key);
+                }
+            } catch (IOException e) {
+                getLogger().debug("Unable to load " + file + " from the build cache: " +
+                        e.getMessage());
+            }
+        }
+    }
+
+    private void storeInBuildCache() {
+        LocalBuildCache buildCache = getBuildCache();
+        if (buildCache == null) {
+            return;
+        }
+        for (Map.Entry<Path, BuildCacheKey> entry : mBuildCacheKeys.entrySet()) {
+            File dexFile = getDexFile(entry.getKey().toFile());
+            try {
+                buildCache.store(entry.getValue(),
+                        Collections.singletonMap(BUILD_CACHE_ENTRY, dexFile));
+            } catch (IOException e) {
+                getLogger().debug("Unable to store " + dexFile + " in the build cache: " +
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Desugaring depends on the class hierarchy, so the contents of the libraries and of the
+     * boot class path are part of the key of the dex files in the build cache
+     */
+    private String getClasspathFingerprint() throws IOException {
+        List<String> libraries = new ArrayList<>();
+        for (File library : getModule().getLibraries()) {
+            if (library.exists()) {
+                libraries.add(LibraryDexer.hash(library));
+            }
+        }
+        // the order of the class path does not change the output
+        Collections.sort(libraries);
+        libraries.add(LibraryDexer.hash(getModule().getBootstrapJarFile()));
+        return String.join(",", libraries);
+    }
+
+    private CompilationMode getCompilationMode() {
+        if (mBuildType == BuildType.RELEASE || mBuildType == BuildType.AAB) {
+            return CompilationMode.RELEASE;
+        }
+        return CompilationMode.DEBUG;
+    }
+
+    private List<File> getClassesDirectories() {
+        List<File> directories = new ArrayList<>();
+        directories.add(new File(getModule().getBuildDirectory(), "bin/java/classes"));
+        directories.add(new File(getModule().getBuildDirectory(), "bin/kotlin/classes"));
+        return directories;
     }
 
     @Override
@@ -115,9 +226,10 @@ public class IncrementalD8Task extends Task<AndroidModule> {
             for (Path file : mFilesToCompile) {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
+            storeInBuildCache();
 
             mergeRelease();
-        } catch (com.android.tools.r8.CompilationFailedException e) {
+        } catch (com.android.tools.r8.CompilationFailedException | IOException e) {
             throw new CompilationFailedException(e);
         }
     }
@@ -140,6 +252,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
             for (Path file : mFilesToCompile) {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
+            storeInBuildCache();
 
             D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
                     .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
@@ -152,7 +265,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
             builder.setOutput(output.toPath(), OutputMode.DexIndexed);
             D8.run(builder.build());
 
-        } catch (com.android.tools.r8.CompilationFailedException e) {
+        } catch (com.android.tools.r8.CompilationFailedException | IOException e) {
             throw new CompilationFailedException(e);
         }
     }
@@ -188,16 +301,21 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     }
 
 
+    /**
+     * @return the dex file generated by D8 for the given class file
+     */
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
-        String packageName = file.getAbsolutePath()
-                .replace(output.getAbsolutePath(), "")
-                .substring(1)
-                .replace(".class", ".dex");
-
+        String path = file.getAbsolutePath();
+        String relativePath = path;
+        for (File directory : getClassesDirectories()) {
+            String prefix = directory.getAbsolutePath() + File.separator;
+            if (path.startsWith(prefix)) {
+                relativePath = path.substring(prefix.length());
+                break;
+            }
+        }
         File intermediate = new File(getModule().getBuildDirectory(), "intermediate/classes");
-        File file1 = new File(intermediate, packageName);
-        return file1;
+        return new File(intermediate, relativePath.replace(".class", ".dex"));
     }
 
     /**
@@ -205,39 +323,12 @@ public class IncrementalD8Task extends Task<AndroidModule> {
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
-    protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
-
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
-            } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
-                }
-                if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(getModule().getMinSdk())
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
-                }
-            }
-        }
+    protected void ensureDexedLibraries()
+            throws com.android.tools.r8.CompilationFailedException, IOException {
+        File cacheDirectory = LibraryDexer.getSharedCacheDirectory(getModule());
+        LibraryDexer dexer = new LibraryDexer(getLogger(), diagnosticsHandler, cacheDirectory,
+                getLibraryFiles(), getModule().getMinSdk());
+        dexer.dexLibraries(getModule().getLibraries());
     }
 
     private List<Path> getLibraryFiles() {
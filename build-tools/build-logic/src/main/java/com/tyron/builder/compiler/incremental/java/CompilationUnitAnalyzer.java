@@ -0,0 +1,227 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.hash.Hashing;
+
+import org.openjdk.javax.lang.model.element.AnnotationValue;
+import org.openjdk.javax.lang.model.element.Element;
+import org.openjdk.javax.lang.model.element.ElementKind;
+import org.openjdk.javax.lang.model.element.ExecutableElement;
+import org.openjdk.javax.lang.model.element.Modifier;
+import org.openjdk.javax.lang.model.element.TypeElement;
+import org.openjdk.javax.lang.model.element.TypeParameterElement;
+import org.openjdk.javax.lang.model.element.VariableElement;
+import org.openjdk.javax.lang.model.type.DeclaredType;
+import org.openjdk.javax.lang.model.type.TypeKind;
+import org.openjdk.javax.lang.model.type.TypeMirror;
+import org.openjdk.javax.lang.model.util.Types;
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.IdentifierTree;
+import org.openjdk.source.tree.LambdaExpressionTree;
+import org.openjdk.source.tree.MemberReferenceTree;
+import org.openjdk.source.tree.MemberSelectTree;
+import org.openjdk.source.tree.MethodInvocationTree;
+import org.openjdk.source.tree.NewClassTree;
+import org.openjdk.source.tree.Tree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.source.util.TreePath;
+import org.openjdk.source.util.TreePathScanner;
+import org.openjdk.source.util.Trees;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts the information needed for incremental compilation from an analyzed
+ * compilation unit: the classes it declares, a fingerprint of their ABI and the
+ * classes it depends on.
+ */
+class CompilationUnitAnalyzer {
+
+    private final Trees mTrees;
+    private final Types mTypes;
+
+    CompilationUnitAnalyzer(@NonNull JavacTask task) {
+        mTrees = Trees.instance(task);
+        mTypes = task.getTypes();
+    }
+
+    /**
+     * @return the top level classes declared in the compilation unit
+     */
+    @NonNull
+    List<TypeElement> getTypes(@NonNull CompilationUnitTree unit) {
+        List<TypeElement> types = new ArrayList<>();
+        TreePath root = new TreePath(unit);
+        for (Tree declaration : unit.getTypeDecls()) {
+            if (!(declaration instanceof ClassTree)) {
+                continue;
+            }
+            Element element = mTrees.getElement(new TreePath(root, declaration));
+            if (element instanceof TypeElement) {
+                types.add((TypeElement) element);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Computes a fingerprint of everything in the given classes that can affect the
+     * compilation of other classes. Private members, method bodies and the order of the
+     * members are not part of it.
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    @NonNull
+    String computeAbiHash(@NonNull List<TypeElement> types) {
+        List<String> lines = new ArrayList<>();
+        for (TypeElement type : types) {
+            appendType(type, lines);
+        }
+        Collections.sort(lines);
+        return Hashing.sha256()
+                .hashString(String.join("\n", lines), StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private void appendType(TypeElement type, List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(type.getKind()).append(' ')
+                .append(type.getModifiers()).append(' ')
+                .append(type.getQualifiedName());
+        for (TypeParameterElement parameter : type.getTypeParameters()) {
+            builder.append(" <").append(parameter).append(parameter.getBounds()).append('>');
+        }
+        builder.append(" extends ").append(type.getSuperclass());
+        builder.append(" implements ").append(type.getInterfaces());
+        builder.append(' ').append(type.getAnnotationMirrors());
+        lines.add(builder.toString());
+
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            if (member instanceof TypeElement) {
+                appendType((TypeElement) member, lines);
+                continue;
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(type.getQualifiedName()).append('#')
+                    .append(member.getKind()).append(' ')
+                    .append(member.getModifiers()).append(' ')
+                    .append(member.getSimpleName()).append(' ')
+                    .append(member.asType()).append(' ')
+                    .append(member.getAnnotationMirrors());
+            if (member instanceof VariableElement) {
+                // constants are inlined in the classes that use them
+                Object constant = ((VariableElement) member).getConstantValue();
+                if (constant != null) {
+                    line.append(" = ").append(constant);
+                }
+            } else if (member instanceof ExecutableElement) {
+                ExecutableElement method = (ExecutableElement) member;
+                line.append(" throws ").append(method.getThrownTypes());
+                AnnotationValue defaultValue = method.getDefaultValue();
+                if (defaultValue != null) {
+                    line.append(" default ").append(defaultValue);
+                }
+            }
+            lines.add(line.toString());
+        }
+    }
+
+    /**
+     * @return the fully qualified names of the top level classes referenced in the
+     * compilation unit including their super classes, since inherited members are
+     * resolved through them
+     */
+    @NonNull
+    Set<String> collectDependencies(@NonNull CompilationUnitTree unit) {
+        Set<String> dependencies = new HashSet<>();
+        Set<TypeElement> visited = new HashSet<>();
+        new TreePathScanner<Void, Void>() {
+
+            @Override
+            public Void visitIdentifier(IdentifierTree node, Void unused) {
+                addElement(mTrees.getElement(getCurrentPath()));
+                return super.visitIdentifier(node, unused);
+            }
+
+            @Override
+            public Void visitMemberSelect(MemberSelectTree node, Void unused) {
+                addElement(mTrees.getElement(getCurrentPath()));
+                return super.visitMemberSelect(node, unused);
+            }
+
+            @Override
+            public Void visitMemberReference(MemberReferenceTree node, Void unused) {
+                addElement(mTrees.getElement(getCurrentPath()));
+                addType(mTrees.getTypeMirror(getCurrentPath()));
+                return super.visitMemberReference(node, unused);
+            }
+
+            @Override
+            public Void visitLambdaExpression(LambdaExpressionTree node, Void unused) {
+                addType(mTrees.getTypeMirror(getCurrentPath()));
+                return super.visitLambdaExpression(node, unused);
+            }
+
+            @Override
+            public Void visitMethodInvocation(MethodInvocationTree node, Void unused) {
+                addType(mTrees.getTypeMirror(getCurrentPath()));
+                return super.visitMethodInvocation(node, unused);
+            }
+
+            @Override
+            public Void visitNewClass(NewClassTree node, Void unused) {
+                addElement(mTrees.getElement(getCurrentPath()));
+                return super.visitNewClass(node, unused);
+            }
+
+            private void addType(TypeMirror type) {
+                if (type != null && type.getKind() == TypeKind.DECLARED) {
+                    addElement(((DeclaredType) type).asElement());
+                }
+            }
+
+            private void addElement(Element element) {
+                TypeElement type = getEnclosingType(element);
+                if (type == null || !visited.add(type)) {
+                    return;
+                }
+                TypeElement topLevel = getTopLevelType(type);
+                dependencies.add(topLevel.getQualifiedName().toString());
+                for (TypeMirror supertype : mTypes.directSupertypes(type.asType())) {
+                    addElement(mTypes.asElement(supertype));
+                }
+            }
+        }.scan(unit, null);
+        return dependencies;
+    }
+
+    private static TypeElement getEnclosingType(Element element) {
+        Element current = element;
+        while (current != null && !(current instanceof TypeElement)) {
+            current = current.getEnclosingElement();
+        }
+        return (TypeElement) current;
+    }
+
+    private static TypeElement getTopLevelType(Element element) {
+        TypeElement topLevel = null;
+        Element current = element;
+        while (current != null && current.getKind() != ElementKind.PACKAGE) {
+            if (current instanceof TypeElement) {
+                topLevel = (TypeElement) current;
+            }
+            current = current.getEnclosingElement();
+        }
+        return topLevel;
+    }
+}
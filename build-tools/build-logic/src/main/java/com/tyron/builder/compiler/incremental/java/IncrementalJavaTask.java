@@ -2,53 +2,58 @@ package com.tyron.builder.compiler.incremental.java;
 
 import androidx.annotation.VisibleForTesting;
 
-import org.openjdk.source.util.JavacTask;
-import org.openjdk.tools.javac.api.JavacTaskImpl;
-import org.openjdk.tools.javac.api.JavacTool;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
-import com.tyron.builder.model.ModuleSettings;
-import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.api.JavaModule;
-import com.tyron.builder.project.cache.CacheHolder;
-import com.tyron.common.TestUtil;
-import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
+import org.openjdk.javax.lang.model.element.TypeElement;
+import org.openjdk.javax.tools.DiagnosticListener;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.javax.tools.SimpleJavaFileObject;
+import org.openjdk.javax.tools.StandardJavaFileManager;
+import org.openjdk.javax.tools.StandardLocation;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.tools.javac.api.JavacTool;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
-
-import org.openjdk.javax.tools.DiagnosticListener;
-import org.openjdk.javax.tools.JavaFileObject;
-import org.openjdk.javax.tools.SimpleJavaFileObject;
-import org.openjdk.javax.tools.StandardJavaFileManager;
-import org.openjdk.javax.tools.StandardLocation;
-
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the java source files of a module, only recompiling what is needed.
+ *
+ * <p>A file is compiled if its contents have changed since the last compilation. After it
+ * is compiled, the ABI of its classes is compared with the previous one and if it has
+ * changed, the files that depend on these classes are compiled as well. The dependency
+ * graph and the fingerprints are saved in the build directory.
+ */
 public class IncrementalJavaTask extends Task<JavaModule> {
 
-    public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
+    private File mStateFile;
+    private JavaCompileState mState;
     private List<File> mJavaFiles;
+    private Set<File> mPendingFiles;
     private List<File> mFilesToCompile;
-    private Cache<String, List<File>> mClassCache;
 
     public IncrementalJavaTask(JavaModule project, ILogger logger) {
         super(project, logger);
@@ -65,39 +70,76 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         if (!mOutputDir.exists() && !mOutputDir.mkdirs()) {
             throw new IOException("Unable to create output directory");
         }
+        mStateFile = new File(getModule().getBuildDirectory(), "intermediate/java/compile_state.bin");
+        mState = JavaCompileState.load(mStateFile);
 
         mFilesToCompile = new ArrayList<>();
-        mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
-
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
 
-        for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
-            if (!mJavaFiles.contains(key.file.toFile())) {
-                File file = mClassCache.get(key.file, "class").iterator().next();
-                deleteAllFiles(file, ".class");
-                mClassCache.remove(key.file, "class", "dex");
+        // classes of deleted files are removed, files using them need to be compiled again
+        Set<File> currentFiles = new HashSet<>(mJavaFiles);
+        Set<String> removedTypes = new HashSet<>();
+        for (File file : mState.getFiles()) {
+            if (!currentFiles.contains(file)) {
+                JavaCompileState.SourceState removed = mState.remove(file);
+                if (removed != null) {
+                    deleteClassFiles(removed.mClassFiles);
+                    removedTypes.addAll(removed.mTypes);
+                }
             }
         }
 
+        String classpathHash = getClasspathHash();
+        if (!classpathHash.equals(mState.getClasspathHash())) {
+            getLogger().debug("Classpath has changed, compiling all java files");
+            mState.clear();
+            mState.setClasspathHash(classpathHash);
+        }
+
+        mPendingFiles = new LinkedHashSet<>();
         for (File file : mJavaFiles) {
-            Path filePath = file.toPath();
-            if (mClassCache.needs(filePath, "class")) {
-                mFilesToCompile.add(file);
+            JavaCompileState.SourceState state = mState.get(file);
+            if (state == null || isModified(file, state) || !classFilesExist(state)) {
+                mPendingFiles.add(file);
             }
         }
-
+        mPendingFiles.addAll(mState.getDependents(removedTypes));
     }
 
     private boolean mHasErrors = false;
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-        if (mFilesToCompile.isEmpty()) {
+        if (mPendingFiles.isEmpty()) {
+            mState.save(mStateFile);
             return;
         }
 
         getLogger().debug("Compiling java files");
 
+        Set<File> filesToCompile = mPendingFiles;
+        while (!filesToCompile.isEmpty()) {
+            mFilesToCompile.addAll(filesToCompile);
+            Set<String> changedTypes = compile(filesToCompile);
+
+            Set<File> dependents = new LinkedHashSet<>(mState.getDependents(changedTypes));
+            dependents.removeAll(filesToCompile);
+            if (!dependents.isEmpty()) {
+                getLogger().debug("Compiling " + dependents.size() +
+                        " java files affected by ABI changes");
+            }
+            filesToCompile = dependents;
+        }
+
+        mState.save(mStateFile);
+    }
+
+    /**
+     * Compiles the given files and updates their state
+     *
+     * @return the top level classes whose ABI has changed
+     */
+    private Set<String> compile(Set<File> files) throws IOException, CompilationFailedException {
         DiagnosticListener<JavaFileObject> diagnosticCollector = diagnostic -> {
             switch (diagnostic.getKind()) {
                 case ERROR:
@@ -129,12 +171,15 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             throw new CompilationFailedException(e);
         }
 
+        Map<File, byte[]> contents = new HashMap<>();
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
+            byte[] bytes = FileUtils.readFileToByteArray(file);
+            contents.put(file, bytes);
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
-                public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
-                    return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return new String(bytes, StandardCharsets.UTF_8);
                 }
             });
         }
@@ -142,68 +187,83 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
                 Collections.emptyList(), null, javaFileObjects);
 
-        HashMap<String, List<File>> compiledFiles = new HashMap<>();
+        Set<String> changedTypes = new HashSet<>();
         try {
-
-            task.parse();
+            Iterable<? extends CompilationUnitTree> units = task.parse();
             task.analyze();
-            Iterable<? extends JavaFileObject> generate = task.generate();
-            for (JavaFileObject fileObject : generate) {
-                String path = fileObject.getName();
-                File classFile = new File(path);
-                if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
-                    }
-
-                    if (!compiledFiles.containsKey(file.getAbsolutePath())) {
-                        ArrayList<File> list = new ArrayList<>();
-                        list.add(classFile);
-                        compiledFiles.put(file.getAbsolutePath(), list);
-                    } else {
-                        Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
-                    }
-                    mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
+            Iterable<? extends JavaFileObject> generated = task.generate();
+
+            if (mHasErrors) {
+                // the files will be compiled again on the next build
+                for (File file : files) {
+                    mState.remove(file);
                 }
+                mState.save(mStateFile);
+                throw new CompilationFailedException("Compilation failed, check logs for more details");
             }
 
-            compiledFiles.forEach((key, values) -> {
-                File sourceFile = new File(key);
-                String name = sourceFile.getName().replace(".java", "");
-                File first = values.iterator().next();
-                File parent = first.getParentFile();
-                if (parent != null) {
-                    File[] children = parent.listFiles(c -> {
-                        if (!c.getName().contains("$")) {
-                            return false;
-                        }
-                        String baseClassName = c.getName().substring(0, c.getName().indexOf('$'));
-                        return baseClassName.equals(name);
-                    });
-                    if (children != null) {
-                        for (File file : children) {
-                            if (!values.contains(file)) {
-                                if (file.delete()) {
-                                    getLogger().debug("Deleted file " + file.getAbsolutePath());
-                                }
-                            }
-                        }
-                    }
+            CompilationUnitAnalyzer analyzer = new CompilationUnitAnalyzer(task);
+            Map<String, JavaCompileState.SourceState> statesByType = new HashMap<>();
+            Map<File, JavaCompileState.SourceState> newStates = new HashMap<>();
+            for (CompilationUnitTree unit : units) {
+                File file = new File(unit.getSourceFile().toUri());
+                List<TypeElement> types = analyzer.getTypes(unit);
+
+                JavaCompileState.SourceState state = new JavaCompileState.SourceState();
+                state.mLastModified = file.lastModified();
+                state.mLength = file.length();
+                state.mContentHash = hash(contents.get(file));
+                state.mAbiHash = analyzer.computeAbiHash(types);
+                state.mDependencies = analyzer.collectDependencies(unit);
+                for (TypeElement type : types) {
+                    String name = type.getQualifiedName().toString();
+                    state.mTypes.add(name);
+                    statesByType.put(name, state);
                 }
-            });
+                newStates.put(file, state);
+            }
+
+            for (JavaFileObject fileObject : generated) {
+                String binaryName = getBinaryName(new File(fileObject.getName()));
+                int nestedIndex = binaryName.indexOf('$');
+                String topLevel = nestedIndex == -1
+                        ? binaryName : binaryName.substring(0, nestedIndex);
+                JavaCompileState.SourceState state = statesByType.get(topLevel);
+                if (state != null) {
+                    state.mClassFiles.add(binaryName);
+                }
+            }
+
+            for (Map.Entry<File, JavaCompileState.SourceState> entry : newStates.entrySet()) {
+                JavaCompileState.SourceState state = entry.getValue();
+                JavaCompileState.SourceState old = mState.put(entry.getKey(), state);
+                if (old == null || !old.mAbiHash.equals(state.mAbiHash)) {
+                    changedTypes.addAll(state.mTypes);
+                }
+                if (old != null) {
+                    // classes that are no longer declared in the file
+                    List<String> staleClassFiles = new ArrayList<>(old.mClassFiles);
+                    staleClassFiles.removeAll(state.mClassFiles);
+                    deleteClassFiles(staleClassFiles);
+
+                    List<String> removedTypes = new ArrayList<>(old.mTypes);
+                    removedTypes.removeAll(state.mTypes);
+                    changedTypes.addAll(removedTypes);
+                }
+            }
+
+            // only dependencies on source classes are tracked
+            Set<String> sourceTypes = mState.getAllTypes();
+            for (JavaCompileState.SourceState state : newStates.values()) {
+                state.mDependencies.retainAll(sourceTypes);
+                state.mDependencies.removeAll(state.mTypes);
+            }
+        } catch (CompilationFailedException e) {
+            throw e;
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
-
-        if (mHasErrors) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details");
-        }
+        return changedTypes;
     }
 
     @VisibleForTesting
@@ -211,27 +271,80 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return mFilesToCompile;
     }
 
-    private File findClassFile(String packageName) {
-        String path = packageName.replace(".", "/").concat(".class");
+    private boolean isModified(File file, JavaCompileState.SourceState state) throws IOException {
+        if (file.lastModified() == state.mLastModified && file.length() == state.mLength) {
+            return false;
+        }
+        if (!file.exists()) {
+            return true;
+        }
+        // the file may have only been touched, e.g. when it is saved from the editor
+        if (hash(FileUtils.readFileToByteArray(file)).equals(state.mContentHash)) {
+            state.mLastModified = file.lastModified();
+            state.mLength = file.length();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean classFilesExist(JavaCompileState.SourceState state) {
+        for (String binaryName : state.mClassFiles) {
+            if (!findClassFile(binaryName).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getBinaryName(File classFile) {
+        String outputPath = mOutputDir.getAbsolutePath() + File.separator;
+        String path = classFile.getAbsolutePath();
+        if (path.startsWith(outputPath)) {
+            path = path.substring(outputPath.length());
+        }
+        return path.substring(0, path.length() - ".class".length())
+                .replace(File.separatorChar, '.');
+    }
+
+    private File findClassFile(String binaryName) {
+        String path = binaryName.replace(".", "/").concat(".class");
         return new File(mOutputDir, path);
     }
 
-    private void deleteAllFiles(File classFile, String ext) throws IOException {
-        File parent = classFile.getParentFile();
-        String name = classFile.getName().replace(ext, "");
-        if (parent != null) {
-            File[] children =
-                    parent.listFiles((c) -> c.getName().endsWith(ext) && c.getName().contains("$"));
-            if (children != null) {
-                for (File child : children) {
-                    if (child.getName().startsWith(name)) {
-                        FileUtils.delete(child);
-                    }
-                }
+    private void deleteClassFiles(List<String> binaryNames) throws IOException {
+        for (String binaryName : binaryNames) {
+            File classFile = findClassFile(binaryName);
+            if (classFile.exists()) {
+                FileUtils.delete(classFile);
             }
         }
-        if (classFile.exists()) {
-            FileUtils.delete(classFile);
+    }
+
+    /**
+     * Changes to the libraries can affect any class, so a fingerprint of the classpath
+     * is stored and all the files are compiled again if it changes
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    private String getClasspathHash() {
+        List<File> classpath = new ArrayList<>(getModule().getLibraries());
+        Collections.sort(classpath);
+        classpath.add(getModule().getBootstrapJarFile());
+        classpath.add(getModule().getLambdaStubsJarFile());
+
+        StringBuilder builder = new StringBuilder();
+        for (File file : classpath) {
+            if (file == null) {
+                continue;
+            }
+            builder.append(file.getAbsolutePath()).append(':')
+                    .append(file.length()).append(':')
+                    .append(file.lastModified()).append('\n');
         }
+        return Hashing.sha256().hashString(builder, StandardCharsets.UTF_8).toString();
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static String hash(byte[] bytes) {
+        return Hashing.sha256().hashBytes(bytes).toString();
     }
 }
@@ -0,0 +1,220 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of the previous java compilation of a module, saved in the build directory
+ * so it survives restarts of the application.
+ *
+ * <p>For every source file this stores its last known content hash, the classes that were
+ * generated from it, a fingerprint of the public API (ABI) of its classes and the source
+ * classes it depends on.
+ */
+class JavaCompileState {
+
+    private static final String TAG = JavaCompileState.class.getSimpleName();
+
+    private static final int MAGIC = 0x4A435354;
+    private static final int VERSION = 1;
+
+    static class SourceState {
+
+        long mLastModified;
+        long mLength;
+        String mContentHash;
+        String mAbiHash;
+        /**
+         * The fully qualified names of the top level classes declared in the source file
+         */
+        List<String> mTypes = new ArrayList<>();
+        /**
+         * The binary names of every class file generated from the source file
+         */
+        List<String> mClassFiles = new ArrayList<>();
+        /**
+         * The fully qualified names of the top level source classes this file uses
+         */
+        Set<String> mDependencies = new HashSet<>();
+    }
+
+    private String mClasspathHash = "";
+    private final Map<String, SourceState> mSources = new HashMap<>();
+
+    /**
+     * Loads the state from the given file, an empty state is returned if the file does not
+     * exist or cannot be read, in which case every file will be compiled.
+     */
+    @NonNull
+    static JavaCompileState load(@NonNull File file) {
+        JavaCompileState state = new JavaCompileState();
+        if (!file.exists()) {
+            return state;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return state;
+            }
+            state.mClasspathHash = in.readUTF();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                SourceState source = new SourceState();
+                source.mLastModified = in.readLong();
+                source.mLength = in.readLong();
+                source.mContentHash = in.readUTF();
+                source.mAbiHash = in.readUTF();
+                readStrings(in, source.mTypes);
+                readStrings(in, source.mClassFiles);
+                readStrings(in, source.mDependencies);
+                state.mSources.put(path, source);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read the java compile state, compiling all files", e);
+            return new JavaCompileState();
+        }
+        return state;
+    }
+
+    void save(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mClasspathHash);
+            out.writeInt(mSources.size());
+            for (Map.Entry<String, SourceState> entry : mSources.entrySet()) {
+                SourceState source = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(source.mLastModified);
+                out.writeLong(source.mLength);
+                out.writeUTF(source.mContentHash);
+                out.writeUTF(source.mAbiHash);
+                writeStrings(out, source.mTypes);
+                writeStrings(out, source.mClassFiles);
+                writeStrings(out, source.mDependencies);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save " + file);
+        }
+    }
+
+    @NonNull
+    String getClasspathHash() {
+        return mClasspathHash;
+    }
+
+    void setClasspathHash(@NonNull String hash) {
+        mClasspathHash = hash;
+    }
+
+    @Nullable
+    SourceState get(@NonNull File file) {
+        return mSources.get(file.getAbsolutePath());
+    }
+
+    /**
+     * @return the previous state of the file
+     */
+    @Nullable
+    SourceState put(@NonNull File file, @NonNull SourceState state) {
+        return mSources.put(file.getAbsolutePath(), state);
+    }
+
+    @Nullable
+    SourceState remove(@NonNull File file) {
+        return mSources.remove(file.getAbsolutePath());
+    }
+
+    void clear() {
+        mSources.clear();
+    }
+
+    @NonNull
+    Set<File> getFiles() {
+        Set<File> files = new HashSet<>();
+        for (String path : mSources.keySet()) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
+    /**
+     * @return the top level classes declared by all the source files
+     */
+    @NonNull
+    Set<String> getAllTypes() {
+        Set<String> types = new HashSet<>();
+        for (SourceState source : mSources.values()) {
+            types.addAll(source.mTypes);
+        }
+        return types;
+    }
+
+    /**
+     * @param types the fully qualified names of top level classes whose ABI has changed
+     * @return the source files that depend on any of the given classes
+     */
+    @NonNull
+    Set<File> getDependents(@NonNull Collection<String> types) {
+        if (types.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<File> dependents = new LinkedHashSet<>();
+        for (Map.Entry<String, SourceState> entry : mSources.entrySet()) {
+            for (String dependency : entry.getValue().mDependencies) {
+                if (types.contains(dependency)) {
+                    dependents.add(new File(entry.getKey()));
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    private static void readStrings(DataInputStream in, Collection<String> result)
+            throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            result.add(in.readUTF());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
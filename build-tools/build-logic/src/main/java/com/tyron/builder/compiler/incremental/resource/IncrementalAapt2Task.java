@@ -3,7 +3,11 @@ package com.tyron.builder.compiler.incremental.resource;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.tools.aapt2.Aapt2Jni;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.api.internal.cache.BuildCacheKey;
+import com.tyron.builder.api.internal.cache.LocalBuildCache;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
@@ -17,23 +21,42 @@ import com.tyron.common.util.BinaryExecutor;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.openjdk.javax.tools.Diagnostic;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     private static final String TAG = "IncrementalAAPT2";
 
+    /**
+     * The name of the compiled resource in the build cache
+     */
+    private static final String BUILD_CACHE_ENTRY = "resource.flat";
+
+    /**
+     * The name of the compiled resources of a library in the build cache
+     */
+    private static final String LIBRARY_BUILD_CACHE_ENTRY = "resources.zip";
+
     private final boolean mGenerateProtoFormat;
+    private ResourceManifest mManifest;
 
     public IncrementalAapt2Task(AndroidModule project, ILogger logger, boolean generateProtoFormat) {
         super(project, logger);
@@ -51,11 +74,22 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     public void run() throws IOException, CompilationFailedException {
+        // resources used to be copied here to detect changes, they are no longer needed
+        FileUtils.deleteQuietly(new File(getModule().getBuildDirectory(),
+                "intermediate/resources"));
+
+        File manifestFile = getManifestFile();
+        mManifest = ResourceManifest.load(manifestFile);
         Map<String, List<File>> filesToCompile = getFiles();
-        List<File> librariesToCompile = getLibraries();
+        Map<File, ResourceManifest.LibraryEntry> librariesToCompile = getLibraries();
 
-        compileProject(filesToCompile);
-        compileLibraries(librariesToCompile);
+        try {
+            compileProject(filesToCompile);
+            compileLibraries(librariesToCompile);
+        } finally {
+            // the resources that have been compiled successfully are kept
+            mManifest.save(manifestFile);
+        }
 
         link();
 
@@ -74,73 +108,226 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     private void compileProject(Map<String, List<File>> files)
             throws IOException, CompilationFailedException {
+        File outputCompiled = getCompiledDirectory();
+
+        LocalBuildCache buildCache = getBuildCache();
+        Map<File, BuildCacheKey> buildCacheKeys = new HashMap<>();
         List<String> args = new ArrayList<>();
 
         for (String resourceType : files.keySet()) {
             List<File> filesToCompile = files.get(resourceType);
             if (filesToCompile != null && !filesToCompile.isEmpty()) {
                 for (File fileToCompile : filesToCompile) {
+                    if (buildCache != null) {
+                        BuildCacheKey key = getBuildCacheKey(fileToCompile);
+                        File flatFile = new File(outputCompiled, getFlatFileName(fileToCompile));
+                        if (buildCache.load(key,
+                                Collections.singletonMap(BUILD_CACHE_ENTRY, flatFile))) {
+                            continue;
+                        }
+                        buildCacheKeys.put(fileToCompile, key);
+                    }
                     args.add(fileToCompile.getAbsolutePath());
                 }
             }
         }
-        args.add("-o");
 
-        File outputCompiled = new File(getModule().getBuildDirectory(), "bin/res/compiled");
-        if (!outputCompiled.exists() && !outputCompiled.mkdirs()) {
-            throw new IOException("Failed to create compiled directory");
-        }
-        args.add(outputCompiled.getAbsolutePath());
+        if (!args.isEmpty()) {
+            args.add("-o");
+            args.add(outputCompiled.getAbsolutePath());
 
-        int compile = Aapt2Jni.compile(args);
-        List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-        LogUtils.log(logs, getLogger());
+            int compile = Aapt2Jni.compile(args);
+            List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
+            LogUtils.log(logs, getLogger());
 
-        if (compile != 0) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details.");
+            if (compile != 0) {
+                throw new CompilationFailedException("Compilation failed, check logs for more details.");
+            }
+
+            if (buildCache != null) {
+                for (Map.Entry<File, BuildCacheKey> entry : buildCacheKeys.entrySet()) {
+                    File flatFile = new File(outputCompiled, getFlatFileName(entry.getKey()));
+                    buildCache.store(entry.getValue(),
+                            Collections.singletonMap(BUILD_CACHE_ENTRY, flatFile));
+                }
+            }
         }
 
-        copyMapToDir(files);
+        for (List<File> compiledFiles : files.values()) {
+            for (File file : compiledFiles) {
+                ResourceManifest.Entry entry = new ResourceManifest.Entry();
+                entry.mLastModified = file.lastModified();
+                entry.mLength = file.length();
+                entry.mContentHash = hash(file);
+                entry.mOutput = getFlatFileName(file);
+                mManifest.put(file, entry);
+            }
+        }
+    }
+
+    private BuildCacheKey getBuildCacheKey(File resourceFile) throws IOException {
+        File parent = resourceFile.getParentFile();
+        return BuildCacheKey.builder(TAG)
+                .putString(Aapt2Jni.getVersion())
+                .putString(parent == null ? "" : parent.getName())
+                .putString(resourceFile.getName())
+                .putFileContents(resourceFile)
+                .build();
+    }
+
+    /**
+     * @return the name of the file that aapt2 generates when compiling the given resource,
+     * e.g. layout/main.xml is compiled to layout_main.xml.flat and values/strings.xml is
+     * compiled to values_strings.arsc.flat
+     */
+    private static String getFlatFileName(File resourceFile) {
+        File parent = resourceFile.getParentFile();
+        String type = parent == null ? "" : parent.getName();
+        String name = resourceFile.getName();
+        if (type.startsWith("values")) {
+            int index = name.lastIndexOf('.');
+            name = (index == -1 ? name : name.substring(0, index)) + ".arsc";
+        }
+        return type + "_" + name + ".flat";
     }
 
-    private void compileLibraries(List<File> libraries)
+    /**
+     * Compiles the resources of the libraries in parallel. The compiled zip of a library is
+     * stored in the build cache under the hash of its resources, so a library that has
+     * already been compiled by another project is only copied.
+     */
+    private void compileLibraries(Map<File, ResourceManifest.LibraryEntry> libraries)
             throws IOException, CompilationFailedException {
-        getLogger().debug("Compiling libraries.");
+        if (libraries.isEmpty()) {
+            return;
+        }
+
+        File output = getOutputPath();
+        LocalBuildCache buildCache = getBuildCache();
+        Map<File, ResourceManifest.LibraryEntry> pending = new LinkedHashMap<>();
+        for (Map.Entry<File, ResourceManifest.LibraryEntry> library : libraries.entrySet()) {
+            ResourceManifest.LibraryEntry entry = library.getValue();
+            File zip = new File(output, entry.mOutput);
+            if (buildCache != null && buildCache.load(getLibraryCacheKey(entry),
+                    Collections.singletonMap(LIBRARY_BUILD_CACHE_ENTRY, zip))) {
+                mManifest.putLibrary(library.getKey(), entry);
+                continue;
+            }
+            pending.put(library.getKey(), entry);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
 
-        File output = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create resource output directory");
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                pending.size()));
+        getLogger().debug("Compiling resources of " + pending.size() + " libraries using "
+                + workers + " threads");
+
+        ExecutorService service = Executors.newFixedThreadPool(workers);
+        try {
+            Map<File, Future<List<DiagnosticWrapper>>> futures = new LinkedHashMap<>();
+            for (Map.Entry<File, ResourceManifest.LibraryEntry> library : pending.entrySet()) {
+                File zip = new File(output, library.getValue().mOutput);
+                futures.put(library.getKey(),
+                        service.submit(() -> compileLibrary(library.getKey(), zip)));
             }
+
+            boolean failed = false;
+            for (Map.Entry<File, Future<List<DiagnosticWrapper>>> future : futures.entrySet()) {
+                List<DiagnosticWrapper> logs = getResult(future.getValue());
+                LogUtils.log(logs, getLogger());
+                if (logs.stream().anyMatch(it -> it.getKind() == Diagnostic.Kind.ERROR)) {
+                    failed = true;
+                    continue;
+                }
+
+                File resDir = future.getKey();
+                ResourceManifest.LibraryEntry entry = pending.get(resDir);
+                mManifest.putLibrary(resDir, entry);
+                if (buildCache != null) {
+                    buildCache.store(getLibraryCacheKey(entry), Collections.singletonMap(
+                            LIBRARY_BUILD_CACHE_ENTRY, new File(output, entry.mOutput)));
+                }
+            }
+            if (failed) {
+                throw new CompilationFailedException("Compilation failed, check logs for more details.");
+            }
+        } finally {
+            service.shutdownNow();
         }
+    }
 
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("Library folder doesn't exist");
+    /**
+     * Compiles the resources of a library to a temporary file that replaces the zip only if
+     * the compilation succeeds, so a failed or interrupted compilation never leaves an empty
+     * or partial zip that would be linked or stored in the build cache.
+     */
+    private List<DiagnosticWrapper> compileLibrary(File resDir, File zip) throws IOException {
+        File tempDir = new File(zip.getParentFile(), "tmp");
+        if (!tempDir.exists() && !tempDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + tempDir);
+        }
+        File temp = File.createTempFile(zip.getName(), ".tmp", tempDir);
+        try {
+            List<DiagnosticWrapper> logs = new ArrayList<>();
+            List<String> args = getLibraryCompileArgs(resDir.getAbsolutePath(),
+                    temp.getAbsolutePath());
+            if (Aapt2Jni.compile(args, logs) != 0 && logs.isEmpty()) {
+                DiagnosticWrapper wrapper = new DiagnosticWrapper();
+                wrapper.setKind(Diagnostic.Kind.ERROR);
+                wrapper.setMessage("Failed to compile resources of " + resDir.getParent());
+                logs.add(wrapper);
             }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
+            if (logs.stream().noneMatch(it -> it.getKind() == Diagnostic.Kind.ERROR)) {
+                Files.move(temp.toPath(), zip.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
+            return logs;
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
 
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
-                    List<String> args = new ArrayList<>();
-                    args.add("--dir");
-                    args.add(inside.getAbsolutePath());
-                    args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
+    private static List<String> getLibraryCompileArgs(String resDir, String output) {
+        List<String> args = new ArrayList<>();
+        args.add("--dir");
+        args.add(resDir);
+        args.add("-o");
+        args.add(output);
+        return args;
+    }
 
-                    int compile = Aapt2Jni.compile(args);
-                    List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-                    LogUtils.log(logs, getLogger());
+    /**
+     * The compiled zip depends on the contents of the resources, the version of aapt2 and the
+     * options it is compiled with. The paths are not part of the key since the zip is shared
+     * between projects.
+     */
+    private BuildCacheKey getLibraryCacheKey(ResourceManifest.LibraryEntry entry) {
+        BuildCacheKey.Builder builder = BuildCacheKey.builder(TAG + "-library")
+                .putString(entry.mContentHash)
+                .putString(Aapt2Jni.getVersion());
+        for (String arg : getLibraryCompileArgs("", "")) {
+            builder.putString(arg);
+        }
+        return builder.build();
+    }
 
-                    if (compile != 0) {
-                        throw new CompilationFailedException("Compilation failed, check logs for more details.");
-                    }
-                }
+    private static List<DiagnosticWrapper> getResult(Future<List<DiagnosticWrapper>> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compiling library resources", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
             }
+            throw new IOException(cause);
         }
     }
 
@@ -254,216 +441,166 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
     }
     /**
-     * Utility function to get all the files that needs to be recompiled
+     * Utility function to get all the files that needs to be recompiled, the compiled files
+     * of resources that have been deleted are removed
      * @return resource files to compile
      */
     public Map<String, List<File>> getFiles() throws IOException {
-        Map<String, List<ResourceFile>> newFiles = findFiles(getModule()
-                .getAndroidResourcesDirectory());
-        Map<String, List<ResourceFile>> oldFiles = findFiles(getOutputDirectory());
+        if (mManifest == null) {
+            mManifest = ResourceManifest.load(getManifestFile());
+        }
+        File compiledDir = getCompiledDirectory();
         Map<String, List<File>> filesToCompile = new HashMap<>();
+        Set<File> deletedFiles = mManifest.getFiles();
 
-        for (String resourceType : newFiles.keySet()) {
-
-            // if the cache doesn't contain the new files then its considered new
-            if (!oldFiles.containsKey(resourceType)) {
-                List<ResourceFile> files = newFiles.get(resourceType);
-                if (files != null) {
-                    addToMapList(filesToCompile, resourceType, files);
-                }
-                continue;
-            }
-
-            // both contain the resource type, compare the contents
-            if (oldFiles.containsKey(resourceType)) {
-                List<ResourceFile> newFilesResource = newFiles.get(resourceType);
-                List<ResourceFile> oldFilesResource = oldFiles.get(resourceType);
-
-                if (newFilesResource == null) {
-                    newFilesResource = Collections.emptyList();
+        File[] resourceTypes = getModule().getAndroidResourcesDirectory().listFiles();
+        if (resourceTypes != null) {
+            for (File resourceType : resourceTypes) {
+                if (!resourceType.isDirectory()) {
+                    continue;
                 }
-                if (oldFilesResource == null) {
-                    oldFilesResource = Collections.emptyList();
+                File[] resourceFiles = resourceType.listFiles();
+                if (resourceFiles == null) {
+                    continue;
                 }
-
-                addToMapList(filesToCompile, resourceType,
-                        getModifiedFiles(newFilesResource, oldFilesResource));
-            }
-        }
-
-        for (String resourceType : oldFiles.keySet()) {
-            // if the new files doesn't contain the old file then its deleted
-            if (!newFiles.containsKey(resourceType)) {
-                List<ResourceFile> files = oldFiles.get(resourceType);
-                if (files != null) {
-                    for (File file : files) {
-                        if (!file.delete()) {
-                            throw new IOException("Failed to delete file " + file);
-                        }
+                for (File resourceFile : resourceFiles) {
+                    if (!resourceFile.isFile()) {
+                        continue;
                     }
-                }
-            }
-        }
-
-        return filesToCompile;
-    }
-
-    /**
-     * Utility method to add a list of files to a map, if it doesn't exist, it creates a new one
-     * @param map The map to add to
-     * @param key Key to add the value
-     * @param values The list of files to add
-     */
-    private void addToMapList(Map<String, List<File>> map, String key, List<ResourceFile> values) {
-        List<File> mapValues = map.get(key);
-        if (mapValues == null) {
-            mapValues = new ArrayList<>();
-        }
-
-        mapValues.addAll(values);
-        map.put(key, mapValues);
-    }
-
-    private void copyMapToDir(Map<String, List<File>> map) throws IOException {
-        File output = new File(getModule().getBuildDirectory(), "intermediate/resources");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create intermediate directory");
-            }
-        }
-
-        for (String resourceType : map.keySet()) {
-            File outputDir = new File(output, resourceType);
-            if (!outputDir.exists()) {
-               if (!outputDir.mkdir()) {
-                   throw new IOException("Failed to create output directory for " + outputDir);
-               }
-            }
-
-            List<File> files = map.get(resourceType);
-            if (files != null) {
-                for (File file : files) {
-                    File copy = new File(outputDir, file.getName());
-                    if (copy.exists()) {
-                        FileUtils.deleteQuietly(copy);
+                    deletedFiles.remove(resourceFile);
+                    if (isModified(resourceFile, compiledDir)) {
+                        filesToCompile.computeIfAbsent(resourceType.getName(),
+                                type -> new ArrayList<>()).add(resourceFile);
                     }
-                    FileUtils.copyFileToDirectory(file, outputDir, false);
                 }
             }
         }
-    }
 
-    /**
-     * Utility method to compare to list of files
-     */
-    private List<ResourceFile> getModifiedFiles(
-            List<ResourceFile> newFiles,
-            List<ResourceFile> oldFiles)
-            throws IOException {
-        List<ResourceFile> resourceFiles = new ArrayList<>();
-
-        for (ResourceFile newFile : newFiles) {
-            if (!oldFiles.contains(newFile)) {
-                resourceFiles.add(newFile);
-            } else {
-                File oldFile = oldFiles.get(oldFiles.indexOf(newFile));
-                if (contentModified(newFile, oldFile)) {
-                    resourceFiles.add(newFile);
-                    if (!oldFile.delete()) {
-                        throw new IOException("Failed to delete file " + oldFile.getName());
-                    }
+        for (File deletedFile : deletedFiles) {
+            ResourceManifest.Entry entry = mManifest.remove(deletedFile);
+            if (entry != null) {
+                File flatFile = new File(compiledDir, entry.mOutput);
+                if (flatFile.exists() && !flatFile.delete()) {
+                    throw new IOException("Failed to delete file " + flatFile);
                 }
-                oldFiles.remove(oldFile);
             }
         }
 
-        for (ResourceFile removedFile : oldFiles) {
-            if (!removedFile.delete()) {
-                throw new IOException("Failed to delete old file " + removedFile);
-            }
-        }
-
-        return resourceFiles;
+        return filesToCompile;
     }
 
-    private boolean contentModified(File newFile, File oldFile) {
-        if (!oldFile.exists() || !newFile.exists()) {
+    private boolean isModified(File file, File compiledDir) throws IOException {
+        ResourceManifest.Entry entry = mManifest.get(file);
+        if (entry == null || !new File(compiledDir, entry.mOutput).exists()) {
             return true;
         }
-
-        if (newFile.length() != oldFile.length()) {
-            return true;
+        if (file.lastModified() == entry.mLastModified && file.length() == entry.mLength) {
+            return false;
         }
-
-        return newFile.lastModified() > oldFile.lastModified();
+        // the file may have only been touched, e.g. when it is saved from the editor
+        if (hash(file).equals(entry.mContentHash)) {
+            entry.mLastModified = file.lastModified();
+            entry.mLength = file.length();
+            return false;
+        }
+        return true;
     }
 
     /**
-     * Returns a map of resource type, and the files for a given resource directory
-     * @param file res directory
-     * @return Map of resource type and the files corresponding to it
+     * Returns the resource directories of libraries that needs to be compiled and the
+     * entries to store in the manifest once they are compiled. A library is compiled again
+     * if the contents of its resource directory have changed or its zip file is missing, the
+     * zip files of libraries that have been removed are deleted.
      */
-    private Map<String, List<ResourceFile>> findFiles(File file) {
-        File[] children = file.listFiles();
-        if (children == null) {
-            return Collections.emptyMap();
-        }
+    private Map<File, ResourceManifest.LibraryEntry> getLibraries() throws IOException {
+        File resDir = getOutputPath();
 
-        Map<String, List<ResourceFile>> map = new HashMap<>();
-        for (File child : children) {
-            if (!file.isDirectory()) {
+        Map<File, ResourceManifest.LibraryEntry> libraries = new LinkedHashMap<>();
+        Set<File> libraryResDirs = new HashSet<>();
+        Set<String> outputs = new HashSet<>();
+
+        for (File library : getModule().getLibraries()) {
+            File parent = library.getParentFile();
+            if (parent == null) {
                 continue;
             }
-
-            String resourceType = child.getName();
-            File[] resourceFiles = child.listFiles();
-            List<File> files;
-            if (resourceFiles == null) {
-                files = Collections.emptyList();
-            } else {
-                files = Arrays.asList(resourceFiles);
+            File libraryRes = new File(parent, "res");
+            if (!libraryRes.exists()) {
+                // we don't need to check it if it has no resource directory
+                continue;
+            }
+            libraryResDirs.add(libraryRes);
+
+            String output = parent.getName() + ".zip";
+            outputs.add(output);
+
+            List<File> files = listResourceFiles(libraryRes);
+            String fingerprint = getFingerprint(libraryRes, files);
+            ResourceManifest.LibraryEntry previous = mManifest.getLibrary(libraryRes);
+            boolean upToDate = previous != null
+                    && previous.mOutput.equals(output)
+                    && new File(resDir, output).exists();
+            if (upToDate && fingerprint.equals(previous.mFingerprint)) {
+                continue;
             }
 
+            String contentHash = getContentHash(libraryRes, files);
+            if (upToDate && contentHash.equals(previous.mContentHash)) {
+                previous.mFingerprint = fingerprint;
+                continue;
+            }
 
-            map.put(resourceType, files.stream()
-                    .map(ResourceFile::fromFile).collect(Collectors.toList()));
+            ResourceManifest.LibraryEntry entry = new ResourceManifest.LibraryEntry();
+            entry.mFingerprint = fingerprint;
+            entry.mContentHash = contentHash;
+            entry.mOutput = output;
+            libraries.put(libraryRes, entry);
         }
 
-        return map;
-    }
-
-    /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
-     */
-    private List<File> getLibraries()  throws IOException {
-        File resDir = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!resDir.exists()) {
-            if (!resDir.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
+        for (ResourceManifest.LibraryEntry removed : mManifest.retainLibraries(libraryResDirs)) {
+            if (!outputs.contains(removed.mOutput)) {
+                FileUtils.deleteQuietly(new File(resDir, removed.mOutput));
             }
         }
 
-        List<File> libraries = new ArrayList<>();
+        return libraries;
+    }
 
-        for (File library : getModule().getLibraries()) {
-            File parent = library.getParentFile();
-            if (parent != null) {
+    private static List<File> listResourceFiles(File resDir) {
+        List<File> files = new ArrayList<>(FileUtils.listFiles(resDir,
+                TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE));
+        Collections.sort(files);
+        return files;
+    }
 
-                if (!new File(parent, "res").exists()) {
-                    // we don't need to check it if it has no resource directory
-                    continue;
-                }
+    @SuppressWarnings("UnstableApiUsage")
+    private static String getFingerprint(File resDir, List<File> files) {
+        StringBuilder builder = new StringBuilder();
+        for (File file : files) {
+            builder.append(getRelativePath(resDir, file)).append(':')
+                    .append(file.length()).append(':')
+                    .append(file.lastModified()).append('\n');
+        }
+        return Hashing.sha256().hashString(builder, StandardCharsets.UTF_8).toString();
+    }
 
-                File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
-                    libraries.add(library);
-                }
-            }
+    @SuppressWarnings("UnstableApiUsage")
+    private static String getContentHash(File resDir, List<File> files) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (File file : files) {
+            hasher.putString(getRelativePath(resDir, file), StandardCharsets.UTF_8);
+            hasher.putString(hash(file), StandardCharsets.UTF_8);
         }
+        return hasher.hash().toString();
+    }
 
-        return libraries;
+    private static String getRelativePath(File parent, File file) {
+        return file.getAbsolutePath().substring(parent.getAbsolutePath().length());
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static String hash(File file) throws IOException {
+        return Hashing.sha256().hashBytes(FileUtils.readFileToByteArray(file)).toString();
     }
 
     private File createNewFile(File parent, String name) throws IOException {
@@ -479,22 +616,16 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return createdFile;
     }
 
-    private File getOutputDirectory() throws IOException {
-        File intermediateDirectory = new File(getModule().getBuildDirectory(), "intermediate");
-
-        if (!intermediateDirectory.exists()) {
-            if (!intermediateDirectory.mkdirs()) {
-                throw new IOException("Failed to create intermediate directory");
-            }
-        }
+    private File getManifestFile() {
+        return new File(getModule().getBuildDirectory(), "intermediate/resource-manifest.bin");
+    }
 
-        File resourceDirectory = new File(intermediateDirectory, "resources");
-        if (!resourceDirectory.exists()) {
-            if (!resourceDirectory.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
-            }
+    private File getCompiledDirectory() throws IOException {
+        File compiled = new File(getModule().getBuildDirectory(), "bin/res/compiled");
+        if (!compiled.exists() && !compiled.mkdirs()) {
+            throw new IOException("Failed to create compiled directory");
         }
-        return resourceDirectory;
+        return compiled;
     }
 
     private File getOutputPath() throws IOException {
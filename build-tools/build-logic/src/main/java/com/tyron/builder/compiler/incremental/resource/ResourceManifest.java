@@ -0,0 +1,191 @@
+package com.tyron.builder.compiler.incremental.resource;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The resources compiled by the previous run of {@link IncrementalAapt2Task}, saved in the
+ * build directory so only the resources that have changed are compiled again.
+ *
+ * <p>For every resource file of the project this stores its content hash and the name of the
+ * {@code .flat} file it was compiled to. For every library it stores a fingerprint of the
+ * files in its resource directory, the hash of their contents and the compiled zip file.
+ */
+class ResourceManifest {
+
+    private static final String TAG = ResourceManifest.class.getSimpleName();
+
+    private static final int MAGIC = 0x52534D46;
+    private static final int VERSION = 1;
+
+    static class Entry {
+
+        long mLastModified;
+        long mLength;
+        String mContentHash;
+        /**
+         * The name of the compiled file in the output directory
+         */
+        String mOutput;
+    }
+
+    static class LibraryEntry {
+
+        /**
+         * A hash of the paths, sizes and modification times of the resource files, it is
+         * cheap to compute so the contents only have to be hashed when it changes
+         */
+        String mFingerprint;
+        String mContentHash;
+        String mOutput;
+    }
+
+    private final Map<String, Entry> mResources = new HashMap<>();
+    private final Map<String, LibraryEntry> mLibraries = new HashMap<>();
+
+    /**
+     * Loads the manifest from the given file, an empty manifest is returned if the file does
+     * not exist or cannot be read, in which case every resource will be compiled.
+     */
+    @NonNull
+    static ResourceManifest load(@NonNull File file) {
+        ResourceManifest manifest = new ResourceManifest();
+        if (!file.exists()) {
+            return manifest;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return manifest;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry();
+                entry.mLastModified = in.readLong();
+                entry.mLength = in.readLong();
+                entry.mContentHash = in.readUTF();
+                entry.mOutput = in.readUTF();
+                manifest.mResources.put(path, entry);
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                LibraryEntry entry = new LibraryEntry();
+                entry.mFingerprint = in.readUTF();
+                entry.mContentHash = in.readUTF();
+                entry.mOutput = in.readUTF();
+                manifest.mLibraries.put(path, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read the resource manifest, compiling all resources", e);
+            return new ResourceManifest();
+        }
+        return manifest;
+    }
+
+    void save(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mResources.size());
+            for (Map.Entry<String, Entry> entry : mResources.entrySet()) {
+                Entry resource = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(resource.mLastModified);
+                out.writeLong(resource.mLength);
+                out.writeUTF(resource.mContentHash);
+                out.writeUTF(resource.mOutput);
+            }
+            out.writeInt(mLibraries.size());
+            for (Map.Entry<String, LibraryEntry> entry : mLibraries.entrySet()) {
+                LibraryEntry library = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(library.mFingerprint);
+                out.writeUTF(library.mContentHash);
+                out.writeUTF(library.mOutput);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save " + file);
+        }
+    }
+
+    @Nullable
+    Entry get(@NonNull File file) {
+        return mResources.get(file.getAbsolutePath());
+    }
+
+    void put(@NonNull File file, @NonNull Entry entry) {
+        mResources.put(file.getAbsolutePath(), entry);
+    }
+
+    @Nullable
+    Entry remove(@NonNull File file) {
+        return mResources.remove(file.getAbsolutePath());
+    }
+
+    @NonNull
+    Set<File> getFiles() {
+        Set<File> files = new HashSet<>();
+        for (String path : mResources.keySet()) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
+    @Nullable
+    LibraryEntry getLibrary(@NonNull File resDir) {
+        return mLibraries.get(resDir.getAbsolutePath());
+    }
+
+    void putLibrary(@NonNull File resDir, @NonNull LibraryEntry entry) {
+        mLibraries.put(resDir.getAbsolutePath(), entry);
+    }
+
+    /**
+     * Removes the libraries whose resource directories are not in the given set
+     *
+     * @return the entries of the removed libraries
+     */
+    @NonNull
+    Set<LibraryEntry> retainLibraries(@NonNull Set<File> resDirs) {
+        Set<String> paths = new HashSet<>();
+        for (File resDir : resDirs) {
+            paths.add(resDir.getAbsolutePath());
+        }
+        Set<LibraryEntry> removed = new HashSet<>();
+        mLibraries.entrySet().removeIf(entry -> {
+            if (paths.contains(entry.getKey())) {
+                return false;
+            }
+            removed.add(entry.getValue());
+            return true;
+        });
+        return removed;
+    }
+}
@@ -1,5 +1,7 @@
 package com.tyron.builder.compiler.manifest;
 
+import com.tyron.builder.api.tasks.TaskInputs;
+import com.tyron.builder.api.tasks.TaskOutputs;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
@@ -18,14 +20,20 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
     private File mOutputFile;
+    private File mMergedFile;
     private File mMainManifest;
     private File[] mLibraryManifestFiles;
     private String mPackageName;
+    private int mMinSdkVersion;
+    private int mTargetSdkVersion;
+    private int mVersionCode;
+    private String mVersionName;
 
     public ManifestMergeTask(AndroidModule project, ILogger logger) {
         super(project, logger);
@@ -40,6 +48,12 @@ public class ManifestMergeTask extends Task<AndroidModule> {
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
 
+        ModuleSettings settings = getModule().getSettings();
+        mMinSdkVersion = settings.getInt(ModuleSettings.MIN_SDK_VERSION, 21);
+        mTargetSdkVersion = settings.getInt(ModuleSettings.TARGET_SDK_VERSION, 30);
+        mVersionCode = settings.getInt(ModuleSettings.VERSION_CODE, 1);
+        mVersionName = settings.getString(ModuleSettings.VERSION_NAME, "1.0");
+
         mOutputFile = new File(getModule().getBuildDirectory(), "bin");
         if (!mOutputFile.exists()) {
             if (!mOutputFile.mkdirs()) {
@@ -47,7 +61,15 @@ public class ManifestMergeTask extends Task<AndroidModule> {
             }
         }
         mOutputFile = new File(mOutputFile, "AndroidManifest.xml");
-        if (!mOutputFile.exists()) {
+        // the logger injection may rewrite the manifest after it has been merged, it is
+        // restored so the tasks after this one always start from the merged manifest
+        mMergedFile = new File(getModule().getBuildDirectory(),
+                "intermediate/merged_manifest/AndroidManifest.xml");
+        if (mMergedFile.exists()) {
+            if (!mOutputFile.exists() || !FileUtils.contentEquals(mMergedFile, mOutputFile)) {
+                FileUtils.copyFile(mMergedFile, mOutputFile);
+            }
+        } else if (!mOutputFile.exists()) {
             if (!mOutputFile.createNewFile()) {
                 throw new IOException("Unable to create manifest file");
             }
@@ -80,22 +102,33 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         mLibraryManifestFiles = manifests.toArray(new File[0]);
     }
 
+    /**
+     * The merged manifest only depends on the manifests and the overridden values, the merge
+     * is skipped if none of them has changed since the last build. The output is the copy of
+     * the merged manifest that is not modified by the tasks after this one.
+     */
+    @Override
+    protected void declareInputsAndOutputs(TaskInputs inputs, TaskOutputs outputs) {
+        inputs.property("packageName", mPackageName);
+        inputs.property("minSdkVersion", mMinSdkVersion);
+        inputs.property("targetSdkVersion", mTargetSdkVersion);
+        inputs.property("versionCode", mVersionCode);
+        inputs.property("versionName", mVersionName);
+        inputs.file(mMainManifest);
+        inputs.files(Arrays.asList(mLibraryManifestFiles));
+        outputs.file(mMergedFile);
+    }
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-        ModuleSettings settings = getModule().getSettings();
-
         ManifestMerger2.Invoker<?> invoker = ManifestMerger2.newMerger(mMainManifest,
                 getLogger(), ManifestMerger2.MergeType.APPLICATION);
         invoker.setOverride(SystemProperty.PACKAGE, mPackageName);
-        invoker.setOverride(SystemProperty.MIN_SDK_VERSION,
-                String.valueOf(settings.getInt(ModuleSettings.MIN_SDK_VERSION, 21)));
+        invoker.setOverride(SystemProperty.MIN_SDK_VERSION, String.valueOf(mMinSdkVersion));
         invoker.setOverride(SystemProperty.TARGET_SDK_VERSION,
-                String.valueOf(settings.getInt(ModuleSettings.TARGET_SDK_VERSION, 30)));
-        invoker.setOverride(SystemProperty.VERSION_CODE,
-                String.valueOf(settings.getInt(ModuleSettings.VERSION_CODE, 1)));
-        invoker.setOverride(SystemProperty.VERSION_NAME,
-                settings.getString(ModuleSettings.VERSION_NAME, "1.0"));
+                String.valueOf(mTargetSdkVersion));
+        invoker.setOverride(SystemProperty.VERSION_CODE, String.valueOf(mVersionCode));
+        invoker.setOverride(SystemProperty.VERSION_NAME, mVersionName);
         if (mLibraryManifestFiles != null) {
             invoker.addLibraryManifests(mLibraryManifestFiles);
         }
@@ -119,9 +152,10 @@ public class ManifestMergeTask extends Task<AndroidModule> {
                         XmlFormatStyle.get(document),
                         null,
                         false);
-                FileUtils.writeStringToFile(mOutputFile,
+                FileUtils.writeStringToFile(mMergedFile,
                         contents,
                         Charset.defaultCharset());
+                FileUtils.copyFile(mMergedFile, mOutputFile);
             }
         } catch (ManifestMerger2.MergeFailureException e) {
             throw new CompilationFailedException(e);
@@ -1,38 +1,40 @@
 package com.tyron.builder.compiler.symbol;
 
-import android.util.Log;
-
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
-import com.tyron.builder.project.cache.CacheHolder;
-import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
  * to R.java class files
+ *
+ * <p>The parsed symbols are kept in a {@link SymbolState} so an R.txt file is only parsed
+ * again when it is modified. The R class of a library is only written again when the values
+ * of its symbols have changed, which is checked by hashing them.
  */
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
-    public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
-            new CacheHolder.CacheKey<>("mergeSymbolsCache");
-
     private File mSymbolOutputDir;
     private File mFullResourceFile;
+    private File mStateFile;
 
     public MergeSymbolsTask(AndroidModule project, ILogger logger) {
         super(project, logger);
@@ -47,15 +49,15 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
         mFullResourceFile = new File(getModule().getBuildDirectory(), "bin/res/R.txt");
+        mStateFile = new File(getModule().getBuildDirectory(), "intermediate/symbols/state.bin");
     }
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-        Cache<Void, Void> cache = getModule().getCache(CACHE_KEY, new Cache<>());
-        SymbolLoader fullSymbolValues = null;
-        Multimap<String, SymbolLoader> libMap = ArrayListMultimap.create();
+        SymbolState state = SymbolState.load(mStateFile);
+        Set<File> symbolFiles = new HashSet<>();
+        Map<String, List<SymbolTable>> libraries = new TreeMap<>();
 
-        List<File> RFiles = new ArrayList<>();
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -63,73 +65,100 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
                 continue;
             }
 
-            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
-            if (packageName == null) {
+            File rFile = new File(parent, "R.txt");
+            if (!rFile.exists()) {
                 continue;
             }
 
-            if (packageName.equals(getModule().getPackageName())) {
-                // only generate libraries
-                continue;
+            SymbolState.SymbolFile symbolFile = state.get(rFile);
+            if (symbolFile == null) {
+                String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
+                if (packageName == null) {
+                    continue;
+                }
+                symbolFile = state.parse(rFile, packageName);
             }
+            symbolFiles.add(rFile);
 
-            File rFile = new File(parent, "R.txt");
-            if (!rFile.exists()) {
+            if (symbolFile.mPackageName.equals(getModule().getPackageName())) {
+                // only generate libraries
                 continue;
             }
 
-            RFiles.add(rFile);
+            libraries.computeIfAbsent(symbolFile.mPackageName, name -> new ArrayList<>())
+                    .add(symbolFile.mTable);
         }
 
-        for (Cache.Key<Void> key : new HashSet<>(cache.getKeys())) {
-            if (!RFiles.contains(key.file.toFile())) {
-                Log.d("MergeSymbolsTask", "Found deleted resource file, removing " + key.file.toFile().getName() + " on the cache.");
-                cache.remove(key.file, (Void) null);
-                FileUtils.delete(key.file.toFile());
+        SymbolTable values = null;
+        if (!libraries.isEmpty()) {
+            SymbolState.SymbolFile fullSymbolValues = state.get(mFullResourceFile);
+            if (fullSymbolValues == null) {
+                fullSymbolValues = state.parse(mFullResourceFile, "");
             }
+            symbolFiles.add(mFullResourceFile);
+            values = fullSymbolValues.mTable;
         }
+        state.retainFiles(symbolFiles);
 
-        for (File rFile : RFiles) {
-
-            if (!cache.needs(rFile.toPath(), null)) {
-                continue;
-            }
-
-            File parent = rFile.getParentFile();
-            if (parent == null) {
-                getLogger().error("Unable to access parent directory for " + rFile);
-                continue;
-            }
-
-            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
-            if (packageName == null) {
-                continue;
+        for (String packageName : state.getGeneratedPackages()) {
+            if (!libraries.containsKey(packageName)) {
+                FileUtils.deleteQuietly(SymbolWriter.getFile(mSymbolOutputDir, packageName));
+                getModule().removeJavaFile(packageName + ".R");
+                state.removeGenerated(packageName);
             }
+        }
 
-            if (fullSymbolValues == null) {
-                fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
-                fullSymbolValues.load();
+        // now loop on all the package name, merge all the symbols to write, and write them
+        int written = 0;
+        for (Map.Entry<String, List<SymbolTable>> entry : libraries.entrySet()) {
+            String packageName = entry.getKey();
+            BitSet symbols = getSymbolsToWrite(values, entry.getValue());
+            String hash = hashSymbols(values, symbols);
+
+            SymbolWriter writer = new SymbolWriter(mSymbolOutputDir, packageName, values,
+                    symbols);
+            if (!hash.equals(state.getGeneratedHash(packageName))
+                    || !writer.getFile().exists()) {
+                writer.write();
+                state.putGeneratedHash(packageName, hash);
+                written++;
             }
-            SymbolLoader libSymbols = new SymbolLoader(rFile, getLogger());
-            libSymbols.load();
-
-            libMap.put(packageName, libSymbols);
+            getModule().addJavaFile(writer.getFile());
         }
+        getLogger().debug("Generated " + written + " of " + libraries.size() + " R classes");
 
-        // now loop on all the package name, merge all the symbols to write, and write them
-        for (String packageName : libMap.keySet()) {
-            Collection<SymbolLoader> symbols = libMap.get(packageName);
+        state.save(mStateFile);
+    }
 
-            SymbolWriter writer = new SymbolWriter(mSymbolOutputDir.getAbsolutePath(), packageName,
-                    fullSymbolValues, getModule());
-            for (SymbolLoader loader : symbols) {
-                writer.addSymbolsToWrite(loader);
+    /**
+     * @return the indices in the values of the module of the symbols declared by the libraries
+     */
+    private static BitSet getSymbolsToWrite(SymbolTable values, List<SymbolTable> libraries) {
+        BitSet symbols = new BitSet(values.size());
+        for (SymbolTable library : libraries) {
+            for (int i = 0; i < library.size(); i++) {
+                int index = values.indexOf(library.getClassName(i), library.getName(i));
+                if (index != -1) {
+                    symbols.set(index);
+                }
             }
-            writer.write();
         }
+        return symbols;
+    }
 
-        for (File file : RFiles) {
-            cache.load(file.toPath(), null, null);
+    @SuppressWarnings("UnstableApiUsage")
+    private static String hashSymbols(SymbolTable values, BitSet symbols) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (int i = symbols.nextSetBit(0); i >= 0; i = symbols.nextSetBit(i + 1)) {
+            hasher.putString(values.getString(values.getClassName(i)), StandardCharsets.UTF_8);
+            hasher.putChar(' ');
+            hasher.putString(values.getString(values.getName(i)), StandardCharsets.UTF_8);
+            hasher.putChar(' ');
+            hasher.putString(values.getString(values.getType(i)), StandardCharsets.UTF_8);
+            hasher.putChar(' ');
+            hasher.putString(values.getValueString(i), StandardCharsets.UTF_8);
+            hasher.putChar('\n');
         }
+        return hasher.hash().toString();
     }
 }
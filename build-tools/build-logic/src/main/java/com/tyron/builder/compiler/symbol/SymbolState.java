@@ -0,0 +1,189 @@
+package com.tyron.builder.compiler.symbol;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The symbols used by the previous run of {@link MergeSymbolsTask}, saved in the build
+ * directory so R.txt files are only parsed again when they are modified and R classes are
+ * only written again when their symbols have changed.
+ */
+class SymbolState {
+
+    private static final String TAG = SymbolState.class.getSimpleName();
+
+    private static final int MAGIC = 0x53594D53;
+    private static final int VERSION = 1;
+
+    static class SymbolFile {
+
+        long mLastModified;
+        long mLength;
+        /**
+         * The package of the library the file belongs to, empty for the R.txt of the module
+         */
+        String mPackageName;
+        SymbolTable mTable;
+    }
+
+    private SymbolTable.StringPool mPool = new SymbolTable.StringPool();
+    private final Map<String, SymbolFile> mFiles = new HashMap<>();
+    /**
+     * The hash of the symbols of each generated R class by its package
+     */
+    private final Map<String, String> mGenerated = new HashMap<>();
+
+    /**
+     * Loads the state from the given file, an empty state is returned if the file does not
+     * exist or cannot be read, in which case every R class will be generated.
+     */
+    @NonNull
+    static SymbolState load(@NonNull File file) {
+        SymbolState state = new SymbolState();
+        if (!file.exists()) {
+            return state;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return state;
+            }
+            state.mPool = SymbolTable.StringPool.read(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                SymbolFile symbolFile = new SymbolFile();
+                symbolFile.mLastModified = in.readLong();
+                symbolFile.mLength = in.readLong();
+                symbolFile.mPackageName = in.readUTF();
+                symbolFile.mTable = SymbolTable.read(in, state.mPool);
+                state.mFiles.put(path, symbolFile);
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                state.mGenerated.put(in.readUTF(), in.readUTF());
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read the symbol state, generating all R classes", e);
+            return new SymbolState();
+        }
+        return state;
+    }
+
+    void save(@NonNull File file) throws IOException {
+        // the strings of the symbols that have been removed are not kept
+        SymbolTable.StringPool pool = new SymbolTable.StringPool();
+        for (SymbolFile symbolFile : mFiles.values()) {
+            symbolFile.mTable = symbolFile.mTable.copyTo(pool);
+        }
+        mPool = pool;
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            mPool.write(out);
+            out.writeInt(mFiles.size());
+            for (Map.Entry<String, SymbolFile> entry : mFiles.entrySet()) {
+                SymbolFile symbolFile = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(symbolFile.mLastModified);
+                out.writeLong(symbolFile.mLength);
+                out.writeUTF(symbolFile.mPackageName);
+                symbolFile.mTable.write(out);
+            }
+            out.writeInt(mGenerated.size());
+            for (Map.Entry<String, String> entry : mGenerated.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save " + file);
+        }
+    }
+
+    @NonNull
+    SymbolTable.StringPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * @return the symbols of the file, if it has not been modified since it was last parsed
+     */
+    @Nullable
+    SymbolFile get(@NonNull File file) {
+        SymbolFile symbolFile = mFiles.get(file.getAbsolutePath());
+        if (symbolFile == null || symbolFile.mLastModified != file.lastModified()
+                || symbolFile.mLength != file.length()) {
+            return null;
+        }
+        return symbolFile;
+    }
+
+    /**
+     * Parses the symbols of the file and stores them
+     */
+    @NonNull
+    SymbolFile parse(@NonNull File file, @NonNull String packageName) throws IOException {
+        SymbolFile symbolFile = new SymbolFile();
+        symbolFile.mLastModified = file.lastModified();
+        symbolFile.mLength = file.length();
+        symbolFile.mPackageName = packageName;
+        symbolFile.mTable = SymbolTable.parse(file, mPool);
+        mFiles.put(file.getAbsolutePath(), symbolFile);
+        return symbolFile;
+    }
+
+    /**
+     * Removes the files that are not in the given set
+     */
+    void retainFiles(@NonNull Set<File> files) {
+        Set<String> paths = new HashSet<>();
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        mFiles.keySet().retainAll(paths);
+    }
+
+    @Nullable
+    String getGeneratedHash(@NonNull String packageName) {
+        return mGenerated.get(packageName);
+    }
+
+    void putGeneratedHash(@NonNull String packageName, @NonNull String hash) {
+        mGenerated.put(packageName, hash);
+    }
+
+    @NonNull
+    Set<String> getGeneratedPackages() {
+        return new HashSet<>(mGenerated.keySet());
+    }
+
+    void removeGenerated(@NonNull String packageName) {
+        mGenerated.remove(packageName);
+    }
+}
@@ -0,0 +1,263 @@
+package com.tyron.builder.compiler.symbol;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The symbols of an R.txt file generated by AAPT2 with the --output-text-symbols option.
+ *
+ * <p>The types, classes and names of the symbols are interned in a {@link StringPool} shared
+ * by all the tables of a {@link SymbolState} and stored as indices in primitive arrays, the
+ * values of int symbols are stored directly. The symbols are sorted by class and name, the
+ * order in which they are written to R classes.
+ */
+class SymbolTable {
+
+    private static final String TYPE_INT = "int";
+
+    /**
+     * Interns the strings of symbol tables so they can be compared by their index
+     */
+    static class StringPool {
+
+        private final List<String> mStrings = new ArrayList<>();
+        private final Map<String, Integer> mIndices = new HashMap<>();
+
+        int intern(@NonNull String string) {
+            Integer index = mIndices.get(string);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(string);
+                mIndices.put(string, index);
+            }
+            return index;
+        }
+
+        @NonNull
+        String get(int index) {
+            return mStrings.get(index);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(mStrings.size());
+            for (String string : mStrings) {
+                out.writeUTF(string);
+            }
+        }
+
+        static StringPool read(DataInputStream in) throws IOException {
+            StringPool pool = new StringPool();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                pool.intern(in.readUTF());
+            }
+            return pool;
+        }
+    }
+
+    private final StringPool mPool;
+    private final int[] mTypes;
+    private final int[] mClasses;
+    private final int[] mNames;
+    /**
+     * The value of int symbols, or the index of the value in the string pool for the others
+     */
+    private final int[] mValues;
+
+    /**
+     * The index of each symbol by its class and name, created when it is first needed
+     */
+    private Map<Long, Integer> mIndex;
+
+    private SymbolTable(StringPool pool, int[] types, int[] classes, int[] names, int[] values) {
+        mPool = pool;
+        mTypes = types;
+        mClasses = classes;
+        mNames = names;
+        mValues = values;
+    }
+
+    int size() {
+        return mTypes.length;
+    }
+
+    int getClassName(int symbol) {
+        return mClasses[symbol];
+    }
+
+    int getName(int symbol) {
+        return mNames[symbol];
+    }
+
+    int getType(int symbol) {
+        return mTypes[symbol];
+    }
+
+    /**
+     * @return the string of the pool of this table at the index
+     */
+    @NonNull
+    String getString(int index) {
+        return mPool.get(index);
+    }
+
+    /**
+     * @return the value as it is written in the R class
+     */
+    @NonNull
+    String getValueString(int symbol) {
+        if (TYPE_INT.equals(mPool.get(mTypes[symbol]))) {
+            return "0x" + Integer.toHexString(mValues[symbol]);
+        }
+        return mPool.get(mValues[symbol]);
+    }
+
+    /**
+     * @param className the index of the class in the string pool
+     * @param name the index of the name in the string pool
+     * @return the index of the symbol in this table, or -1 if it does not exist
+     */
+    int indexOf(int className, int name) {
+        if (mIndex == null) {
+            Map<Long, Integer> index = new HashMap<>(mTypes.length * 2);
+            for (int i = 0; i < mTypes.length; i++) {
+                index.put(key(mClasses[i], mNames[i]), i);
+            }
+            mIndex = index;
+        }
+        Integer symbol = mIndex.get(key(className, name));
+        return symbol == null ? -1 : symbol;
+    }
+
+    private static long key(int className, int name) {
+        return ((long) className << 32) | (name & 0xFFFFFFFFL);
+    }
+
+    @NonNull
+    static SymbolTable parse(@NonNull File file, @NonNull StringPool pool) throws IOException {
+        List<String[]> symbols = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            int lineIndex = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineIndex++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // format is "<type> <class> <name> <value>"
+                // don't want to split on space as value could contain spaces.
+                int pos = line.indexOf(' ');
+                int pos2 = pos == -1 ? -1 : line.indexOf(' ', pos + 1);
+                int pos3 = pos2 == -1 ? -1 : line.indexOf(' ', pos2 + 1);
+                if (pos3 == -1) {
+                    throw new IOException(String.format(Locale.ENGLISH,
+                            "File format error reading %s\tline %d: '%s'",
+                            file.getAbsolutePath(), lineIndex, line));
+                }
+                symbols.add(new String[]{line.substring(0, pos), line.substring(pos + 1, pos2),
+                        line.substring(pos2 + 1, pos3), line.substring(pos3 + 1)});
+            }
+        }
+
+        symbols.sort((a, b) -> {
+            int result = a[1].compareTo(b[1]);
+            return result != 0 ? result : a[2].compareTo(b[2]);
+        });
+
+        // a symbol that is declared more than once keeps its last value
+        List<String[]> unique = new ArrayList<>(symbols.size());
+        for (String[] symbol : symbols) {
+            int last = unique.size() - 1;
+            if (last >= 0 && unique.get(last)[1].equals(symbol[1])
+                    && unique.get(last)[2].equals(symbol[2])) {
+                unique.set(last, symbol);
+            } else {
+                unique.add(symbol);
+            }
+        }
+
+        int size = unique.size();
+        int[] types = new int[size];
+        int[] classes = new int[size];
+        int[] names = new int[size];
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            String[] symbol = unique.get(i);
+            types[i] = pool.intern(symbol[0]);
+            classes[i] = pool.intern(symbol[1]);
+            names[i] = pool.intern(symbol[2]);
+            if (TYPE_INT.equals(symbol[0])) {
+                try {
+                    values[i] = Long.decode(symbol[3].trim()).intValue();
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid value of " + symbol[2] + " in " + file, e);
+                }
+            } else {
+                values[i] = pool.intern(symbol[3]);
+            }
+        }
+        return new SymbolTable(pool, types, classes, names, values);
+    }
+
+    /**
+     * @return a copy of this table whose strings are interned in the given pool
+     */
+    @NonNull
+    SymbolTable copyTo(@NonNull StringPool pool) {
+        int size = mTypes.length;
+        int[] types = new int[size];
+        int[] classes = new int[size];
+        int[] names = new int[size];
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            String type = mPool.get(mTypes[i]);
+            types[i] = pool.intern(type);
+            classes[i] = pool.intern(mPool.get(mClasses[i]));
+            names[i] = pool.intern(mPool.get(mNames[i]));
+            values[i] = TYPE_INT.equals(type) ? mValues[i] : pool.intern(mPool.get(mValues[i]));
+        }
+        return new SymbolTable(pool, types, classes, names, values);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(mTypes.length);
+        writeInts(out, mTypes);
+        writeInts(out, mClasses);
+        writeInts(out, mNames);
+        writeInts(out, mValues);
+    }
+
+    static SymbolTable read(DataInputStream in, StringPool pool) throws IOException {
+        int size = in.readInt();
+        return new SymbolTable(pool, readInts(in, size), readInts(in, size),
+                readInts(in, size), readInts(in, size));
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in, int size) throws IOException {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
@@ -1,139 +1,90 @@
 package com.tyron.builder.compiler.symbol;
 
-
-import com.google.common.base.Splitter;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Table;
-import com.tyron.builder.project.api.AndroidModule;
-
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * A class to write R.java classes based on data read from text symbol files generated by
  * AAPT/AAPT2 with the --output-text-symbols option.
  */
-public class SymbolWriter {
+class SymbolWriter {
 
-    private final String mOutFolder;
+    private final File mFile;
     private final String mPackageName;
-    private final List<SymbolLoader> mSymbols = Lists.newArrayList();
-    private final SymbolLoader mValues;
-    private final AndroidModule mProject;
-
-    public SymbolWriter(String outFolder, String packageName, SymbolLoader values, AndroidModule project) {
-        mOutFolder = outFolder;
+    private final SymbolTable mValues;
+    private final BitSet mSymbols;
+
+    /**
+     * @param outFolder the root directory of the generated sources
+     * @param packageName the package of the R class
+     * @param values the final values of the symbols of the module
+     * @param symbols the indices in {@code values} of the symbols to write
+     */
+    SymbolWriter(File outFolder, String packageName, SymbolTable values, BitSet symbols) {
+        mFile = getFile(outFolder, packageName);
         mPackageName = packageName;
         mValues = values;
-        mProject = project;
+        mSymbols = symbols;
     }
 
-    public void addSymbolsToWrite(SymbolLoader symbols) {
-        mSymbols.add(symbols);
+    static File getFile(File outFolder, String packageName) {
+        return new File(outFolder, packageName.replace('.', File.separatorChar)
+                + File.separator + "R.java");
     }
 
-    private Table<String, String, SymbolLoader.SymbolEntry> getAllSymbols() {
-        Table<String, String, SymbolLoader.SymbolEntry> symbols = HashBasedTable.create();
-
-        for (SymbolLoader symbolLoader : mSymbols) {
-            symbols.putAll(symbolLoader.getSymbols());
-        }
-
-        return symbols;
+    File getFile() {
+        return mFile;
     }
 
-    public void write() throws IOException {
-        Splitter splitter = Splitter.on('.');
-        Iterable<String> folders = splitter.split(mPackageName);
-        File file = new File(mOutFolder);
-        for (String folder : folders) {
-            file = new File(file, folder);
+    void write() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create resource directories for " + parent);
         }
-        boolean newFile = false;
-        if (!file.exists()) {
-            newFile = true;
-            if (!file.mkdirs()) {
-                throw new IOException("Unable to create resource directories for " + file);
-            }
-        }
-        file = new File(file, "R.java");
-
-        try (StringWriter writer = new StringWriter()) {
-
-            writer.write("/* AUTO-GENERATED FILE. DO NOT MODIFY. \n");
-            writer.write(" *\n");
-            writer.write(" * This class was automatically generated by the\n");
-            writer.write(" * aapt tool from the resource data it found.  It\n");
-            writer.write(" * should not be modified by hand.\n");
-            writer.write(" */\n");
-
-            writer.write("package ");
-            writer.write(mPackageName);
-            writer.write(";\n\npublic final class R {\n");
-
-            Table<String, String, SymbolLoader.SymbolEntry> symbols = getAllSymbols();
-            Table<String, String, SymbolLoader.SymbolEntry> values = mValues.getSymbols();
 
-            Set<String> rowSet = symbols.rowKeySet();
-            List<String> rowList = Lists.newArrayList(rowSet);
-            Collections.sort(rowList);
-
-            for (String row : rowList) {
-                writer.write("\tpublic static final class ");
-                writer.write(row);
-                writer.write(" {\n");
-
-                Map<String, SymbolLoader.SymbolEntry> rowMap = symbols.row(row);
-                Set<String> symbolSet = rowMap.keySet();
-                ArrayList<String> symbolList = Lists.newArrayList(symbolSet);
-                Collections.sort(symbolList);
-
-                for (String symbolName : symbolList) {
-                    // get the matching SymbolEntry from the values Table.
-                    SymbolLoader.SymbolEntry value = values.get(row, symbolName);
-                    if (value != null) {
-                        writer.write("\t\tpublic static final ");
-                        writer.write(value.getType());
-                        writer.write(" ");
-                        writer.write(value.getName());
-                        writer.write(" = ");
-                        writer.write(value.getValue());
-                        writer.write(";\n");
-                    }
+        StringBuilder writer = new StringBuilder();
+        writer.append("/* AUTO-GENERATED FILE. DO NOT MODIFY. \n");
+        writer.append(" *\n");
+        writer.append(" * This class was automatically generated by the\n");
+        writer.append(" * aapt tool from the resource data it found.  It\n");
+        writer.append(" * should not be modified by hand.\n");
+        writer.append(" */\n");
+
+        writer.append("package ");
+        writer.append(mPackageName);
+        writer.append(";\n\npublic final class R {\n");
+
+        // the symbols are sorted by class, a new class starts whenever it changes
+        int currentClass = -1;
+        for (int i = mSymbols.nextSetBit(0); i >= 0; i = mSymbols.nextSetBit(i + 1)) {
+            int className = mValues.getClassName(i);
+            if (className != currentClass) {
+                if (currentClass != -1) {
+                    writer.append("\t}\n");
                 }
-
-                writer.write("\t}\n");
+                writer.append("\tpublic static final class ");
+                writer.append(mValues.getString(className));
+                writer.append(" {\n");
+                currentClass = className;
             }
+            writer.append("\t\tpublic static final ");
+            writer.append(mValues.getString(mValues.getType(i)));
+            writer.append(" ");
+            writer.append(mValues.getString(mValues.getName(i)));
+            writer.append(" = ");
+            writer.append(mValues.getValueString(i));
+            writer.append(";\n");
+        }
+        if (currentClass != -1) {
+            writer.append("\t}\n");
+        }
 
-            writer.write("}\n");
+        writer.append("}\n");
 
-            if (newFile || !file.exists()) {
-                if (!file.createNewFile()) {
-                    throw new IOException("Unable to create R.txt file");
-                }
-                FileUtils.writeStringToFile(file, writer.toString(), Charset.defaultCharset());
-            } else {
-                String oldContents;
-                try {
-                    oldContents = FileUtils.readFileToString(file, Charset.defaultCharset());
-                } catch (IOException e) {
-                    oldContents = "";
-                }
-                if (!oldContents.equals(writer.toString())) {
-                    FileUtils.writeStringToFile(file, writer.toString(), Charset.defaultCharset());
-                }
-            }
-            mProject.addJavaFile(file);
-        }
+        FileUtils.writeStringToFile(mFile, writer.toString(), Charset.defaultCharset());
     }
 }
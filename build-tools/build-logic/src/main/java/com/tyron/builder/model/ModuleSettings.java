@@ -44,6 +44,7 @@ public class ModuleSettings implements SharedPreferences {
     public static final String JAVA_SOURCE_VERSION = "javaSourceVersion";
     public static final String MODULE_TYPE = "moduleType";
     public static final String ZIP_ALIGN_ENABLED = "zipAlignEnabled";
+    public static final String INCREMENTAL_PACKAGING = "incrementalPackaging";
 
     private final File mConfigFile;
     private final Map<String, Object> mConfigMap;
@@ -74,6 +75,7 @@ public class ModuleSettings implements SharedPreferences {
         map.put(VERSION_NAME, "1.0");
         map.put(VERSION_CODE, 1);
         map.put(ZIP_ALIGN_ENABLED, false);
+        map.put(INCREMENTAL_PACKAGING, true);
         return map;
     }
 
@@ -20,6 +20,13 @@ public interface JavaModule extends Module {
 
     File getJavaFile(@NonNull String packageName);
 
+    /**
+     * @param packageName the package name, an empty string for the default package
+     * @return the java files that are directly in the given package
+     */
+    @NonNull
+    List<File> listJavaFiles(@NonNull String packageName);
+
     void removeJavaFile(@NonNull String packageName);
 
     void addJavaFile(@NonNull File javaFile);
@@ -1,5 +1,7 @@
 package com.tyron.builder.project.cache;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.common.util.Cache;
 
 public interface CacheHolder {
@@ -7,17 +9,53 @@ public interface CacheHolder {
     class CacheKey<K, V> {
 
         private final String name;
+        private final CacheSerializer<K> keySerializer;
+        private final CacheSerializer<V> valueSerializer;
 
         public CacheKey(String name) {
+            this(name, null, null);
+        }
+
+        /**
+         * Creates a key for a cache that is saved to disk so it survives restarts of the
+         * application.
+         */
+        public CacheKey(String name,
+                        @Nullable CacheSerializer<K> keySerializer,
+                        @Nullable CacheSerializer<V> valueSerializer) {
             this.name = name;
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
         }
 
         public String getName() {
             return name;
         }
+
+        @Nullable
+        public CacheSerializer<K> getKeySerializer() {
+            return keySerializer;
+        }
+
+        @Nullable
+        public CacheSerializer<V> getValueSerializer() {
+            return valueSerializer;
+        }
+
+        public boolean isPersistent() {
+            return keySerializer != null && valueSerializer != null;
+        }
     }
 
     public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * Saves the caches whose key has serializers to disk, they will be loaded again when
+     * they are first accessed after the application has restarted.
+     */
+    default void saveCaches() {
+
+    }
 }
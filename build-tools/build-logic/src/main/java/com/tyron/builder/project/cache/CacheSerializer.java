@@ -0,0 +1,68 @@
+package com.tyron.builder.project.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads the keys or values of a cache so it can be saved to disk
+ */
+public interface CacheSerializer<T> {
+
+    CacheSerializer<Void> VOID = new CacheSerializer<Void>() {
+        @Override
+        public void write(DataOutput out, Void value) {
+
+        }
+
+        @Override
+        public Void read(DataInput in) {
+            return null;
+        }
+    };
+
+    CacheSerializer<String> STRING = new CacheSerializer<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    };
+
+    CacheSerializer<List<File>> FILE_LIST = new CacheSerializer<List<File>>() {
+        @Override
+        public void write(DataOutput out, List<File> value) throws IOException {
+            out.writeInt(value.size());
+            for (File file : value) {
+                out.writeUTF(file.getAbsolutePath());
+            }
+        }
+
+        @Override
+        public List<File> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            if (size < 0 || size > 0xFFFF) {
+                throw new IOException("Invalid list size: " + size);
+            }
+            List<File> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(new File(in.readUTF()));
+            }
+            return files;
+        }
+    };
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,215 @@
+package com.tyron.builder.project.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.hash.Hashing;
+import com.tyron.common.util.Cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a {@link Cache} to a binary file and restores it.
+ *
+ * <p>Entries are grouped by their file, along with the last modified time and a hash of the
+ * contents of the file when the cache was saved. If the file has been modified but its
+ * contents are the same, e.g. it has been copied or saved again without changes, its entries
+ * are still considered up to date.
+ *
+ * <p>If the saved cache cannot be read, it is deleted and an empty cache is returned.
+ */
+public class CacheStore {
+
+    private static final String TAG = CacheStore.class.getSimpleName();
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 1;
+
+    private static class FileStamp {
+
+        private final long mModified;
+        private final String mHash;
+
+        private FileStamp(long modified, String hash) {
+            mModified = modified;
+            mHash = hash;
+        }
+    }
+
+    private final File mFile;
+    private final Map<Path, FileStamp> mStamps = new HashMap<>();
+
+    public CacheStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    @NonNull
+    public <K, V> Cache<K, V> load(@NonNull CacheHolder.CacheKey<K, V> key) {
+        Cache<K, V> cache = new Cache<>();
+        if (!key.isPersistent() || !mFile.exists()) {
+            return cache;
+        }
+        CacheSerializer<K> keySerializer = key.getKeySerializer();
+        CacheSerializer<V> valueSerializer = key.getValueSerializer();
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != VERSION
+                    || !key.getName().equals(in.readUTF())) {
+                throw new IOException("Incompatible cache file " + mFile.getName());
+            }
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                Path path = Paths.get(in.readUTF());
+                long modified = in.readLong();
+                String hash = in.readUTF();
+                boolean unchanged = isUnchanged(path, modified, hash);
+
+                int entryCount = in.readInt();
+                for (int j = 0; j < entryCount; j++) {
+                    Instant created = Instant.ofEpochMilli(in.readLong());
+                    K k = keySerializer.read(in);
+                    V v = valueSerializer.read(in);
+                    if (unchanged && !created.isBefore(Instant.ofEpochMilli(modified))) {
+                        // the value was up to date when saved and the contents have not
+                        // changed since then, even if the file has been touched
+                        created = Instant.now();
+                    }
+                    cache.load(path, k, v, created);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read cache " + key.getName() + ", it will be rebuilt", e);
+            mStamps.clear();
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+            return new Cache<>();
+        }
+        return cache;
+    }
+
+    /**
+     * @return whether the contents of the file are the same as when the cache was saved
+     */
+    private boolean isUnchanged(Path path, long modified, String hash) {
+        if (hash.isEmpty() || !Files.exists(path)) {
+            return false;
+        }
+        long currentModified = lastModified(path);
+        if (currentModified == modified) {
+            mStamps.put(path, new FileStamp(modified, hash));
+            return true;
+        }
+        String currentHash = hash(path);
+        if (hash.equals(currentHash)) {
+            mStamps.put(path, new FileStamp(currentModified, currentHash));
+            return true;
+        }
+        return false;
+    }
+
+    public <K, V> void save(@NonNull CacheHolder.CacheKey<K, V> key,
+                            @NonNull Cache<K, V> cache) throws IOException {
+        if (!key.isPersistent()) {
+            return;
+        }
+        CacheSerializer<K> keySerializer = key.getKeySerializer();
+        CacheSerializer<V> valueSerializer = key.getValueSerializer();
+
+        // the entries are copied at once, the cache may be modified while it is written
+        Map<Path, List<Cache.Entry<K, V>>> entriesByFile = new LinkedHashMap<>();
+        for (Cache.Entry<K, V> entry : cache.getEntries()) {
+            entriesByFile.computeIfAbsent(entry.file, k -> new ArrayList<>()).add(entry);
+        }
+
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        Map<Path, FileStamp> stamps = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key.getName());
+            out.writeInt(entriesByFile.size());
+            for (Map.Entry<Path, List<Cache.Entry<K, V>>> entry : entriesByFile.entrySet()) {
+                Path path = entry.getKey();
+                FileStamp stamp = getStamp(path, entry.getValue());
+                stamps.put(path, stamp);
+
+                out.writeUTF(path.toString());
+                out.writeLong(stamp.mModified);
+                out.writeUTF(stamp.mHash);
+                out.writeInt(entry.getValue().size());
+                for (Cache.Entry<K, V> cacheEntry : entry.getValue()) {
+                    out.writeLong(cacheEntry.created.toEpochMilli());
+                    keySerializer.write(out, cacheEntry.key);
+                    valueSerializer.write(out, cacheEntry.value);
+                }
+            }
+        }
+        if (mFile.exists() && !mFile.delete()) {
+            throw new IOException("Unable to delete " + mFile);
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to save cache " + mFile);
+        }
+        mStamps.clear();
+        mStamps.putAll(stamps);
+    }
+
+    private FileStamp getStamp(Path path, List<? extends Cache.Entry<?, ?>> entries) {
+        if (!Files.exists(path)) {
+            return new FileStamp(0, "");
+        }
+        long modified = lastModified(path);
+        FileStamp previous = mStamps.get(path);
+        if (previous != null && previous.mModified == modified && !previous.mHash.isEmpty()) {
+            return previous;
+        }
+        // the contents are only hashed if a value is still valid for them
+        for (Cache.Entry<?, ?> entry : entries) {
+            if (!entry.created.isBefore(Instant.ofEpochMilli(modified))) {
+                return new FileStamp(modified, hash(path));
+            }
+        }
+        return new FileStamp(modified, "");
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static String hash(Path path) {
+        try {
+            return Hashing.murmur3_128().hashBytes(Files.readAllBytes(path)).toString();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
@@ -29,13 +29,13 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
     // Map of fully qualified names and the jar they are contained in
     private final Map<String, File> mClassFiles;
-    private final Map<String, File> mJavaFiles;
+    private final SourceFileTable mJavaFiles;
     private final Map<String, Library> mLibraryHashMap;
     private final Set<File> mLibraries;
 
     public JavaModuleImpl(File root) {
         super(root);
-        mJavaFiles = new HashMap<>();
+        mJavaFiles = new SourceFileTable();
         mClassFiles = new HashMap<>();
         mLibraries = new HashSet<>();
         mLibraryHashMap = new HashMap<>();
@@ -44,7 +44,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @NonNull
     @Override
     public Map<String, File> getJavaFiles() {
-        return mJavaFiles;
+        return mJavaFiles.getFiles();
     }
 
     @Nullable
@@ -53,6 +53,12 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         return mJavaFiles.get(packageName);
     }
 
+    @NonNull
+    @Override
+    public List<File> listJavaFiles(@NonNull String packageName) {
+        return mJavaFiles.list(packageName);
+    }
+
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
@@ -87,7 +93,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public Set<String> getAllClasses() {
         Set<String> classes = new HashSet<>();
-        classes.addAll(mJavaFiles.keySet());
+        classes.addAll(mJavaFiles.getFiles().keySet());
         classes.addAll(mClassFiles.keySet());
         return classes;
     }
@@ -1,10 +1,13 @@
 package com.tyron.builder.project.impl;
 
+import android.util.Log;
+
 import androidx.annotation.Nullable;
 
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheStore;
 import com.tyron.common.util.Cache;
 
 import org.jetbrains.annotations.NotNull;
@@ -20,6 +23,8 @@ import java.util.Map;
 
 public class ModuleImpl implements Module {
 
+    private static final String TAG = ModuleImpl.class.getSimpleName();
+
     /**
      * Concurrent writes to this field are via CASes only, using the {@link #updater}
      */
@@ -145,25 +150,59 @@ public class ModuleImpl implements Module {
 
     private static final AtomicFieldUpdater<ModuleImpl, KeyFMap> updater = AtomicFieldUpdater.forFieldOfType(ModuleImpl.class, KeyFMap.class);
 
+    // build tasks that run in parallel may access the caches at the same time
     private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
+    private final Map<CacheKey<?, ?>, CacheStore> mCacheStores = new HashMap<>();
 
     @Override
-    public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
+    public synchronized <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
         Object o = mCacheMap.get(key);
         if (o == null) {
-            put(key, defaultValue);
-            return defaultValue;
+            Cache<K, V> cache = defaultValue;
+            if (key.isPersistent()) {
+                cache = getCacheStore(key).load(key);
+            }
+            put(key, cache);
+            return cache;
         }
         //noinspection unchecked
         return (Cache<K, V>) o;
     }
 
-    public <K, V> void removeCache(CacheKey<K, V> key) {
+    public synchronized <K, V> void removeCache(CacheKey<K, V> key) {
         mCacheMap.remove(key);
     }
 
     @Override
-    public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
+    public synchronized <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
+
+    @Override
+    public synchronized void saveCaches() {
+        for (Map.Entry<CacheKey<?, ?>, Cache<?, ?>> entry : mCacheMap.entrySet()) {
+            if (entry.getKey().isPersistent()) {
+                saveCache(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private <K, V> void saveCache(CacheKey<K, V> key, Cache<?, ?> cache) {
+        try {
+            //noinspection unchecked
+            getCacheStore(key).save(key, (Cache<K, V>) cache);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save cache " + key.getName(), e);
+        }
+    }
+
+    private CacheStore getCacheStore(CacheKey<?, ?> key) {
+        CacheStore store = mCacheStores.get(key);
+        if (store == null) {
+            File directory = new File(getBuildDirectory(), "intermediate/caches");
+            store = new CacheStore(new File(directory, key.getName() + ".bin"));
+            mCacheStores.put(key, store);
+        }
+        return store;
+    }
 }
@@ -0,0 +1,79 @@
+package com.tyron.builder.project.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the source files of a module keyed by their fully qualified name, the files
+ * are also grouped by their package so listing a package does not need to go through
+ * every file of the module.
+ */
+public class SourceFileTable {
+
+    private final Map<String, File> mFiles = new HashMap<>();
+    private final Map<String, File> mFilesView = Collections.unmodifiableMap(mFiles);
+    private final Map<String, Map<String, File>> mPackages = new HashMap<>();
+
+    /**
+     * @return an unmodifiable view of the fully qualified names and their files
+     */
+    @NonNull
+    public Map<String, File> getFiles() {
+        return mFilesView;
+    }
+
+    @Nullable
+    public File get(@NonNull String className) {
+        return mFiles.get(className);
+    }
+
+    public void put(@NonNull String className, @NonNull File file) {
+        mFiles.put(className, file);
+        mPackages.computeIfAbsent(getPackageName(className), k -> new HashMap<>())
+                .put(className, file);
+    }
+
+    public void remove(@NonNull String className) {
+        if (mFiles.remove(className) == null) {
+            return;
+        }
+        String packageName = getPackageName(className);
+        Map<String, File> files = mPackages.get(packageName);
+        if (files != null) {
+            files.remove(className);
+            if (files.isEmpty()) {
+                mPackages.remove(packageName);
+            }
+        }
+    }
+
+    /**
+     * @param packageName the package name, an empty string for the default package
+     * @return the files that are directly in the package
+     */
+    @NonNull
+    public List<File> list(@NonNull String packageName) {
+        Map<String, File> files = mPackages.get(packageName);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    public void clear() {
+        mFiles.clear();
+        mPackages.clear();
+    }
+
+    private static String getPackageName(String className) {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+}
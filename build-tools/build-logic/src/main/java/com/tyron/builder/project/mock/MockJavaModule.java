@@ -7,6 +7,7 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.impl.ModuleImpl;
+import com.tyron.builder.project.impl.SourceFileTable;
 import com.tyron.common.util.StringSearch;
 
 import org.jetbrains.annotations.NotNull;
@@ -18,7 +19,6 @@ import org.jetbrains.kotlin.com.intellij.util.keyFMap.KeyFMap;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,7 +30,7 @@ import java.util.Set;
 public class MockJavaModule extends ModuleImpl implements JavaModule {
 
     private final KeyFMap mDataMap = KeyFMap.EMPTY_MAP;
-    private final Map<String, File> mJavaFiles = new HashMap<>();
+    private final SourceFileTable mJavaFiles = new SourceFileTable();
 
     private final FileManager mFileManager;
     private final File mRootDir;
@@ -45,7 +45,7 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
     @NonNull
     @Override
     public Map<String, File> getJavaFiles() {
-        return mJavaFiles;
+        return mJavaFiles.getFiles();
     }
 
     @Override
@@ -53,6 +53,12 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
         return mJavaFiles.get(packageName);
     }
 
+    @NonNull
+    @Override
+    public List<File> listJavaFiles(@NonNull String packageName) {
+        return mJavaFiles.list(packageName);
+    }
+
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
@@ -0,0 +1,201 @@
+package com.tyron.builder.compiler.apk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.ApkVerifier;
+import com.android.apksig.DefaultApkSignerEngine;
+import com.google.common.io.ByteStreams;
+import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.common.TestUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class SigningApkWriterTest {
+
+    private static final int MIN_SDK = 21;
+    private static final String NATIVE_LIBRARY = "lib/arm64-v8a/libtest.so";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DefaultApkSignerEngine.SignerConfig mSignerConfig;
+    private File mResources;
+    private File mDex;
+
+    @Before
+    public void setup() throws Exception {
+        File resourcesDir = TestUtil.getResourcesDirectory();
+        ApkSigner.setTestCertFile(new File(resourcesDir, "apksigner/testkey.x509.pem"));
+        ApkSigner.setTestKeyFile(new File(resourcesDir, "apksigner/testkey.pk8"));
+        mSignerConfig = ApkSigner.getTestSignerConfig();
+
+        mResources = temporaryFolder.newFile("resources.ap_");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mResources))) {
+            out.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            out.write(createManifest());
+            out.closeEntry();
+            putStoredEntry(out, "resources.arsc", "resources".getBytes(StandardCharsets.UTF_8));
+            putStoredEntry(out, NATIVE_LIBRARY, createData(3, 10_000));
+        }
+        mDex = temporaryFolder.newFile("classes.dex");
+        Files.write(mDex.toPath(), createData(1, 100_000));
+    }
+
+    @Test
+    public void testRepackageAfterChange() throws Exception {
+        File first = temporaryFolder.newFile("first.apk");
+        PackageState firstState = new PackageState();
+        write(first, null, null, firstState);
+        assertVerified(first);
+        assertAligned(first);
+
+        // a file that has been modified since is written again, the others are copied
+        byte[] modified = createData(2, 100_000);
+        Files.write(mDex.toPath(), modified);
+        assertThat(mDex.setLastModified(mDex.lastModified() + 2000)).isTrue();
+
+        File second = temporaryFolder.newFile("second.apk");
+        try (RawZipFile previous = new RawZipFile(first)) {
+            write(second, previous, firstState, new PackageState());
+        }
+        assertVerified(second);
+        assertAligned(second);
+        try (ZipFile zip = new ZipFile(second)) {
+            assertThat(read(zip, "classes.dex")).isEqualTo(modified);
+            assertThat(read(zip, NATIVE_LIBRARY)).isEqualTo(createData(3, 10_000));
+        }
+    }
+
+    /**
+     * Writes the APK the same way as {@link PackageTask} in incremental mode
+     */
+    private void write(File apk, RawZipFile previous, PackageState previousState,
+                       PackageState state) throws Exception {
+        ApkSignerEngine engine = new DefaultApkSignerEngine.Builder(
+                Collections.singletonList(mSignerConfig), MIN_SDK)
+                .setV1SigningEnabled(true)
+                .setV2SigningEnabled(true)
+                .setV3SigningEnabled(true)
+                .build();
+        try (SigningApkWriter writer = new SigningApkWriter(apk, engine);
+             RawZipFile resources = new RawZipFile(mResources)) {
+            for (RawZipFile.Entry entry : resources.getEntries()) {
+                writer.copyEntry(entry.getName(), resources, entry);
+            }
+            if (previous != null && previousState.isUnchanged("classes.dex", mDex)) {
+                writer.copyEntry("classes.dex", previous, previous.getEntry("classes.dex"));
+            } else {
+                writer.writeEntry("classes.dex", mDex, true);
+            }
+            state.put("classes.dex", mDex);
+            writer.finish();
+        } finally {
+            engine.close();
+        }
+    }
+
+    private static void assertVerified(File apk) throws Exception {
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(MIN_SDK)
+                .build()
+                .verify();
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.isVerified()).isTrue();
+        assertThat(result.isVerifiedUsingV1Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV2Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV3Scheme()).isTrue();
+    }
+
+    /**
+     * Checks that the data of the entries that are not compressed is aligned to 4 bytes, and
+     * the native libraries to the page size
+     */
+    private static void assertAligned(File apk) throws IOException {
+        try (RawZipFile zip = new RawZipFile(apk);
+             RandomAccessFile file = new RandomAccessFile(apk, "r")) {
+            for (RawZipFile.Entry entry : zip.getEntries()) {
+                if (entry.mMethod != RawZipFile.METHOD_STORED) {
+                    continue;
+                }
+                byte[] lengths = new byte[4];
+                file.seek(entry.mLocalHeaderOffset + 26);
+                file.readFully(lengths);
+                ByteBuffer buffer = ByteBuffer.wrap(lengths).order(ByteOrder.LITTLE_ENDIAN);
+                long dataOffset = entry.mLocalHeaderOffset + 30
+                        + (buffer.getShort(0) & 0xFFFF) + (buffer.getShort(2) & 0xFFFF);
+                int alignment = entry.getName().endsWith(".so") ? 4096 : 4;
+                assertThat(dataOffset % alignment).isEqualTo(0);
+            }
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static void putStoredEntry(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static byte[] createData(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * @return a compiled manifest with an empty manifest element, the verifier needs the APK
+     * to contain a manifest
+     */
+    private static byte[] createManifest() {
+        ByteBuffer buffer = ByteBuffer.allocate(112).order(ByteOrder.LITTLE_ENDIAN);
+        // xml chunk
+        buffer.putShort((short) 0x0003).putShort((short) 8).putInt(112);
+        // string pool with a single UTF-8 string
+        buffer.putShort((short) 0x0001).putShort((short) 28).putInt(44);
+        buffer.putInt(1).putInt(0).putInt(1 << 8).putInt(32).putInt(0);
+        buffer.putInt(0);
+        buffer.put((byte) 8).put((byte) 8).put("manifest".getBytes(StandardCharsets.UTF_8));
+        buffer.put((byte) 0).put((byte) 0);
+        // start of the manifest element without attributes
+        buffer.putShort((short) 0x0102).putShort((short) 16).putInt(36);
+        buffer.putInt(1).putInt(-1).putInt(-1).putInt(0);
+        buffer.putShort((short) 20).putShort((short) 20).putShort((short) 0);
+        buffer.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        // end of the manifest element
+        buffer.putShort((short) 0x0103).putShort((short) 16).putInt(24);
+        buffer.putInt(1).putInt(-1).putInt(-1).putInt(0);
+        return buffer.array();
+    }
+}
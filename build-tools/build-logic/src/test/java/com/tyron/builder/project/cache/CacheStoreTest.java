@@ -0,0 +1,44 @@
+package com.tyron.builder.project.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.common.util.Cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Instant;
+
+public class CacheStoreTest {
+
+    private static final CacheHolder.CacheKey<String, String> KEY =
+            new CacheHolder.CacheKey<>("test", CacheSerializer.STRING, CacheSerializer.STRING);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSavesCacheWithOutdatedEntries() throws Exception {
+        Path modified = temporaryFolder.newFile("Modified.java").toPath();
+        Path unchanged = temporaryFolder.newFile("Unchanged.java").toPath();
+        File file = new File(temporaryFolder.getRoot(), "cache.bin");
+
+        Cache<String, String> cache = new Cache<>();
+        // loaded before the file was last modified
+        cache.load(modified, "stale", "old value", Instant.now().minusSeconds(60));
+        cache.load(unchanged, "valid", "value");
+        assertThat(cache.needs(modified, "stale")).isTrue();
+        // checking an outdated value does not remove it
+        assertThat(cache.size()).isEqualTo(2);
+
+        new CacheStore(file).save(KEY, cache);
+
+        Cache<String, String> loaded = new CacheStore(file).load(KEY);
+        assertThat(loaded.size()).isEqualTo(2);
+        assertThat(loaded.getIfPresent(unchanged, "valid")).isEqualTo("value");
+        assertThat(loaded.getIfPresent(modified, "stale")).isNull();
+    }
+}
@@ -0,0 +1,85 @@
+package com.tyron.builder.api.internal.cache;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The key of an entry in a {@link LocalBuildCache}, a hash of everything that affects the
+ * outputs of a unit of work: the contents of its input files and its parameters.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public final class BuildCacheKey {
+
+    private final String hash;
+
+    private BuildCacheKey(String hash) {
+        this.hash = hash;
+    }
+
+    public String getHashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BuildCacheKey)) {
+            return false;
+        }
+        return hash.equals(((BuildCacheKey) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return hash;
+    }
+
+    public static Builder builder(String type) {
+        return new Builder().putString(type);
+    }
+
+    public static class Builder {
+
+        private final Hasher hasher = Hashing.sha256().newHasher();
+
+        private Builder() {
+        }
+
+        public Builder putString(String value) {
+            hasher.putInt(value.length());
+            hasher.putString(value, StandardCharsets.UTF_8);
+            return this;
+        }
+
+        public Builder putInt(int value) {
+            hasher.putInt(value);
+            return this;
+        }
+
+        /**
+         * Adds the contents of the file, the path of the file is not part of the key so
+         * entries can be shared between projects
+         */
+        public Builder putFileContents(File file) throws IOException {
+            hasher.putLong(file.length());
+            hasher.putBytes(Files.asByteSource(file).hash(Hashing.sha256()).asBytes());
+            return this;
+        }
+
+        public BuildCacheKey build() {
+            return new BuildCacheKey(hasher.hash().toString());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.tyron.builder.api.internal.cache;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A build cache on the local file system where the outputs of a unit of work are stored
+ * under the {@link BuildCacheKey} of its inputs.
+ *
+ * <p>An entry is a directory containing the output files by name. Entries are written to a
+ * temporary directory first and then renamed, so a partially written entry is never loaded
+ * even if the application is killed. When the size of the cache exceeds its limit, the
+ * least recently used entries are removed.
+ */
+public class LocalBuildCache {
+
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSize;
+    private long storedSinceCleanup;
+
+    public LocalBuildCache(File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    public LocalBuildCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Restores the outputs of an entry
+     *
+     * @param key the key of the entry
+     * @param outputs the files to restore, by their name in the entry
+     * @return whether the entry exists and all of the outputs have been restored
+     */
+    public boolean load(BuildCacheKey key, Map<String, File> outputs) throws IOException {
+        File entry = getEntryDirectory(key);
+        if (!entry.isDirectory()) {
+            return false;
+        }
+        for (String name : outputs.keySet()) {
+            if (!new File(entry, name).isFile()) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, File> output : outputs.entrySet()) {
+            File target = output.getValue();
+            File parent = target.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            Files.copy(new File(entry, output.getKey()), target);
+        }
+        // used to find the least recently used entries
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores the outputs of a unit of work, outputs that do not exist are not stored.
+     * If an entry with the same key already exists, it is kept.
+     *
+     * @param key the key of the inputs of the work
+     * @param outputs the output files by their name in the entry
+     */
+    public void store(BuildCacheKey key, Map<String, File> outputs) throws IOException {
+        File entry = getEntryDirectory(key);
+        if (entry.exists()) {
+            return;
+        }
+        File temp = new File(directory, "tmp-" + UUID.randomUUID());
+        if (!temp.mkdirs()) {
+            throw new IOException("Unable to create directory " + temp);
+        }
+        long size = 0;
+        try {
+            for (Map.Entry<String, File> output : outputs.entrySet()) {
+                String name = output.getKey();
+                if (name.isEmpty() || name.contains("/") || name.contains(File.separator)) {
+                    throw new IllegalArgumentException("Invalid output name: " + name);
+                }
+                File file = output.getValue();
+                if (file.isFile()) {
+                    Files.copy(file, new File(temp, name));
+                    size += file.length();
+                }
+            }
+            File parent = entry.getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            // another build may have stored the same entry in the meantime
+            if (!temp.renameTo(entry) && !entry.exists()) {
+                throw new IOException("Unable to store cache entry " + key);
+            }
+        } finally {
+            if (temp.exists()) {
+                deleteRecursively(temp);
+            }
+        }
+
+        synchronized (this) {
+            storedSinceCleanup += size;
+            if (storedSinceCleanup < maxSize / 8) {
+                return;
+            }
+            storedSinceCleanup = 0;
+        }
+        cleanup();
+    }
+
+    /**
+     * Removes the least recently used entries until the size of the cache is below its limit
+     */
+    public synchronized void cleanup() {
+        List<File> entries = new ArrayList<>();
+        long totalSize = 0;
+        File[] buckets = directory.listFiles(File::isDirectory);
+        if (buckets == null) {
+            return;
+        }
+        for (File bucket : buckets) {
+            if (bucket.getName().startsWith("tmp-")) {
+                continue;
+            }
+            File[] children = bucket.listFiles(File::isDirectory);
+            if (children == null) {
+                continue;
+            }
+            for (File entry : children) {
+                entries.add(entry);
+                totalSize += getSize(entry);
+            }
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            totalSize -= getSize(entry);
+            deleteRecursively(entry);
+        }
+    }
+
+    private File getEntryDirectory(BuildCacheKey key) {
+        String hash = key.getHashCode();
+        return new File(new File(directory, hash.substring(0, 2)), hash);
+    }
+
+    private static long getSize(File entry) {
+        long size = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,37 @@
+package com.tyron.builder.api.internal.tasks;
+
+import com.tyron.builder.api.Task;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link TaskExecutor#execute(java.util.Collection, java.util.concurrent.Executor)}
+ * when the actions of a task have failed, the cause is the exception thrown by the action.
+ */
+public class TaskExecutionException extends RuntimeException {
+
+    private final Task task;
+    private final List<Task> executedTasks;
+
+    public TaskExecutionException(Task task, Throwable cause, List<Task> executedTasks) {
+        super("Execution failed for task " + task.getName(), cause);
+        this.task = task;
+        this.executedTasks = Collections.unmodifiableList(executedTasks);
+    }
+
+    /**
+     * @return the task that has failed
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * @return the tasks that have been executed successfully before the build stopped, in the
+     * order they have finished
+     */
+    public List<Task> getExecutedTasks() {
+        return executedTasks;
+    }
+}
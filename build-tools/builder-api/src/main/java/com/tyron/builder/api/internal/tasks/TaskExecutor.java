@@ -13,11 +13,22 @@ import com.tyron.builder.api.Task;
 import com.tyron.builder.api.tasks.TaskContainer;
 import com.tyron.builder.api.tasks.TaskDependency;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 @SuppressWarnings("UnstableApiUsage")
 public class TaskExecutor {
@@ -51,6 +62,99 @@ public class TaskExecutor {
         }
     }
 
+    /**
+     * Runs the given tasks and the tasks they depend on. A task starts on the executor as soon
+     * as all the tasks it depends on have finished, so tasks that do not depend on each other
+     * run in parallel. If a task fails, no other tasks are started and the failure is thrown
+     * once the tasks that are running have finished.
+     *
+     * @param tasks the tasks to run, tasks without dependencies are started in this order
+     * @param executor the executor that runs the actions of the tasks
+     * @return the tasks that have been executed, in the order they have finished
+     * @throws TaskExecutionException if a task has failed
+     * @throws CircularDependencyException if a task depends on itself, directly or indirectly
+     * @throws InterruptedException if the thread was interrupted while waiting for a task, the
+     * tasks that are running are not stopped
+     */
+    public List<Task> execute(Collection<? extends Task> tasks, Executor executor)
+            throws InterruptedException {
+        MutableGraph<Task> graph = GraphBuilder.directed()
+                .allowsSelfLoops(true)
+                .nodeOrder(ElementOrder.insertion())
+                .build();
+        Set<Task> visited = new HashSet<>();
+        Deque<Task> queue = new ArrayDeque<>(tasks);
+        while (!queue.isEmpty()) {
+            Task task = queue.removeFirst();
+            if (!visited.add(task)) {
+                continue;
+            }
+            graph.addNode(task);
+            for (Task dependency : task.getTaskDependencies().getDependencies(task)) {
+                graph.putEdge(task, dependency);
+                queue.addLast(dependency);
+            }
+        }
+        if (Graphs.hasCycle(graph)) {
+            throw new CircularDependencyException();
+        }
+
+        Map<Task, Integer> remaining = new HashMap<>();
+        List<Task> ready = new ArrayList<>();
+        for (Task task : graph.nodes()) {
+            int dependencies = graph.outDegree(task);
+            remaining.put(task, dependencies);
+            if (dependencies == 0) {
+                ready.add(task);
+            }
+        }
+
+        CompletionService<Task> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<Task>, Task> running = new HashMap<>();
+        List<Task> executed = new ArrayList<>();
+        Task failedTask = null;
+        Throwable failure = null;
+        while (true) {
+            if (failure == null) {
+                for (Task task : ready) {
+                    running.put(completionService.submit(() -> {
+                        if (task.getEnabled()) {
+                            task.getActions().forEach(action -> action.execute(task));
+                        }
+                        return task;
+                    }), task);
+                }
+            }
+            ready.clear();
+            if (running.isEmpty()) {
+                break;
+            }
+
+            Future<Task> future = completionService.take();
+            Task task = running.remove(future);
+            try {
+                future.get();
+                executed.add(task);
+                for (Task dependent : graph.predecessors(task)) {
+                    if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                    failedTask = task;
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw new TaskExecutionException(failedTask, failure, executed);
+        }
+        return executed;
+    }
+
     private void execute(Graph<Task> graph, Task root) {
         ImmutableList<Task> reverse =
                 ImmutableList.copyOf(Graphs.reachableNodes(graph, root))
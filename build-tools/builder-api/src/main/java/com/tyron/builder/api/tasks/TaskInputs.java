@@ -2,6 +2,11 @@ package com.tyron.builder.api.tasks;
 
 import com.tyron.builder.api.Task;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>A {@code TaskInputs} represents the inputs for a task.</p>
  *
@@ -22,4 +27,44 @@ public interface TaskInputs {
      * @return true if this task has source files, false if not.
      */
     boolean getHasSourceFiles();
+
+    /**
+     * Registers a file or a directory as an input of the task, a directory includes all of
+     * its files.
+     *
+     * @param file the file, ignored if null
+     * @return this
+     */
+    TaskInputs file(File file);
+
+    /**
+     * Registers some files as inputs of the task.
+     *
+     * @param files the files
+     * @return this
+     */
+    TaskInputs files(Collection<File> files);
+
+    /**
+     * Registers a value that affects the outputs of the task, such as the build type.
+     *
+     * @param name the name of the property
+     * @param value the value, compared using its string representation
+     * @return this
+     */
+    TaskInputs property(String name, Object value);
+
+    /**
+     * Returns the input files of the task.
+     *
+     * @return the registered files and directories
+     */
+    List<File> getFiles();
+
+    /**
+     * Returns the input properties of the task.
+     *
+     * @return the string representation of each property by its name
+     */
+    Map<String, String> getProperties();
 }
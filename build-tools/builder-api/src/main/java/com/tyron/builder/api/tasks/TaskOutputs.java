@@ -2,6 +2,9 @@ package com.tyron.builder.api.tasks;
 
 import com.tyron.builder.api.Task;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Predicate;
 
 public interface TaskOutputs {
@@ -62,4 +65,27 @@ public interface TaskOutputs {
      */
     boolean getHasOutput();
 
+    /**
+     * Registers a file or a directory as an output of the task, a directory includes all of
+     * its files.
+     *
+     * @param file the file, ignored if null
+     * @return this
+     */
+    TaskOutputs file(File file);
+
+    /**
+     * Registers some files as outputs of the task.
+     *
+     * @param files the files
+     * @return this
+     */
+    TaskOutputs files(Collection<File> files);
+
+    /**
+     * Returns the output files of the task.
+     *
+     * @return the registered files and directories
+     */
+    List<File> getFiles();
 }
@@ -1,13 +1,25 @@
 package com.tyron.builder.api;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import com.tyron.builder.api.internal.tasks.CircularDependencyException;
+import com.tyron.builder.api.internal.tasks.TaskExecutionException;
 import com.tyron.builder.api.internal.tasks.TaskExecutor;
 import com.tyron.builder.api.tasks.TaskContainer;
 
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * WIP
@@ -156,5 +168,81 @@ public class TestTaskExecution {
         System.out.println(taskRan);
     }
 
+    /**
+     * Tasks that do not depend on each other run at the same time, a task only starts after
+     * its dependencies
+     */
+    @Test
+    public void testParallelExecution() throws Exception {
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Action<Task> independent = task -> {
+            bothStarted.countDown();
+            try {
+                // fails if the other task does not run at the same time
+                assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            ran.add(task.getDescription());
+        };
+
+        DefaultTask first = new DefaultTask();
+        first.setDescription("first");
+        first.doLast(task -> ran.add(task.getDescription()));
+        DefaultTask left = new DefaultTask();
+        left.setDescription("left");
+        left.doLast(independent);
+        left.dependsOn(first);
+        DefaultTask right = new DefaultTask();
+        right.setDescription("right");
+        right.doLast(independent);
+        right.dependsOn(first);
+        DefaultTask last = new DefaultTask();
+        last.setDescription("last");
+        last.doLast(task -> ran.add(task.getDescription()));
+        last.dependsOn(left, right);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Task> executed = new TaskExecutor().execute(Collections.singletonList(last),
+                    executor);
+            assertEquals(4, executed.size());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("first", ran.get(0));
+        assertTrue(ran.subList(1, 3).containsAll(Arrays.asList("left", "right")));
+        assertEquals("last", ran.get(3));
+    }
 
+    /**
+     * The tasks that depend on a failed task are not executed
+     */
+    @Test
+    public void testParallelExecutionFailure() throws Exception {
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        DefaultTask first = new DefaultTask();
+        first.setDescription("first");
+        first.doLast(task -> {
+            throw new IllegalStateException("failed");
+        });
+        DefaultTask second = new DefaultTask();
+        second.setDescription("second");
+        second.doLast(task -> ran.add(task.getDescription()));
+        second.dependsOn(first);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new TaskExecutor().execute(Collections.singletonList(second), executor);
+            fail("The failure was not thrown");
+        } catch (TaskExecutionException e) {
+            assertSame(first, e.getTask());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(e.getExecutedTasks().isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(ran.isEmpty());
+    }
 }
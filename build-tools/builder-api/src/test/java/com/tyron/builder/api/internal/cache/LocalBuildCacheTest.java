@@ -0,0 +1,66 @@
+package com.tyron.builder.api.internal.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class LocalBuildCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        LocalBuildCache cache = new LocalBuildCache(temporaryFolder.newFolder("cache"));
+        File input = write(temporaryFolder.newFile("Input.java"), "class Input {}");
+        File output = write(temporaryFolder.newFile("Input.class"), "compiled");
+
+        BuildCacheKey key = BuildCacheKey.builder("test").putFileContents(input).build();
+        File restored = new File(temporaryFolder.getRoot(), "restored/Input.class");
+        assertFalse(cache.load(key, Collections.singletonMap("output", restored)));
+
+        cache.store(key, Collections.singletonMap("output", output));
+        assertTrue(cache.load(key, Collections.singletonMap("output", restored)));
+        assertArrayEquals(Files.toByteArray(output), Files.toByteArray(restored));
+
+        write(input, "class Input { int field; }");
+        BuildCacheKey changed = BuildCacheKey.builder("test").putFileContents(input).build();
+        assertNotEquals(key, changed);
+        assertFalse(cache.load(changed, Collections.singletonMap("output", restored)));
+    }
+
+    @Test
+    public void testCleanupKeepsSizeUnderLimit() throws IOException {
+        LocalBuildCache cache = new LocalBuildCache(temporaryFolder.newFolder("cache"), 10);
+        File output = write(temporaryFolder.newFile("output"), "123456");
+
+        BuildCacheKey first = BuildCacheKey.builder("test").putInt(1).build();
+        BuildCacheKey second = BuildCacheKey.builder("test").putInt(2).build();
+        cache.store(first, Collections.singletonMap("output", output));
+        cache.store(second, Collections.singletonMap("output", output));
+        cache.cleanup();
+
+        // only one of the entries fits in the cache
+        File restored = new File(temporaryFolder.getRoot(), "restored");
+        boolean hasFirst = cache.load(first, Collections.singletonMap("output", restored));
+        boolean hasSecond = cache.load(second, Collections.singletonMap("output", restored));
+        assertTrue(hasFirst ^ hasSecond);
+    }
+
+    private static File write(File file, String contents) throws IOException {
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(contents);
+        return file;
+    }
+}
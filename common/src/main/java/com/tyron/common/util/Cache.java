@@ -5,13 +5,36 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires.
+ *
+ * <p>A cache may be bounded by a maximum weight, in which case the least recently used values
+ * are evicted when the total weight of the values exceeds it. The weight of a value is
+ * computed by a {@link Weigher} when it is loaded, by default every value weighs 1.
+ *
+ * <p>Checking whether a file has been modified requires a system call, the result of the check
+ * can be reused for a short interval so that looking up many keys of the same file only checks
+ * it once, see {@link #setModificationCheckInterval(long)}.
+ */
 public class Cache<K, V> {
+
+    /**
+     * Computes the weight of the values of a cache
+     */
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -34,67 +57,328 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * A value of the cache along with its key and the time it has been loaded
+     */
+    public static class Entry<K, V> {
+        public final Path file;
+        public final K key;
+        public final V value;
+        public final Instant created;
+
+        Entry(Path file, K key, V value, Instant created) {
+            this.file = file;
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+    }
+
     private class Value {
         final V value;
-        final Instant created = Instant.now();
+        final Instant created;
+        final long weight;
 
         Value(V value) {
+            this(value, Instant.now());
+        }
+
+        Value(V value, Instant created) {
             this.value = value;
+            this.created = created;
+            this.weight = weigher.weigh(value);
+        }
+    }
+
+    private static class FileState {
+        final Instant modified;
+        final long checked;
+
+        FileState(Instant modified, long checked) {
+            this.modified = modified;
+            this.checked = checked;
+        }
+    }
+
+    private final long maxWeight;
+    private final Weigher<? super V> weigher;
+
+    /**
+     * Values in access order, the least recently used first
+     */
+    private final LinkedHashMap<Key<K>, Value> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Set<Key<K>>> keysByFile = new HashMap<>();
+    private final Map<Path, FileState> fileStates = new HashMap<>();
+    private long modificationCheckInterval;
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a cache without a size limit
+     */
+    public Cache() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache that holds at most the given number of values
+     */
+    public Cache(long maxSize) {
+        this(maxSize, value -> 1);
+    }
+
+    /**
+     * Creates a cache whose values weigh at most the given weight in total
+     *
+     * @param maxWeight the maximum total weight of the values
+     * @param weigher computes the weight of a value, the weight must not change while
+     *                the value is in the cache
+     */
+    public Cache(long maxWeight, Weigher<? super V> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative");
         }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    /**
+     * Sets the interval in which the result of checking whether a file has been modified
+     * is reused, by default the file is checked on every call to {@link #needs(Path, Object)}.
+     * Modifications made within the interval after a check may not be noticed until the
+     * interval has elapsed.
+     */
+    public synchronized void setModificationCheckInterval(long millis) {
+        modificationCheckInterval = millis;
+        fileStates.clear();
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        keysByFile.clear();
+        fileStates.clear();
+        weight = 0;
     }
 
-    public boolean needs(Path file, K k) {
+    /**
+     * Checks whether the value has to be loaded, this does not modify the cache. Outdated
+     * values are only removed by {@link #getIfPresent(Path, Object)}.
+     */
+    public synchronized boolean needs(Path file, K k) {
         // If key is not in map, it needs to be loaded
-        Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
-
+        Value value = map.get(new Key<>(file, k));
         // If key was loaded before file was last modified, it needs to be reloaded
+        return value == null || value.created.isBefore(getLastModified(file));
+    }
+
+    /**
+     * Unlike calling {@link #needs(Path, Object)} and then {@link #get(Path, Object)}, the
+     * value cannot be evicted by another thread between the two calls.
+     *
+     * @return the value if it is in the cache and the file has not been modified since it
+     * was loaded, null otherwise
+     */
+    public synchronized V getIfPresent(Path file, K k) {
+        Key<K> key = new Key<>(file, k);
         Value value = map.get(key);
-        FileTime modified = null;
+        if (value == null) {
+            missCount++;
+            return null;
+        }
+
+        Instant modified = getLastModified(file);
+        if (value.created.isBefore(modified)) {
+            removeOutdated(file, modified);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return value.value;
+    }
+
+    private Instant getLastModified(Path file) {
+        long now = System.currentTimeMillis();
+        if (modificationCheckInterval > 0) {
+            FileState state = fileStates.get(file);
+            if (state != null && now - state.checked < modificationCheckInterval) {
+                return state.modified;
+            }
+        }
+        FileTime modified;
         try {
             modified = Files.getLastModifiedTime(file);
         } catch (IOException e) {
             modified = FileTime.from(Instant.now());
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
+        Instant instant = modified.toInstant();
+        if (modificationCheckInterval > 0) {
+            fileStates.put(file, new FileState(instant, now));
+        }
+        return instant;
+    }
+
+    /**
+     * Removes all the values of the file that have been loaded before it was modified
+     */
+    private void removeOutdated(Path file, Instant modified) {
+        Set<Key<K>> keys = keysByFile.get(file);
+        if (keys == null) {
+            return;
+        }
+        for (Key<K> key : new HashSet<>(keys)) {
+            Value value = map.get(key);
+            if (value != null && value.created.isBefore(modified)) {
+                removeKey(key);
+            }
+        }
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
         for (K k : keys) {
-            Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            removeKey(new Key<>(file, k));
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * Removes all the values associated with the file
+     */
+    public synchronized void remove(Path file) {
+        Set<Key<K>> keys = keysByFile.get(file);
+        if (keys != null) {
+            for (Key<K> key : new HashSet<>(keys)) {
+                removeKey(key);
+            }
+        }
+        fileStates.remove(file);
+    }
+
+    private void removeKey(Key<K> key) {
+        Value value = map.remove(key);
+        if (value == null) {
+            return;
+        }
+        weight -= value.weight;
+        Set<Key<K>> keys = keysByFile.get(key.file);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByFile.remove(key.file);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the keys of the cache
+     */
+    public synchronized Set<Key<K>> getKeys() {
+        return new HashSet<>(map.keySet());
     }
 
     public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
-        Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
+        put(new Key<>(file, k), new Value(v));
+    }
+
+    /**
+     * Loads a value that was created at the given time, used when restoring a cache
+     * that has been saved to disk.
+     */
+    public void load(Path file, K k, V v, Instant created) {
+        put(new Key<>(file, k), new Value(v, created));
+    }
+
+    private synchronized void put(Key<K> key, Value value) {
+        removeKey(key);
         map.put(key, value);
+        keysByFile.computeIfAbsent(key.file, f -> new HashSet<>()).add(key);
+        weight += value.weight;
+        evict();
     }
 
-    public V get(Path file, K k) {
+    private void evict() {
+        Iterator<Map.Entry<Key<K>, Value>> iterator = map.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Key<K>, Value> eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            Set<Key<K>> keys = keysByFile.get(eldest.getKey().file);
+            if (keys != null) {
+                keys.remove(eldest.getKey());
+                if (keys.isEmpty()) {
+                    keysByFile.remove(eldest.getKey().file);
+                }
+            }
+            evictionCount++;
+        }
+    }
+
+    /**
+     * @return a copy of the values of the cache taken at once, so that each key is returned
+     * with its value even if the cache is modified afterwards
+     */
+    public synchronized List<Entry<K, V>> getEntries() {
+        List<Entry<K, V>> entries = new ArrayList<>(map.size());
+        for (Map.Entry<Key<K>, Value> entry : map.entrySet()) {
+            Key<K> key = entry.getKey();
+            Value value = entry.getValue();
+            entries.add(new Entry<>(key.file, key.key, value.value, value.created));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the time the value has been loaded, or null if it is not in the cache
+     */
+    public synchronized Instant getCreated(Path file, K k) {
+        Value value = map.get(new Key<>(file, k));
+        return value == null ? null : value.created;
+    }
+
+    public synchronized V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) {
-            throw new IllegalArgumentException(k + " is not in map " + map);
+        Value value = map.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException(k + " is not in map " + map.keySet());
         }
-        return (V) map.get(key).value;
+        return value.value;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the total weight of the values in the cache
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of lookups where the value was valid
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups where the value was missing or outdated
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of values that have been removed because the cache was full
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+public class CacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        Path first = temporaryFolder.newFile("First.java").toPath();
+        Path second = temporaryFolder.newFile("Second.java").toPath();
+        Cache<String, String> cache = new Cache<>(10, String::length);
+
+        cache.load(first, "a", "aaaa");
+        cache.load(second, "b", "bbbb");
+        // first is now the most recently used
+        assertEquals("aaaa", cache.getIfPresent(first, "a"));
+
+        cache.load(second, "c", "cccc");
+        assertEquals(8, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.has(first, "a"));
+        assertFalse(cache.has(second, "b"));
+        assertTrue(cache.has(second, "c"));
+    }
+
+    @Test
+    public void testRemovesValuesOfModifiedFile() throws IOException {
+        Path file = temporaryFolder.newFile("Main.java").toPath();
+        Cache<String, Boolean> cache = new Cache<>();
+        Instant past = Instant.now().minusSeconds(60);
+        cache.load(file, "a", true, past);
+        cache.load(file, "b", true, past);
+
+        assertNull(cache.getIfPresent(file, "a"));
+        // the other values of the file are removed as well
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getMissCount());
+
+        cache.load(file, "a", true);
+        cache.load(file, "b", false);
+        assertEquals(Boolean.FALSE, cache.getIfPresent(file, "b"));
+        assertEquals(1, cache.getHitCount());
+
+        cache.remove(file);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+}
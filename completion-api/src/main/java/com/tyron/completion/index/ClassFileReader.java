@@ -0,0 +1,181 @@
+package com.tyron.completion.index;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimal class file reader that only reads what the {@link SymbolIndex} needs: the name
+ * of the class, its direct supertypes and the names of its accessible members. This is
+ * much cheaper than loading the class through javac since the method bodies and
+ * attributes are skipped entirely.
+ */
+class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private ClassFileReader() {
+
+    }
+
+    /**
+     * @param bytes The contents of a class file
+     * @return The symbol for this class, or null if the contents is not a valid class file
+     */
+    @Nullable
+    public static ClassSymbol read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            return null;
+        }
+        // minor and major version
+        in.skipBytes(4);
+
+        int poolCount = in.readUnsignedShort();
+        String[] utf8 = new String[poolCount];
+        int[] classNames = new int[poolCount];
+        for (int i = 1; i < poolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    // longs and doubles take up two slots in the constant pool
+                    i++;
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        // access flags
+        in.skipBytes(2);
+        String name = className(utf8, classNames, in.readUnsignedShort());
+        if (name == null) {
+            return null;
+        }
+        String superClass = className(utf8, classNames, in.readUnsignedShort());
+
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaces = interfaceCount == 0
+                ? Collections.emptyList()
+                : new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            String interfaceName = className(utf8, classNames, in.readUnsignedShort());
+            if (interfaceName != null) {
+                interfaces.add(interfaceName);
+            }
+        }
+
+        Set<String> members = new LinkedHashSet<>();
+        // fields, then methods
+        for (int kind = 0; kind < 2; kind++) {
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                int flags = in.readUnsignedShort();
+                String memberName = utf8[in.readUnsignedShort()];
+                // descriptor
+                in.skipBytes(2);
+                skipAttributes(in);
+
+                if ((flags & (ACC_PUBLIC | ACC_PROTECTED)) == 0
+                        || (flags & ACC_SYNTHETIC) != 0) {
+                    continue;
+                }
+                if (memberName == null || memberName.startsWith("<")) {
+                    continue;
+                }
+                members.add(memberName);
+            }
+        }
+
+        return new ClassSymbol(name, superClass, interfaces, new ArrayList<>(members));
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // attribute name
+            in.skipBytes(2);
+            int length = in.readInt();
+            skipFully(in, length);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    @Nullable
+    private static String className(String[] utf8, int[] classNames, int index) {
+        if (index <= 0 || index >= classNames.length) {
+            return null;
+        }
+        String internalName = utf8[classNames[index]];
+        if (internalName == null) {
+            return null;
+        }
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+}
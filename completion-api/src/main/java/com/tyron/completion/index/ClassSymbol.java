@@ -0,0 +1,88 @@
+package com.tyron.completion.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An entry of the {@link SymbolIndex}, describes a top level class along with
+ * its direct supertypes and the names of its accessible members.
+ */
+public class ClassSymbol {
+
+    private final String mQualifiedName;
+    private final String mSimpleName;
+    private final String mSuperClass;
+    private final List<String> mInterfaces;
+    private final List<String> mMembers;
+
+    public ClassSymbol(@NonNull String qualifiedName) {
+        this(qualifiedName, null, Collections.emptyList(), Collections.emptyList());
+    }
+
+    public ClassSymbol(@NonNull String qualifiedName,
+                       @Nullable String superClass,
+                       @NonNull List<String> interfaces,
+                       @NonNull List<String> members) {
+        mQualifiedName = qualifiedName;
+        mSimpleName = simpleName(qualifiedName);
+        mSuperClass = superClass;
+        mInterfaces = interfaces;
+        mMembers = members;
+    }
+
+    @NonNull
+    public String getQualifiedName() {
+        return mQualifiedName;
+    }
+
+    @NonNull
+    public String getSimpleName() {
+        return mSimpleName;
+    }
+
+    @NonNull
+    public String getPackageName() {
+        int index = mQualifiedName.lastIndexOf('.');
+        if (index == -1) {
+            return "";
+        }
+        return mQualifiedName.substring(0, index);
+    }
+
+    /**
+     * @return The fully qualified name of the super class, null if this class
+     * does not have one or it is not known (e.g. a source file that is not yet compiled)
+     */
+    @Nullable
+    public String getSuperClass() {
+        return mSuperClass;
+    }
+
+    /**
+     * @return The fully qualified names of the interfaces directly implemented by this class
+     */
+    @NonNull
+    public List<String> getInterfaces() {
+        return mInterfaces;
+    }
+
+    /**
+     * @return The names of the public and protected fields and methods declared in this class
+     */
+    @NonNull
+    public List<String> getMembers() {
+        return mMembers;
+    }
+
+    static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    @Override
+    public String toString() {
+        return mQualifiedName;
+    }
+}
@@ -0,0 +1,155 @@
+package com.tyron.completion.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A sorted, immutable portion of the {@link SymbolIndex}. Symbols are accessible through two
+ * orderings: by simple name (case insensitive) and by fully qualified name, so both
+ * class name completion and import completion can be answered with a binary search
+ * instead of a scan over every known class.
+ */
+abstract class IndexSegment {
+
+    /**
+     * The order of {@link #getSimpleName(int)}, simple names are compared ignoring case
+     * so a prefix typed in lower case still finds the class.
+     */
+    static final Comparator<ClassSymbol> SIMPLE_NAME_ORDER = (a, b) -> {
+        int result = lower(a.getSimpleName()).compareTo(lower(b.getSimpleName()));
+        if (result != 0) {
+            return result;
+        }
+        return a.getQualifiedName().compareTo(b.getQualifiedName());
+    };
+
+    static final Comparator<ClassSymbol> QUALIFIED_NAME_ORDER =
+            Comparator.comparing(ClassSymbol::getQualifiedName);
+
+    /**
+     * @return the number of symbols in this segment
+     */
+    abstract int size();
+
+    /**
+     * @return the simple name of the symbol at the given index of the simple name order
+     */
+    abstract String getSimpleName(int index);
+
+    /**
+     * @return the qualified name of the symbol at the given index of the simple name order
+     */
+    abstract String getQualifiedNameBySimpleOrder(int index);
+
+    /**
+     * @return the qualified name of the symbol at the given index of the qualified name order
+     */
+    abstract String getQualifiedName(int index);
+
+    /**
+     * @return the symbol at the given index of the qualified name order
+     */
+    abstract ClassSymbol getSymbol(int index);
+
+    /**
+     * Adds the qualified names of the classes whose simple name starts with the given prefix,
+     * ignoring case.
+     */
+    void findBySimpleNamePrefix(@NonNull String prefix, @NonNull List<String> result) {
+        String lowerPrefix = lower(prefix);
+        int size = size();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lower(getSimpleName(mid)).compareTo(lowerPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < size; i++) {
+            if (!lower(getSimpleName(i)).startsWith(lowerPrefix)) {
+                break;
+            }
+            result.add(getQualifiedNameBySimpleOrder(i));
+        }
+    }
+
+    /**
+     * Adds the qualified names of the classes whose simple name is exactly the given name.
+     */
+    void findBySimpleName(@NonNull String simpleName, @NonNull List<String> result) {
+        String lowerName = lower(simpleName);
+        int size = size();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lower(getSimpleName(mid)).compareTo(lowerName) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < size; i++) {
+            String name = getSimpleName(i);
+            if (!lower(name).equals(lowerName)) {
+                break;
+            }
+            if (name.equals(simpleName)) {
+                result.add(getQualifiedNameBySimpleOrder(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the qualified names that start with the given prefix, this is case sensitive.
+     */
+    void findByQualifiedNamePrefix(@NonNull String prefix, @NonNull List<String> result) {
+        int size = size();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getQualifiedName(mid).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < size; i++) {
+            String name = getQualifiedName(i);
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            result.add(name);
+        }
+    }
+
+    @Nullable
+    ClassSymbol findClass(@NonNull String qualifiedName) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = getQualifiedName(mid).compareTo(qualifiedName);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return getSymbol(mid);
+            }
+        }
+        return null;
+    }
+
+    static String lower(String string) {
+        return string.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,235 @@
+package com.tyron.completion.index;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index segment stored on disk and memory mapped when opened. Nothing is decoded
+ * up front, lookups binary search directly over the mapped file so opening an index of a
+ * library with tens of thousands of classes is effectively free.
+ *
+ * <p>File layout:
+ * <pre>
+ *     int magic
+ *     int version
+ *     int count
+ *     int[count] record offsets sorted by simple name
+ *     int[count] record offsets sorted by qualified name
+ *     records: simple name, qualified name, super class, interfaces, members
+ * </pre>
+ * Strings are stored as an unsigned short byte length followed by its UTF-8 bytes.
+ */
+class MappedIndexSegment extends IndexSegment {
+
+    private static final int MAGIC = 0x53594D49;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mRecordsStart;
+
+    private MappedIndexSegment(ByteBuffer buffer, int count) {
+        mBuffer = buffer;
+        mCount = count;
+        mRecordsStart = HEADER_SIZE + count * 8;
+    }
+
+    /**
+     * Opens a segment previously written with {@link #write(File, List)}
+     *
+     * @throws IOException if the file cannot be read, or it is corrupted or has been
+     *                     written by a different version of the index
+     */
+    @NonNull
+    static MappedIndexSegment open(@NonNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid index file size: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an index file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported index version: " + buffer.getInt(4));
+            }
+            int count = buffer.getInt(8);
+            long recordsStart = HEADER_SIZE + (long) count * 8;
+            if (count < 0 || recordsStart > size) {
+                throw new IOException("Corrupted index file: " + file);
+            }
+            for (int i = 0; i < count * 2; i++) {
+                int offset = buffer.getInt(HEADER_SIZE + i * 4);
+                if (offset < 0 || recordsStart + offset >= size) {
+                    throw new IOException("Corrupted index file: " + file);
+                }
+            }
+            return new MappedIndexSegment(buffer, count);
+        }
+    }
+
+    /**
+     * Writes the symbols into the given file, the file is first written to a temporary
+     * location and then renamed so a partially written index is never opened.
+     */
+    static void write(@NonNull File file, @NonNull List<ClassSymbol> symbols) throws IOException {
+        List<ClassSymbol> bySimpleName = new ArrayList<>(symbols);
+        bySimpleName.sort(SIMPLE_NAME_ORDER);
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        int[] simpleOffsets = new int[bySimpleName.size()];
+        for (int i = 0; i < bySimpleName.size(); i++) {
+            ClassSymbol symbol = bySimpleName.get(i);
+            simpleOffsets[i] = recordsOut.size();
+
+            writeString(recordsOut, symbol.getSimpleName());
+            writeString(recordsOut, symbol.getQualifiedName());
+            String superClass = symbol.getSuperClass();
+            writeString(recordsOut, superClass == null ? "" : superClass);
+            writeStrings(recordsOut, symbol.getInterfaces());
+            writeStrings(recordsOut, symbol.getMembers());
+        }
+        recordsOut.flush();
+
+        // the same records, ordered by their qualified name
+        Integer[] qualifiedOrder = new Integer[bySimpleName.size()];
+        for (int i = 0; i < qualifiedOrder.length; i++) {
+            qualifiedOrder[i] = i;
+        }
+        Arrays.sort(qualifiedOrder, (a, b) -> QUALIFIED_NAME_ORDER.compare(
+                bySimpleName.get(a), bySimpleName.get(b)));
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(simpleOffsets.length);
+            for (int offset : simpleOffsets) {
+                out.writeInt(offset);
+            }
+            for (Integer index : qualifiedOrder) {
+                out.writeInt(simpleOffsets[index]);
+            }
+            records.writeTo(out);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete old index " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save index " + file);
+        }
+    }
+
+    @Override
+    int size() {
+        return mCount;
+    }
+
+    @Override
+    String getSimpleName(int index) {
+        return readString(simpleRecord(index));
+    }
+
+    @Override
+    String getQualifiedNameBySimpleOrder(int index) {
+        int position = simpleRecord(index);
+        return readString(skipString(position));
+    }
+
+    @Override
+    String getQualifiedName(int index) {
+        return readString(skipString(qualifiedRecord(index)));
+    }
+
+    @Override
+    ClassSymbol getSymbol(int index) {
+        int position = skipString(qualifiedRecord(index));
+        String qualifiedName = readString(position);
+        position = skipString(position);
+        String superClass = readString(position);
+        position = skipString(position);
+
+        List<String> interfaces = new ArrayList<>();
+        position = readStrings(position, interfaces);
+        List<String> members = new ArrayList<>();
+        readStrings(position, members);
+
+        return new ClassSymbol(qualifiedName,
+                superClass.isEmpty() ? null : superClass,
+                interfaces.isEmpty() ? Collections.emptyList() : interfaces,
+                members.isEmpty() ? Collections.emptyList() : members);
+    }
+
+    private int simpleRecord(int index) {
+        return mRecordsStart + mBuffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    private int qualifiedRecord(int index) {
+        return mRecordsStart + mBuffer.getInt(HEADER_SIZE + (mCount + index) * 4);
+    }
+
+    private String readString(int position) {
+        int length = mBuffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = mBuffer.duplicate();
+        duplicate.position(position + 2);
+        duplicate.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int skipString(int position) {
+        return position + 2 + (mBuffer.getShort(position) & 0xFFFF);
+    }
+
+    private int readStrings(int position, List<String> result) {
+        int count = mBuffer.getShort(position) & 0xFFFF;
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            result.add(readString(position));
+            position = skipString(position);
+        }
+        return position;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long: " + string.substring(0, 64));
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings)
+            throws IOException {
+        int count = Math.min(strings.size(), 0xFFFF);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            writeString(out, strings.get(i));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tyron.completion.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An index segment that lives entirely in memory, used for the source files of a project
+ * since they change often and are cheap to index.
+ */
+class MemoryIndexSegment extends IndexSegment {
+
+    private final ClassSymbol[] mBySimpleName;
+    private final ClassSymbol[] mByQualifiedName;
+
+    MemoryIndexSegment(Collection<ClassSymbol> symbols) {
+        mBySimpleName = symbols.toArray(new ClassSymbol[0]);
+        mByQualifiedName = mBySimpleName.clone();
+        Arrays.sort(mBySimpleName, SIMPLE_NAME_ORDER);
+        Arrays.sort(mByQualifiedName, QUALIFIED_NAME_ORDER);
+    }
+
+    @Override
+    int size() {
+        return mBySimpleName.length;
+    }
+
+    @Override
+    String getSimpleName(int index) {
+        return mBySimpleName[index].getSimpleName();
+    }
+
+    @Override
+    String getQualifiedNameBySimpleOrder(int index) {
+        return mBySimpleName[index].getQualifiedName();
+    }
+
+    @Override
+    String getQualifiedName(int index) {
+        return mByQualifiedName[index].getQualifiedName();
+    }
+
+    @Override
+    ClassSymbol getSymbol(int index) {
+        return mByQualifiedName[index];
+    }
+}
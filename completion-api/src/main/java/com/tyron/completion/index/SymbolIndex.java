@@ -0,0 +1,342 @@
+package com.tyron.completion.index;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.KotlinModule;
+import com.tyron.builder.project.api.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Project wide index of the top level classes from the source files, the libraries and the
+ * bootstrap class path of a module and its dependencies.
+ *
+ * <p>Each library jar is indexed once and saved on disk keyed by its path, size and last
+ * modified time. Reopening a project only memory maps the saved index files, and only jars
+ * that have been added or changed since then are read again. Source files are indexed in
+ * memory since they are cheap to list and change often.
+ *
+ * <p>Only the classes of the libraries record their supertypes and members. The classes of
+ * the source files only record their names, since their members change with every edit; they
+ * are resolved by the compiler instead.
+ */
+public class SymbolIndex {
+
+    private static final String TAG = SymbolIndex.class.getSimpleName();
+    private static final String INDEX_EXTENSION = ".idx";
+
+    private final File mIndexDirectory;
+
+    private volatile Map<File, IndexSegment> mLibrarySegments = Collections.emptyMap();
+    private final Map<File, String> mLibraryFingerprints = new LinkedHashMap<>();
+    private volatile IndexSegment mSourceSegment =
+            new MemoryIndexSegment(Collections.emptyList());
+    private int mSourceCount = -1;
+    private int mSourceHash;
+
+    private volatile Set<String> mAllClassNames;
+
+    public SymbolIndex(@NonNull File indexDirectory) {
+        mIndexDirectory = indexDirectory;
+    }
+
+    /**
+     * Updates the index with the current state of the module and its dependencies.
+     *
+     * @param checkModified whether libraries that are already indexed should be checked if they
+     *                      have been modified, otherwise only added and removed libraries are
+     *                      detected
+     */
+    public synchronized void update(@Nullable Project project,
+                                    @NonNull JavaModule module,
+                                    boolean checkModified) {
+        List<Module> modules = new ArrayList<>();
+        if (project != null) {
+            modules.addAll(project.getDependencies(module));
+        }
+        if (!modules.contains(module)) {
+            modules.add(module);
+        }
+
+        Set<File> libraries = new LinkedHashSet<>();
+        List<Collection<String>> sources = new ArrayList<>();
+        for (Module dependency : modules) {
+            if (dependency instanceof JavaModule) {
+                JavaModule javaModule = (JavaModule) dependency;
+                sources.add(javaModule.getJavaFiles().keySet());
+                libraries.addAll(javaModule.getLibraries());
+
+                File bootstrap = javaModule.getBootstrapJarFile();
+                if (bootstrap != null && bootstrap.exists()) {
+                    libraries.add(bootstrap);
+                }
+            }
+            if (dependency instanceof KotlinModule) {
+                sources.add(((KotlinModule) dependency).getKotlinFiles().keySet());
+            }
+        }
+
+        indexSources(sources);
+        indexLibraries(libraries, checkModified);
+    }
+
+    private void indexSources(List<Collection<String>> sources) {
+        int count = 0;
+        int hash = 0;
+        for (Collection<String> names : sources) {
+            count += names.size();
+            // String caches its hash code, so this does not rehash every name
+            hash = 31 * hash + names.hashCode();
+        }
+        if (count == mSourceCount && hash == mSourceHash) {
+            return;
+        }
+
+        Map<String, ClassSymbol> symbols = new LinkedHashMap<>();
+        for (Collection<String> names : sources) {
+            for (String name : names) {
+                symbols.put(name, new ClassSymbol(name));
+            }
+        }
+        mSourceSegment = new MemoryIndexSegment(symbols.values());
+        mSourceCount = count;
+        mSourceHash = hash;
+        mAllClassNames = null;
+    }
+
+    private void indexLibraries(Set<File> libraries, boolean checkModified) {
+        Map<File, IndexSegment> current = mLibrarySegments;
+        if (!checkModified && current.keySet().equals(libraries)) {
+            return;
+        }
+
+        Map<File, IndexSegment> segments = new LinkedHashMap<>();
+        Set<String> usedIndexFiles = new LinkedHashSet<>();
+        for (File library : libraries) {
+            String fingerprint = fingerprint(library);
+            usedIndexFiles.add(fingerprint + INDEX_EXTENSION);
+
+            IndexSegment existing = current.get(library);
+            if (existing != null && fingerprint.equals(mLibraryFingerprints.get(library))) {
+                segments.put(library, existing);
+                continue;
+            }
+
+            IndexSegment segment = openOrIndex(library, fingerprint);
+            if (segment != null) {
+                segments.put(library, segment);
+                mLibraryFingerprints.put(library, fingerprint);
+            }
+        }
+        mLibraryFingerprints.keySet().retainAll(segments.keySet());
+        mLibrarySegments = Collections.unmodifiableMap(segments);
+        mAllClassNames = null;
+
+        deleteUnusedIndexFiles(usedIndexFiles);
+    }
+
+    @Nullable
+    private IndexSegment openOrIndex(File library, String fingerprint) {
+        File indexFile = new File(mIndexDirectory, fingerprint + INDEX_EXTENSION);
+        if (indexFile.exists()) {
+            try {
+                return MappedIndexSegment.open(indexFile);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Index of " + library.getName() + " is corrupted, re-indexing", e);
+                //noinspection ResultOfMethodCallIgnored
+                indexFile.delete();
+            }
+        }
+
+        List<ClassSymbol> symbols;
+        try {
+            symbols = readLibrary(library);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to index " + library, e);
+            return null;
+        }
+
+        try {
+            MappedIndexSegment.write(indexFile, symbols);
+            return MappedIndexSegment.open(indexFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save index of " + library.getName(), e);
+            // still usable for this session
+            return new MemoryIndexSegment(symbols);
+        }
+    }
+
+    private List<ClassSymbol> readLibrary(File library) throws IOException {
+        List<ClassSymbol> symbols = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(library)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                // only top level classes are indexed
+                if (name.contains("$")
+                        || name.endsWith("module-info.class")
+                        || name.endsWith("package-info.class")) {
+                    continue;
+                }
+
+                String qualifiedName = name.substring(0, name.length() - ".class".length())
+                        .replace('/', '.');
+                ClassSymbol symbol = null;
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    symbol = ClassFileReader.read(ByteStreams.toByteArray(inputStream));
+                } catch (IOException | RuntimeException e) {
+                    // malformed class file, only its name will be indexed
+                }
+                if (symbol == null || !qualifiedName.equals(symbol.getQualifiedName())) {
+                    symbol = new ClassSymbol(qualifiedName);
+                }
+                symbols.add(symbol);
+            }
+        }
+        return symbols;
+    }
+
+    private void deleteUnusedIndexFiles(Set<String> usedIndexFiles) {
+        File[] files = mIndexDirectory.listFiles((dir, name) -> name.endsWith(INDEX_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!usedIndexFiles.contains(file.getName())) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static String fingerprint(File library) {
+        String key = library.getAbsolutePath() + ":" + library.length() + ":"
+                + library.lastModified();
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    private List<IndexSegment> segments() {
+        List<IndexSegment> segments = new ArrayList<>();
+        segments.add(mSourceSegment);
+        segments.addAll(mLibrarySegments.values());
+        return segments;
+    }
+
+    /**
+     * @param prefix the start of the simple name of the class, this is case insensitive
+     * @return the fully qualified names of the classes whose simple name starts with the prefix
+     */
+    @NonNull
+    public List<String> findClassesBySimpleNamePrefix(@NonNull String prefix) {
+        List<String> result = new ArrayList<>();
+        for (IndexSegment segment : segments()) {
+            segment.findBySimpleNamePrefix(prefix, result);
+        }
+        return distinct(result);
+    }
+
+    /**
+     * @param simpleName the exact simple name of the class
+     * @return the fully qualified names of the classes with this simple name
+     */
+    @NonNull
+    public List<String> findClassesBySimpleName(@NonNull String simpleName) {
+        List<String> result = new ArrayList<>();
+        for (IndexSegment segment : segments()) {
+            segment.findBySimpleName(simpleName, result);
+        }
+        return distinct(result);
+    }
+
+    /**
+     * @param prefix the start of the fully qualified name, e.g. {@code android.widget.}
+     * @return the fully qualified names of the classes that start with the prefix
+     */
+    @NonNull
+    public List<String> findClassesByQualifiedNamePrefix(@NonNull String prefix) {
+        List<String> result = new ArrayList<>();
+        for (IndexSegment segment : segments()) {
+            segment.findByQualifiedNamePrefix(prefix, result);
+        }
+        return distinct(result);
+    }
+
+    /**
+     * @return the symbol of the class, classes from libraries are preferred since they
+     * contain the supertypes and members of the class
+     */
+    @Nullable
+    public ClassSymbol getClass(@NonNull String qualifiedName) {
+        for (IndexSegment segment : mLibrarySegments.values()) {
+            ClassSymbol symbol = segment.findClass(qualifiedName);
+            if (symbol != null) {
+                return symbol;
+            }
+        }
+        return mSourceSegment.findClass(qualifiedName);
+    }
+
+    /**
+     * @return the fully qualified names of all the indexed classes
+     */
+    @NonNull
+    public Set<String> getAllClassNames() {
+        Set<String> names = mAllClassNames;
+        if (names != null) {
+            return names;
+        }
+
+        IndexSegment sourceSegment = mSourceSegment;
+        Map<File, IndexSegment> librarySegments = mLibrarySegments;
+        List<IndexSegment> segments = new ArrayList<>();
+        segments.add(sourceSegment);
+        segments.addAll(librarySegments.values());
+
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (IndexSegment segment : segments) {
+            for (int i = 0; i < segment.size(); i++) {
+                builder.add(segment.getQualifiedName(i));
+            }
+        }
+        names = builder.build();
+        // don't cache the names if the index has been updated in the meantime
+        if (sourceSegment == mSourceSegment && librarySegments == mLibrarySegments) {
+            mAllClassNames = names;
+        }
+        return names;
+    }
+
+    private static List<String> distinct(List<String> names) {
+        if (names.size() < 2) {
+            return names;
+        }
+        return new ArrayList<>(new LinkedHashSet<>(names));
+    }
+}
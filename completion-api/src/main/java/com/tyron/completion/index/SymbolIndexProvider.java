@@ -0,0 +1,85 @@
+package com.tyron.completion.index;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.Module;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the {@link SymbolIndex} of a module, the index files are stored in the build
+ * directory of the module so they are reused when the project is opened again.
+ *
+ * <p>Querying an index does not check the source files and the libraries of the module, the
+ * indices are updated by {@link #index(Project, Module)} when the project is opened and on the
+ * first query after {@link #invalidate()}.
+ */
+public class SymbolIndexProvider extends CompilerProvider<SymbolIndex> {
+
+    public static final String KEY = SymbolIndexProvider.class.getSimpleName();
+
+    private final Map<Module, SymbolIndex> mIndices = new HashMap<>();
+    /**
+     * The modules whose index has been updated since the last change
+     */
+    private final Set<Module> mUpToDate = new HashSet<>();
+
+    /**
+     * Returns the index of the module, it is only updated if the module has not been indexed
+     * yet or {@link #invalidate()} has been called since. Only libraries that have been added
+     * or removed are indexed then, use {@link #index(Project, Module)} to also check for
+     * libraries that have been modified.
+     */
+    @Override
+    public synchronized SymbolIndex get(Project project, Module module) {
+        if (!(module instanceof JavaModule)) {
+            return null;
+        }
+        SymbolIndex index = getOrCreate(module);
+        if (mUpToDate.add(module)) {
+            index.update(project, (JavaModule) module, false);
+        }
+        return index;
+    }
+
+    /**
+     * Fully updates the index of the module, this should be called when the project is opened
+     */
+    public synchronized SymbolIndex index(Project project, Module module) {
+        if (!(module instanceof JavaModule)) {
+            return null;
+        }
+        SymbolIndex index = getOrCreate(module);
+        index.update(project, (JavaModule) module, true);
+        mUpToDate.add(module);
+        return index;
+    }
+
+    /**
+     * Marks the indices as outdated, this should be called when source files are added or
+     * removed and when a build has finished since it may have changed the libraries. The
+     * indices are updated on their next query.
+     */
+    public synchronized void invalidate() {
+        mUpToDate.clear();
+    }
+
+    private SymbolIndex getOrCreate(Module module) {
+        SymbolIndex index = mIndices.get(module);
+        if (index == null) {
+            File directory = new File(module.getBuildDirectory(), "intermediate/index");
+            index = new SymbolIndex(directory);
+            mIndices.put(module, index);
+        }
+        return index;
+    }
+
+    public synchronized void clear() {
+        mIndices.clear();
+        mUpToDate.clear();
+    }
+}
@@ -1,6 +1,7 @@
 package com.tyron.completion.model;
 
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.util.CompletionRanker;
 
 import java.io.File;
 
@@ -10,6 +11,7 @@ public class CachedCompletion {
     private final int column;
     private final String prefix;
     private final CompletionList completionList;
+    private CompletionRanker ranker;
 
     public CachedCompletion(File file, int line, int column, String prefix, CompletionList completionList) {
         this.file = file;
@@ -38,4 +40,15 @@ public class CachedCompletion {
     public CompletionList getCompletionList() {
         return completionList;
     }
+
+    /**
+     * @return the ranker of the items of the cached list, it keeps the scores of the items
+     * so they are not computed again while the prefix is being extended
+     */
+    public synchronized CompletionRanker getRanker() {
+        if (ranker == null) {
+            ranker = new CompletionRanker(completionList.items);
+        }
+        return ranker;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package com.tyron.completion.util;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.completion.model.CompletionItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranks completion items by how well their names match the prefix typed by the user.
+ *
+ * <p>Each item is scored once per prefix with {@link #score(String, String)}. When the prefix
+ * is extended, items that did not match the previous prefix cannot match the new one either,
+ * so they keep their score and only the matching items are scored again. The best items are
+ * selected with a bounded heap instead of sorting the whole list.
+ */
+public class CompletionRanker {
+
+    /**
+     * The score of an item whose name does not contain the characters of the prefix
+     */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final int EXACT_PREFIX = 4;
+    private static final int PREFIX = 3;
+    private static final int CAMEL_CASE = 2;
+    private static final int SUBSEQUENCE = 1;
+    private static final int MAX_LENGTH_PENALTY = 999;
+
+    private final List<CompletionItem> mItems;
+    private final String[] mNames;
+    private final int[] mScores;
+    private String mPrefix;
+
+    public CompletionRanker(@NonNull List<CompletionItem> items) {
+        mItems = new ArrayList<>(items);
+        mNames = new String[mItems.size()];
+        for (int i = 0; i < mNames.length; i++) {
+            mNames[i] = getName(mItems.get(i));
+        }
+        mScores = new int[mNames.length];
+    }
+
+    /**
+     * Returns the items with the best scores for the prefix, the best first. Items that do
+     * not match the prefix are placed after the items that match in their original order.
+     *
+     * @param prefix the text typed by the user
+     * @param limit the maximum number of items to return
+     */
+    @NonNull
+    public synchronized List<CompletionItem> rank(@NonNull String prefix, int limit) {
+        boolean extended = mPrefix != null && prefix.startsWith(mPrefix);
+        for (int i = 0; i < mScores.length; i++) {
+            if (extended && mScores[i] == NO_MATCH) {
+                continue;
+            }
+            mScores[i] = score(mNames[i], prefix);
+        }
+        mPrefix = prefix;
+        return select(limit);
+    }
+
+    private List<CompletionItem> select(int limit) {
+        if (limit <= 0 || mItems.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int count = Math.min(limit, mItems.size());
+        // the worst of the selected items is at the head of the queue
+        PriorityQueue<Integer> queue = new PriorityQueue<>(count, (a, b) -> compare(b, a));
+        for (int i = 0; i < mScores.length; i++) {
+            if (queue.size() < count) {
+                queue.add(i);
+            } else if (compare(i, queue.peek()) < 0) {
+                queue.poll();
+                queue.add(i);
+            }
+        }
+        Integer[] indices = queue.toArray(new Integer[0]);
+        Arrays.sort(indices, this::compare);
+        List<CompletionItem> result = new ArrayList<>(indices.length);
+        for (Integer index : indices) {
+            result.add(mItems.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Orders by descending score, then by the original order of the items
+     */
+    private int compare(int a, int b) {
+        int result = Integer.compare(mScores[b], mScores[a]);
+        if (result != 0) {
+            return result;
+        }
+        return Integer.compare(a, b);
+    }
+
+    /**
+     * Scores how well the name matches the prefix, a higher score is a better match. From the
+     * best to the worst, the name may start with the prefix, start with the prefix ignoring
+     * case, match the prefix by the starts of its camel case words (e.g. {@code fVBI} for
+     * {@code findViewById}) or contain the characters of the prefix in order. Shorter names
+     * are preferred within the same kind of match.
+     *
+     * @return the score, or {@link #NO_MATCH} if the name does not match the prefix
+     */
+    public static int score(@NonNull String name, @NonNull String prefix) {
+        int kind;
+        if (name.startsWith(prefix)) {
+            kind = EXACT_PREFIX;
+        } else if (name.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            kind = PREFIX;
+        } else if (matchesCamelCase(name, prefix)) {
+            kind = CAMEL_CASE;
+        } else if (isSubsequence(name, prefix)) {
+            kind = SUBSEQUENCE;
+        } else {
+            return NO_MATCH;
+        }
+        int penalty = Math.min(name.length() - prefix.length(), MAX_LENGTH_PENALTY);
+        return kind * (MAX_LENGTH_PENALTY + 1) - Math.max(penalty, 0);
+    }
+
+    /**
+     * Each character of the prefix must either continue the current word of the name or
+     * start one of the following words, the first character must match the first word.
+     */
+    private static boolean matchesCamelCase(String name, String prefix) {
+        if (prefix.isEmpty()) {
+            return true;
+        }
+        if (name.isEmpty() || !equalsIgnoreCase(name.charAt(0), prefix.charAt(0))) {
+            return false;
+        }
+        int i = 1;
+        for (int j = 1; j < prefix.length(); j++) {
+            char c = prefix.charAt(j);
+            if (i < name.length() && equalsIgnoreCase(name.charAt(i), c)
+                    && !(Character.isUpperCase(c) && !isWordStart(name, i))) {
+                i++;
+                continue;
+            }
+            // find the next word that starts with the character
+            while (i < name.length()
+                    && !(isWordStart(name, i) && equalsIgnoreCase(name.charAt(i), c))) {
+                i++;
+            }
+            if (i == name.length()) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    private static boolean isWordStart(String name, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char c = name.charAt(index);
+        char previous = name.charAt(index - 1);
+        if (previous == '_' || previous == '$') {
+            return c != '_' && c != '$';
+        }
+        if (Character.isUpperCase(c)) {
+            // the start of a word, or the last letter of an acronym before a new word
+            return !Character.isUpperCase(previous)
+                    || (index + 1 < name.length() && Character.isLowerCase(name.charAt(index + 1)));
+        }
+        return Character.isDigit(c) && !Character.isDigit(previous);
+    }
+
+    private static boolean isSubsequence(String name, String prefix) {
+        int i = 0;
+        for (int j = 0; j < prefix.length(); j++) {
+            char c = prefix.charAt(j);
+            while (i < name.length() && !equalsIgnoreCase(name.charAt(i), c)) {
+                i++;
+            }
+            if (i == name.length()) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    /**
+     * @return the label of the item without the parameters of methods
+     */
+    private static String getName(CompletionItem item) {
+        String label = item.label;
+        if (label == null) {
+            return "";
+        }
+        int index = label.indexOf('(');
+        return index == -1 ? label : label.substring(0, index);
+    }
+}
@@ -0,0 +1,110 @@
+package com.tyron.completion.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IndexSegmentTest {
+
+    private static final int HEADER_COUNT_OFFSET = 8;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<ClassSymbol> symbols() {
+        return Arrays.asList(
+                new ClassSymbol("android.view.View", "java.lang.Object",
+                        Collections.singletonList("android.graphics.drawable.Drawable.Callback"),
+                        Arrays.asList("setOnClickListener", "getId")),
+                new ClassSymbol("android.view.ViewGroup", "android.view.View",
+                        Collections.emptyList(), Collections.singletonList("addView")),
+                new ClassSymbol("android.widget.TextView"),
+                new ClassSymbol("com.example.View"),
+                new ClassSymbol("java.util.ArrayList"));
+    }
+
+    @Test
+    public void testMemorySegment() {
+        assertQueries(new MemoryIndexSegment(symbols()));
+    }
+
+    @Test
+    public void testMappedSegment() throws IOException {
+        File file = new File(mFolder.getRoot(), "test.idx");
+        MappedIndexSegment.write(file, symbols());
+        MappedIndexSegment segment = MappedIndexSegment.open(file);
+        assertQueries(segment);
+
+        ClassSymbol view = segment.findClass("android.view.View");
+        assertNotNull(view);
+        assertEquals("java.lang.Object", view.getSuperClass());
+        assertEquals(Collections.singletonList("android.graphics.drawable.Drawable.Callback"),
+                view.getInterfaces());
+        assertEquals(Arrays.asList("setOnClickListener", "getId"), view.getMembers());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedSegment() throws IOException {
+        File file = new File(mFolder.getRoot(), "corrupted.idx");
+        MappedIndexSegment.write(file, symbols());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+            raf.seek(HEADER_COUNT_OFFSET);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        MappedIndexSegment.open(file);
+    }
+
+    @Test
+    public void testReadClassFile() throws IOException {
+        byte[] bytes;
+        try (InputStream stream = IndexSegmentTest.class
+                .getResourceAsStream("IndexSegmentTest.class")) {
+            assertNotNull(stream);
+            bytes = ByteStreams.toByteArray(stream);
+        }
+        ClassSymbol symbol = ClassFileReader.read(bytes);
+        assertNotNull(symbol);
+        assertEquals(IndexSegmentTest.class.getName(), symbol.getQualifiedName());
+        assertEquals("java.lang.Object", symbol.getSuperClass());
+        assertTrue(symbol.getMembers().contains("testReadClassFile"));
+        // private members are not indexed
+        assertFalse(symbol.getMembers().contains("symbols"));
+    }
+
+    private static void assertQueries(IndexSegment segment) {
+        List<String> result = new ArrayList<>();
+        segment.findBySimpleNamePrefix("vie", result);
+        assertEquals(Arrays.asList("android.view.View", "com.example.View",
+                "android.view.ViewGroup"), result);
+
+        result.clear();
+        segment.findBySimpleName("View", result);
+        assertEquals(Arrays.asList("android.view.View", "com.example.View"), result);
+
+        result.clear();
+        segment.findByQualifiedNamePrefix("android.", result);
+        assertEquals(Arrays.asList("android.view.View", "android.view.ViewGroup",
+                "android.widget.TextView"), result);
+
+        assertNotNull(segment.findClass("java.util.ArrayList"));
+        assertNull(segment.findClass("java.util.List"));
+    }
+}
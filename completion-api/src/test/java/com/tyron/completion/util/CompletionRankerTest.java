@@ -0,0 +1,63 @@
+package com.tyron.completion.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.model.CompletionItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompletionRankerTest {
+
+    private static List<CompletionItem> items(String... labels) {
+        List<CompletionItem> items = new ArrayList<>();
+        for (String label : labels) {
+            items.add(new CompletionItem(label));
+        }
+        return items;
+    }
+
+    private static List<String> labels(List<CompletionItem> items) {
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : items) {
+            labels.add(item.label);
+        }
+        return labels;
+    }
+
+    @Test
+    public void testScore() {
+        assertEquals(CompletionRanker.NO_MATCH, CompletionRanker.score("getId", "xyz"));
+        assertTrue(CompletionRanker.score("findViewById", "fVBI") != CompletionRanker.NO_MATCH);
+        assertTrue(CompletionRanker.score("getId", "get")
+                > CompletionRanker.score("getId", "GET"));
+        assertTrue(CompletionRanker.score("getId", "GET")
+                > CompletionRanker.score("setGetter", "sG"));
+        assertTrue(CompletionRanker.score("setGetter", "sG")
+                > CompletionRanker.score("setGetter", "etr"));
+        // shorter names first
+        assertTrue(CompletionRanker.score("getId", "get")
+                > CompletionRanker.score("getIdentifier", "get"));
+    }
+
+    @Test
+    public void testRank() {
+        CompletionRanker ranker = new CompletionRanker(items("setOnClickListener(listener)",
+                "getId()", "getIdentifier()", "findViewById(id)", "setId(id)"));
+
+        assertEquals(Arrays.asList("getId()", "getIdentifier()"),
+                labels(ranker.rank("getI", 2)));
+        assertEquals(Arrays.asList("setId(id)", "setOnClickListener(listener)"),
+                labels(ranker.rank("set", 2)));
+        assertEquals("findViewById(id)", ranker.rank("fVB", 1).get(0).label);
+
+        // extending the prefix keeps the items that do not match at the end
+        assertEquals(Arrays.asList("setOnClickListener(listener)", "getId()",
+                "getIdentifier()", "findViewById(id)", "setId(id)"),
+                labels(ranker.rank("setOnC", 10)));
+    }
+}
@@ -2,26 +2,55 @@ package com.tyron.resolver;
 
 import android.text.TextUtils;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.RepositoryManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DependencyResolver {
 
+    /**
+     * The maximum number of POM files that are retrieved at the same time
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 8;
+
     private final RepositoryManager repository;
     private final Map<Pom, String> resolvedPoms;
 
     private ResolveListener mListener;
 
+    /**
+     * A POM reached through a dependency declaration. The POM files are shared by every
+     * resolution, so the exclusions of the path that led to a POM are kept here instead.
+     */
+    private static class Node {
+
+        private final Pom mPom;
+        private final List<Dependency> mExcludes;
+        private final boolean mUserDefined;
+
+        private Node(Pom pom, List<Dependency> excludes, boolean userDefined) {
+            mPom = pom;
+            mExcludes = excludes;
+            mUserDefined = userDefined;
+        }
+    }
+
     public DependencyResolver(RepositoryManager repository) {
         this.repository = repository;
-        this.resolvedPoms = new HashMap<>();
+        this.resolvedPoms = new LinkedHashMap<>();
     }
 
     public void setResolveListener(ResolveListener listener) {
@@ -35,96 +64,153 @@ public class DependencyResolver {
     }
 
     public List<Pom> resolveDependencies(List<Dependency> declaredDependencies) {
-        List<Pom> poms = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
         for (Dependency dependency : declaredDependencies) {
             if (mListener != null) {
                 mListener.onResolve("Getting POM: " + dependency);
             }
             Pom pom = repository.getPom(dependency.toString());
             if (pom != null) {
-                pom.setExcludes(dependency.getExcludes());
-                pom.setUserDefined(true);
-                poms.add(pom);
+                nodes.add(new Node(pom, dependency.getExcludes(), true));
             } else {
                 if (mListener != null) {
                     mListener.onFailure("Unable to retrieve POM of " + dependency);
                 }
             }
         }
-        return resolve(poms);
+        return resolveNodes(nodes);
     }
 
     /**
      * Resolve the list of given dependencies, prioritizing the latest versions of
-     * the conflicting libraries
+     * the conflicting libraries.
+     *
+     * <p>The dependency tree is resolved level by level, the POM files of the dependencies
+     * of a level are retrieved concurrently and are then processed in the order they are
+     * declared so the result does not depend on which download finishes first.
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
+        List<Node> nodes = new ArrayList<>();
         for (Pom pom : declaredDependencies) {
-            resolve(pom);
+            nodes.add(new Node(pom, pom.getExcludes(), pom.isUserDefined()));
         }
-        return new ArrayList<>(resolvedPoms.keySet());
+        return resolveNodes(nodes);
     }
 
-    private void resolve(Pom pom) {
-        if (resolvedPoms.containsKey(pom)) {
-            if (pom.isUserDefined()) {
-                resolvedPoms.remove(pom);
-            } else {
-                String resolvedVersion = resolvedPoms.get(pom);
-                String thisVersion = pom.getVersionName();
-                int result = getHigherVersion(resolvedVersion, thisVersion);
-                if (result == 0) {
-                    return;
-                }
-                if (result > 0) {
-                    return;
-                } else {
-                    resolvedPoms.remove(pom);
-                }
+    private List<Pom> resolveNodes(List<Node> declaredDependencies) {
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+        try {
+            List<Node> level = new ArrayList<>(declaredDependencies);
+            while (!level.isEmpty()) {
+                level = resolveLevel(level, executor);
             }
+        } finally {
+            executor.shutdownNow();
+            repository.saveIndex();
         }
+        return new ArrayList<>(resolvedPoms.keySet());
+    }
 
-        if (mListener != null) {
-            mListener.onResolve("Resolving " + pom);
-        }
-
-        List<Dependency> excludes = pom.getExcludes();
-
-        for (Dependency dependency : pom.getDependencies()) {
-            if ("test".equals(dependency.getScope())) {
+    /**
+     * Selects the POM files of the given level and retrieves their dependencies
+     *
+     * @return the dependencies of the selected POM files, which form the next level
+     */
+    private List<Node> resolveLevel(List<Node> level, ExecutorService executor) {
+        Map<String, Future<Pom>> requests = new HashMap<>();
+        List<Node> parents = new ArrayList<>();
+        List<Dependency> dependencies = new ArrayList<>();
+        for (Node node : level) {
+            if (!select(node)) {
                 continue;
             }
-
-            boolean excluded = excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
-                if (!ex.getGroupId().equals(dependency.getGroupId())) {
-                    return false;
+            if (mListener != null) {
+                mListener.onResolve("Resolving " + node.mPom);
+            }
+            for (Dependency dependency : node.mPom.getDependencies()) {
+                if ("test".equals(dependency.getScope())) {
+                    continue;
                 }
-                if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
-                    return false;
+                if (isExcluded(node.mExcludes, dependency)) {
+                    continue;
                 }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
-                    return true;
+                String declaration = dependency.toString();
+                if (!requests.containsKey(declaration)) {
+                    requests.put(declaration,
+                            executor.submit(() -> repository.getPom(declaration)));
                 }
-                return ex.getVersionName().equals(dependency.getVersionName());
-            });
-
-            if (excluded) {
-                continue;
+                parents.add(node);
+                dependencies.add(dependency);
             }
+        }
 
-            Pom resolvedPom = repository.getPom(dependency.toString());
+        List<Node> nextLevel = new ArrayList<>();
+        for (int i = 0; i < dependencies.size(); i++) {
+            Node parent = parents.get(i);
+            Dependency dependency = dependencies.get(i);
+            Pom resolvedPom = getResult(requests.get(dependency.toString()));
             if (resolvedPom == null) {
                 if (mListener != null) {
                     mListener.onFailure("Failed to resolve " + dependency);
                 }
                 continue;
             }
-            if (!resolvedPom.equals(pom)) {
-                resolvedPom.addExcludes(excludes);
-                resolve(resolvedPom);
+            if (!resolvedPom.equals(parent.mPom)) {
+                // the exclusions of the parent also apply to the dependencies of this POM
+                nextLevel.add(new Node(resolvedPom, parent.mExcludes, false));
+            }
+        }
+        return nextLevel;
+    }
+
+    /**
+     * Adds the POM to the resolved POM files if it is not resolved yet, if it is defined by
+     * the user or if it is a higher version than the one that has been resolved
+     *
+     * @return whether the POM has been selected and its dependencies should be resolved
+     */
+    private boolean select(Node node) {
+        Pom pom = node.mPom;
+        if (resolvedPoms.containsKey(pom)) {
+            if (!node.mUserDefined) {
+                String resolvedVersion = resolvedPoms.get(pom);
+                String thisVersion = pom.getVersionName();
+                if (getHigherVersion(resolvedVersion, thisVersion) >= 0) {
+                    return false;
+                }
             }
+            // removed first, putting an equal key does not replace it
+            resolvedPoms.remove(pom);
         }
         resolvedPoms.put(pom, pom.getVersionName());
+        return true;
+    }
+
+    private boolean isExcluded(List<Dependency> excludes, Dependency dependency) {
+        return excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
+            if (!ex.getGroupId().equals(dependency.getGroupId())) {
+                return false;
+            }
+            if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
+                return false;
+            }
+            if (TextUtils.isEmpty(ex.getVersionName())) {
+                return true;
+            }
+            return ex.getVersionName().equals(dependency.getVersionName());
+        });
+    }
+
+    @Nullable
+    private Pom getResult(Future<Pom> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     private int getHigherVersion(String firstVersion, String secondVersion) {
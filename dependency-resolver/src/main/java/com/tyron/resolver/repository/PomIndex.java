@@ -0,0 +1,170 @@
+package com.tyron.resolver.repository;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parsed POM files indexed by their {@code groupId:artifactId:version} declaration,
+ * saved to a file so the POM files do not have to be parsed again on the next run.
+ *
+ * <p>An entry is only valid while the POM file it was parsed from has the same path and
+ * modification time, so a POM file that is downloaded again is parsed again.
+ */
+class PomIndex {
+
+    private static final int MAGIC = 0x504F4D49;
+    private static final int VERSION = 2;
+
+    private static class Entry {
+
+        private final Pom mPom;
+        private final String mPath;
+        private final long mLastModified;
+
+        private Entry(Pom pom, String path, long lastModified) {
+            mPom = pom;
+            mPath = path;
+            mLastModified = lastModified;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private volatile boolean mModified;
+
+    /**
+     * @param file the POM file of the declaration
+     * @return the POM parsed from the file, or null if it has not been parsed or the file
+     * has been modified since
+     */
+    @Nullable
+    Pom get(@NonNull String declaration, @NonNull File file) {
+        Entry entry = mEntries.get(declaration);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.mPath.equals(file.getAbsolutePath())
+                || entry.mLastModified != file.lastModified()) {
+            return null;
+        }
+        return entry.mPom;
+    }
+
+    void put(@NonNull String declaration, @NonNull Pom pom, @NonNull File file) {
+        mEntries.put(declaration, new Entry(pom, file.getAbsolutePath(), file.lastModified()));
+        mModified = true;
+    }
+
+    /**
+     * Loads the index from the given file, entries that are already in memory are kept.
+     * If the file cannot be read it is ignored and the POM files will be parsed again.
+     */
+    void load(@NonNull File file) {
+        if (!file.exists()) {
+            return;
+        }
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String declaration = in.readUTF();
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                Pom pom = Pom.valueOf(declaration);
+                pom.setPackaging(readString(in));
+                int dependencyCount = in.readInt();
+                List<Dependency> dependencies = new ArrayList<>(dependencyCount);
+                for (int j = 0; j < dependencyCount; j++) {
+                    Dependency dependency = new Dependency(readString(in), readString(in),
+                            readString(in));
+                    dependency.setScope(readString(in));
+                    dependency.setType(readString(in));
+                    dependencies.add(dependency);
+                }
+                pom.setDependencies(dependencies);
+                entries.put(declaration, new Entry(pom, path, lastModified));
+            }
+        } catch (IOException | RuntimeException e) {
+            // the index will be rebuilt from the POM files
+            return;
+        }
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            mEntries.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Saves the index to the given file if new entries have been added since it was loaded
+     */
+    void save(@NonNull File file) throws IOException {
+        if (!mModified) {
+            return;
+        }
+        mModified = false;
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(mEntries.entrySet());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries) {
+                Pom pom = entry.getValue().mPom;
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().mPath);
+                out.writeLong(entry.getValue().mLastModified);
+                writeString(out, pom.getPackaging());
+                List<Dependency> dependencies = pom.getDependencies();
+                out.writeInt(dependencies.size());
+                for (Dependency dependency : dependencies) {
+                    writeString(out, dependency.getGroupId());
+                    writeString(out, dependency.getArtifactId());
+                    writeString(out, dependency.getVersionName());
+                    writeString(out, dependency.getScope());
+                    writeString(out, dependency.getType());
+                }
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to save " + file);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -40,4 +40,10 @@ public interface RepositoryManager {
     void addRepository(@NonNull Repository repository);
 
     void initialize();
+
+    /**
+     * Saves the index of the POM files retrieved so far, so they can be reused on the next
+     * run without parsing them again
+     */
+    void saveIndex();
 }
@@ -9,8 +9,6 @@ import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
@@ -19,7 +17,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.jar.JarFile;
 import java.util.zip.ZipFile;
@@ -28,15 +25,23 @@ import kotlin.text.Charsets;
 
 public class RepositoryManagerImpl implements RepositoryManager {
 
+    private static final String POM_INDEX_FILE = "pom-index.bin";
+    private static final String SNAPSHOT_SUFFIX = "-SNAPSHOT";
+
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+    private final PomIndex pomIndex;
 
     public RepositoryManagerImpl() {
         this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.pomIndex = new PomIndex();
     }
 
+    /**
+     * Returns the POM of the declaration, the POM is taken from the index if its file has not
+     * been modified since it was parsed. Snapshots may change without changing their version
+     * so they are always parsed.
+     */
     @Override
     @Nullable
     public Pom getPom(String declaration) {
@@ -44,35 +49,88 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
+        if (pomNames[2].endsWith(SNAPSHOT_SUFFIX)) {
+            return getPomFromUrls(pomNames);
+        }
+        String key = pomNames[0] + ":" + pomNames[1] + ":" + pomNames[2];
+        String path = getPathFromDeclaration(pomNames) + ".pom";
+        File cachedFile = getCachedFile(path);
+        if (cachedFile != null) {
+            Pom pom = pomIndex.get(key, cachedFile);
+            if (pom != null) {
+                return pom;
             }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
+        }
+        Pom pom = getPomFromUrls(pomNames);
+        if (pom != null) {
+            // the file has been saved to the cache if it was downloaded
+            cachedFile = getCachedFile(path);
+            if (cachedFile != null) {
+                pomIndex.put(key, pom, cachedFile);
             }
-            return pom;
         }
-        return getPomFromUrls(pomNames);
+        return pom;
     }
 
     private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
-        if (is != null) {
-            String contents;
-            try {
-                contents = CharStreams.toString(new InputStreamReader(is));
-                Pom parsed = new PomParser().parse(contents);
-                parsed.setGroupId(names[0]);
-                parsed.setArtifactId(names[1]);
-                parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
+        String path = getPathFromDeclaration(names) + ".pom";
+        try (InputStream is = getFromCache(path)) {
+            Pom parsed = parsePom(is, names);
+            if (parsed != null) {
                 return parsed;
-            } catch (IOException | XmlPullParserException e) {
-                // ignored
+            }
+        } catch (IOException e) {
+            // ignored, try from the network
+        }
+        try (InputStream is = getFromUrls(path)) {
+            return parsePom(is, names);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private Pom parsePom(@Nullable InputStream is, String[] names) {
+        if (is == null) {
+            return null;
+        }
+        try {
+            String contents = CharStreams.toString(new InputStreamReader(is));
+            Pom parsed = new PomParser().parse(contents);
+            parsed.setGroupId(names[0]);
+            parsed.setArtifactId(names[1]);
+            parsed.setVersionName(names[2]);
+            return parsed;
+        } catch (IOException | XmlPullParserException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Searches the file on the local caches of all repositories before the network
+     */
+    @Nullable
+    private InputStream getFromCache(String path) throws IOException {
+        File file = getCachedFile(path);
+        if (file != null) {
+            return FileUtils.openInputStream(file);
+        }
+        return null;
+    }
+
+    /**
+     * @return the file in the local cache of the first repository that has it
+     */
+    @Nullable
+    private File getCachedFile(String path) {
+        for (Repository repository : repositories) {
+            try {
+                File file = repository.getCachedFile(path);
+                if (file != null && file.exists()) {
+                    return file;
+                }
+            } catch (IOException e) {
+                // ignored, try the next repository
             }
         }
         return null;
@@ -189,6 +247,10 @@ public class RepositoryManagerImpl implements RepositoryManager {
         addRepository(new RemoteRepository(name, url));
     }
 
+    /**
+     * Loads the index of the POM files parsed in previous runs, POM files that are not in
+     * the index are parsed from the cache of the repositories when they are requested.
+     */
     @Override
     public void initialize() {
         if (cacheDir == null) {
@@ -197,26 +259,19 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
+        }
+        pomIndex.load(new File(cacheDir, POM_INDEX_FILE));
+    }
 
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser();
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                }
-            }
+    @Override
+    public void saveIndex() {
+        if (cacheDir == null) {
+            return;
+        }
+        try {
+            pomIndex.save(new File(cacheDir, POM_INDEX_FILE));
+        } catch (IOException e) {
+            // ignored, the POM files will be parsed again on the next run
         }
     }
 }
@@ -7,6 +7,7 @@ import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.completion.index.CompilerProvider;
 import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.java.compiler.Parser;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -36,6 +37,7 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
     public void destroy() {
         mCachedPaths.clear();
         mProvider = null;
+        Parser.clearCache();
     }
 
     public synchronized JavaCompilerService getCompiler(Project project, JavaModule module) {
@@ -54,6 +56,8 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         }
 
         if (mProvider == null || changed(mCachedPaths, paths)) {
+            // the parse trees were created with the file manager of the previous class path
+            Parser.clearCache();
             mProvider = new JavaCompilerService(project, paths, Collections.emptySet(),
                     Collections.emptySet());
 
@@ -87,5 +91,6 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
 
     public void clear() {
         mProvider = null;
+        Parser.clearCache();
     }
 }
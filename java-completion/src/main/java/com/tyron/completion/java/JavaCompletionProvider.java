@@ -17,11 +17,7 @@ import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
 
 import java.io.File;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 public class JavaCompletionProvider extends CompletionProvider {
 
@@ -47,10 +43,8 @@ public class JavaCompletionProvider extends CompletionProvider {
             String partial = partialIdentifier(params.getPrefix(), params.getPrefix().length());
             CompletionList cachedList = mCachedCompletion.getCompletionList();
             if (!cachedList.items.isEmpty() && !cachedList.isIncomplete) {
-                List<CompletionItem> narrowedList =
-                        cachedList.items.stream()
-                                .sorted(Comparator.comparingInt((CompletionItem it) -> getRatio(it, partial)).reversed())
-                                .collect(Collectors.toList());
+                List<CompletionItem> narrowedList = mCachedCompletion.getRanker()
+                        .rank(partial, Completions.MAX_COMPLETION_ITEMS);
                 CompletionList completionList = new CompletionList();
                 completionList.items = narrowedList;
                 return completionList;
@@ -98,19 +92,6 @@ public class JavaCompletionProvider extends CompletionProvider {
         return contents.substring(start, end);
     }
 
-    private int getRatio(CompletionItem item, String partialIdentifier) {
-        String label = getLabel(item);
-        return FuzzySearch.ratio(label, partialIdentifier);
-    }
-
-    private String getLabel(CompletionItem item) {
-        String label = item.label;
-        if (label.contains("(")) {
-            label = label.substring(0, label.indexOf('('));
-        }
-        return label;
-    }
-
     private boolean isIncrementalCompletion(CachedCompletion cachedCompletion,
                                             CompletionParameters params) {
         String prefix = params.getPrefix();
@@ -24,7 +24,6 @@ import org.openjdk.tools.javac.api.ClientCodeWrapper;
 import org.openjdk.tools.javac.util.JCDiagnostic;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -67,12 +66,7 @@ public class ImportClassAction extends AnAction {
         }
 
         String simpleName = String.valueOf(diagnosticSourceUnwrapper.d.getArgs()[1]);
-        List<String> classNames = new ArrayList<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                classNames.add(qualifiedName);
-            }
-        }
+        List<String> classNames = compiler.findClassesBySimpleName(simpleName);
 
         if (classNames.isEmpty()) {
             return;
@@ -105,12 +99,10 @@ public class ImportClassAction extends AnAction {
         Path file = e.getData(CommonDataKeys.FILE).toPath();
 
         Map<String, JavaRewrite> map = new TreeMap<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                String title = e.getDataContext().getString(R.string.import_class_name, qualifiedName);
-                JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
-                map.put(title, addImport);
-            }
+        for (String qualifiedName : compiler.findClassesBySimpleName(simpleName)) {
+            String title = e.getDataContext().getString(R.string.import_class_name, qualifiedName);
+            JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
+            map.put(title, addImport);
         }
 
         if (map.size() == 1) {
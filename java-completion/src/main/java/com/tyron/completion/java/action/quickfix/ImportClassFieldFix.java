@@ -24,7 +24,6 @@ import org.openjdk.tools.javac.api.ClientCodeWrapper;
 import org.openjdk.tools.javac.util.JCDiagnostic;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -65,12 +64,7 @@ public class ImportClassFieldFix extends AnAction {
         }
 
         String simpleName = String.valueOf(diagnosticSourceUnwrapper.d.getArgs()[0]);
-        List<String> classNames = new ArrayList<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                classNames.add(qualifiedName);
-            }
-        }
+        List<String> classNames = compiler.findClassesBySimpleName(simpleName);
 
         if (classNames.isEmpty()) {
             return;
@@ -109,7 +103,7 @@ public class ImportClassFieldFix extends AnAction {
         }
 
         Map<String, JavaRewrite> map = new TreeMap<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
+        for (String qualifiedName : compiler.findClassesBySimpleName(searchName)) {
             if (qualifiedName.endsWith("." + simpleName)) {
                 if (qualifiedName.endsWith("." + searchName)) {
                     if (isField) {
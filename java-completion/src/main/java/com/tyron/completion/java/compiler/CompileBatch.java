@@ -12,6 +12,7 @@ import org.apache.commons.io.FileUtils;
 import org.openjdk.javax.lang.model.util.Elements;
 import org.openjdk.javax.lang.model.util.Types;
 import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileObject;
 import org.openjdk.source.util.JavacTask;
 import org.openjdk.source.util.Trees;
@@ -50,10 +51,31 @@ public class CompileBatch implements AutoCloseable {
     public final Elements elements;
     public final Types types;
     public final List<CompilationUnitTree> roots;
+    /**
+     * The diagnostics reported by this compilation
+     */
+    private final List<Diagnostic<? extends JavaFileObject>> diagnostics =
+            Collections.synchronizedList(new ArrayList<>());
 
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+        this(parent, parent.mSourceFileManager, files, true);
+    }
+
+    /**
+     * @param fileManager the file manager used by this compilation, a file manager must not
+     *                    be used by two compilations at the same time
+     * @param reportDiagnostics whether the diagnostics are also reported to the parent and
+     *                          its diagnostic listener
+     */
+    CompileBatch(JavaCompilerService parent, SourceFileManager fileManager,
+                 Collection<? extends JavaFileObject> files, boolean reportDiagnostics) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(parent, fileManager, files, diagnostic -> {
+            diagnostics.add(diagnostic);
+            if (reportDiagnostics) {
+                parent.addDiagnostic(diagnostic);
+            }
+        }, reportDiagnostics);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -84,7 +106,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : getDiagnostics()) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -155,11 +177,29 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
-            extends JavaFileObject> sources) {
-        parent.clearDiagnostics();
+    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+        synchronized (diagnostics) {
+            return new ArrayList<>(diagnostics);
+        }
+    }
+
+    void setDiagnostics(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        synchronized (this.diagnostics) {
+            this.diagnostics.clear();
+            this.diagnostics.addAll(diagnostics);
+        }
+    }
+
+    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent,
+                                                     SourceFileManager fileManager,
+                                                     Collection<? extends JavaFileObject> sources,
+                                                     DiagnosticListener<? super JavaFileObject> listener,
+                                                     boolean clearDiagnostics) {
+        if (clearDiagnostics) {
+            parent.clearDiagnostics();
+        }
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
+        return parent.compiler.getTask(fileManager, listener, options,
                 Collections.emptyList(), sources);
     }
 
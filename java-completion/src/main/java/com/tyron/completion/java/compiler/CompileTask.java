@@ -26,7 +26,7 @@ public class CompileTask implements AutoCloseable {
         mCompileBatch = batch;
         this.task = batch.task;
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.getDiagnostics();
     }
 
     public CompilationUnitTree root() {
@@ -58,6 +58,16 @@ public class CompileTask implements AutoCloseable {
         return null;
     }
 
+    /**
+     * Replaces the diagnostics of this task and of its compilation after the compilation
+     * has been updated in place
+     */
+    void setDiagnostics(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        this.diagnostics.clear();
+        this.diagnostics.addAll(diagnostics);
+        mCompileBatch.setDiagnostics(diagnostics);
+    }
+
     @Override
     public void close() {
         mCompileBatch.close();
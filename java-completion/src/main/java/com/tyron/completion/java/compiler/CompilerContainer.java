@@ -1,11 +1,16 @@
 package com.tyron.completion.java.compiler;
 
 import androidx.annotation.GuardedBy;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import kotlin.jvm.functions.Function1;
 
@@ -21,91 +26,157 @@ import kotlin.jvm.functions.Function1;
  *
  * Only one thread is allowed to write at a time, during a write operation all threads that
  * attempts to read will be blocked until the thread writing has finished.
+ *
+ * Waiting threads are parked on a fair read-write lock instead of spinning, so a writer
+ * waiting for readers to finish does not starve them and does not keep the CPU busy.
+ * A write that has been superseded by a newer write of the same sources with the same
+ * contents while it was waiting is skipped, its readers will use the currently compiled
+ * task which has been compiled from those contents.
  */
 public class CompilerContainer {
 
-    private volatile boolean mIsWriting;
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock(true);
+    private final Lock mReadLock = mLock.readLock();
+    private final Lock mWriteLock = mLock.writeLock();
+
+    /**
+     * The latest write request of each key, used to detect writes that are stale
+     */
+    private final Map<Object, Long> mLatestWrites = new ConcurrentHashMap<>();
+    private final AtomicLong mWriteCount = new AtomicLong();
 
     @GuardedBy("mLock")
     private volatile CompileTask mCompileTask;
 
-    private final Object mLock = new Object();
-    private final List<Thread> mReaders = Collections.synchronizedList(new ArrayList<>());
-
+    @GuardedBy("mLock")
+    private Object mCompiledKey;
 
     public CompilerContainer() {
 
     }
 
-    private void closeIfEmpty() {
-        if (mReaders.isEmpty()) {
-            if (mCompileTask != null) {
-                mCompileTask.close();
-            }
-        }
-    }
-
     /**
      * This is for codes that will use the compile information,
      * it ensures that all other threads accessing the compile information
      * are synchronized
      */
     public void run(Consumer<CompileTask> consumer) {
-        waitForWriter();
-        mReaders.add(Thread.currentThread());
+        mReadLock.lock();
+        try {
+            consumer.accept(mCompileTask);
+        } finally {
+            mReadLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #run(Consumer)} but returns immediately without running the consumer
+     * if a thread is currently writing, this is used to avoid blocking the main thread.
+     *
+     * @return whether the consumer has been run
+     */
+    public boolean tryRun(Consumer<CompileTask> consumer) {
+        if (!mReadLock.tryLock()) {
+            return false;
+        }
         try {
             consumer.accept(mCompileTask);
         } finally {
-            mReaders.remove(Thread.currentThread());
+            mReadLock.unlock();
         }
+        return true;
     }
 
     public <T> T get(Function1<CompileTask, T> fun) {
-        waitForWriter();
-        mReaders.add(Thread.currentThread());
+        mReadLock.lock();
         try {
             return fun.invoke(mCompileTask);
         } finally {
-            mReaders.remove(Thread.currentThread());
+            mReadLock.unlock();
         }
     }
 
     public boolean isWriting() {
-        return mIsWriting;
+        return mLock.isWriteLocked();
     }
 
     void initialize(Runnable runnable) {
-        synchronized (mLock) {
-            assertIsNotReader();
-            waitForReaders();
-            try {
-                mIsWriting = true;
-                runnable.run();
-            } finally {
-                mIsWriting = false;
-            }
-        }
+        initialize(null, runnable);
     }
 
-    private void waitForReaders() {
-        while (true) {
-            if (mReaders.isEmpty()) {
-                closeIfEmpty();
+    /**
+     * Runs the write operation once all the current readers have finished
+     *
+     * @param key identifies what is being written, including the version of its contents,
+     *            if a newer write with an equal key is requested while this write is waiting
+     *            and the current task has been written with an equal key, this write is
+     *            skipped. May be null to always write.
+     * @param runnable the write operation
+     */
+    void initialize(@Nullable Object key, Runnable runnable) {
+        assertIsNotReader();
+
+        long id = mWriteCount.incrementAndGet();
+        if (key != null) {
+            mLatestWrites.put(key, id);
+        }
+        mWriteLock.lock();
+        try {
+            if (key != null && isStale(key, id)) {
                 return;
             }
+            // no readers can access the task at this point
+            if (mCompileTask != null) {
+                mCompileTask.close();
+            }
+            mCompiledKey = null;
+            runnable.run();
+            mCompiledKey = key;
+        } finally {
+            if (key != null) {
+                mLatestWrites.remove(key, id);
+            }
+            mWriteLock.unlock();
         }
     }
 
-    private void waitForWriter() {
-        while (true) {
-            if (!mIsWriting) {
-                return;
+    /**
+     * Runs an operation that modifies the current compile task in place once all the current
+     * readers have finished. Unlike {@link #initialize(Object, Runnable)}, the current task
+     * is not closed.
+     *
+     * @param key the key of the task after the update, see {@link #initialize(Object, Runnable)}
+     * @param updater the operation, returns whether the task has been updated
+     * @return false if there is no task or it could not be updated
+     */
+    boolean update(@Nullable Object key, Predicate<CompileTask> updater) {
+        assertIsNotReader();
+
+        mWriteLock.lock();
+        try {
+            if (mCompileTask == null) {
+                return false;
+            }
+            mCompiledKey = null;
+            if (!updater.test(mCompileTask)) {
+                return false;
             }
+            mCompiledKey = key;
+            return true;
+        } finally {
+            mWriteLock.unlock();
         }
     }
 
+    private boolean isStale(Object key, long id) {
+        Long latest = mLatestWrites.get(key);
+        return latest != null && latest != id
+                && mCompileTask != null
+                && Objects.equals(mCompiledKey, key);
+    }
+
     private void assertIsNotReader() {
-        if (mReaders.contains(Thread.currentThread())) {
+        if (mLock.getReadHoldCount() > 0) {
             throw new RuntimeException("Cannot compile inside a container.");
         }
     }
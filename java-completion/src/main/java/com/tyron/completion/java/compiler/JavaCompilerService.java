@@ -4,6 +4,7 @@ import android.annotation.SuppressLint;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.collect.ImmutableList;
 import com.tyron.builder.model.SourceFileObject;
@@ -12,6 +13,9 @@ import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.index.SymbolIndex;
+import com.tyron.completion.index.SymbolIndexProvider;
 import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.Docs;
 import com.tyron.completion.java.FindTypeDeclarations;
@@ -34,15 +38,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import kotlin.jvm.functions.Function1;
+
 public class JavaCompilerService implements CompilerProvider {
 
     private DiagnosticListener<? super JavaFileObject> mDiagnosticListener;
@@ -59,6 +68,13 @@ public class JavaCompilerService implements CompilerProvider {
     private final Docs docs;
 
     private final CompilerContainer mContainer = new CompilerContainer();
+
+    /**
+     * Compilations made with {@link #analyze(Collection, Function1)} use their own file manager
+     * so they can run while the cached compilation is being used
+     */
+    private final Object mAnalyzeLock = new Object();
+    private SourceFileManager mAnalyzeFileManager;
     private CompileBatch cachedCompile;
     private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
 
@@ -80,6 +96,11 @@ public class JavaCompilerService implements CompilerProvider {
     public void setCurrentModule(@NonNull JavaModule module) {
         mSourceFileManager.setCurrentModule(module);
         mCurrentModule = module;
+        synchronized (mAnalyzeLock) {
+            if (mAnalyzeFileManager != null) {
+                mAnalyzeFileManager.setCurrentModule(module);
+            }
+        }
     }
 
     /**
@@ -122,8 +143,13 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+        return doCompile(sources, files -> new CompileBatch(this, files));
+    }
+
+    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources,
+                                   Function<Collection<? extends JavaFileObject>, CompileBatch> compiler) {
         if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = compiler.apply(sources);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) return firstAttempt;
         // If the compiler needs additional source files that contain package-private files
@@ -135,7 +161,36 @@ public class JavaCompilerService implements CompilerProvider {
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
         }
-        return new CompileBatch(this, moreSources);
+        return compiler.apply(moreSources);
+    }
+
+    /**
+     * Compiles the sources without replacing the cached compilation, so completions and
+     * actions that use the {@link CompilerContainer} are not blocked while the sources
+     * are analyzed. The diagnostics are not reported to the diagnostic listener.
+     *
+     * @param sources the sources to compile
+     * @param fun the function that uses the compilation, the compilation is only valid
+     *            while the function is running
+     * @return the result of the function
+     */
+    public <T> T analyze(Collection<? extends JavaFileObject> sources,
+                         Function1<CompileTask, T> fun) {
+        synchronized (mAnalyzeLock) {
+            if (mAnalyzeFileManager == null) {
+                mAnalyzeFileManager = new SourceFileManager(mProject);
+                mAnalyzeFileManager.setCurrentModule(mCurrentModule);
+            }
+            SourceFileManager fileManager = mAnalyzeFileManager;
+            CompileBatch batch = doCompile(sources,
+                    files -> new CompileBatch(this, fileManager, files, false));
+            try {
+                return fun.invoke(new CompileTask(batch));
+            } finally {
+                batch.close();
+                batch.borrow.close();
+            }
+        }
     }
 
     /**
@@ -145,7 +200,8 @@ public class JavaCompilerService implements CompilerProvider {
      * @return CompileBatch for this compilation
      */
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
-        mContainer.initialize(() -> {
+        Map<URI, Long> key = getWriteKey(sources);
+        mContainer.initialize(key, () -> {
             if (needsCompile(sources)) {
                 loadCompile(sources);
             } else {
@@ -157,6 +213,19 @@ public class JavaCompilerService implements CompilerProvider {
         return mContainer;
     }
     
+    /**
+     * @return the key of a write to the {@link CompilerContainer}, two writes have equal keys
+     * only if they compile the same sources with the same modification times, so a write is
+     * never skipped in favor of a write of older contents
+     */
+    private static Map<URI, Long> getWriteKey(Collection<? extends JavaFileObject> sources) {
+        Map<URI, Long> key = new HashMap<>();
+        for (JavaFileObject source : sources) {
+            key.put(source.toUri(), source.getLastModified());
+        }
+        return key;
+    }
+
     public void clearDiagnostics() {
         diagnostics.clear();
         if (mDiagnosticListener != null) {
@@ -184,9 +253,12 @@ public class JavaCompilerService implements CompilerProvider {
         return null;
     }
 
-    // TODO: This doesn't list all the public types
     @Override
     public Set<String> publicTopLevelTypes() {
+        SymbolIndex index = getSymbolIndex();
+        if (index != null) {
+            return index.getAllClassNames();
+        }
         Set<String> classes = new HashSet<>(mCurrentModule.getAllClasses());
         for (Module module : mProject.getDependencies(mCurrentModule)) {
             if (module instanceof JavaModule) {
@@ -196,6 +268,80 @@ public class JavaCompilerService implements CompilerProvider {
         return classes;
     }
 
+    /**
+     * @return The symbol index of the current module, or null if the index provider has not
+     * been registered. Callers should fall back to {@link #publicTopLevelTypes()} in that case.
+     */
+    @Nullable
+    public SymbolIndex getSymbolIndex() {
+        if (mCurrentModule == null) {
+            return null;
+        }
+        SymbolIndexProvider provider = CompilerService.getInstance()
+                .getIndex(SymbolIndexProvider.KEY);
+        if (provider == null) {
+            return null;
+        }
+        return provider.get(mProject, mCurrentModule);
+    }
+
+    /**
+     * @param simpleName the simple name of the class, e.g. {@code View}
+     * @return the fully qualified names of the top level classes with the given simple name
+     */
+    public List<String> findClassesBySimpleName(String simpleName) {
+        SymbolIndex index = getSymbolIndex();
+        if (index != null) {
+            return index.findClassesBySimpleName(simpleName);
+        }
+        List<String> classes = new ArrayList<>();
+        for (String className : publicTopLevelTypes()) {
+            if (className.endsWith("." + simpleName)) {
+                classes.add(className);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param prefix the start of the simple name of the class, this is case insensitive
+     * @return the fully qualified names of the top level classes whose simple name starts with
+     * the given prefix
+     */
+    public List<String> findClassesBySimpleNamePrefix(String prefix) {
+        SymbolIndex index = getSymbolIndex();
+        if (index != null) {
+            return index.findClassesBySimpleNamePrefix(prefix);
+        }
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<String> classes = new ArrayList<>();
+        for (String className : publicTopLevelTypes()) {
+            String simpleName = className.substring(className.lastIndexOf('.') + 1);
+            if (simpleName.toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                classes.add(className);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param prefix the start of the fully qualified name of the class
+     * @return the fully qualified names of the top level classes that start with the prefix
+     */
+    public List<String> findClassesByQualifiedNamePrefix(String prefix) {
+        SymbolIndex index = getSymbolIndex();
+        if (index != null) {
+            return index.findClassesByQualifiedNamePrefix(prefix);
+        }
+        List<String> classes = new ArrayList<>();
+        for (String className : publicTopLevelTypes()) {
+            if (className.startsWith(prefix)) {
+                classes.add(className);
+            }
+        }
+        return classes;
+    }
+
     @Override
     public List<String> packagePrivateTopLevelTypes(String packageName) {
         return Collections.emptyList();
@@ -264,25 +410,44 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    /**
+     * A search checks the same files for many words, the modification time of a file is
+     * only checked once during a search.
+     */
+    private static final long SEARCH_MODIFICATION_CHECK_INTERVAL = 1000;
+
+    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>(20_000);
+    static {
+        cacheContainsWord.setModificationCheckInterval(SEARCH_MODIFICATION_CHECK_INTERVAL);
+    }
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
+        Boolean contains = cacheContainsWord.getIfPresent(file, word);
+        if (contains == null) {
+            contains = StringSearch.containsWord(file, word);
+            cacheContainsWord.load(file, word, contains);
         }
-        return cacheContainsWord.get(file, word);
+        return contains;
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    /**
+     * The type names declared in each file, weighed by the number of names
+     */
+    private static final Cache<Void, List<String>> cacheContainsType =
+            new Cache<>(50_000, types -> 1 + types.size());
+    static {
+        cacheContainsType.setModificationCheckInterval(SEARCH_MODIFICATION_CHECK_INTERVAL);
+    }
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        List<String> types = cacheContainsType.getIfPresent(file, null);
+        if (types == null) {
             CompilationUnitTree root = parse(file).root;
-            List<String> types = new ArrayList<>();
+            types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
             cacheContainsType.load(file, null, types);
         }
-        return cacheContainsType.get(file, null).contains(className);
+        return types.contains(className);
     }
 
 
@@ -345,24 +510,75 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * Returns the source files that may reference the given class, only these files need to be
+     * parsed and compiled to find the actual references.
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        Set<Path> result = new LinkedHashSet<>();
+        for (JavaModule module : referenceModules()) {
+            ReferenceIndex index = updatedReferenceIndex(module);
+            for (File file : index.findTypeReferences(className)) {
+                result.add(file.toPath());
+            }
+        }
+        return result.toArray(new Path[0]);
     }
 
+    /**
+     * Returns the source files that may reference the member of the given class.
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        Set<Path> result = new LinkedHashSet<>();
+        for (JavaModule module : referenceModules()) {
+            ReferenceIndex index = updatedReferenceIndex(module);
+            for (File file : index.findMemberReferences(className, memberName)) {
+                result.add(file.toPath());
+            }
+        }
+        return result.toArray(new Path[0]);
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    private List<JavaModule> referenceModules() {
+        List<JavaModule> modules = new ArrayList<>();
+        if (mCurrentModule == null) {
+            return modules;
+        }
+        modules.add(mCurrentModule);
+        // classes of this module can be referenced by any module of the project
+        if (mProject != null) {
+            for (Module module : mProject.getModules()) {
+                if (module instanceof JavaModule && !modules.contains(module)) {
+                    modules.add((JavaModule) module);
+                }
+            }
+        }
+        return modules;
+    }
+
+    private static ReferenceIndex updatedReferenceIndex(JavaModule module) {
+        ReferenceIndex index = ReferenceIndex.getInstance(module);
+        index.update(module.getJavaFiles().values());
+        return index;
+    }
+
+    /**
+     * Parse trees are large, only the most recently used ones are kept
+     */
+    private static final int MAX_CACHED_PARSE_TASKS = 32;
+
+    private final Cache<String, ParseTask> parseCache = new Cache<>(MAX_CACHED_PARSE_TASKS);
 
     private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
+        ParseTask task = parseCache.getIfPresent(file, file.toFile().getName());
+        if (task == null) {
             Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
+            task = new ParseTask(parser.task, parser.root);
+            parseCache.load(file, file.toFile().getName(), task);
         }
-        return parseCache.get(file, file.toFile().getName());
+        return task;
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -372,13 +588,15 @@ public class JavaCompilerService implements CompilerProvider {
                     .substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
+            ParseTask task = parseCache.getIfPresent(parsedPath, file.getName());
+            if (task == null) {
                 Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache.load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
+                task = new ParseTask(parser.task, parser.root);
+                parseCache.load(parsedPath, file.getName(), task);
             } else {
                 Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
             }
-            return parseCache.get(parsedPath, file.getName());
+            return task;
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -443,6 +661,40 @@ public class JavaCompilerService implements CompilerProvider {
         return compileBatch(sources);
     }
 
+    /**
+     * Same as {@link #compile(Collection)} with a single source, but if the cached compilation
+     * contains the file and its contents have only changed inside the body of one method, only
+     * that body is parsed and attributed again instead of compiling the whole file.
+     *
+     * @param source the java source
+     * @return the container of the compilation
+     */
+    public CompilerContainer compileIncrementally(JavaFileObject source) {
+        Map<URI, Long> key = getWriteKey(Collections.singletonList(source));
+        boolean updated = mContainer.update(key, task -> {
+            if (cachedCompile == null || cachedCompile.closed
+                    || !cachedModified.containsKey(source)) {
+                return false;
+            }
+            if (!MethodBodyReparser.reparse(task, source)) {
+                // the tree may have been modified, do not reuse it
+                cachedModified.clear();
+                return false;
+            }
+            cachedModified.clear();
+            cachedModified.put(source, source.getLastModified());
+            // the diagnostics of the method body have been replaced
+            clearDiagnostics();
+            task.diagnostics.forEach(this::addDiagnostic);
+            return true;
+        });
+        if (updated) {
+            Log.d("JavaCompilerService", "Reparsed method body");
+            return mContainer;
+        }
+        return compile(Collections.singletonList(source));
+    }
+
     public synchronized void close() {
         if (cachedCompile != null && !cachedCompile.closed) {
             cachedCompile.close();
@@ -0,0 +1,394 @@
+package com.tyron.completion.java.compiler;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.DiagnosticListener;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.tools.javac.api.BasicJavacTask;
+import org.openjdk.tools.javac.api.ClientCodeWrapper;
+import org.openjdk.tools.javac.code.Kinds;
+import org.openjdk.tools.javac.code.Symbol;
+import org.openjdk.tools.javac.code.Symtab;
+import org.openjdk.tools.javac.code.Type;
+import org.openjdk.tools.javac.comp.Annotate;
+import org.openjdk.tools.javac.comp.Attr;
+import org.openjdk.tools.javac.comp.AttrContext;
+import org.openjdk.tools.javac.comp.Check;
+import org.openjdk.tools.javac.comp.CompileStates;
+import org.openjdk.tools.javac.comp.Enter;
+import org.openjdk.tools.javac.comp.Env;
+import org.openjdk.tools.javac.comp.Flow;
+import org.openjdk.tools.javac.comp.MemberEnter;
+import org.openjdk.tools.javac.parser.JavacParser;
+import org.openjdk.tools.javac.parser.ParserFactory;
+import org.openjdk.tools.javac.tree.EndPosTable;
+import org.openjdk.tools.javac.tree.JCTree;
+import org.openjdk.tools.javac.tree.TreeMaker;
+import org.openjdk.tools.javac.tree.TreeScanner;
+import org.openjdk.tools.javac.util.Context;
+import org.openjdk.tools.javac.util.JCDiagnostic;
+import org.openjdk.tools.javac.util.Position;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Updates an attributed compilation unit in place when its contents have only changed inside
+ * the body of a single method. The new body is parsed on its own and attributed in the
+ * environment of the existing method, the rest of the tree is reused and only its
+ * positions are shifted. This avoids compiling the whole file again on every keystroke
+ * while the user is typing inside a method.
+ */
+class MethodBodyReparser {
+
+    private static final String TAG = MethodBodyReparser.class.getSimpleName();
+
+    private static Constructor<?> sResultInfoConstructor;
+    private static Field sReturnResultField;
+    private static Method sClearLocalClassNameIndexes;
+    private static Method sTypeEnvsInstance;
+    private static Method sTypeEnvsRemove;
+
+    private MethodBodyReparser() {
+
+    }
+
+    /**
+     * The diagnostics of the task that are inside the old body are replaced with the ones
+     * reported for the new body, the ones after it are moved with the rest of the file.
+     *
+     * @param task the compilation that contains the file, it must not be used by other
+     *             threads while it is being updated
+     * @param source the new contents of the file
+     * @return whether the compilation unit has been updated, if false the file has to be
+     * compiled again
+     */
+    static boolean reparse(@NonNull CompileTask task, @NonNull JavaFileObject source) {
+        CompilationUnitTree tree = task.root(source);
+        if (!(tree instanceof JCTree.JCCompilationUnit)
+                || !(task.task instanceof BasicJavacTask)) {
+            return false;
+        }
+        JCTree.JCCompilationUnit root = (JCTree.JCCompilationUnit) tree;
+        String oldContents;
+        String newContents;
+        try {
+            oldContents = root.getSourceFile().getCharContent(true).toString();
+            newContents = source.getCharContent(true).toString();
+        } catch (IOException e) {
+            return false;
+        }
+
+        // the region that has changed, the same in both contents outside of it
+        int prefix = commonPrefix(oldContents, newContents);
+        if (prefix == oldContents.length() && prefix == newContents.length()) {
+            root.sourcefile = source;
+            return true;
+        }
+        int suffix = commonSuffix(oldContents, newContents, prefix);
+        int oldChangeEnd = oldContents.length() - suffix;
+
+        EndPosTable endPositions = root.endPositions;
+        JCTree.JCMethodDecl method = findEnclosingMethod(root, endPositions, prefix,
+                oldChangeEnd);
+        if (method == null || method.sym == null) {
+            return false;
+        }
+
+        JCTree.JCBlock oldBody = method.body;
+        int bodyStart = oldBody.pos;
+        int oldBodyEnd = endPositions.getEndPos(oldBody);
+        int delta = newContents.length() - oldContents.length();
+        int newBodyEnd = oldBodyEnd + delta;
+
+        Context context = ((BasicJavacTask) task.task).getContext();
+        org.openjdk.tools.javac.util.Log log = org.openjdk.tools.javac.util.Log.instance(context);
+        JavaFileObject previousSource = log.useSource(source);
+        org.openjdk.tools.javac.util.Log.DeferredDiagnosticHandler handler =
+                new org.openjdk.tools.javac.util.Log.DeferredDiagnosticHandler(log);
+        try {
+            // the text before the body is replaced with whitespace so the positions of
+            // the parsed body are the same as in the new contents
+            char[] chars = new char[newBodyEnd];
+            Arrays.fill(chars, 0, bodyStart, ' ');
+            newContents.getChars(bodyStart, newBodyEnd, chars, bodyStart);
+            JavacParser parser = ParserFactory.instance(context)
+                    .newParser(CharBuffer.wrap(chars), false, true, false);
+            JCTree.JCBlock newBody = parser.block();
+            if (newBody.pos != bodyStart || parser.getEndPos(newBody) != newBodyEnd) {
+                return false;
+            }
+
+            Env<AttrContext> classEnv = Enter.instance(context).getClassEnv(method.sym.enclClass());
+            if (classEnv == null) {
+                return false;
+            }
+
+            Position.LineMap lineMap = Position.makeLineMap(newContents.toCharArray(),
+                    newContents.length(), false);
+            // the positions of the diagnostics must be read before the trees are moved
+            List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : task.diagnostics) {
+                if (!isSameFile(diagnostic, source)) {
+                    diagnostics.add(diagnostic);
+                } else if (!isInRange(diagnostic, bodyStart, oldBodyEnd)) {
+                    diagnostics.add(diagnostic.getEndPosition() >= oldBodyEnd
+                            || diagnostic.getPosition() >= oldBodyEnd
+                            ? new ShiftedDiagnostic(diagnostic, oldBodyEnd, delta, lineMap)
+                            : diagnostic);
+                }
+            }
+
+            List<JCTree> oldTrees = collect(oldBody);
+            unenterClasses(context, root, oldTrees);
+            updatePositions(root, endPositions, oldBody, oldBodyEnd, delta);
+            List<JCTree> newTrees = collect(newBody);
+            for (JCTree node : oldTrees) {
+                // removes the end position of the old node
+                endPositions.replaceTree(node, newBody);
+            }
+            for (JCTree node : newTrees) {
+                int end = parser.getEndPos(node);
+                if (end != Position.NOPOS) {
+                    endPositions.storeEnd(node, end);
+                }
+            }
+            method.body = newBody;
+            root.sourcefile = source;
+            root.lineMap = lineMap;
+
+            // like a full compilation, only syntax errors are reported if there are any
+            // and flow analysis is skipped if there are other errors. The errors of the
+            // file are only from flow analysis if it has been done for the class.
+            boolean flowDone = CompileStates.instance(context)
+                    .isDone(classEnv, CompileStates.CompileState.FLOW);
+            boolean parseErrors = hasErrors(handler.getDiagnostics());
+            Queue<JCDiagnostic> parseDiagnostics = new ArrayDeque<>(handler.getDiagnostics());
+            Attr attr = Attr.instance(context);
+            Env<AttrContext> methodEnv = MemberEnter.instance(context)
+                    .getMethodEnv(method, classEnv);
+            setReturnType(attr, methodEnv, method.sym.type.getReturnType());
+            attr.attribStat(newBody, methodEnv);
+            Annotate.instance(context).flush();
+            if (!parseErrors && !hasErrors(handler.getDiagnostics()) && (flowDone
+                    || diagnostics.stream().noneMatch(d -> d.getKind() == Diagnostic.Kind.ERROR))) {
+                Flow.instance(context).analyzeTree(classEnv, TreeMaker.instance(context));
+            }
+
+            // reported the same way as the compiler reports them to its listener
+            DiagnosticListener<JavaFileObject> listener =
+                    ClientCodeWrapper.instance(context).wrap(diagnostics::add);
+            Collection<JCDiagnostic> reported = parseErrors
+                    ? parseDiagnostics
+                    : handler.getDiagnostics();
+            Set<Integer> errorPositions = new HashSet<>();
+            for (JCDiagnostic diagnostic : reported) {
+                if (!isSameFile(diagnostic, source)
+                        || !isInRange(diagnostic, bodyStart, newBodyEnd)) {
+                    continue;
+                }
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR
+                        && !errorPositions.add((int) diagnostic.getPosition())) {
+                    continue;
+                }
+                listener.report(diagnostic);
+            }
+            task.setDiagnostics(diagnostics);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the tree may have been partially modified, it must be compiled again
+            Log.w(TAG, "Unable to reparse method body", e);
+            return false;
+        } finally {
+            log.popDiagnosticHandler(handler);
+            log.useSource(previousSource);
+        }
+    }
+
+    private static boolean isSameFile(Diagnostic<? extends JavaFileObject> diagnostic,
+                                      JavaFileObject file) {
+        return diagnostic.getSource() != null
+                && diagnostic.getSource().toUri().equals(file.toUri());
+    }
+
+    private static boolean isInRange(Diagnostic<?> diagnostic, int start, int end) {
+        long position = diagnostic.getPosition();
+        return start <= position && position < end;
+    }
+
+    private static boolean hasErrors(Collection<JCDiagnostic> diagnostics) {
+        for (JCDiagnostic diagnostic : diagnostics) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the local and anonymous classes of the old body from the compiler, the same way
+     * javac does before attributing a tree again. Otherwise the classes of the new body are
+     * given different names and the old ones are never released.
+     */
+    private static void unenterClasses(Context context, JCTree.JCCompilationUnit root,
+                                       List<JCTree> trees) throws ReflectiveOperationException {
+        if (sClearLocalClassNameIndexes == null) {
+            Method clearIndexes = Check.class.getDeclaredMethod("clearLocalClassNameIndexes",
+                    Symbol.ClassSymbol.class);
+            clearIndexes.setAccessible(true);
+            Class<?> typeEnvs = Class.forName(Enter.class.getPackage().getName() + ".TypeEnvs");
+            Method instance = typeEnvs.getDeclaredMethod("instance", Context.class);
+            instance.setAccessible(true);
+            Method remove = typeEnvs.getDeclaredMethod("remove", Symbol.TypeSymbol.class);
+            remove.setAccessible(true);
+            sTypeEnvsInstance = instance;
+            sTypeEnvsRemove = remove;
+            sClearLocalClassNameIndexes = clearIndexes;
+        }
+        Check check = Check.instance(context);
+        Symtab symtab = Symtab.instance(context);
+        Object typeEnvs = sTypeEnvsInstance.invoke(null, context);
+        for (JCTree tree : trees) {
+            if (!(tree instanceof JCTree.JCClassDecl)) {
+                continue;
+            }
+            Symbol.ClassSymbol symbol = ((JCTree.JCClassDecl) tree).sym;
+            if (symbol == null) {
+                continue;
+            }
+            sTypeEnvsRemove.invoke(typeEnvs, symbol);
+            check.removeCompiled(symbol);
+            sClearLocalClassNameIndexes.invoke(check, symbol);
+            symtab.removeClass(root.modle, symbol.flatname);
+        }
+    }
+
+    /**
+     * Finds the method declared directly in a class whose body contains the range, excluding
+     * its braces
+     */
+    @Nullable
+    private static JCTree.JCMethodDecl findEnclosingMethod(JCTree.JCCompilationUnit root,
+                                                          EndPosTable endPositions,
+                                                          int start, int end) {
+        List<JCTree.JCClassDecl> classes = new ArrayList<>();
+        for (JCTree def : root.defs) {
+            if (def instanceof JCTree.JCClassDecl) {
+                classes.add((JCTree.JCClassDecl) def);
+            }
+        }
+        while (!classes.isEmpty()) {
+            JCTree.JCClassDecl classDecl = classes.remove(classes.size() - 1);
+            for (JCTree def : classDecl.defs) {
+                if (def instanceof JCTree.JCClassDecl) {
+                    classes.add((JCTree.JCClassDecl) def);
+                } else if (def instanceof JCTree.JCMethodDecl) {
+                    JCTree.JCMethodDecl method = (JCTree.JCMethodDecl) def;
+                    if (method.body == null) {
+                        continue;
+                    }
+                    int bodyEnd = endPositions.getEndPos(method.body);
+                    if (bodyEnd != Position.NOPOS
+                            && method.body.pos < start && end < bodyEnd) {
+                        return method;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shifts the positions of the trees after the old body by the change in length
+     */
+    private static void updatePositions(JCTree.JCCompilationUnit root, EndPosTable endPositions,
+                                        JCTree.JCBlock oldBody, int oldBodyEnd, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null || tree == oldBody) {
+                    return;
+                }
+                if (tree.pos >= oldBodyEnd) {
+                    tree.pos += delta;
+                }
+                int end = endPositions.getEndPos(tree);
+                if (end != Position.NOPOS && end >= oldBodyEnd) {
+                    endPositions.storeEnd(tree, end + delta);
+                }
+                super.scan(tree);
+            }
+        }.scan(root);
+    }
+
+    private static List<JCTree> collect(JCTree tree) {
+        List<JCTree> trees = new ArrayList<>();
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree != null) {
+                    trees.add(tree);
+                    super.scan(tree);
+                }
+            }
+        }.scan(tree);
+        return trees;
+    }
+
+    /**
+     * The expected type of return statements is not accessible from outside of javac, it is
+     * normally set by {@link Attr} when attributing the whole method.
+     */
+    private static void setReturnType(Attr attr, Env<AttrContext> env, Type returnType)
+            throws ReflectiveOperationException {
+        if (sResultInfoConstructor == null) {
+            Class<?> resultInfo = Class.forName(Attr.class.getName() + "$ResultInfo");
+            Constructor<?> constructor = resultInfo.getDeclaredConstructor(Attr.class,
+                    Kinds.KindSelector.class, Type.class);
+            constructor.setAccessible(true);
+            Field field = AttrContext.class.getDeclaredField("returnResult");
+            field.setAccessible(true);
+            sReturnResultField = field;
+            sResultInfoConstructor = constructor;
+        }
+        sReturnResultField.set(env.info,
+                sResultInfoConstructor.newInstance(attr, Kinds.KindSelector.VAL, returnType));
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int commonSuffix(String a, String b, int prefix) {
+        int length = Math.min(a.length(), b.length()) - prefix;
+        int i = 0;
+        while (i < length && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -3,6 +3,8 @@ package com.tyron.completion.java.compiler;
 import android.annotation.SuppressLint;
 import android.util.Log;
 
+import androidx.annotation.GuardedBy;
+
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 
@@ -26,29 +28,80 @@ import org.openjdk.source.util.Trees;
 import org.openjdk.tools.javac.api.JavacTool;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Set;
 
 public class Parser {
 
+    /**
+     * The memory budget of the parse tree cache in bytes
+     */
+    private static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of parse trees in the cache, bounds the memory used by many small
+     * files whose estimated size is mostly the fixed overhead
+     */
+    private static final int MAX_CACHE_ENTRIES = 64;
+
+    /**
+     * Used to estimate the memory used by a parse tree from the length of its source,
+     * this includes the tokens, the tree nodes and the line map.
+     */
+    private static final int ESTIMATED_BYTES_PER_CHAR = 16;
+
+    /**
+     * Estimate of the memory retained by a parser regardless of the length of its source,
+     * each parser has its own javac context with its log, name table and symbol tables.
+     */
+    private static final long ESTIMATED_PARSER_OVERHEAD = 128 * 1024;
+
     private static final JavaCompiler COMPILER = JavacTool.create();
+
+    /**
+     * The file manager shared by all the parse tasks of the current project, creating a file
+     * manager is expensive since it opens the jars of the class path.
+     */
+    @GuardedBy("Parser.class")
     private static SourceFileManager FILE_MANAGER;
+    @GuardedBy("Parser.class")
+    private static Project sFileManagerProject;
+
+    private static final Object CACHE_LOCK = new Object();
+    /**
+     * The most recent parse tree of each file, a file is parsed again when its contents
+     * are different from the ones of its cached tree
+     */
+    @GuardedBy("CACHE_LOCK")
+    private static final LinkedHashMap<URI, Parser> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("CACHE_LOCK")
+    private static long sCacheSize;
 
     /**
      * Create a task that compiles a single file
      */
     @SuppressLint("NewApi")
-    private static JavacTask singleFileTask(Project project, JavaFileObject file) {
+    private static JavacTask singleFileTask(SourceFileManager fileManager, JavaFileObject file) {
         return (JavacTask)
-                COMPILER.getTask(null, getFileManager(project), Parser::ignoreError, Collections.emptyList(), Collections.emptyList(), Collections.singletonList(file));
+                COMPILER.getTask(null, fileManager, Parser::ignoreError, Collections.emptyList(), Collections.emptyList(), Collections.singletonList(file));
     }
 
-    private static SourceFileManager getFileManager(Project project) {
-        return new SourceFileManager(project);
+    private static synchronized SourceFileManager getFileManager(Project project) {
+        if (FILE_MANAGER == null || sFileManagerProject != project) {
+            // the cached parse trees keep the file manager of the previous project alive
+            clearParseTrees();
+            FILE_MANAGER = new SourceFileManager(project);
+            sFileManagerProject = project;
+        }
+        return FILE_MANAGER;
     }
 
 
@@ -58,18 +111,18 @@ public class Parser {
     public final CompilationUnitTree root;
     public final Trees trees;
 
-    private Parser(Project project, JavaFileObject file) {
+    private Parser(Project project, JavaFileObject file, String contents) {
         this.file = file;
-        try {
-            this.contents = file.getCharContent(false).toString();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        this.task = singleFileTask(project, file);
-        try {
-            this.root = task.parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        this.contents = contents;
+        SourceFileManager fileManager = getFileManager(project);
+        // the file manager is not thread safe
+        synchronized (fileManager) {
+            this.task = singleFileTask(fileManager, file);
+            try {
+                this.root = task.parse().iterator().next();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
         this.trees = Trees.instance(task);
     }
@@ -78,26 +131,68 @@ public class Parser {
         return parseJavaFileObject(project, new SourceFileObject(file));
     }
 
-    private static Parser cachedParse;
-    private static long cachedModified = -1;
+    /**
+     * Parses the file, the parse tree is reused if the same file with the same contents
+     * has been parsed before and is still in the cache. Otherwise the new tree replaces the
+     * cached tree of the file.
+     */
+    public static Parser parseJavaFileObject(Project project, JavaFileObject file) {
+        String contents;
+        try {
+            contents = file.getCharContent(false).toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        URI key = file.toUri();
+        synchronized (CACHE_LOCK) {
+            Parser cached = CACHE.get(key);
+            if (cached != null && cached.contents.equals(contents)) {
+                return cached;
+            }
+        }
+
+        Parser parser = new Parser(project, file, contents);
+        synchronized (CACHE_LOCK) {
+            Parser previous = CACHE.put(key, parser);
+            if (previous != null) {
+                sCacheSize -= getEstimatedSize(previous);
+            }
+            sCacheSize += getEstimatedSize(parser);
+            trimCache();
+        }
+        return parser;
+    }
 
-    private static boolean needsParse(JavaFileObject file) {
-        if (cachedParse == null) return true;
-        if (!cachedParse.file.equals(file)) return true;
-        if (file.getLastModified() > cachedModified) return true;
-        return false;
+    /**
+     * Removes the cached parse trees and the shared file manager, called when the project
+     * or its class path changes so they do not keep the previous one alive
+     */
+    public static synchronized void clearCache() {
+        clearParseTrees();
+        FILE_MANAGER = null;
+        sFileManagerProject = null;
     }
 
-    private static void loadParse(Project project, JavaFileObject file) {
-        cachedParse = new Parser(project, file);
-        cachedModified = file.getLastModified();
+    private static void clearParseTrees() {
+        synchronized (CACHE_LOCK) {
+            CACHE.clear();
+            sCacheSize = 0;
+        }
     }
 
-    public static Parser parseJavaFileObject(Project project, JavaFileObject file) {
-        if (needsParse(file)) {
-            loadParse(project, file);
+    @GuardedBy("CACHE_LOCK")
+    private static void trimCache() {
+        Iterator<Parser> iterator = CACHE.values().iterator();
+        while ((sCacheSize > MAX_CACHE_SIZE || CACHE.size() > MAX_CACHE_ENTRIES)
+                && iterator.hasNext()) {
+            sCacheSize -= getEstimatedSize(iterator.next());
+            iterator.remove();
         }
-        return cachedParse;
+    }
+
+    private static long getEstimatedSize(Parser parser) {
+        return ESTIMATED_PARSER_OVERHEAD
+                + (long) parser.contents.length() * ESTIMATED_BYTES_PER_CHAR;
     }
 
     public Set<Name> packagePrivateClasses() {
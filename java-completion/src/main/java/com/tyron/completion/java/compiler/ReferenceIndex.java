@@ -0,0 +1,442 @@
+package com.tyron.completion.java.compiler;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.listener.FileListener;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reverse index from identifiers to the source files of a module that contain them.
+ *
+ * <p>Each file is tokenized once and its identifiers, package name and imports are kept in
+ * memory. When a file is edited through the {@link FileManager} it is only marked as dirty,
+ * it is tokenized again lazily on the next query. Files that are not opened are re-indexed
+ * when their last modified time on disk changes.
+ */
+class ReferenceIndex implements FileListener {
+
+    private static final String TAG = ReferenceIndex.class.getSimpleName();
+
+    private static final Key<ReferenceIndex> KEY = Key.create("referenceIndex");
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
+            "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "native", "new", "package", "private", "protected", "public",
+            "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+            "throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false",
+            "null", "var"));
+
+    static class FileEntry {
+
+        private final long mModified;
+        private final String mPackageName;
+        private final List<String> mImports;
+        private final Map<String, int[]> mOccurrences;
+
+        FileEntry(long modified, String packageName, List<String> imports,
+                  Map<String, int[]> occurrences) {
+            mModified = modified;
+            mPackageName = packageName;
+            mImports = imports;
+            mOccurrences = occurrences;
+        }
+
+        @NonNull
+        String getPackageName() {
+            return mPackageName;
+        }
+
+        /**
+         * @return the imports of this file, static imports are prefixed with {@code static }
+         */
+        @NonNull
+        List<String> getImports() {
+            return mImports;
+        }
+
+        @NonNull
+        Set<String> getIdentifiers() {
+            return mOccurrences.keySet();
+        }
+    }
+
+    /**
+     * Returns the index of the module, creating and registering it to the file manager
+     * of the module if needed.
+     */
+    @NonNull
+    static synchronized ReferenceIndex getInstance(@NonNull JavaModule module) {
+        ReferenceIndex index = module.getUserData(KEY);
+        if (index == null) {
+            index = new ReferenceIndex(module.getFileManager());
+            module.putUserData(KEY, index);
+            module.getFileManager().addSnapshotListener(index);
+        }
+        return index;
+    }
+
+    @Nullable
+    private final FileManager mFileManager;
+    private final Map<File, FileEntry> mEntries = new HashMap<>();
+    private final Map<String, Set<File>> mPostings = new HashMap<>();
+    private final Set<File> mDirty = new HashSet<>();
+
+    @VisibleForTesting
+    ReferenceIndex(@Nullable FileManager fileManager) {
+        mFileManager = fileManager;
+    }
+
+    @Override
+    public synchronized void onSnapshotChanged(File file, CharSequence contents) {
+        if (file.getName().endsWith(".java")) {
+            mDirty.add(file);
+        }
+    }
+
+    /**
+     * Brings the index up to date with the given source files, files that are no longer
+     * part of the module are removed from the index.
+     */
+    synchronized void update(@NonNull Collection<File> files) {
+        Set<File> current = new HashSet<>(files);
+        for (File file : new ArrayList<>(mEntries.keySet())) {
+            if (!current.contains(file)) {
+                remove(file);
+            }
+        }
+        for (File file : current) {
+            FileEntry entry = mEntries.get(file);
+            long modified = lastModified(file);
+            if (entry == null || entry.mModified != modified || mDirty.contains(file)) {
+                CharSequence contents = readContents(file);
+                if (contents != null) {
+                    put(file, modified, contents);
+                } else {
+                    remove(file);
+                }
+            }
+        }
+        mDirty.clear();
+    }
+
+    @VisibleForTesting
+    synchronized void put(@NonNull File file, long modified, @NonNull CharSequence contents) {
+        remove(file);
+
+        FileEntry entry = tokenize(modified, contents);
+        mEntries.put(file, entry);
+        for (String identifier : entry.getIdentifiers()) {
+            mPostings.computeIfAbsent(identifier, k -> new HashSet<>()).add(file);
+        }
+    }
+
+    private void remove(File file) {
+        FileEntry entry = mEntries.remove(file);
+        if (entry == null) {
+            return;
+        }
+        for (String identifier : entry.getIdentifiers()) {
+            Set<File> files = mPostings.get(identifier);
+            if (files != null) {
+                files.remove(file);
+                if (files.isEmpty()) {
+                    mPostings.remove(identifier);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the files that contain the identifier as a whole word outside of comments
+     * and string literals
+     */
+    @NonNull
+    synchronized Set<File> findFiles(@NonNull String identifier) {
+        Set<File> files = mPostings.get(identifier);
+        if (files == null) {
+            return Collections.emptySet();
+        }
+        return new LinkedHashSet<>(files);
+    }
+
+    /**
+     * @return the start offsets of the identifier in the file
+     */
+    @NonNull
+    synchronized int[] getOccurrences(@NonNull File file, @NonNull String identifier) {
+        FileEntry entry = mEntries.get(file);
+        if (entry == null) {
+            return new int[0];
+        }
+        int[] offsets = entry.mOccurrences.get(identifier);
+        return offsets == null ? new int[0] : offsets.clone();
+    }
+
+    /**
+     * Returns the files that may reference the given class. A file is a candidate if it
+     * contains the simple name of the class and the class is visible to it without being
+     * fully qualified, either by being in the same package or by being imported, or if it
+     * contains the fully qualified name of the class.
+     */
+    @NonNull
+    synchronized List<File> findTypeReferences(@NonNull String className) {
+        int lastDot = className.lastIndexOf('.');
+        String packageName = lastDot == -1 ? "" : className.substring(0, lastDot);
+        String simpleName = className.substring(lastDot + 1);
+
+        List<File> result = new ArrayList<>();
+        for (File file : findFiles(simpleName)) {
+            FileEntry entry = mEntries.get(file);
+            if (entry != null && isVisible(entry, packageName, className)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the files that may reference the given member. Members can be accessed through
+     * an expression whose type is never written in the file, so every file that contains
+     * the name of the member is a candidate.
+     */
+    @NonNull
+    synchronized List<File> findMemberReferences(@NonNull String className,
+                                                 @NonNull String memberName) {
+        return new ArrayList<>(findFiles(memberName));
+    }
+
+    private static boolean isVisible(FileEntry entry, String packageName, String className) {
+        if (entry.getPackageName().equals(packageName)) {
+            return true;
+        }
+        for (String imported : entry.getImports()) {
+            String name = imported.startsWith("static ")
+                    ? imported.substring("static ".length()) : imported;
+            if (name.equals(className)
+                    || name.equals(packageName + ".*")
+                    || name.startsWith(className + ".")) {
+                return true;
+            }
+        }
+        // fully qualified usages and nested classes accessed through their outer class,
+        // both contain the last segment of the enclosing name as an identifier
+        String enclosingName = packageName.substring(packageName.lastIndexOf('.') + 1);
+        return !enclosingName.isEmpty() && entry.getIdentifiers().contains(enclosingName);
+    }
+
+    private long lastModified(File file) {
+        if (mFileManager != null) {
+            Instant instant = mFileManager.getLastModified(file);
+            if (instant != null) {
+                return instant.toEpochMilli();
+            }
+        }
+        return file.lastModified();
+    }
+
+    @Nullable
+    private CharSequence readContents(File file) {
+        if (mFileManager != null) {
+            Optional<CharSequence> content = mFileManager.getFileContent(file);
+            if (content.isPresent()) {
+                return content.get();
+            }
+        }
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file.getName(), e);
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static FileEntry tokenize(long modified, CharSequence contents) {
+        Map<String, List<Integer>> occurrences = new HashMap<>();
+        List<String> imports = new ArrayList<>();
+        String packageName = "";
+
+        Scanner scanner = new Scanner(contents);
+        String token;
+        while ((token = scanner.next()) != null) {
+            if (!scanner.isIdentifier()) {
+                continue;
+            }
+            if (token.equals("package") && scanner.isTopLevel()) {
+                packageName = scanner.readQualifiedName(false);
+                continue;
+            }
+            if (token.equals("import") && scanner.isTopLevel()) {
+                String name = scanner.readQualifiedName(true);
+                if (!name.isEmpty()) {
+                    imports.add(name);
+                }
+                continue;
+            }
+            if (!KEYWORDS.contains(token)) {
+                occurrences.computeIfAbsent(token, k -> new ArrayList<>())
+                        .add(scanner.getTokenStart());
+            }
+        }
+
+        Map<String, int[]> result = new HashMap<>(occurrences.size());
+        occurrences.forEach((name, offsets) -> {
+            int[] array = new int[offsets.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = offsets.get(i);
+            }
+            result.put(name, array);
+        });
+        return new FileEntry(modified, packageName, imports, result);
+    }
+
+    /**
+     * Minimal java lexer that only distinguishes identifiers, skipping comments,
+     * string, character and number literals.
+     */
+    private static class Scanner {
+
+        private final CharSequence mText;
+        private int mPosition;
+        private int mTokenStart;
+        private boolean mIdentifier;
+        private int mDepth;
+
+        Scanner(CharSequence text) {
+            mText = text;
+        }
+
+        boolean isIdentifier() {
+            return mIdentifier;
+        }
+
+        boolean isTopLevel() {
+            return mDepth == 0;
+        }
+
+        int getTokenStart() {
+            return mTokenStart;
+        }
+
+        /**
+         * Reads a dotted name until the next semicolon, the identifiers of the name
+         * are not added to the index.
+         */
+        String readQualifiedName(boolean isImport) {
+            StringBuilder builder = new StringBuilder();
+            String token;
+            while ((token = next()) != null && !token.equals(";")) {
+                if (isImport && mIdentifier && token.equals("static") && builder.length() == 0) {
+                    builder.append("static ");
+                } else if (mIdentifier || token.equals(".") || token.equals("*")) {
+                    builder.append(token);
+                } else if (token.equals("{")) {
+                    // not a package or import statement
+                    mDepth++;
+                    break;
+                }
+            }
+            return builder.toString();
+        }
+
+        @Nullable
+        String next() {
+            int length = mText.length();
+            while (mPosition < length) {
+                char c = mText.charAt(mPosition);
+                if (Character.isWhitespace(c)) {
+                    mPosition++;
+                } else if (c == '/' && peek(1) == '/') {
+                    while (mPosition < length && mText.charAt(mPosition) != '\n') {
+                        mPosition++;
+                    }
+                } else if (c == '/' && peek(1) == '*') {
+                    mPosition += 2;
+                    while (mPosition < length
+                            && !(mText.charAt(mPosition) == '*' && peek(1) == '/')) {
+                        mPosition++;
+                    }
+                    mPosition += 2;
+                } else if (c == '"' && peek(1) == '"' && peek(2) == '"') {
+                    mPosition += 3;
+                    while (mPosition < length && !(mText.charAt(mPosition) == '"'
+                            && peek(1) == '"' && peek(2) == '"')) {
+                        if (mText.charAt(mPosition) == '\\') {
+                            mPosition++;
+                        }
+                        mPosition++;
+                    }
+                    mPosition += 3;
+                } else if (c == '"' || c == '\'') {
+                    mPosition++;
+                    while (mPosition < length) {
+                        char ch = mText.charAt(mPosition);
+                        if (ch == '\\') {
+                            mPosition += 2;
+                            continue;
+                        }
+                        mPosition++;
+                        if (ch == c || ch == '\n') {
+                            break;
+                        }
+                    }
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    mTokenStart = mPosition;
+                    while (mPosition < length
+                            && Character.isJavaIdentifierPart(mText.charAt(mPosition))) {
+                        mPosition++;
+                    }
+                    mIdentifier = true;
+                    return mText.subSequence(mTokenStart, mPosition).toString();
+                } else if (Character.isDigit(c)) {
+                    while (mPosition < length
+                            && (Character.isJavaIdentifierPart(mText.charAt(mPosition))
+                            || mText.charAt(mPosition) == '.')) {
+                        mPosition++;
+                    }
+                } else {
+                    if (c == '{') {
+                        mDepth++;
+                    } else if (c == '}' && mDepth > 0) {
+                        mDepth--;
+                    }
+                    mTokenStart = mPosition++;
+                    mIdentifier = false;
+                    return String.valueOf(c);
+                }
+            }
+            return null;
+        }
+
+        private char peek(int offset) {
+            int index = mPosition + offset;
+            return index < mText.length() ? mText.charAt(index) : '\0';
+        }
+    }
+}
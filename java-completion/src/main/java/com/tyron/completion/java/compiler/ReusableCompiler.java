@@ -26,8 +26,11 @@ import org.openjdk.tools.javac.util.Log;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -40,7 +43,7 @@ import java.util.stream.StreamSupport;
 import me.xdrop.diffutils.DiffUtils;
 
 /**
- * A pool of reusable JavacTasks. When a task is no valid anymore, it is returned to the pool, and its Context may be
+ * A bounded pool of reusable JavacTasks. When a task is no valid anymore, it is returned to the pool, and its Context may be
  * reused for future processing in some cases. The reuse is achieved by replacing some components (most notably
  * JavaCompiler and Log) with reusable counterparts, and by cleaning up leftovers from previous compilation.
  *
@@ -66,15 +69,40 @@ public class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
-    private final List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+    /**
+     * The default maximum number of contexts, a context holds the symbols of the whole
+     * class path so only a few of them can be kept in memory.
+     */
+    public static final int DEFAULT_MAX_CONTEXTS = 2;
+
+    private final int maxContexts;
+
+    /**
+     * Contexts that are not checked out, the most recently used first
+     */
+    private final Deque<ReusableContext> idleContexts = new ArrayDeque<>();
+    private int contextCount;
+
+    public ReusableCompiler() {
+        this(DEFAULT_MAX_CONTEXTS);
+    }
+
+    public ReusableCompiler(int maxContexts) {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("maxContexts must be at least 1");
+        }
+        this.maxContexts = maxContexts;
+    }
 
     /**
      * Creates a new task as if by JavaCompiler and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
      * compilation.
      *
+     * <p>A context that was created with the same options is reused if one is not checked out,
+     * otherwise a new context is created if the pool is not full. If all the contexts are
+     * checked out, this waits until one of them is returned.
+     *
      * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
      *     diagnostics
@@ -93,57 +121,94 @@ public class ReusableCompiler {
 		Iterable<String> options,
 		Iterable<String> classes,
 		Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
         List<String> opts =
 			StreamSupport.stream(options.spliterator(), false)
                     .collect(Collectors.toList());
-        if (!opts.equals(currentOptions)) {
-            List<String> difference = new ArrayList<>(currentOptions);
-            difference.removeAll(opts);
-            LOG.warning("Options changed, creating new compiler \n difference: " + difference);
-            currentOptions.clear();
-            currentOptions.addAll(opts);
-            currentContext = new ReusableContext(new ArrayList<>(opts));
+        ReusableContext context = checkOut(opts);
+        try {
+            JavacTaskImpl task =
+                    (JavacTaskImpl)
+                    systemProvider.getTask(
+                    null, fileManager, diagnosticListener, opts, classes, compilationUnits, context);
+
+            task.addTaskListener(context);
+            return new Borrow(task, context);
+        } catch (RuntimeException | Error e) {
+            // the context may be in a broken state
+            discard(context);
+            throw e;
+        }
+    }
+
+    private synchronized ReusableContext checkOut(List<String> opts) {
+        while (true) {
+            for (Iterator<ReusableContext> it = idleContexts.iterator(); it.hasNext(); ) {
+                ReusableContext context = it.next();
+                if (context.arguments.equals(opts)) {
+                    it.remove();
+                    return context;
+                }
+            }
+            if (contextCount < maxContexts) {
+                contextCount++;
+                return new ReusableContext(new ArrayList<>(opts));
+            }
+            if (!idleContexts.isEmpty()) {
+                // replace the least recently used context
+                ReusableContext evicted = idleContexts.removeLast();
+                List<String> difference = new ArrayList<>(evicted.arguments);
+                difference.removeAll(opts);
+                LOG.warning("Options changed, creating new compiler \n difference: " + difference);
+                return new ReusableContext(new ArrayList<>(opts));
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a compiler", e);
+            }
         }
-        JavacTaskImpl task =
-			(JavacTaskImpl)
-			systemProvider.getTask(
-			null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
+    }
 
-        task.addTaskListener(currentContext);
-        return new Borrow(task, currentContext);
+    private synchronized void checkIn(ReusableContext context) {
+        idleContexts.addFirst(context);
+        notifyAll();
     }
 
-    public ReusableContext getCurrentContext() {
-        return currentContext;
+    private synchronized void discard(ReusableContext context) {
+        contextCount--;
+        notifyAll();
     }
 
     public class Borrow implements AutoCloseable {
         final JavacTask task;
+        private final ReusableContext context;
         boolean closed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.context = ctx;
         }
 
         @Override
         public void close() {
             if (closed) return;
+            closed = true;
             // not returning the context to the pool if task crashes with an exception
             // the task/context may be in a broken state
-            currentContext.clear();
             try {
+                context.clear();
                 Method method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
                 method.invoke(task);
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                discard(context);
                 throw new RuntimeException(e);
+            } catch (RuntimeException | Error e) {
+                discard(context);
+                throw e;
             }
-            checkedOut = false;
-            closed = true;
+            checkIn(context);
         }
     }
 
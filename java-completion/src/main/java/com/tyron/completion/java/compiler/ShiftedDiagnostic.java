@@ -0,0 +1,115 @@
+package com.tyron.completion.java.compiler;
+
+import androidx.annotation.NonNull;
+
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.LineMap;
+
+import java.util.Locale;
+
+/**
+ * A diagnostic that was reported before the contents of its file have changed, with its
+ * positions moved to where they are in the new contents. The positions are copied when it is
+ * created because the positions of the original diagnostic may be computed from trees that
+ * are modified afterwards.
+ */
+public class ShiftedDiagnostic implements Diagnostic<JavaFileObject> {
+
+    private final Diagnostic<? extends JavaFileObject> mDelegate;
+    private final long mPosition;
+    private final long mStartPosition;
+    private final long mEndPosition;
+    private final long mLineNumber;
+    private final long mColumnNumber;
+
+    /**
+     * @param diagnostic the diagnostic in the old contents
+     * @param offset the positions starting from this offset are moved
+     * @param delta the amount of characters the positions are moved by
+     * @param lineMap the line map of the new contents
+     */
+    ShiftedDiagnostic(@NonNull Diagnostic<? extends JavaFileObject> diagnostic, int offset,
+                      int delta, @NonNull LineMap lineMap) {
+        mDelegate = diagnostic instanceof ShiftedDiagnostic
+                ? ((ShiftedDiagnostic) diagnostic).getDelegate()
+                : diagnostic;
+        mPosition = shift(diagnostic.getPosition(), offset, delta);
+        mStartPosition = shift(diagnostic.getStartPosition(), offset, delta);
+        mEndPosition = shift(diagnostic.getEndPosition(), offset, delta);
+        if (mPosition == NOPOS) {
+            mLineNumber = diagnostic.getLineNumber();
+            mColumnNumber = diagnostic.getColumnNumber();
+        } else {
+            mLineNumber = lineMap.getLineNumber(mPosition);
+            mColumnNumber = lineMap.getColumnNumber(mPosition);
+        }
+    }
+
+    private static long shift(long position, int offset, int delta) {
+        if (position == NOPOS || position < offset) {
+            return position;
+        }
+        return position + delta;
+    }
+
+    /**
+     * @return the diagnostic reported by the compiler, its positions are only valid for the
+     * old contents
+     */
+    @NonNull
+    public Diagnostic<? extends JavaFileObject> getDelegate() {
+        return mDelegate;
+    }
+
+    @Override
+    public Kind getKind() {
+        return mDelegate.getKind();
+    }
+
+    @Override
+    public JavaFileObject getSource() {
+        return mDelegate.getSource();
+    }
+
+    @Override
+    public long getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public long getStartPosition() {
+        return mStartPosition;
+    }
+
+    @Override
+    public long getEndPosition() {
+        return mEndPosition;
+    }
+
+    @Override
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+
+    @Override
+    public long getColumnNumber() {
+        return mColumnNumber;
+    }
+
+    @Override
+    public String getCode() {
+        return mDelegate.getCode();
+    }
+
+    @Override
+    public String getMessage(Locale locale) {
+        return mDelegate.getMessage(locale);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mDelegate.toString();
+    }
+}
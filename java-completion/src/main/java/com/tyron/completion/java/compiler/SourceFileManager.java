@@ -101,10 +101,10 @@ public class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFil
         }
         // FileStore shadows disk
         if (location == StandardLocation.SOURCE_PATH) {
-            String packageName = StringSearch.mostName(className);
             String simpleClassName = StringSearch.lastName(className);
-            for (File f : list(mCurrentModule, packageName)) {
-                if (f.getName().equals(simpleClassName + kind.extension)) {
+            if (mCurrentModule instanceof JavaModule) {
+                File f = ((JavaModule) mCurrentModule).getJavaFile(className);
+                if (f != null && f.getName().equals(simpleClassName + kind.extension)) {
                     return new SourceFileObject(f.toPath(), (JavaModule) mCurrentModule);
                 }
             }
@@ -139,18 +139,12 @@ public class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFil
         }
 	    JavaModule javaModule = (JavaModule) module;
 
-	    List<File> list = new ArrayList<>();
-        for (String file : javaModule.getJavaFiles().keySet()) {
-            String name = file;
-            if (file.endsWith(".")) {
-                name = file.substring(0, file.length() - 1);
-            }
-            if (!name.startsWith(packageName)) {
-                continue;
-            }
-            if (name.substring(0, name.lastIndexOf(".")).equals(packageName) || name.equals(packageName)) {
-                list.add(javaModule.getJavaFiles().get(file));
-            }
+	    List<File> list = javaModule.listJavaFiles(packageName);
+	    // a class name may be passed instead of a package name, include the class itself
+        File file = javaModule.getJavaFile(packageName);
+        if (file != null) {
+            list = new ArrayList<>(list);
+            list.add(file);
         }
         return list;
     }
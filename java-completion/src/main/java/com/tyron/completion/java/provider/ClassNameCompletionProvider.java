@@ -49,7 +49,7 @@ public class ClassNameCompletionProvider extends BaseCompletionProvider {
             uniques.add(className);
         }
 
-        for (String className : compiler.publicTopLevelTypes()) {
+        for (String className : compiler.findClassesBySimpleNamePrefix(partial)) {
             // more strict on matching class names
             String simpleName = ActionUtil.getSimpleName(className);
             if (!StringSearch.matchesPartialName(simpleName, partial)) {
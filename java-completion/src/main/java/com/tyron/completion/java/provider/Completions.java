@@ -20,6 +20,7 @@ import com.tyron.completion.java.patterns.JavacTreePattern;
 import com.tyron.completion.java.util.FileContentFixer;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.util.CompletionRanker;
 
 import org.jetbrains.kotlin.com.intellij.util.ProcessingContext;
 import org.openjdk.source.tree.CaseTree;
@@ -38,12 +39,8 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
-
 /**
  * Main entry point for getting completions
  */
@@ -81,8 +78,7 @@ public class Completions {
             StringBuilder pruned = new PruneMethodBodies(task.task).scan(task.root, index);
             int end = StringSearch.endOfLine(pruned, (int) index);
             pruned.insert(end, ';');
-            contents = new FileContentFixer(compiler.compiler.getCurrentContext())
-                    .fixFileContent(pruned);
+            contents = new FileContentFixer().fixFileContent(pruned);
         } catch (IndexOutOfBoundsException e) {
             Log.w(TAG, "Unable to fix file content", e);
             return new CompletionList();
@@ -95,15 +91,9 @@ public class Completions {
     }
 
     private void sort(List<CompletionItem> items, String partial) {
-        items.sort(Comparator.comparingInt(it -> {
-            String label = it.label;
-            if (label.contains("(")) {
-                label = label.substring(0, label.indexOf('('));
-            }
-
-            return FuzzySearch.ratio(label, partial);
-        }));
-        Collections.reverse(items);
+        List<CompletionItem> ranked = new CompletionRanker(items).rank(partial, items.size());
+        items.clear();
+        items.addAll(ranked);
     }
 
     private CompletionList compileAndComplete(File file, String contents,
@@ -113,7 +103,9 @@ public class Completions {
         boolean endsWithParen = endsWithParen(contents, (int) cursor);
 
         checkCanceled();
-        CompilerContainer container = compiler.compile(Collections.singletonList(source));
+        // other method bodies are pruned, so while typing inside the same method only
+        // its body needs to be parsed and attributed again
+        CompilerContainer container = compiler.compileIncrementally(source);
         return container.get(task -> {
             TreePath path = new FindCurrentPath(task.task).scan(task.root(), cursor);
             String modifiedPartial = partial;
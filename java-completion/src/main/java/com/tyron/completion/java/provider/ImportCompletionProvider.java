@@ -56,20 +56,18 @@ public class ImportCompletionProvider extends BaseCompletionProvider {
 
         Set<String> names = new HashSet<>();
         CompletionList list = new CompletionList();
-        for (String className : getCompiler().publicTopLevelTypes()) {
-            if (className.startsWith(path)) {
-                int start = path.lastIndexOf('.');
-                int end = className.indexOf('.', path.length());
-                if (end == -1) end = className.length();
-                String segment = className.substring(start + 1, end);
-                if (names.contains(segment)) continue;
-                names.add(segment);
-                boolean isClass = className.endsWith(segment);
-                if (isClass) {
-                    list.items.add(importClassItem(className));
-                } else {
-                    list.items.add(packageItem(segment));
-                }
+        for (String className : getCompiler().findClassesByQualifiedNamePrefix(path)) {
+            int start = path.lastIndexOf('.');
+            int end = className.indexOf('.', path.length());
+            if (end == -1) end = className.length();
+            String segment = className.substring(start + 1, end);
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            boolean isClass = className.endsWith(segment);
+            if (isClass) {
+                list.items.add(importClassItem(className));
+            } else {
+                list.items.add(packageItem(segment));
             }
         }
         return list;
@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.completion.java.compiler.CompileTask;
+import com.tyron.completion.java.compiler.ShiftedDiagnostic;
 import com.tyron.completion.java.action.FindMethodDeclarationAt;
 import com.tyron.editor.CharPosition;
 import com.tyron.editor.Editor;
@@ -134,10 +135,14 @@ public class DiagnosticUtil {
     @Nullable
     public static ClientCodeWrapper.DiagnosticSourceUnwrapper getDiagnosticSourceUnwrapper(Diagnostic<?> diagnostic) {
         if (diagnostic instanceof DiagnosticWrapper) {
-            if (((DiagnosticWrapper) diagnostic).getExtra() instanceof ClientCodeWrapper.DiagnosticSourceUnwrapper) {
-                return (ClientCodeWrapper.DiagnosticSourceUnwrapper) ((DiagnosticWrapper) diagnostic).getExtra();
+            Object extra = ((DiagnosticWrapper) diagnostic).getExtra();
+            if (extra instanceof Diagnostic) {
+                return getDiagnosticSourceUnwrapper((Diagnostic<?>) extra);
             }
         }
+        if (diagnostic instanceof ShiftedDiagnostic) {
+            return getDiagnosticSourceUnwrapper(((ShiftedDiagnostic) diagnostic).getDelegate());
+        }
         if (diagnostic instanceof ClientCodeWrapper.DiagnosticSourceUnwrapper) {
             return (ClientCodeWrapper.DiagnosticSourceUnwrapper) diagnostic;
         }
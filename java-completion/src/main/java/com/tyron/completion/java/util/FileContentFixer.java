@@ -37,6 +37,14 @@ public class FileContentFixer {
 
     private final Context context;
 
+    /**
+     * Creates a fixer with its own context, the context of a compiler must not be used while
+     * another thread may be compiling with it
+     */
+    public FileContentFixer() {
+        this(new Context());
+    }
+
     public FileContentFixer(Context context) {
         this.context = context;
     }
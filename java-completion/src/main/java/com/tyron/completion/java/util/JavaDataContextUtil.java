@@ -33,18 +33,16 @@ public class JavaDataContextUtil {
 
                 CompilerContainer cachedContainer = compiler.getCachedContainer();
                 // don't block the ui thread
-                if (!cachedContainer.isWriting()) {
-                    cachedContainer.run(task -> {
-                        if (task != null) {
-                            CompilationUnitTree root = task.root(file);
-                            if (root != null) {
-                                FindCurrentPath findCurrentPath = new FindCurrentPath(task.task);
-                                TreePath currentPath = findCurrentPath.scan(root, cursor);
-                                context.putData(CommonJavaContextKeys.CURRENT_PATH, currentPath);
-                            }
+                cachedContainer.tryRun(task -> {
+                    if (task != null) {
+                        CompilationUnitTree root = task.root(file);
+                        if (root != null) {
+                            FindCurrentPath findCurrentPath = new FindCurrentPath(task.task);
+                            TreePath currentPath = findCurrentPath.scan(root, cursor);
+                            context.putData(CommonJavaContextKeys.CURRENT_PATH, currentPath);
                         }
-                    });
-                }
+                    }
+                });
                 context.putData(CommonJavaContextKeys.COMPILER, compiler);
             }
         }
@@ -0,0 +1,160 @@
+package com.tyron.completion.java.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.java.CompletionModule;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.tools.javac.tree.JCTree;
+import org.openjdk.tools.javac.tree.TreeScanner;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+public class MethodBodyReparserTest {
+
+    private static final String HEADER = "package com.test;\n" +
+            "public class Main {\n" +
+            "    void first() {\n";
+    private static final String FOOTER = "    }\n" +
+            "    void second() {\n" +
+            "        int unused = \"error after the body\";\n" +
+            "    }\n" +
+            "}\n";
+
+    private File mFile;
+    private JavaCompilerService mService;
+    private Instant mModified = Instant.now();
+
+    @Before
+    public void setup() {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        File root = new File(resolveBasePath(), "EmptyProject");
+        AndroidModule module = new MockAndroidModule(new File(root, "app"),
+                new MockFileManager(root));
+        mFile = new File(root, "classes/Main.java");
+
+        mService = new JavaCompilerService(new Project(root), Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet());
+        mService.setCurrentModule(module);
+    }
+
+    @Test
+    public void testLambda() {
+        CompilationUnitTree root = compile("        Runnable r = () -> {};\n");
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = reparse(root,
+                "        Runnable r = () -> { String s = \"\"; };\n" +
+                "        Runnable other = () -> {};\n");
+        // only the error of the other method is left
+        assertThat(codes(diagnostics)).containsExactly("compiler.err.prob.found.req");
+    }
+
+    @Test
+    public void testLocalClasses() {
+        CompilationUnitTree root = compile("        class Local {}\n" +
+                "        Object o = new Object() {};\n");
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = reparse(root,
+                "        class Local {}\n" +
+                "        Object o = new Object() {};\n" +
+                "        Local local = new Local();\n");
+        assertThat(codes(diagnostics)).containsExactly("compiler.err.prob.found.req");
+        // the classes of the old body have been removed, so the new ones have the same names
+        assertThat(classNames(root)).containsExactly("com.test.Main", "com.test.Main$1Local",
+                "com.test.Main$1");
+    }
+
+    @Test
+    public void testDiagnostics() {
+        CompilationUnitTree root = compile("        int a = \"\";\n");
+        assertThat(codes(mService.getDiagnostics()))
+                .containsExactly("compiler.err.prob.found.req", "compiler.err.prob.found.req");
+
+        // the error of the old body is removed, the new one is reported
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = reparse(root,
+                "        int a = 0;\n" +
+                "        a.foo();\n");
+        assertThat(codes(diagnostics)).containsExactly("compiler.err.cant.deref",
+                "compiler.err.prob.found.req");
+
+        // the error after the body is moved with the rest of the file
+        String contents = HEADER + "        int a = 0;\n        a.foo();\n" + FOOTER;
+        Diagnostic<? extends JavaFileObject> after = diagnostics.stream()
+                .filter(it -> it.getCode().equals("compiler.err.prob.found.req"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertThat(after.getStartPosition()).isEqualTo(contents.indexOf("\"error"));
+        assertThat(after.getLineNumber()).isEqualTo(7);
+
+        diagnostics = reparse(root, "        int a = 0;\n");
+        assertThat(codes(diagnostics)).containsExactly("compiler.err.prob.found.req");
+    }
+
+    private CompilationUnitTree compile(String body) {
+        AtomicReference<CompilationUnitTree> root = new AtomicReference<>();
+        mService.compile(Collections.singletonList(source(body)))
+                .run(task -> root.set(task.root()));
+        return root.get();
+    }
+
+    /**
+     * Changes the body of the first method and checks that it has been reparsed instead of
+     * compiling the file again
+     */
+    private List<Diagnostic<? extends JavaFileObject>> reparse(CompilationUnitTree root,
+                                                               String body) {
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+        mService.compileIncrementally(source(body)).run(task -> {
+            assertThat(task.root()).isSameInstanceAs(root);
+            diagnostics.addAll(task.diagnostics);
+        });
+        // the listener of the service is given the same diagnostics
+        assertThat(codes(mService.getDiagnostics()))
+                .containsExactlyElementsIn(codes(diagnostics));
+        return diagnostics;
+    }
+
+    private JavaFileObject source(String body) {
+        mModified = mModified.plusSeconds(1);
+        return new SourceFileObject(mFile.toPath(), HEADER + body + FOOTER, mModified);
+    }
+
+    private static List<String> classNames(CompilationUnitTree root) {
+        List<String> names = new ArrayList<>();
+        new TreeScanner() {
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree) {
+                names.add(tree.sym.flatname.toString());
+                super.visitClassDef(tree);
+            }
+        }.scan((JCTree) root);
+        return names;
+    }
+
+    private static List<String> codes(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        List<String> codes = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            codes.add(diagnostic.getCode());
+        }
+        return codes;
+    }
+}
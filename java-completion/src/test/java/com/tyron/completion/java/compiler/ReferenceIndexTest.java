@@ -0,0 +1,70 @@
+package com.tyron.completion.java.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ReferenceIndexTest {
+
+    private static final File MAIN = new File("Main.java");
+    private static final File OTHER = new File("Other.java");
+    private static final File SAME_PACKAGE = new File("SamePackage.java");
+
+    private static final String MAIN_SOURCE = "package com.example;\n" +
+            "import static java.util.Collections.emptyList;\n" +
+            "import android.view.*;\n" +
+            "// View in a comment\n" +
+            "public class Main {\n" +
+            "    String s = \"TextView\";\n" +
+            "    View view = new View(null);\n" +
+            "}\n";
+
+    @Test
+    public void testTokenize() {
+        ReferenceIndex.FileEntry entry = ReferenceIndex.tokenize(0, MAIN_SOURCE);
+        assertEquals("com.example", entry.getPackageName());
+        assertEquals(Arrays.asList("static java.util.Collections.emptyList", "android.view.*"),
+                entry.getImports());
+        assertTrue(entry.getIdentifiers().contains("View"));
+        assertTrue(entry.getIdentifiers().contains("view"));
+        // comments, strings, keywords and package names are not indexed
+        assertFalse(entry.getIdentifiers().contains("TextView"));
+        assertFalse(entry.getIdentifiers().contains("comment"));
+        assertFalse(entry.getIdentifiers().contains("public"));
+        assertFalse(entry.getIdentifiers().contains("example"));
+    }
+
+    @Test
+    public void testFindReferences() {
+        ReferenceIndex index = new ReferenceIndex(null);
+        index.put(MAIN, 0, MAIN_SOURCE);
+        index.put(OTHER, 0, "package other;\nclass Other { void View() {} }\n");
+        index.put(SAME_PACKAGE, 0, "package android.view;\nclass SamePackage { View v; }\n");
+
+        assertEquals(Arrays.asList(MAIN, SAME_PACKAGE),
+                sorted(index.findTypeReferences("android.view.View")));
+        assertEquals(Arrays.asList(MAIN, OTHER, SAME_PACKAGE),
+                sorted(index.findMemberReferences("android.view.View", "View")));
+        assertArrayEquals(new int[]{MAIN_SOURCE.indexOf("View view"),
+                        MAIN_SOURCE.indexOf("View(null)")},
+                index.getOccurrences(MAIN, "View"));
+
+        // re-indexing a file replaces its previous postings
+        index.put(SAME_PACKAGE, 1, "package android.view;\nclass SamePackage {}\n");
+        assertEquals(Collections.singletonList(MAIN),
+                index.findTypeReferences("android.view.View"));
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> list) {
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -92,6 +92,21 @@ public class CompilerClassPath implements Closeable {
         return compiler;
     }
 
+    public AndroidModule getModule() {
+        return mProject;
+    }
+
+    /**
+     * @return a copy of the compiled jars of the class path
+     */
+    public Set<File> getClassPathJars() {
+        synchronized (mClassPath) {
+            return mClassPath.stream()
+                    .map(entry -> entry.getCompiledJar().toFile())
+                    .collect(Collectors.toSet());
+        }
+    }
+
     @Override
     public void close() throws IOException {
 
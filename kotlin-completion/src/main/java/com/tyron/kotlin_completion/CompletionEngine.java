@@ -42,10 +42,10 @@ public class CompletionEngine {
     private final SourcePath sp;
     private final CompilerClassPath classPath;
     private final AsyncExecutor async = new AsyncExecutor();
-    private CachedCompletion cachedCompletion;
+    private volatile CachedCompletion cachedCompletion;
 
     private final Debouncer debounceLint = new Debouncer(Duration.ofMillis(500));
-    private Set<File> lintTodo = new HashSet<>();
+    private final Set<File> lintTodo = new HashSet<>();
     private int lintCount = 0;
 
     private CompletionEngine(AndroidModule project) {
@@ -192,9 +192,17 @@ public class CompletionEngine {
     }
 
     private List<File> clearLint() {
-        List<File> result = new ArrayList<>(lintTodo);
-        lintTodo.clear();
-        return result;
+        synchronized (lintTodo) {
+            List<File> result = new ArrayList<>(lintTodo);
+            lintTodo.clear();
+            return result;
+        }
+    }
+
+    private void addLint(File file) {
+        synchronized (lintTodo) {
+            lintTodo.add(file);
+        }
     }
 
     public interface LintCallback {
@@ -202,7 +210,7 @@ public class CompletionEngine {
     }
 
     public void lintLater(File file, LintCallback callback) {
-        lintTodo.add(file);
+        addLint(file);
         debounceLint.schedule(cancelFunction -> {
             callback.onLint(doLint(cancelFunction));
             return Unit.INSTANCE;
@@ -210,7 +218,7 @@ public class CompletionEngine {
     }
 
     public void lintNow(File file) {
-        lintTodo.add(file);
+        addLint(file);
         debounceLint.submitImmediately(cancel -> {
             doLint(cancel);
             return Unit.INSTANCE;
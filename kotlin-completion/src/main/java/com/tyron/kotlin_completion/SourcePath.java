@@ -2,9 +2,11 @@ package com.tyron.kotlin_completion;
 
 import android.util.Log;
 
+import com.google.common.hash.HashCode;
 import com.tyron.kotlin_completion.compiler.CompletionKind;
 import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
+import com.tyron.kotlin_completion.util.DeclarationHasher;
 import com.tyron.kotlin_completion.util.UtilKt;
 
 import org.apache.commons.io.FileUtils;
@@ -12,6 +14,7 @@ import org.jetbrains.kotlin.com.intellij.lang.Language;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
 
@@ -21,14 +24,18 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
-import kotlin.collections.CollectionsKt;
 import kotlin.sequences.Sequence;
 import kotlin.sequences.SequencesKt;
 import kotlin.Pair;
@@ -38,22 +45,20 @@ public class SourcePath {
     private static final String TAG = "SourcePath";
 
     private final CompilerClassPath cp;
-    private final Map<URI, SourceFile> files = new HashMap<>();
-    private final FakeLock parsedDataWriteLock = new FakeLock();
-
-    public static class FakeLock {
-        public void lock() {}
-        public void unlock() {}
-    }
+    private final Map<URI, SourceFile> files = new ConcurrentHashMap<>();
 
     private final AsyncExecutor indexAsync = new AsyncExecutor();
-    private final SymbolIndex index = new SymbolIndex();
-    private boolean indexEnabled = false;
+    private final SymbolIndex index;
+    private boolean indexEnabled = true;
     private boolean indexInitialized;
 
 
     public SourcePath(CompilerClassPath classPath) {
         cp = classPath;
+        index = new SymbolIndex(new File(classPath.getModule().getBuildDirectory(),
+                "intermediate/kotlin-index/symbols.bin"));
+        // the index saved by the previous session can be queried before the module is analyzed
+        indexAsync.execute(index::load);
     }
 
     public CompilerClassPath getCompilerClassPath() {
@@ -64,114 +69,266 @@ public class SourcePath {
         return index;
     }
 
+    /**
+     * An immutable snapshot of a source file, replaced as a whole when the file changes. The
+     * contents are versioned so that a parse or a compilation that finishes after the
+     * contents have changed again never replaces a newer result. The hashes of the contents
+     * allow reusing the parse and the compilation when the contents are changed back to
+     * ones that have already been analyzed.
+     */
+    private static final class State {
+
+        private final String content;
+        private final HashCode contentHash;
+        private final long version;
+        private final KtFile parsed;
+        private final long parsedVersion;
+        private final HashCode parsedHash;
+        private final KtFile compiledFile;
+        private final BindingContext compiledContext;
+        private final ComponentProvider compiledContainer;
+        private final long compiledVersion;
+        private final HashCode compiledHash;
+        private final HashCode compiledSignatures;
+
+        private State(String content, HashCode contentHash, long version) {
+            this(content, contentHash, version, null, -1, null, null, null, null, -1, null, null);
+        }
+
+        private State(String content, HashCode contentHash, long version, KtFile parsed,
+                      long parsedVersion, HashCode parsedHash, KtFile compiledFile,
+                      BindingContext compiledContext, ComponentProvider compiledContainer,
+                      long compiledVersion, HashCode compiledHash, HashCode compiledSignatures) {
+            this.content = content;
+            this.contentHash = contentHash;
+            this.version = version;
+            this.parsed = parsed;
+            this.parsedVersion = parsedVersion;
+            this.parsedHash = parsedHash;
+            this.compiledFile = compiledFile;
+            this.compiledContext = compiledContext;
+            this.compiledContainer = compiledContainer;
+            this.compiledVersion = compiledVersion;
+            this.compiledHash = compiledHash;
+            this.compiledSignatures = compiledSignatures;
+        }
+
+        private State withContent(String newContent, HashCode newHash) {
+            long newVersion = version + 1;
+            long newParsedVersion = parsedVersion;
+            long newCompiledVersion = compiledVersion;
+            KtFile newParsed = parsed;
+            HashCode newParsedHash = parsedHash;
+            if (compiledFile != null && newHash.equals(compiledHash)) {
+                newParsed = compiledFile;
+                newParsedHash = compiledHash;
+                newParsedVersion = newVersion;
+                if (compiledVersion != -1) {
+                    newCompiledVersion = newVersion;
+                }
+            } else if (parsed != null && newHash.equals(parsedHash)) {
+                newParsedVersion = newVersion;
+            }
+            return new State(newContent, newHash, newVersion, newParsed, newParsedVersion,
+                    newParsedHash, compiledFile, compiledContext, compiledContainer,
+                    newCompiledVersion, compiledHash, compiledSignatures);
+        }
+
+        private State withParsed(KtFile newParsed, long newParsedVersion, HashCode newParsedHash) {
+            return new State(content, contentHash, version, newParsed, newParsedVersion,
+                    newParsedHash, compiledFile, compiledContext, compiledContainer,
+                    compiledVersion, compiledHash, compiledSignatures);
+        }
+
+        private State withCompiled(KtFile file, BindingContext context,
+                                   ComponentProvider container, long newCompiledVersion,
+                                   HashCode hash, HashCode signatures) {
+            return new State(content, contentHash, version, parsed, parsedVersion, parsedHash,
+                    file, context, container, newCompiledVersion, hash, signatures);
+        }
+
+        /**
+         * Keeps the compiled file for completions but marks it as outdated, used when the
+         * declarations of a file it depends on have changed
+         */
+        private State withOutdatedCompilation() {
+            return new State(content, contentHash, version, parsed, parsedVersion, parsedHash,
+                    compiledFile, compiledContext, compiledContainer, -1, compiledHash,
+                    compiledSignatures);
+        }
+
+        private boolean isParsed() {
+            return parsed != null && parsedVersion == version;
+        }
+
+        private boolean isCompiled() {
+            return compiledFile != null && compiledVersion == version;
+        }
+    }
+
     public class SourceFile {
 
         private final URI uri;
-        private String content;
         private final Path path;
-        private KtFile parsed;
-        private KtFile compiledFile;
-        public BindingContext compiledContext;
-        private ComponentProvider compiledcontainer;
         private final Language language;
         private final boolean isTemporary;
 
         private final String extension;
         private final CompletionKind kind = CompletionKind.DEFAULT;
 
+        private volatile State state;
+
         public SourceFile(URI uri, String content, Language language, boolean isTemporary) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, isTemporary);
+            this(uri, content, Paths.get(uri), language, isTemporary);
         }
         public SourceFile(URI uri, String content, Language language) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, false);
+            this(uri, content, Paths.get(uri), language, false);
         }
 
-        private SourceFile(URI uri, String content, Path path, KtFile parsed, KtFile compiledFile, BindingContext compiledContext, ComponentProvider compiledcontainer, Language language, boolean isTemporary) {
+        private SourceFile(URI uri, String content, Path path, Language language, boolean isTemporary) {
             this.uri = uri;
-            this.content = content;
             this.path = path;
-            this.parsed = parsed;
-            this.compiledFile = compiledFile;
-            this.compiledContext = compiledContext;
-            this.compiledcontainer = compiledcontainer;
             this.language = language;
             this.isTemporary = isTemporary;
+            this.state = new State(content, DeclarationHasher.hashContent(content), 0);
 
             extension = ".kt";
         }
 
         public void put(String newContent) {
-            content = newContent;
+            HashCode hash = DeclarationHasher.hashContent(newContent);
+            synchronized (this) {
+                if (!state.contentHash.equals(hash)) {
+                    state = state.withContent(newContent, hash);
+                }
+            }
         }
 
-        public void clean() {
-            parsed = null;
-            compiledFile = null;
-            compiledContext = null;
-            compiledcontainer = null;
+        public synchronized void clean() {
+            State current = state;
+            state = new State(current.content, current.contentHash, current.version);
+        }
+
+        public String getContent() {
+            return state.content;
+        }
+
+        public BindingContext getCompiledContext() {
+            return state.compiledContext;
         }
 
         public void parse() {
-            Log.d(TAG, "Parsing file " + path);
-            parsed = cp.getCompiler().createKtFile(content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            doParse(state);
         }
 
         public void parseIfChanged() {
-            if (parsed == null || !content.equals(parsed.getText())) {
-                Log.d(TAG, "Parse has changed, parsing.");
-                parse();
+            parsedState();
+        }
+
+        /**
+         * @return a snapshot whose parsed file is of the latest contents at the time of the call,
+         * or of newer contents if another thread has parsed them in the meantime
+         */
+        private State parsedState() {
+            State current = state;
+            if (current.isParsed()) {
+                return current;
             }
+            Log.d(TAG, "Parse has changed, parsing.");
+            return doParse(current);
+        }
+
+        private State doParse(State current) {
+            Log.d(TAG, "Parsing file " + path);
+            KtFile parsed = cp.getCompiler().createKtFile(current.content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            return commitParsed(parsed, current.version, current.contentHash);
+        }
+
+        private synchronized State commitParsed(KtFile parsed, long version, HashCode hash) {
+            if (state.parsed == null || version >= state.parsedVersion) {
+                state = state.withParsed(parsed, version, hash);
+            }
+            return state;
+        }
+
+        /**
+         * @param parsed the snapshot whose parsed file has been compiled
+         * @return whether the declarations of the file have changed since it was last compiled,
+         * in which case the files depending on it have to be compiled again
+         */
+        private boolean commitCompiled(State parsed, BindingContext context,
+                                       ComponentProvider container) {
+            HashCode signatures = DeclarationHasher.hashSignatures(parsed.parsed, context);
+            synchronized (this) {
+                State current = state;
+                if (current.compiledFile != null && parsed.parsedVersion < current.compiledVersion) {
+                    return false;
+                }
+                state = current.withCompiled(parsed.parsed, context, container,
+                        parsed.parsedVersion, parsed.parsedHash, signatures);
+                return current.compiledSignatures != null
+                        && !current.compiledSignatures.equals(signatures);
+            }
+        }
+
+        /**
+         * @return whether the file may depend on the package and has been marked as outdated
+         */
+        private boolean outdateIfDependsOn(FqName packageName) {
+            KtFile parsed = state.parsed;
+            if (parsed == null || !DeclarationHasher.mayDependOn(parsed, packageName)) {
+                return false;
+            }
+            synchronized (this) {
+                if (state.compiledFile != null) {
+                    state = state.withOutdatedCompilation();
+                }
+            }
+            return true;
         }
 
         public void compileIfNull() {
-            if (compiledFile == null) {
-                parseIfChanged();
-                doCompileIfChanged();
+            if (state.compiledFile == null) {
+                doCompile(parsedState());
             }
         }
 
         private void compile() {
-            parse();
-            doCompile();
+            doCompile(doParse(state));
         }
 
         private void compileIfChanged() {
-            parseIfChanged();
-            doCompileIfChanged();
-        }
-
-        private void doCompileIfChanged() {
-            if (parsed == null || compiledFile == null || !parsed.getText().equals(compiledFile.getText())) {
-                doCompile();;
+            State parsed = parsedState();
+            if (parsed.compiledFile == null || parsed.compiledVersion != parsed.parsedVersion) {
+                doCompile(parsed);
             }
         }
 
-        private void doCompile() {
+        private void doCompile(State parsed) {
             if (this.path.toFile().getName().endsWith(".kt")) {
-                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(parsed, allIncludingThis());
-                parsedDataWriteLock.lock();
-                try {
-                    compiledContext = pair.getFirst();
-                    compiledcontainer = pair.getSecond();
-                    compiledFile = parsed;
-                } finally {
-                    parsedDataWriteLock.unlock();
+                // the compilation itself is serialized by the compiler, the result is only
+                // kept if no newer version of the file has been compiled in the meantime
+                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler()
+                        .compileKtFile(parsed.parsed, allIncludingThis(parsed.parsed));
+                if (commitCompiled(parsed, pair.getFirst(), pair.getSecond())) {
+                    outdateDependents(this, parsed.parsed);
                 }
+                initializeIndexAsyncIfNeeded(pair.getSecond());
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
         }
+
         public CompiledFile prepareCompiledFile() {
-            parseIfChanged();
             compileIfNull();
             return doPrepareCompiledFile();
         }
 
         public CompiledFile doPrepareCompiledFile() {
-            return new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, allIncludingThis(), cp);
+            State current = parsedState();
+            return new CompiledFile(current.content, current.compiledFile, current.compiledContext,
+                    current.compiledContainer, allIncludingThis(current.parsed), cp);
         }
 
-        private Collection<KtFile> allIncludingThis() {
-            parseIfChanged();
+        private Collection<KtFile> allIncludingThis(KtFile parsed) {
             if (isTemporary) {
                 Set<KtFile> all = all(false);
                 Sequence<KtFile> plus = SequencesKt.plus(SequencesKt.asSequence(all.iterator()), SequencesKt.sequenceOf(parsed));
@@ -191,11 +348,8 @@ public class SourcePath {
             Log.d(TAG, "Adding temporary file");
         }
 
-        if (files.containsKey(file.toURI())) {
-            sourceFile(file).put(content);
-        } else {
-            files.put(file.toURI(), new SourceFile(file.toURI(), content, KotlinLanguage.INSTANCE, temp));
-        }
+        files.computeIfAbsent(file.toURI(), uri -> new SourceFile(uri, content, KotlinLanguage.INSTANCE, temp))
+                .put(content);
     }
 
     public boolean deleteIfTemporary(File uri) {
@@ -212,44 +366,54 @@ public class SourcePath {
     }
 
     public BindingContext compileFiles(Collection<File> all) {
-        Set<SourceFile> sources = all.stream().map(o -> files.get(o.toURI())).collect(Collectors.toSet());
-        Set<SourceFile> allChanged = sources.stream().filter(it -> !it.content.equals(it.compiledFile.getText()))
-                .collect(Collectors.toSet());
+        // the states are read once so that the files compiled and the contexts of the
+        // unchanged files are consistent even if the files are modified concurrently
+        Map<SourceFile, State> sources = new HashMap<>();
+        for (File file : all) {
+            SourceFile sourceFile = files.get(file.toURI());
+            if (sourceFile != null) {
+                sources.put(sourceFile, sourceFile.state);
+            }
+        }
+        Map<SourceFile, State> allChanged = new HashMap<>();
+        List<BindingContext> unchanged = new ArrayList<>();
+        sources.forEach((sourceFile, state) -> {
+            if (state.isCompiled()) {
+                unchanged.add(state.compiledContext);
+            } else {
+                allChanged.put(sourceFile, state);
+            }
+        });
         BindingContext sourcesContext = compileAndUpdate(allChanged);
-        return UtilKt.util(sourcesContext, sources, allChanged);
+        return UtilKt.util(sourcesContext, unchanged);
     }
 
     private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
         indexAsync.execute(() -> {
             if (indexEnabled && !indexInitialized) {
                 ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
+                index.refresh(module, cp.getClassPathJars(), false);
                 indexInitialized = true;
             }
         });
     }
 
 
-    private BindingContext compileAndUpdate(Set<SourceFile> changed) {
+    private BindingContext compileAndUpdate(Map<SourceFile, State> changed) {
         if (changed.isEmpty()) return null;
-        Map<SourceFile, KtFile> parse = CollectionsKt.associateWith(changed, sourceFile -> {
-            sourceFile.parseIfChanged();
-            return sourceFile.parsed;
-        });
+        Map<SourceFile, State> parse = new HashMap<>();
+        changed.forEach((sourceFile, state) -> parse.put(sourceFile, state.isParsed()
+                ? state : sourceFile.doParse(state)));
         Set<KtFile> all = all(false);
+        List<KtFile> parsedFiles = parse.values().stream()
+                .map(state -> state.parsed)
+                .collect(Collectors.toList());
         Pair<BindingContext, ComponentProvider> pair = cp.getCompiler()
-                .compileKtFiles(parse.values(), all, CompletionKind.DEFAULT);
-
-        parse.forEach((f, parsed) -> {
-            parsedDataWriteLock.lock();
-            try {
-                if (f.parsed.equals(parsed)) {
-                    f.compiledFile = parsed;
-                    f.compiledContext = pair.getFirst();
-                    f.compiledcontainer = pair.getSecond();
-                }
-            } finally {
-                parsedDataWriteLock.unlock();
+                .compileKtFiles(parsedFiles, all, CompletionKind.DEFAULT);
+
+        parse.forEach((f, state) -> {
+            if (f.commitCompiled(state, pair.getFirst(), pair.getSecond())) {
+                outdateDependents(f, state.parsed);
             }
         });
 
@@ -257,6 +421,37 @@ public class SourcePath {
         return pair.getFirst();
     }
 
+    /**
+     * Marks the files that may use the declarations of the changed file as outdated so they
+     * are analyzed again the next time they are compiled, the other files keep their results.
+     * The files using a dependent whose declarations have inferred types are outdated as
+     * well, since these types may have changed along with the declarations of the file.
+     */
+    private void outdateDependents(SourceFile changed, KtFile parsed) {
+        Set<SourceFile> outdated = new HashSet<>();
+        outdated.add(changed);
+        Set<FqName> visitedPackages = new HashSet<>();
+        Deque<FqName> packages = new ArrayDeque<>();
+        packages.add(parsed.getPackageFqName());
+        while (!packages.isEmpty()) {
+            FqName packageName = packages.poll();
+            if (!visitedPackages.add(packageName)) {
+                continue;
+            }
+            for (SourceFile sourceFile : files.values()) {
+                if (outdated.contains(sourceFile)
+                        || !sourceFile.outdateIfDependsOn(packageName)) {
+                    continue;
+                }
+                outdated.add(sourceFile);
+                KtFile dependent = sourceFile.state.parsed;
+                if (dependent != null && DeclarationHasher.hasInferredTypes(dependent)) {
+                    packages.add(dependent.getPackageFqName());
+                }
+            }
+        }
+    }
+
     public CompiledFile currentVersion(File file) {
         SourceFile sourceFile = sourceFile(file);
         sourceFile.compileIfChanged();
@@ -269,25 +464,25 @@ public class SourcePath {
     }
 
     private SourceFile sourceFile(File file) {
-        if (!files.containsKey(file.toURI())) {
-            String string;
-            try {
-                string = FileUtils.readFileToString(file, Charset.defaultCharset());
-                Log.d("STRING", string);
-            } catch (IOException e) {
-                string = "";
-            }
-            put(file, string, true);
+        SourceFile sourceFile = files.get(file.toURI());
+        if (sourceFile != null) {
+            return sourceFile;
         }
+        String string;
+        try {
+            string = FileUtils.readFileToString(file, Charset.defaultCharset());
+            Log.d("STRING", string);
+        } catch (IOException e) {
+            string = "";
+        }
+        put(file, string, true);
         return files.get(file.toURI());
     }
     private Set<KtFile> all(boolean includeHidden) {
         return files.values().stream()
                 .filter(it -> includeHidden || !it.isTemporary)
-                .map(it -> {
-                    it.parseIfChanged();
-                    return it.parsed;
-                }).collect(Collectors.toSet());
+                .map(it -> it.parsedState().parsed)
+                .collect(Collectors.toSet());
     }
 
 }
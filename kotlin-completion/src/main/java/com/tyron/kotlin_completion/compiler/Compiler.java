@@ -43,17 +43,12 @@ public class Compiler implements Closeable {
 
     private final CompilationEnvironment mDefaultCompileEnvironment;
     private final VirtualFileSystem mLocalFileSystem;
-    private final FakeLock mCompileLock = new FakeLock();
+    /**
+     * The analysis of the compilation environment is not thread safe, completions, linting and
+     * indexing may compile concurrently so they are done one at a time
+     */
+    private final ReentrantLock mCompileLock = new ReentrantLock();
 
-    public class FakeLock {
-        public void lock() {
-
-        }
-
-        public void unlock() {
-
-        }
-    }
     private boolean closed = false;
 
 
@@ -1,130 +1,339 @@
 package com.tyron.kotlin_completion.index
 
 import android.util.Log
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
 import java.lang.IllegalStateException
 import java.time.Duration
 import java.time.Instant
+import java.util.zip.ZipFile
 import kotlin.sequences.Sequence
 
 private const val MAX_FQNAME_LENGTH = 255
 private const val MAX_SHORT_NAME_LENGTH = 80
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+private const val MAGIC = 0x4B53594D
+private const val VERSION = 1
 
-    override val primaryKey = PrimaryKey(fqName)
-}
+/**
+ * A library jar on the class path, identified by the hash of its contents. The hash and the
+ * packages of the jar are only computed again when its size or modification time changes.
+ */
+private class IndexedJar(
+    val length: Long,
+    val modified: Long,
+    val hash: String,
+    val packages: List<String>
+)
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+/**
+ * The symbols of a package, [key] identifies the contents of the jars that contained the
+ * package when it was indexed. Packages that are not in any jar have an empty key.
+ */
+private class IndexedPackage(
+    val key: String,
+    val symbols: List<Symbol>
+)
 
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+private class SortedSymbols(
+    val names: Array<String>,
+    val symbols: Array<Symbol>
+)
 
+/**
+ * An index of the symbols of a module used for import completions, saved to [indexFile] so
+ * it can be queried as soon as the project is opened instead of after the module has been
+ * analyzed. When refreshed, only the packages contained in jars that have changed and the
+ * packages of the sources are indexed again.
+ */
+class SymbolIndex(private val indexFile: File? = null) {
+
+    @Volatile
     var indexing: Boolean = false
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
+    private val jars = HashMap<String, IndexedJar>()
+    private var packages: Map<String, IndexedPackage> = emptyMap()
+
+    /** All the symbols sorted by their short name, used for prefix searches */
+    @Volatile
+    private var sorted = SortedSymbols(emptyArray(), emptyArray())
+
+    /**
+     * Loads the index saved by a previous refresh, does nothing if there is none
+     */
+    @Synchronized
+    fun load() {
+        val file = indexFile ?: return
+        if (!file.exists()) {
+            return
+        }
+        val start = Instant.now()
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return
+                }
+                val loadedJars = HashMap<String, IndexedJar>()
+                repeat(input.readInt()) {
+                    val path = input.readUTF()
+                    val length = input.readLong()
+                    val modified = input.readLong()
+                    val hash = input.readUTF()
+                    val jarPackages = List(input.readInt()) { input.readUTF() }
+                    loadedJars[path] = IndexedJar(length, modified, hash, jarPackages)
+                }
+                val loadedPackages = HashMap<String, IndexedPackage>()
+                repeat(input.readInt()) {
+                    val name = input.readUTF()
+                    val key = input.readUTF()
+                    val symbols = List(input.readInt()) {
+                        val fqName = FqName(input.readUTF())
+                        val kind = Symbol.Kind.fromRaw(input.readByte().toInt())
+                        val visibility = Symbol.Visibility.fromRaw(input.readByte().toInt())
+                        val receiver = if (input.readBoolean()) FqName(input.readUTF()) else null
+                        Symbol(fqName, kind, visibility, receiver)
+                    }
+                    loadedPackages[name] = IndexedPackage(key, symbols)
+                }
+                jars.clear()
+                jars.putAll(loadedJars)
+                update(loadedPackages)
+            }
+            Log.d("SymbolIndex", "Loaded ${sorted.symbols.size} symbols in " +
+                    Duration.between(start, Instant.now()).toMillis() + " ms")
+        } catch (e: IOException) {
+            Log.w("SymbolIndex", "Unable to load symbol index, it will be rebuilt", e)
+        } catch (e: RuntimeException) {
+            Log.w("SymbolIndex", "Unable to load symbol index, it will be rebuilt", e)
+        }
     }
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
+    /**
+     * Updates the index with the packages of the module
+     *
+     * @param jars the library jars of the module, the packages they contain are only indexed
+     * again if the contents of one of the jars containing it has changed
+     * @param forced whether all the packages should be indexed again
+     */
+    @Synchronized
+    fun refresh(module: ModuleDescriptor, jars: Collection<File>, forced: Boolean) {
         val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+        Log.d("SymbolIndex", "Updating symbol index...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
+            val jarsOfPackage = HashMap<String, MutableList<String>>()
+            val currentJars = HashSet<String>()
+            for (jar in jars) {
+                val indexedJar = indexJar(jar) ?: continue
+                currentJars.add(jar.absolutePath)
+                for (name in indexedJar.packages) {
+                    jarsOfPackage.getOrPut(name) { ArrayList() }.add(indexedJar.hash)
                 }
+            }
+            this.jars.keys.retainAll(currentJars)
 
-                indexing = false
+            val newPackages = HashMap<String, IndexedPackage>()
+            var indexed = 0
+            for (fqName in allPackages(module)) {
+                val name = fqName.asString()
+                val key = jarsOfPackage[name]?.sorted()?.joinToString(",") ?: ""
+                val existing = packages[name]
+                if (!forced && key.isNotEmpty() && existing != null && existing.key == key) {
+                    newPackages[name] = existing
+                    continue
+                }
+                newPackages[name] = IndexedPackage(key, packageSymbols(module, fqName))
+                indexed++
             }
+            update(newPackages)
+            save()
+            Log.d("SymbolIndex", "Indexed $indexed of ${newPackages.size} packages in " +
+                    (System.currentTimeMillis() - started) + " ms")
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
+        } finally {
+            indexing = false
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
+            val current = sorted
+            val names = current.names
+            val symbols = current.symbols
+            val result = ArrayList<Symbol>()
+            var i = lowerBound(names, prefix)
+            while (i < names.size && result.size < limit && names[i].startsWith(prefix)) {
+                val symbol = symbols[i]
+                if (symbol.extensionReceiverType == receiverType) {
+                    result.add(symbol)
+                }
+                i++
             }
+            return result
         } finally {
             Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
         }
     }
 
+    private fun lowerBound(names: Array<String>, prefix: String): Int {
+        var low = 0
+        var high = names.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (names[mid] < prefix) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return low
+    }
+
+    private fun update(newPackages: Map<String, IndexedPackage>) {
+        val symbols = newPackages.values
+            .flatMap { it.symbols }
+            .sortedBy { it.fqName.shortName().asString() }
+            .toTypedArray()
+        packages = newPackages
+        sorted = SortedSymbols(Array(symbols.size) { symbols[it].fqName.shortName().asString() }, symbols)
+    }
+
+    private fun indexJar(jar: File): IndexedJar? {
+        if (!jar.isFile) {
+            return null
+        }
+        val path = jar.absolutePath
+        val existing = jars[path]
+        if (existing != null && existing.length == jar.length() && existing.modified == jar.lastModified()) {
+            return existing
+        }
+        return try {
+            @Suppress("UnstableApiUsage")
+            val hash = Files.asByteSource(jar).hash(Hashing.sha256()).toString()
+            val jarPackages = HashSet<String>()
+            ZipFile(jar).use { zipFile ->
+                for (entry in zipFile.entries()) {
+                    val name = entry.name
+                    if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                        continue
+                    }
+                    val index = name.lastIndexOf('/')
+                    jarPackages.add(if (index == -1) "" else name.substring(0, index).replace('/', '.'))
+                }
+            }
+            IndexedJar(jar.length(), jar.lastModified(), hash, jarPackages.toList()).also {
+                jars[path] = it
+            }
+        } catch (e: IOException) {
+            Log.w("SymbolIndex", "Unable to read $jar", e)
+            null
+        }
+    }
+
+    private fun packageSymbols(module: ModuleDescriptor, fqName: FqName): List<Symbol> {
+        val symbols = ArrayList<Symbol>()
+        for (descriptor in packageDescriptors(module, fqName)) {
+            val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
+            val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+
+            if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
+                symbols.add(
+                    Symbol(
+                        fqName = descriptorFqn,
+                        kind = descriptor.accept(ExtractSymbolKind, Unit),
+                        visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+                        extensionReceiverType = extensionReceiverFqn
+                    )
+                )
+            } else {
+                Log.w("SymbolIndex",
+                    "Excluding symbol $descriptorFqn from index since its name is too long"
+                )
+            }
+        }
+        // a symbol may be contributed more than once, the last one is kept
+        return symbols.associateBy { it.fqName }.values.toList()
+    }
+
+    /**
+     * Writes the whole index at once to a temporary file which then replaces the index file
+     */
+    private fun save() {
+        val file = indexFile ?: return
+        try {
+            val parent = file.parentFile
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw IOException("Unable to create directory $parent")
+            }
+            val temp = File(file.path + ".tmp")
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(jars.size)
+                for ((path, jar) in jars) {
+                    output.writeUTF(path)
+                    output.writeLong(jar.length)
+                    output.writeLong(jar.modified)
+                    output.writeUTF(jar.hash)
+                    output.writeInt(jar.packages.size)
+                    jar.packages.forEach(output::writeUTF)
+                }
+                output.writeInt(packages.size)
+                for ((name, indexedPackage) in packages) {
+                    output.writeUTF(name)
+                    output.writeUTF(indexedPackage.key)
+                    output.writeInt(indexedPackage.symbols.size)
+                    for (symbol in indexedPackage.symbols) {
+                        output.writeUTF(symbol.fqName.asString())
+                        output.writeByte(symbol.kind.rawValue)
+                        output.writeByte(symbol.visibility.rawValue)
+                        output.writeBoolean(symbol.extensionReceiverType != null)
+                        symbol.extensionReceiverType?.let { output.writeUTF(it.asString()) }
+                    }
+                }
+            }
+            if (file.exists() && !file.delete()) {
+                throw IOException("Unable to delete $file")
+            }
+            if (!temp.renameTo(file)) {
+                throw IOException("Unable to save $file")
+            }
+        } catch (e: IOException) {
+            Log.w("SymbolIndex", "Unable to save symbol index", e)
+        }
+    }
+
     private fun canStoreFqName(fqName: FqName) =
         fqName.toString().length <= MAX_FQNAME_LENGTH
                 && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
 
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
-            }
+    private fun packageDescriptors(module: ModuleDescriptor, fqName: FqName): Collection<DeclarationDescriptor> =
+        try {
+            module.getPackage(fqName).memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+        } catch (e: IllegalStateException) {
+            Log.w("SymbolIndex", "Couldn't query descriptors in package $fqName")
+            emptyList()
         }
 
     private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package com.tyron.kotlin_completion.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.jetbrains.kotlin.com.intellij.psi.PsiElement;
+import org.jetbrains.kotlin.descriptors.CallableDescriptor;
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor;
+import org.jetbrains.kotlin.lexer.KtTokens;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.psi.KtClassOrObject;
+import org.jetbrains.kotlin.psi.KtDeclaration;
+import org.jetbrains.kotlin.psi.KtExpression;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtImportDirective;
+import org.jetbrains.kotlin.psi.KtNamedFunction;
+import org.jetbrains.kotlin.psi.KtProperty;
+import org.jetbrains.kotlin.renderer.DescriptorRenderer;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.types.KotlinType;
+
+/**
+ * Hashes the parts of a Kotlin file that other files can depend on. The bodies of functions
+ * and the initializers of properties are left out, so editing them does not change the hash
+ * and the files using the declarations do not have to be analyzed again. When their type is
+ * inferred, the type resolved by the analysis of the file is hashed instead.
+ *
+ * <p>The inferred type of a declaration may change without its file changing, when it is
+ * inferred from a declaration of another file. {@link #hasInferredTypes(KtFile)} tells
+ * whether the files using a file have to be analyzed again whenever the file is.
+ */
+public class DeclarationHasher {
+
+    private DeclarationHasher() {
+
+    }
+
+    @NonNull
+    public static HashCode hashContent(@NonNull CharSequence content) {
+        return Hashing.murmur3_128().hashUnencodedChars(content);
+    }
+
+    /**
+     * @param context the result of the analysis of the file, used to hash the inferred types
+     *                of its declarations. Without it their bodies are hashed instead.
+     */
+    @NonNull
+    public static HashCode hashSignatures(@NonNull KtFile file, @Nullable BindingContext context) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(file.getPackageFqName().asString()).append('\n');
+        for (KtImportDirective directive : file.getImportDirectives()) {
+            builder.append(directive.getText()).append('\n');
+        }
+        for (KtDeclaration declaration : file.getDeclarations()) {
+            appendSignature(builder, declaration, context);
+        }
+        return hashContent(builder);
+    }
+
+    /**
+     * @return whether the file has a declaration visible to other files whose type is
+     * inferred from its body or initializer
+     */
+    public static boolean hasInferredTypes(@NonNull KtFile file) {
+        for (KtDeclaration declaration : file.getDeclarations()) {
+            if (hasInferredType(declaration)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasInferredType(KtDeclaration declaration) {
+        if (declaration.hasModifier(KtTokens.PRIVATE_KEYWORD)) {
+            return false;
+        }
+        if (declaration instanceof KtNamedFunction) {
+            KtNamedFunction function = (KtNamedFunction) declaration;
+            return function.getBodyExpression() != null && !function.hasBlockBody()
+                    && function.getTypeReference() == null;
+        }
+        if (declaration instanceof KtProperty) {
+            return ((KtProperty) declaration).getTypeReference() == null;
+        }
+        if (declaration instanceof KtClassOrObject) {
+            for (KtDeclaration member : ((KtClassOrObject) declaration).getDeclarations()) {
+                if (hasInferredType(member)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the file may use the declarations of the package, either from the same
+     * package, through an import or by a fully qualified name
+     */
+    public static boolean mayDependOn(@NonNull KtFile file, @NonNull FqName packageName) {
+        if (file.getPackageFqName().equals(packageName)) {
+            return true;
+        }
+        for (KtImportDirective directive : file.getImportDirectives()) {
+            FqName imported = directive.getImportedFqName();
+            if (imported == null) {
+                continue;
+            }
+            if (imported.equals(packageName)) {
+                return true;
+            }
+            if (!imported.isRoot() && imported.parent().asString()
+                    .startsWith(packageName.asString())) {
+                return true;
+            }
+        }
+        return !packageName.isRoot() && file.getText().contains(packageName.asString() + ".");
+    }
+
+    private static void appendSignature(StringBuilder builder, KtDeclaration declaration,
+                                        @Nullable BindingContext context) {
+        if (declaration instanceof KtNamedFunction) {
+            KtNamedFunction function = (KtNamedFunction) declaration;
+            KtExpression body = function.getBodyExpression();
+            if (body != null) {
+                if (function.hasBlockBody() || function.getTypeReference() != null) {
+                    appendUntil(builder, function, body);
+                    return;
+                }
+                String type = getInferredType(function, context);
+                if (type != null) {
+                    appendUntil(builder, function, body);
+                    builder.append(": ").append(type).append('\n');
+                    return;
+                }
+            }
+        } else if (declaration instanceof KtProperty) {
+            KtProperty property = (KtProperty) declaration;
+            PsiElement end = property.getInitializer();
+            if (end == null) {
+                end = property.getDelegate();
+            }
+            if (end == null && !property.getAccessors().isEmpty()) {
+                end = property.getAccessors().get(0);
+            }
+            if (end != null) {
+                if (property.getTypeReference() != null) {
+                    appendUntil(builder, property, end);
+                    return;
+                }
+                String type = getInferredType(property, context);
+                if (type != null) {
+                    appendUntil(builder, property, end);
+                    builder.append(": ").append(type).append('\n');
+                    return;
+                }
+            }
+        } else if (declaration instanceof KtClassOrObject) {
+            KtClassOrObject classOrObject = (KtClassOrObject) declaration;
+            if (classOrObject.getBody() != null) {
+                appendUntil(builder, classOrObject, classOrObject.getBody());
+                builder.append("{\n");
+                for (KtDeclaration member : classOrObject.getDeclarations()) {
+                    appendSignature(builder, member, context);
+                }
+                builder.append("}\n");
+                return;
+            }
+        }
+        builder.append(declaration.getText()).append('\n');
+    }
+
+    /**
+     * @return the fully qualified type of the declaration resolved by the analysis, or null if
+     * the declaration has not been analyzed
+     */
+    @Nullable
+    private static String getInferredType(KtDeclaration declaration,
+                                          @Nullable BindingContext context) {
+        if (context == null) {
+            return null;
+        }
+        DeclarationDescriptor descriptor =
+                context.get(BindingContext.DECLARATION_TO_DESCRIPTOR, declaration);
+        if (!(descriptor instanceof CallableDescriptor)) {
+            return null;
+        }
+        KotlinType type = ((CallableDescriptor) descriptor).getReturnType();
+        if (type == null) {
+            return null;
+        }
+        return DescriptorRenderer.FQ_NAMES_IN_TYPES.renderType(type);
+    }
+
+    /**
+     * Appends the text of the element up to the start of its descendant
+     */
+    private static void appendUntil(StringBuilder builder, PsiElement element, PsiElement end) {
+        int length = end.getTextRange().getStartOffset() - element.getTextRange().getStartOffset();
+        builder.append(element.getText(), 0, length).append('\n');
+    }
+}
@@ -0,0 +1,104 @@
+package com.tyron.kotlin_completion.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.hash.HashCode;
+import com.tyron.kotlin_completion.compiler.CompilationEnvironment;
+
+import org.jetbrains.kotlin.container.ComponentProvider;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.BindingTraceContext;
+import org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer;
+import org.jetbrains.kotlin.resolve.TopDownAnalysisMode;
+import org.jetbrains.kotlin.resolve.calls.smartcasts.DataFlowInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import kotlin.Pair;
+import kotlin.Unit;
+
+public class DeclarationHasherTest {
+
+    private static final String B = "package b\nimport c.c\nfun b() = c()\n";
+    private static final String A = "package a\nimport b.b\nval a: Any = b()\n";
+
+    private final Map<KtFile, BindingContext> mContexts = new HashMap<>();
+    private CompilationEnvironment mEnvironment;
+
+    @Before
+    public void setup() throws Exception {
+        Path stdlib = Paths.get(Unit.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI());
+        mEnvironment = new CompilationEnvironment(Collections.emptySet(),
+                Collections.singleton(stdlib));
+    }
+
+    @After
+    public void tearDown() {
+        mEnvironment.close();
+    }
+
+    /**
+     * A uses B which uses C, the return type of B is inferred from C so changing the type
+     * of C changes the signatures of B even though its file is unchanged
+     */
+    @Test
+    public void testInferredTypeChangedByDependency() {
+        List<KtFile> before = analyze("package c\nfun c() = 1\n", B, A);
+        List<KtFile> after = analyze("package c\nfun c() = \"c\"\n", B, A);
+
+        assertNotEquals(hash(before, 0), hash(after, 0));
+        assertNotEquals(hash(before, 1), hash(after, 1));
+        assertEquals(hash(before, 2), hash(after, 2));
+
+        // the files using B have to be analyzed again along with it
+        assertTrue(DeclarationHasher.hasInferredTypes(after.get(1)));
+        assertFalse(DeclarationHasher.hasInferredTypes(after.get(2)));
+    }
+
+    @Test
+    public void testBodyChangeKeepsInferredType() {
+        List<KtFile> before = analyze("package c\nfun c() = 1\n", B, A);
+        List<KtFile> after = analyze("package c\nfun c() = 2\n", B, A);
+
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(hash(before, i), hash(after, i));
+        }
+    }
+
+    private HashCode hash(List<KtFile> files, int index) {
+        KtFile file = files.get(index);
+        return DeclarationHasher.hashSignatures(file, mContexts.get(file));
+    }
+
+    private List<KtFile> analyze(String... contents) {
+        KtFile[] files = new KtFile[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            files[i] = mEnvironment.getParser().createFile("File" + i + ".kt", contents[i]);
+        }
+        List<KtFile> sourcePath = Arrays.asList(files);
+        Pair<ComponentProvider, BindingTraceContext> pair =
+                mEnvironment.createContainer(sourcePath);
+        ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
+                .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, sourcePath,
+                        DataFlowInfo.Companion.getEMPTY(), null);
+        BindingContext context = pair.getSecond().getBindingContext();
+        for (KtFile file : files) {
+            mContexts.put(file, context);
+        }
+        return sourcePath;
+    }
+}